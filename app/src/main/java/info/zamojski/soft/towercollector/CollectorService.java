@@ -63,6 +63,9 @@ import info.zamojski.soft.towercollector.collector.parsers.MeasurementParser;
 import info.zamojski.soft.towercollector.collector.parsers.MeasurementParserFactory;
 import info.zamojski.soft.towercollector.collector.validators.LocationValidator;
 import info.zamojski.soft.towercollector.collector.validators.SystemTimeValidator;
+import info.zamojski.soft.towercollector.collector.writers.BufferedMeasurementWriter;
+import info.zamojski.soft.towercollector.collector.writers.DirectMeasurementWriter;
+import info.zamojski.soft.towercollector.collector.writers.IMeasurementWriter;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.enums.GpsStatus;
 import info.zamojski.soft.towercollector.enums.KeepScreenOnMode;
@@ -126,6 +129,7 @@ public class CollectorService extends Service {
 
     // prevent from being garbage collected
     private MeasurementParser measurementParser;
+    private IMeasurementWriter measurementWriter;
     private Timer periodicalPhoneStateListener;
 
     KeepScreenOnMode keepScreenOnMode;
@@ -239,6 +243,8 @@ public class CollectorService extends Service {
         currentIntervalValue.set(transportMode.getMaxTime());
         measurementUpdater.setMinDistanceAndInterval(transportMode.getDistance(), transportMode.getMaxTime());
         locationValidator = new LocationValidator(transportMode.getAccuracy());
+        if (measurementWriter == null)
+            measurementWriter = createMeasurementWriter();
         // listen for RSSI (ASU) and cell change
         periodicalPhoneStateListener = new Timer();
         try {
@@ -319,6 +325,10 @@ public class CollectorService extends Service {
         if (measurementParser != null) {
             measurementParser.stop();
         }
+        if (measurementWriter != null) {
+            // always persist buffered measurements
+            measurementWriter.close();
+        }
         if (externalBroadcastSender != null) {
             externalBroadcastSender.stop();
         }
@@ -375,6 +385,18 @@ public class CollectorService extends Service {
         notificationManager.notify(NOTIFICATION_ID, notification);
     }
 
+    // ========== WRITER ========== //
+
+    private IMeasurementWriter createMeasurementWriter() {
+        int windowSeconds = MyApplication.getPreferencesProvider().getCollectorWriteBufferWindow();
+        Timber.d("createMeasurementWriter(): Write buffer window: %s s", windowSeconds);
+        if (windowSeconds <= 0) {
+            return new DirectMeasurementWriter();
+        }
+        int batchSize = MyApplication.getPreferencesProvider().getCollectorWriteBufferBatchSize();
+        return new BufferedMeasurementWriter(batchSize, windowSeconds * 1000L);
+    }
+
     // ========== LISTENERS ========== //
 
     private void registerPhoneStateListener() {
@@ -407,7 +429,7 @@ public class CollectorService extends Service {
     private void registerApi17PhoneStateListener() {
         Timber.d("registerApi17PhoneStateListener(): Registering API 17 phone state listener");
         boolean collectNeighboringCells = MyApplication.getPreferencesProvider().getCollectNeighboringCells();
-        measurementParser = new MeasurementParserFactory().CreateApi17Parser(transportMode.getAccuracy(), collectNeighboringCells);
+        measurementParser = new MeasurementParserFactory().CreateApi17Parser(transportMode.getAccuracy(), measurementWriter, collectNeighboringCells);
         getMeasurementParserHandler().post(measurementParser);
         int telephonyManagerIndex = 0;
         for (TelephonyTriple telephonyTriple : telephonyTriples) {
@@ -513,7 +535,7 @@ public class CollectorService extends Service {
     private void registerApi1PhoneStateListener() {
         Timber.d("registerApi1PhoneStateListener(): Registering API 1 phone state listener");
         boolean collectNeighboringCells = MyApplication.getPreferencesProvider().getCollectNeighboringCells();
-        measurementParser = new MeasurementParserFactory().CreateApi1Parser(transportMode.getAccuracy(), collectNeighboringCells);
+        measurementParser = new MeasurementParserFactory().CreateApi1Parser(transportMode.getAccuracy(), measurementWriter, collectNeighboringCells);
         getMeasurementParserHandler().post(measurementParser);
         TelephonyTriple telephonyTriple = telephonyTriples.get(0);
         TelephonyManager telephonyManager = telephonyTriple.getTelephonyManager();
@@ -578,7 +600,7 @@ public class CollectorService extends Service {
         Timber.d("registerNetMonsterListener(): Registering NetMonster Core listener");
         INetMonster netMonster = MobileUtils.getNetMonsterCore(MyApplication.getApplication());
         boolean collectNeighboringCells = MyApplication.getPreferencesProvider().getCollectNeighboringCells();
-        measurementParser = new MeasurementParserFactory().CreateNetMonsterParser(transportMode.getAccuracy(), collectNeighboringCells);
+        measurementParser = new MeasurementParserFactory().CreateNetMonsterParser(transportMode.getAccuracy(), measurementWriter, collectNeighboringCells);
         getMeasurementParserHandler().post(measurementParser);
 
         // run scheduled cell listener
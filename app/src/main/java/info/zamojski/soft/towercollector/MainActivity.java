@@ -1079,6 +1079,8 @@ public class MainActivity extends AppCompatActivity
             csvOcidExportCheckbox.setChecked(recentFileTypes.contains(FileType.CsvOcid));
             final CheckBox jsonMlsExportCheckbox = dialogLayout.findViewById(R.id.json_mls_export_dialog_checkbox);
             jsonMlsExportCheckbox.setChecked(recentFileTypes.contains(FileType.JsonMls));
+            final CheckBox archiveExportCheckbox = dialogLayout.findViewById(R.id.archive_export_dialog_checkbox);
+            archiveExportCheckbox.setChecked(recentFileTypes.contains(FileType.Archive));
             final CheckBox compressExportCheckbox = dialogLayout.findViewById(R.id.compress_export_dialog_checkbox);
             compressExportCheckbox.setChecked(recentFileTypes.contains(FileType.Compress));
             AlertDialog alertDialog = new AlertDialog.Builder(this).setView(dialogLayout).create();
@@ -1099,6 +1101,8 @@ public class MainActivity extends AppCompatActivity
                     selectedFileTypes.add(FileType.CsvOcid);
                 if (jsonMlsExportCheckbox.isChecked())
                     selectedFileTypes.add(FileType.JsonMls);
+                if (archiveExportCheckbox.isChecked())
+                    selectedFileTypes.add(FileType.Archive);
                 if (compressExportCheckbox.isChecked())
                     selectedFileTypes.add(FileType.Compress);
                 preferencesProvider.setEnabledExportFileTypes(selectedFileTypes);
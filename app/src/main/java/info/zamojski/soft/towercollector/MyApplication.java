@@ -28,6 +28,7 @@ import info.zamojski.soft.towercollector.analytics.AnalyticsServiceFactory;
 import info.zamojski.soft.towercollector.analytics.IAnalyticsReportingService;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.dev.DatabaseOperations;
+import info.zamojski.soft.towercollector.io.network.HttpClientRegistry;
 import info.zamojski.soft.towercollector.logging.ConsoleLoggingTree;
 import info.zamojski.soft.towercollector.logging.FileLoggingTree;
 import info.zamojski.soft.towercollector.providers.AppThemeProvider;
@@ -67,6 +68,8 @@ public class MyApplication extends Application {
     // don't use BuildConfig as it sometimes doesn't set DEBUG to true
     private static final boolean EVENTBUS_SUBSCRIBER_CAN_THROW = true;
 
+    private static final long CRASH_LOG_FLUSH_TIMEOUT_IN_MILLIS = 2000;
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -82,6 +85,21 @@ public class MyApplication extends Application {
         initAnalytics();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // idle connections are useless when app is in background
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            HttpClientRegistry.getInstance().evictIdleConnections();
+        }
+    }
+
+    @Override
+    public void onTerminate() {
+        HttpClientRegistry.getInstance().shutdown();
+        super.onTerminate();
+    }
+
     static {
         // Enable VectorDrawable support for API < 21
         AppCompatDelegate.setCompatVectorFromResourcesEnabled(true);
@@ -106,6 +124,8 @@ public class MyApplication extends Application {
                             MeasurementsDatabase.deleteDatabase(getApplication());
                         }
                     }
+                    // write buffered logs before process is killed
+                    FileLoggingTree.INSTANCE.flush(CRASH_LOG_FLUSH_TIMEOUT_IN_MILLIS);
                     defaultHandler.uncaughtException(thread, ex);
                 }
             }
@@ -8,6 +8,7 @@ import info.zamojski.soft.towercollector.analytics.IntentSource;
 import info.zamojski.soft.towercollector.broadcast.ExternalBroadcastReceiver;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.export.ExportWorker;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
 import info.zamojski.soft.towercollector.providers.preferences.PreferencesProvider;
 import info.zamojski.soft.towercollector.tasks.DatabaseUpgradeTask;
 import info.zamojski.soft.towercollector.tasks.PreferencesUpgradeTask;
@@ -179,12 +180,18 @@ public class SplashActivity extends Activity {
 
     private void ensureDatabaseUpToDate() {
         int currentDbVersion = MeasurementsDatabase.getDatabaseVersion(MyApplication.getApplication());
-        if (currentDbVersion != MeasurementsDatabase.DATABASE_FILE_VERSION) {
+        // data migration could also be interrupted previously
+        if (currentDbVersion != MeasurementsDatabase.DATABASE_FILE_VERSION || MeasurementsDatabase.hasPendingMigrations(MyApplication.getApplication())) {
             Timber.d("ensureDatabaseUpToDate(): Upgrading database");
             databaseUpgradeRunning = true;
             showDetailsMessage();
             // show progress dialog only when migrating database
-            DatabaseUpgradeTask databaseMigrationTask = new DatabaseUpgradeTask(this, currentDbVersion);
+            DatabaseUpgradeTask databaseMigrationTask = new DatabaseUpgradeTask(this, currentDbVersion, new IProgressListener() {
+                @Override
+                public void reportProgress(int value, int max) {
+                    setDetailsMessageProgress(value, max);
+                }
+            });
             databaseMigrationTask.upgrade();
             hideDetailsMessage();
             databaseUpgradeRunning = false;
@@ -231,6 +238,15 @@ public class SplashActivity extends Activity {
         });
     }
 
+    private void setDetailsMessageProgress(final int value, final int max) {
+        getMainHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                detailsTextView.setText(getString(R.string.splash_details_database_upgrade) + " (" + (100 * value / max) + "%)");
+            }
+        });
+    }
+
     private Handler getMainHandler() {
         if (mainHandler == null) {
             mainHandler = new Handler(Looper.getMainLooper());
@@ -16,7 +16,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.collector.ParseResult;
 import info.zamojski.soft.towercollector.collector.converters.CellIdentityConverter;
 import info.zamojski.soft.towercollector.collector.converters.CellSignalConverter;
@@ -24,13 +23,11 @@ import info.zamojski.soft.towercollector.collector.validators.CellIdentityValida
 import info.zamojski.soft.towercollector.collector.validators.ConditionsValidator;
 import info.zamojski.soft.towercollector.collector.validators.LocationValidator;
 import info.zamojski.soft.towercollector.collector.validators.SystemTimeValidator;
-import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.collector.writers.IMeasurementWriter;
 import info.zamojski.soft.towercollector.events.Api17PlusMeasurementProcessingEvent;
-import info.zamojski.soft.towercollector.events.MeasurementSavedEvent;
 import info.zamojski.soft.towercollector.events.MeasurementsCollectedEvent;
 import info.zamojski.soft.towercollector.model.Cell;
 import info.zamojski.soft.towercollector.model.Measurement;
-import info.zamojski.soft.towercollector.model.Statistics;
 import timber.log.Timber;
 
 public class Api17PlusMeasurementParser extends MeasurementParser {
@@ -43,8 +40,8 @@ public class Api17PlusMeasurementParser extends MeasurementParser {
     public Api17PlusMeasurementParser(LocationValidator locationValidator, CellIdentityValidator cellValidator,
                                       ConditionsValidator conditionsValidator, SystemTimeValidator systemTimeValidator,
                                       CellIdentityConverter cellIdentityConverter, CellSignalConverter cellSignalConverter,
-                                      boolean collectNeighboringCells) {
-        super(locationValidator, conditionsValidator, systemTimeValidator, collectNeighboringCells);
+                                      IMeasurementWriter measurementWriter, boolean collectNeighboringCells) {
+        super(locationValidator, conditionsValidator, systemTimeValidator, measurementWriter, collectNeighboringCells);
         this.cellValidator = cellValidator;
         this.cellIdentityConverter = cellIdentityConverter;
         this.cellSignalConverter = cellSignalConverter;
@@ -118,14 +115,12 @@ public class Api17PlusMeasurementParser extends MeasurementParser {
         }
         // write to database
         Timber.d("parse(): Measurement: %s", measurement);
-        boolean inserted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).insertMeasurement(measurement);
+        boolean inserted = measurementWriter.write(measurement);
         if (inserted) {
             lastSavedLocation = location;
             lastSavedMeasurement = measurement;
             Timber.d("parse(): Measurement saved");
-            // broadcast information to main activity
-            Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
-            EventBus.getDefault().post(new MeasurementSavedEvent(measurement, stats));
+            // main activity is informed by writer once measurement is persisted
             EventBus.getDefault().post(new MeasurementsCollectedEvent(measurement));
             Timber.d("parse(): Notification updated and measurement broadcasted");
             return ParseResult.Saved;
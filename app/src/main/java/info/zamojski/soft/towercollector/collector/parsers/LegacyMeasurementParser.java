@@ -19,7 +19,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.collector.ParseResult;
 import info.zamojski.soft.towercollector.collector.converters.CellLocationConverter;
 import info.zamojski.soft.towercollector.collector.converters.CellLocationSignalConverter;
@@ -27,14 +26,12 @@ import info.zamojski.soft.towercollector.collector.validators.CellLocationValida
 import info.zamojski.soft.towercollector.collector.validators.ConditionsValidator;
 import info.zamojski.soft.towercollector.collector.validators.LocationValidator;
 import info.zamojski.soft.towercollector.collector.validators.SystemTimeValidator;
-import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.collector.writers.IMeasurementWriter;
 import info.zamojski.soft.towercollector.enums.NetworkGroup;
 import info.zamojski.soft.towercollector.events.LegacyMeasurementProcessingEvent;
-import info.zamojski.soft.towercollector.events.MeasurementSavedEvent;
 import info.zamojski.soft.towercollector.events.MeasurementsCollectedEvent;
 import info.zamojski.soft.towercollector.model.Cell;
 import info.zamojski.soft.towercollector.model.Measurement;
-import info.zamojski.soft.towercollector.model.Statistics;
 import info.zamojski.soft.towercollector.utils.MobileUtils;
 import timber.log.Timber;
 
@@ -48,8 +45,8 @@ public class LegacyMeasurementParser extends MeasurementParser {
     public LegacyMeasurementParser(LocationValidator locationValidator, CellLocationValidator cellLocationValidator,
                                    ConditionsValidator conditionsValidator, SystemTimeValidator systemTimeValidator,
                                    CellLocationConverter cellLocationConverter, CellLocationSignalConverter cellSignalConverter,
-                                   boolean collectNeighboringCells) {
-        super(locationValidator, conditionsValidator, systemTimeValidator, collectNeighboringCells);
+                                   IMeasurementWriter measurementWriter, boolean collectNeighboringCells) {
+        super(locationValidator, conditionsValidator, systemTimeValidator, measurementWriter, collectNeighboringCells);
         this.cellLocationValidator = cellLocationValidator;
         this.cellLocationConverter = cellLocationConverter;
         this.cellSignalConverter = cellSignalConverter;
@@ -139,14 +136,12 @@ public class LegacyMeasurementParser extends MeasurementParser {
         }
         // write to database
         Timber.d("parse(): Measurement: %s", measurement);
-        boolean inserted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).insertMeasurement(measurement);
+        boolean inserted = measurementWriter.write(measurement);
         if (inserted) {
             lastSavedLocation = location;
             lastSavedMeasurement = measurement;
             Timber.d("parse(): Measurement saved");
-            // broadcast information to main activity
-            Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
-            EventBus.getDefault().post(new MeasurementSavedEvent(measurement, stats));
+            // main activity is informed by writer once measurement is persisted
             EventBus.getDefault().post(new MeasurementsCollectedEvent(measurement));
             Timber.d("parse(): Notification updated and measurement broadcasted");
             return ParseResult.Saved;
@@ -7,12 +7,11 @@ package info.zamojski.soft.towercollector.collector.parsers;
 import org.greenrobot.eventbus.EventBus;
 
 import info.zamojski.soft.towercollector.BuildConfig;
-import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.collector.ParseResult;
 import info.zamojski.soft.towercollector.collector.validators.ConditionsValidator;
 import info.zamojski.soft.towercollector.collector.validators.LocationValidator;
 import info.zamojski.soft.towercollector.collector.validators.SystemTimeValidator;
-import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.collector.writers.IMeasurementWriter;
 import info.zamojski.soft.towercollector.events.MeasurementProcessedEvent;
 import info.zamojski.soft.towercollector.model.Measurement;
 import timber.log.Timber;
@@ -30,21 +29,26 @@ public abstract class MeasurementParser implements Runnable {
 
     protected SystemTimeValidator systemTimeValidator;
 
+    protected IMeasurementWriter measurementWriter;
+
     protected Measurement lastSavedMeasurement;
     protected Location lastSavedLocation;
 
     protected boolean collectNeighboringCells;
 
     protected MeasurementParser(LocationValidator locationValidator, ConditionsValidator conditionsValidator,
-                                SystemTimeValidator systemTimeValidator, boolean collectNeighboringCells) {
+                                SystemTimeValidator systemTimeValidator, IMeasurementWriter measurementWriter,
+                                boolean collectNeighboringCells) {
         this.locationValidator = locationValidator;
         this.conditionsValidator = conditionsValidator;
         this.systemTimeValidator = systemTimeValidator;
+        this.measurementWriter = measurementWriter;
         this.collectNeighboringCells = collectNeighboringCells;
     }
 
     protected void getAndSetLastLocation() {
-        lastSavedMeasurement = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getLastMeasurement();
+        // from writer because last measurement may not be persisted yet
+        lastSavedMeasurement = measurementWriter.getLastMeasurement();
         if (lastSavedMeasurement != null) {
             // simulate location if there is starting point (some values may not be used, but don't know which exactly)
             lastSavedLocation = new Location(LocationManager.PASSIVE_PROVIDER);
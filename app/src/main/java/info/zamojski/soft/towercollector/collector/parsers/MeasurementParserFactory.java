@@ -17,10 +17,11 @@ import info.zamojski.soft.towercollector.collector.validators.LocationValidator;
 import info.zamojski.soft.towercollector.collector.validators.NetMonsterCellValidator;
 import info.zamojski.soft.towercollector.collector.validators.SystemTimeValidator;
 import info.zamojski.soft.towercollector.collector.validators.specific.WcdmaCellValidator;
+import info.zamojski.soft.towercollector.collector.writers.IMeasurementWriter;
 
 public class MeasurementParserFactory {
 
-    public MeasurementParser CreateApi17Parser(float requiredAccuracy, boolean collectNeighboringCells) {
+    public MeasurementParser CreateApi17Parser(float requiredAccuracy, IMeasurementWriter measurementWriter, boolean collectNeighboringCells) {
         LocationValidator locationValidator = new LocationValidator(requiredAccuracy);
         CellIdentityValidator cellValidator = new CellIdentityValidator();
         ConditionsValidator conditionsValidator = new ConditionsValidator();
@@ -28,10 +29,10 @@ public class MeasurementParserFactory {
         CellIdentityConverter cellIdentityConverter = new CellIdentityConverter(new WcdmaCellValidator());
         CellSignalConverter cellSignalConverter = new CellSignalConverter();
         return new Api17PlusMeasurementParser(locationValidator, cellValidator, conditionsValidator,
-                systemTimeValidator, cellIdentityConverter, cellSignalConverter, collectNeighboringCells);
+                systemTimeValidator, cellIdentityConverter, cellSignalConverter, measurementWriter, collectNeighboringCells);
     }
 
-    public MeasurementParser CreateApi1Parser(float requiredAccuracy, boolean collectNeighboringCells) {
+    public MeasurementParser CreateApi1Parser(float requiredAccuracy, IMeasurementWriter measurementWriter, boolean collectNeighboringCells) {
         LocationValidator locationValidator = new LocationValidator(requiredAccuracy);
         CellLocationValidator cellLocationValidator = new CellLocationValidator();
         ConditionsValidator conditionsValidator = new ConditionsValidator();
@@ -39,10 +40,10 @@ public class MeasurementParserFactory {
         CellLocationConverter cellLocationConverter = new CellLocationConverter();
         CellLocationSignalConverter cellSignalConverter = new CellLocationSignalConverter();
         return new LegacyMeasurementParser(locationValidator, cellLocationValidator, conditionsValidator,
-                systemTimeValidator, cellLocationConverter, cellSignalConverter, collectNeighboringCells);
+                systemTimeValidator, cellLocationConverter, cellSignalConverter, measurementWriter, collectNeighboringCells);
     }
 
-    public MeasurementParser CreateNetMonsterParser(float requiredAccuracy, boolean collectNeighboringCells) {
+    public MeasurementParser CreateNetMonsterParser(float requiredAccuracy, IMeasurementWriter measurementWriter, boolean collectNeighboringCells) {
         LocationValidator locationValidator = new LocationValidator(requiredAccuracy);
         NetMonsterCellValidator cellValidator = new NetMonsterCellValidator();
         ConditionsValidator conditionsValidator = new ConditionsValidator();
@@ -50,6 +51,6 @@ public class MeasurementParserFactory {
         NetMonsterCellConverter cellConverter = new NetMonsterCellConverter();
         NetMonsterSignalConverter signalConverter = new NetMonsterSignalConverter();
         return new NetMonsterMeasurementParser(locationValidator, cellValidator, conditionsValidator,
-                systemTimeValidator, cellConverter, signalConverter, collectNeighboringCells);
+                systemTimeValidator, cellConverter, signalConverter, measurementWriter, collectNeighboringCells);
     }
 }
@@ -17,7 +17,6 @@ import java.util.Set;
 
 import cz.mroczis.netmonster.core.model.cell.ICell;
 import cz.mroczis.netmonster.core.model.connection.PrimaryConnection;
-import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.collector.ParseResult;
 import info.zamojski.soft.towercollector.collector.converters.NetMonsterCellConverter;
 import info.zamojski.soft.towercollector.collector.converters.NetMonsterSignalConverter;
@@ -25,13 +24,11 @@ import info.zamojski.soft.towercollector.collector.validators.ConditionsValidato
 import info.zamojski.soft.towercollector.collector.validators.LocationValidator;
 import info.zamojski.soft.towercollector.collector.validators.NetMonsterCellValidator;
 import info.zamojski.soft.towercollector.collector.validators.SystemTimeValidator;
-import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
-import info.zamojski.soft.towercollector.events.MeasurementSavedEvent;
+import info.zamojski.soft.towercollector.collector.writers.IMeasurementWriter;
 import info.zamojski.soft.towercollector.events.MeasurementsCollectedEvent;
 import info.zamojski.soft.towercollector.events.NetMonsterMeasurementProcessingEvent;
 import info.zamojski.soft.towercollector.model.Cell;
 import info.zamojski.soft.towercollector.model.Measurement;
-import info.zamojski.soft.towercollector.model.Statistics;
 import timber.log.Timber;
 
 public class NetMonsterMeasurementParser extends MeasurementParser {
@@ -44,8 +41,8 @@ public class NetMonsterMeasurementParser extends MeasurementParser {
     public NetMonsterMeasurementParser(LocationValidator locationValidator, NetMonsterCellValidator cellValidator,
                                        ConditionsValidator conditionsValidator, SystemTimeValidator systemTimeValidator,
                                        NetMonsterCellConverter cellConverter, NetMonsterSignalConverter signalConverter,
-                                       boolean collectNeighboringCells) {
-        super(locationValidator, conditionsValidator, systemTimeValidator, collectNeighboringCells);
+                                       IMeasurementWriter measurementWriter, boolean collectNeighboringCells) {
+        super(locationValidator, conditionsValidator, systemTimeValidator, measurementWriter, collectNeighboringCells);
         this.cellValidator = cellValidator;
         this.cellConverter = cellConverter;
         this.signalConverter = signalConverter;
@@ -118,14 +115,12 @@ public class NetMonsterMeasurementParser extends MeasurementParser {
         }
         // write to database
         Timber.d("parse(): Measurement: %s", measurement);
-        boolean inserted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).insertMeasurement(measurement);
+        boolean inserted = measurementWriter.write(measurement);
         if (inserted) {
             lastSavedLocation = location;
             lastSavedMeasurement = measurement;
             Timber.d("parse(): Measurement saved");
-            // broadcast information to main activity
-            Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
-            EventBus.getDefault().post(new MeasurementSavedEvent(measurement, stats));
+            // main activity is informed by writer once measurement is persisted
             EventBus.getDefault().post(new MeasurementsCollectedEvent(measurement));
             Timber.d("parse(): Notification updated and measurement broadcasted");
             return ParseResult.Saved;
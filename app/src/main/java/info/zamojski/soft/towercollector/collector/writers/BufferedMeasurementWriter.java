@@ -0,0 +1,150 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.collector.writers;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.events.MeasurementSavedEvent;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.model.Statistics;
+import timber.log.Timber;
+
+/**
+ * Buffers measurements in memory and saves them in a single transaction when batch is full
+ * or when the oldest buffered measurement is older than the durability window.
+ * Saved events are posted after the batch is committed, so UI shows measurements with row ids
+ * and statistics including them, delayed by at most the durability window.
+ */
+public class BufferedMeasurementWriter implements IMeasurementWriter {
+
+    // producer flushes on its own thread when writer thread can't keep up
+    private static final int MAX_BATCHES_BUFFERED = 4;
+
+    private final int batchSize;
+    private final long windowMillis;
+
+    private final Object bufferLock = new Object();
+    private final Object flushLock = new Object();
+
+    private List<Measurement> buffer;
+    private List<Measurement> inFlight = Collections.emptyList();
+    private boolean closed = false;
+
+    private final HandlerThread writerThread;
+    private final Handler writerHandler;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public BufferedMeasurementWriter(int batchSize, long windowMillis) {
+        this.batchSize = Math.max(1, batchSize);
+        this.windowMillis = windowMillis;
+        this.buffer = new ArrayList<>(this.batchSize);
+        writerThread = new HandlerThread("MeasurementWriterHandler");
+        writerThread.start();
+        writerHandler = new Handler(writerThread.getLooper());
+        Timber.d("BufferedMeasurementWriter(): Buffering up to %s measurements for %s ms", this.batchSize, windowMillis);
+    }
+
+    @Override
+    public boolean write(Measurement measurement) {
+        int size;
+        synchronized (bufferLock) {
+            if (!closed) {
+                buffer.add(measurement);
+                size = buffer.size();
+            } else {
+                size = -1;
+            }
+        }
+        if (size == -1) {
+            // late measurement from parser that is being stopped
+            Timber.d("write(): Writer closed, saving directly");
+            boolean inserted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).insertMeasurement(measurement);
+            if (inserted)
+                postSaved(Collections.singletonList(measurement));
+            return inserted;
+        }
+        if (size >= batchSize * MAX_BATCHES_BUFFERED) {
+            Timber.w("write(): Buffer full, flushing on caller thread");
+            flush();
+        } else if (size >= batchSize) {
+            writerHandler.removeCallbacks(flushRunnable);
+            writerHandler.post(flushRunnable);
+        } else if (size == 1) {
+            writerHandler.postDelayed(flushRunnable, windowMillis);
+        }
+        return true;
+    }
+
+    @Override
+    public Measurement getLastMeasurement() {
+        synchronized (bufferLock) {
+            if (!buffer.isEmpty())
+                return buffer.get(buffer.size() - 1);
+            if (!inFlight.isEmpty())
+                return inFlight.get(inFlight.size() - 1);
+        }
+        return MeasurementsDatabase.getInstance(MyApplication.getApplication()).getLastMeasurement();
+    }
+
+    @Override
+    public void flush() {
+        // serialize flushes to keep insertion order
+        synchronized (flushLock) {
+            List<Measurement> batch;
+            synchronized (bufferLock) {
+                if (buffer.isEmpty())
+                    return;
+                batch = buffer;
+                inFlight = batch;
+                buffer = new ArrayList<>(batchSize);
+                // pending timer belongs to swapped batch, next write schedules a new one
+                writerHandler.removeCallbacks(flushRunnable);
+            }
+            int inserted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).insertMeasurements(batch);
+            Timber.d("flush(): Saved %s of %s buffered measurements", inserted, batch.size());
+            synchronized (bufferLock) {
+                inFlight = Collections.emptyList();
+            }
+            if (inserted > 0)
+                postSaved(batch);
+        }
+    }
+
+    private void postSaved(List<Measurement> measurements) {
+        // statistics are read once per batch, they already include all its measurements
+        Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
+        for (Measurement measurement : measurements) {
+            // measurements rejected by database have no row id
+            if (measurement.getMeasurementId() > 0)
+                EventBus.getDefault().post(new MeasurementSavedEvent(measurement, stats));
+        }
+    }
+
+    @Override
+    public void close() {
+        Timber.d("close(): Flushing remaining measurements");
+        synchronized (bufferLock) {
+            closed = true;
+        }
+        writerHandler.removeCallbacks(flushRunnable);
+        flush();
+        writerThread.quitSafely();
+    }
+}
@@ -0,0 +1,43 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.collector.writers;
+
+import org.greenrobot.eventbus.EventBus;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.events.MeasurementSavedEvent;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.model.Statistics;
+
+public class DirectMeasurementWriter implements IMeasurementWriter {
+
+    @Override
+    public boolean write(Measurement measurement) {
+        MeasurementsDatabase database = MeasurementsDatabase.getInstance(MyApplication.getApplication());
+        boolean inserted = database.insertMeasurement(measurement);
+        if (inserted) {
+            // broadcast information to main activity
+            Statistics stats = database.getMeasurementsStatistics();
+            EventBus.getDefault().post(new MeasurementSavedEvent(measurement, stats));
+        }
+        return inserted;
+    }
+
+    @Override
+    public Measurement getLastMeasurement() {
+        return MeasurementsDatabase.getInstance(MyApplication.getApplication()).getLastMeasurement();
+    }
+
+    @Override
+    public void flush() {
+        // nothing to flush
+    }
+
+    @Override
+    public void close() {
+        // nothing to close
+    }
+}
@@ -0,0 +1,28 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.collector.writers;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Saves collected measurements. MeasurementSavedEvent is posted by writer once measurement is persisted,
+ * so it has row id assigned and statistics sent with it include it.
+ */
+public interface IMeasurementWriter {
+
+    /**
+     * Returns false if measurement was rejected, accepted measurement may be persisted later.
+     */
+    boolean write(Measurement measurement);
+
+    /**
+     * Returns the most recent measurement including the ones not persisted yet.
+     */
+    Measurement getLastMeasurement();
+
+    void flush();
+
+    void close();
+}
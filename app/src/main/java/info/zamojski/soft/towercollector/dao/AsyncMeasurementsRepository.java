@@ -0,0 +1,149 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.model.Statistics;
+import timber.log.Timber;
+
+/**
+ * Runs database reads on a dedicated background pool and delivers results on the main thread.
+ * Requests with the same key issued while a query is still queued are coalesced into it, the newest request replaces the queued query.
+ * Requests issued after the query has started rerun it once the current run finishes, because they may follow a write
+ * which the running query doesn't see. This way listeners always receive the result of the newest request.
+ */
+public class AsyncMeasurementsRepository {
+
+    private static final String KEY_STATISTICS = "statistics";
+    private static final String KEY_LAST_MEASUREMENT = "last_measurement";
+
+    private static final int MAX_THREADS = 2;
+
+    private static AsyncMeasurementsRepository instance;
+
+    private final Context context;
+    private final ExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, PendingQuery<?>> pendingQueries = new HashMap<>();
+
+    public static synchronized AsyncMeasurementsRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new AsyncMeasurementsRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AsyncMeasurementsRepository(Context context) {
+        this.context = context;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(MAX_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "DatabaseQuery-" + threadNumber.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    public void getMeasurementsStatistics(IResultListener<Statistics> listener) {
+        query(KEY_STATISTICS, MeasurementsDatabase::getMeasurementsStatistics, listener);
+    }
+
+    public void getLastMeasurement(IResultListener<Measurement> listener) {
+        query(KEY_LAST_MEASUREMENT, MeasurementsDatabase::getLastMeasurement, listener);
+    }
+
+    /**
+     * Runs custom query in background. On failure listeners receive null.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> void query(String key, IQuery<T> query, IResultListener<T> listener) {
+        PendingQuery<T> pending = (PendingQuery<T>) pendingQueries.get(key);
+        if (pending == null) {
+            pending = new PendingQuery<>(key, query);
+            pending.listeners.add(listener);
+            pendingQueries.put(key, pending);
+            submit(pending);
+        } else {
+            pending.listeners.add(listener);
+            pending.query = query;
+            if (pending.started) {
+                Timber.d("query(): Rerunning %s after running query", key);
+                pending.rerunRequested = true;
+            } else {
+                Timber.d("query(): Coalescing %s with queued query", key);
+            }
+        }
+    }
+
+    private <T> void submit(final PendingQuery<T> pending) {
+        pending.started = false;
+        executor.execute(() -> {
+            IQuery<T> query;
+            synchronized (AsyncMeasurementsRepository.this) {
+                // newer request may have replaced the query while it was queued
+                query = pending.query;
+                pending.started = true;
+            }
+            T result = null;
+            try {
+                // database instance is replaced when database is deleted or imported
+                result = query.execute(MeasurementsDatabase.getInstance(context));
+            } catch (Exception ex) {
+                Timber.e(ex, "submit(): Failed to execute %s", pending.key);
+            }
+            onQueryCompleted(pending, result);
+        });
+    }
+
+    private synchronized <T> void onQueryCompleted(PendingQuery<T> pending, T result) {
+        if (pending.rerunRequested) {
+            // result is outdated, newer request is waiting
+            pending.rerunRequested = false;
+            submit(pending);
+            return;
+        }
+        pendingQueries.remove(pending.key);
+        final List<IResultListener<T>> listeners = new ArrayList<>(pending.listeners);
+        mainHandler.post(() -> {
+            for (IResultListener<T> listener : listeners) {
+                listener.onResult(result);
+            }
+        });
+    }
+
+    public interface IQuery<T> {
+        T execute(MeasurementsDatabase database) throws Exception;
+    }
+
+    public interface IResultListener<T> {
+        void onResult(T result);
+    }
+
+    private static class PendingQuery<T> {
+        private final String key;
+        private final Set<IResultListener<T>> listeners = new LinkedHashSet<>();
+        private IQuery<T> query;
+        private boolean started = false;
+        private boolean rerunRequested = false;
+
+        private PendingQuery(String key, IQuery<T> query) {
+            this.key = key;
+            this.query = query;
+        }
+    }
+}
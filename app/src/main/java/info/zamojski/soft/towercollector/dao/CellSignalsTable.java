@@ -76,6 +76,17 @@ final class CellSignalsTable implements ITable {
             "   UPDATE " + StatsTable.TABLE_NAME + " SET " + StatsTable.COLUMN_TOTAL_MEASUREMENTS + "  = " + StatsTable.COLUMN_TOTAL_MEASUREMENTS + " + 1; " +
             "END";
 
+    // not needed while inserting, may be dropped for bulk insert and created again afterwards
+    static final String[] SECONDARY_INDEX_NAMES = new String[]{
+            "IX_" + TABLE_NAME + "_" + COLUMN_MEASUREMENT_ID,
+            "IX_" + TABLE_NAME + "_" + COLUMN_CELL_ID
+    };
+
+    static final String[] SECONDARY_INDEX_QUERIES = new String[]{
+            QUERY_CREATE_INDEX_MEASUREMENT_ID,
+            QUERY_CREATE_INDEX_CELL_ID
+    };
+
     @Override
     public String[] getCreateQueries() {
         return new String[]{
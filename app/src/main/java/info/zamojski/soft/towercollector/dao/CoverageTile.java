@@ -0,0 +1,128 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
+
+/**
+ * Square of 16 x 16 spatial grid cells of one pyramid level with measurement count, coordinates sum
+ * and coverage bitmap of each network group. Cells are indexed by their Z-order key within the tile.
+ */
+final class CoverageTile {
+
+    static final int CELL_BITS = 4;
+    static final int CELL_COUNT = 1 << (2 * CELL_BITS);
+
+    private static final int MAGIC = 0x54435431; // "TCT1"
+    private static final int BITMAP_LENGTH = CELL_COUNT / 64;
+    private static final int NETWORK_GROUP_COUNT = NetworkGroup.values().length;
+
+    private final int[] counts = new int[CELL_COUNT];
+    private final double[] latitudeSums = new double[CELL_COUNT];
+    private final double[] longitudeSums = new double[CELL_COUNT];
+    private final long[][] coverage = new long[NETWORK_GROUP_COUNT][BITMAP_LENGTH];
+
+    void add(int cell, int count, double latitudeSum, double longitudeSum, int networkGroupsMask) {
+        counts[cell] += count;
+        latitudeSums[cell] += latitudeSum;
+        longitudeSums[cell] += longitudeSum;
+        for (int group = 0; group < NETWORK_GROUP_COUNT; group++) {
+            if ((networkGroupsMask & (1 << group)) != 0)
+                coverage[group][cell >> 6] |= 1L << cell;
+        }
+    }
+
+    int getCount(int cell) {
+        return counts[cell];
+    }
+
+    double getLatitude(int cell) {
+        return latitudeSums[cell] / counts[cell];
+    }
+
+    double getLongitude(int cell) {
+        return longitudeSums[cell] / counts[cell];
+    }
+
+    boolean hasCoverage(int cell, NetworkGroup group) {
+        return (coverage[group.getValue()][cell >> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Writes only occupied cells and non-empty bitmaps, so sparse tiles take few bytes.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        long[] occupied = new long[BITMAP_LENGTH];
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            if (counts[cell] > 0)
+                occupied[cell >> 6] |= 1L << cell;
+        }
+        writeBitmap(out, occupied);
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            if (counts[cell] > 0) {
+                out.writeInt(counts[cell]);
+                out.writeDouble(latitudeSums[cell]);
+                out.writeDouble(longitudeSums[cell]);
+            }
+        }
+        int groupsMask = 0;
+        for (int group = 0; group < NETWORK_GROUP_COUNT; group++) {
+            if (!isEmpty(coverage[group]))
+                groupsMask |= 1 << group;
+        }
+        out.writeByte(groupsMask);
+        for (int group = 0; group < NETWORK_GROUP_COUNT; group++) {
+            if ((groupsMask & (1 << group)) != 0)
+                writeBitmap(out, coverage[group]);
+        }
+    }
+
+    static CoverageTile readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Invalid coverage tile header");
+        CoverageTile tile = new CoverageTile();
+        long[] occupied = readBitmap(in);
+        for (int cell = 0; cell < CELL_COUNT; cell++) {
+            if ((occupied[cell >> 6] & (1L << cell)) != 0) {
+                tile.counts[cell] = in.readInt();
+                tile.latitudeSums[cell] = in.readDouble();
+                tile.longitudeSums[cell] = in.readDouble();
+            }
+        }
+        int groupsMask = in.readUnsignedByte();
+        for (int group = 0; group < NETWORK_GROUP_COUNT; group++) {
+            if ((groupsMask & (1 << group)) != 0)
+                tile.coverage[group] = readBitmap(in);
+        }
+        return tile;
+    }
+
+    private static void writeBitmap(DataOutputStream out, long[] bitmap) throws IOException {
+        for (long word : bitmap) {
+            out.writeLong(word);
+        }
+    }
+
+    private static long[] readBitmap(DataInputStream in) throws IOException {
+        long[] bitmap = new long[BITMAP_LENGTH];
+        for (int i = 0; i < BITMAP_LENGTH; i++) {
+            bitmap[i] = in.readLong();
+        }
+        return bitmap;
+    }
+
+    private static boolean isEmpty(long[] bitmap) {
+        for (long word : bitmap) {
+            if (word != 0)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,315 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import info.zamojski.soft.towercollector.model.Boundaries;
+import info.zamojski.soft.towercollector.model.MapMeasurementCluster;
+import info.zamojski.soft.towercollector.utils.FileUtils;
+import timber.log.Timber;
+
+/**
+ * Precomputed measurement counts of spatial grid levels 0 - 14 stored as binary tiles in cache directory.
+ * New measurements update only tiles they fall into, any other change of data rebuilds the pyramid in background.
+ * Tiles are used only when up to date, otherwise callers query the database directly.
+ */
+final class CoverageTilePyramid {
+
+    static final int MAX_LEVEL = 14;
+
+    private static final int MANIFEST_MAGIC = 0x54435450; // "TCTP"
+    private static final int MANIFEST_VERSION = 1;
+    private static final String MANIFEST_FILE_NAME = "manifest.bin";
+    private static final int MAX_TILES_PER_QUERY = 64;
+    // uploads mark measurements in batches, don't rebuild after each one
+    private static final long REBUILD_DELAY_IN_MILLIS = 5000;
+
+    private static CoverageTilePyramid instance;
+
+    private final Context context;
+    private final File tilesDir;
+    private final File stagingDir;
+    private final ScheduledExecutorService executor;
+    // pyramid is up to date when all requested updates completed
+    private final AtomicLong requestedVersion = new AtomicLong(1);
+    private volatile long completedVersion = 0;
+    private boolean updateScheduled = false;
+    private boolean rebuildRequested = false;
+    // accessed only from executor thread, -1 when manifest has to be read
+    private long lastRowId = -1;
+
+    static synchronized CoverageTilePyramid getInstance(Context context) {
+        if (instance == null) {
+            instance = new CoverageTilePyramid(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CoverageTilePyramid(Context context) {
+        this.context = context;
+        File baseDir = FileUtils.getCacheDir(context);
+        this.tilesDir = new File(baseDir, "CoverageTiles");
+        this.stagingDir = new File(baseDir, "CoverageTiles.tmp");
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CoverageTiles");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        // catch up with measurements collected since last run
+        scheduleUpdate(0);
+    }
+
+    void onMeasurementsInserted() {
+        requestedVersion.incrementAndGet();
+        scheduleUpdate(0);
+    }
+
+    void invalidate() {
+        synchronized (this) {
+            rebuildRequested = true;
+        }
+        requestedVersion.incrementAndGet();
+        scheduleUpdate(REBUILD_DELAY_IN_MILLIS);
+    }
+
+    /**
+     * Returns clusters of cells of given level overlapping the area or null when pyramid is not up to date.
+     */
+    List<MapMeasurementCluster> getClustersInArea(Boundaries boundaries, int level) {
+        long version = requestedVersion.get();
+        if (level < 0 || level > MAX_LEVEL || completedVersion != version)
+            return null;
+        int shift = SpatialKey.GRID_BITS - level;
+        int minX = SpatialKey.toGridX(boundaries.getMinLon()) >> shift;
+        int maxX = SpatialKey.toGridX(boundaries.getMaxLon()) >> shift;
+        int minY = SpatialKey.toGridY(boundaries.getMinLat()) >> shift;
+        int maxY = SpatialKey.toGridY(boundaries.getMaxLat()) >> shift;
+        int tileCount = ((maxX >> CoverageTile.CELL_BITS) - (minX >> CoverageTile.CELL_BITS) + 1) * ((maxY >> CoverageTile.CELL_BITS) - (minY >> CoverageTile.CELL_BITS) + 1);
+        if (tileCount > MAX_TILES_PER_QUERY)
+            return null;
+        int cellMask = (1 << CoverageTile.CELL_BITS) - 1;
+        List<MapMeasurementCluster> clusters = new ArrayList<>();
+        try {
+            for (int tileY = minY >> CoverageTile.CELL_BITS; tileY <= maxY >> CoverageTile.CELL_BITS; tileY++) {
+                for (int tileX = minX >> CoverageTile.CELL_BITS; tileX <= maxX >> CoverageTile.CELL_BITS; tileX++) {
+                    CoverageTile tile = readTile(getTileFile(tilesDir, level, SpatialKey.interleave(tileX, tileY)));
+                    if (tile == null)
+                        continue;
+                    int fromX = Math.max(minX, tileX << CoverageTile.CELL_BITS);
+                    int toX = Math.min(maxX, (tileX << CoverageTile.CELL_BITS) + cellMask);
+                    int fromY = Math.max(minY, tileY << CoverageTile.CELL_BITS);
+                    int toY = Math.min(maxY, (tileY << CoverageTile.CELL_BITS) + cellMask);
+                    for (int y = fromY; y <= toY; y++) {
+                        for (int x = fromX; x <= toX; x++) {
+                            int cell = (int) SpatialKey.interleave(x & cellMask, y & cellMask);
+                            if (tile.getCount(cell) > 0)
+                                clusters.add(new MapMeasurementCluster(tile.getLatitude(cell), tile.getLongitude(cell), tile.getCount(cell)));
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            Timber.w(ex, "getClustersInArea(): Failed to read tiles");
+            return null;
+        }
+        // tiles might have been rewritten while reading
+        if (requestedVersion.get() != version || completedVersion != version)
+            return null;
+        return clusters;
+    }
+
+    private synchronized void scheduleUpdate(long delay) {
+        if (updateScheduled)
+            return;
+        updateScheduled = true;
+        executor.schedule(this::runUpdate, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runUpdate() {
+        boolean rebuild;
+        synchronized (this) {
+            updateScheduled = false;
+            rebuild = rebuildRequested;
+            rebuildRequested = false;
+        }
+        // capture version before reading data so inserts notified later trigger next update
+        long version = requestedVersion.get();
+        try {
+            MeasurementsDatabase database = MeasurementsDatabase.getInstance(context);
+            long untilRowId = database.getMaxMeasurementRowId();
+            if (lastRowId < 0)
+                lastRowId = readManifest();
+            // row ids are reused after deletion of newest rows
+            if (rebuild || lastRowId < 0 || lastRowId > untilRowId) {
+                rebuild(database, untilRowId);
+            } else if (lastRowId < untilRowId) {
+                update(database, untilRowId);
+            }
+            completedVersion = version;
+        } catch (Exception ex) {
+            Timber.e(ex, "runUpdate(): Failed to update coverage tiles");
+            lastRowId = -1;
+            synchronized (this) {
+                rebuildRequested = true;
+            }
+        }
+    }
+
+    private void rebuild(MeasurementsDatabase database, long untilRowId) throws IOException {
+        Timber.d("rebuild(): Rebuilding coverage tiles up to row %s", untilRowId);
+        lastRowId = -1;
+        deleteRecursively(stagingDir);
+        if (!stagingDir.mkdirs())
+            throw new IOException("Cannot create directory " + stagingDir);
+        TileWriter writer = new TileWriter(stagingDir, false);
+        database.aggregateCoverage(0, untilRowId, MAX_LEVEL, writer);
+        writer.flush();
+        deleteRecursively(tilesDir);
+        if (!stagingDir.renameTo(tilesDir))
+            throw new IOException("Cannot move " + stagingDir + " to " + tilesDir);
+        writeManifest(untilRowId);
+        lastRowId = untilRowId;
+        Timber.d("rebuild(): Rebuilt %s tiles", writer.writtenTiles);
+    }
+
+    private void update(MeasurementsDatabase database, long untilRowId) throws IOException {
+        Timber.d("update(): Updating coverage tiles with rows %s - %s", lastRowId + 1, untilRowId);
+        // without manifest partially updated tiles are rebuilt after crash instead of being counted twice
+        File manifest = new File(tilesDir, MANIFEST_FILE_NAME);
+        if (!manifest.delete())
+            throw new IOException("Cannot delete " + manifest);
+        long afterRowId = lastRowId;
+        lastRowId = -1;
+        TileWriter writer = new TileWriter(tilesDir, true);
+        database.aggregateCoverage(afterRowId, untilRowId, MAX_LEVEL, writer);
+        writer.flush();
+        writeManifest(untilRowId);
+        lastRowId = untilRowId;
+        Timber.d("update(): Updated %s tiles", writer.writtenTiles);
+    }
+
+    private long readManifest() {
+        File manifest = new File(tilesDir, MANIFEST_FILE_NAME);
+        if (!manifest.exists())
+            return -1;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)))) {
+            if (in.readInt() != MANIFEST_MAGIC || in.readInt() != MANIFEST_VERSION)
+                return -1;
+            return in.readLong();
+        } catch (IOException ex) {
+            Timber.w(ex, "readManifest(): Failed to read manifest");
+            return -1;
+        }
+    }
+
+    private void writeManifest(long rowId) throws IOException {
+        File manifest = new File(tilesDir, MANIFEST_FILE_NAME);
+        File tempManifest = new File(tilesDir, MANIFEST_FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempManifest)))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(MANIFEST_VERSION);
+            out.writeLong(rowId);
+        }
+        if (!tempManifest.renameTo(manifest))
+            throw new IOException("Cannot move " + tempManifest + " to " + manifest);
+    }
+
+    private static File getTileFile(File dir, int level, long tileKey) {
+        return new File(new File(dir, String.valueOf(level)), Long.toHexString(tileKey) + ".bin");
+    }
+
+    private static CoverageTile readTile(File file) throws IOException {
+        if (!file.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return CoverageTile.readFrom(in);
+        }
+    }
+
+    private static void writeTile(File file, CoverageTile tile) throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs())
+            throw new IOException("Cannot create directory " + parent);
+        // replace atomically so readers never see partially written tile
+        File tempFile = new File(parent, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            tile.writeTo(out);
+        }
+        if (!tempFile.renameTo(file))
+            throw new IOException("Cannot move " + tempFile + " to " + file);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Adds buckets of the finest level to tiles of all levels. Buckets come in Z-order,
+     * so at each level tiles are completed one after another and only one per level is kept in memory.
+     */
+    private static class TileWriter implements MeasurementsDatabase.ICoverageBucketListener {
+        private final File dir;
+        private final boolean mergeExisting;
+        private final long[] tileKeys = new long[MAX_LEVEL + 1];
+        private final CoverageTile[] tiles = new CoverageTile[MAX_LEVEL + 1];
+        private int writtenTiles = 0;
+
+        private TileWriter(File dir, boolean mergeExisting) {
+            this.dir = dir;
+            this.mergeExisting = mergeExisting;
+        }
+
+        @Override
+        public void onBucket(long bucket, int count, double latitudeSum, double longitudeSum, int networkGroupsMask) throws IOException {
+            for (int level = 0; level <= MAX_LEVEL; level++) {
+                long cellKey = bucket >> (2 * (MAX_LEVEL - level));
+                long tileKey = cellKey >> (2 * CoverageTile.CELL_BITS);
+                if (tiles[level] == null || tileKeys[level] != tileKey) {
+                    flush(level);
+                    CoverageTile tile = (mergeExisting ? readTile(getTileFile(dir, level, tileKey)) : null);
+                    tiles[level] = (tile != null ? tile : new CoverageTile());
+                    tileKeys[level] = tileKey;
+                }
+                tiles[level].add((int) (cellKey & (CoverageTile.CELL_COUNT - 1)), count, latitudeSum, longitudeSum, networkGroupsMask);
+            }
+        }
+
+        private void flush() throws IOException {
+            for (int level = 0; level <= MAX_LEVEL; level++) {
+                flush(level);
+            }
+        }
+
+        private void flush(int level) throws IOException {
+            if (tiles[level] != null) {
+                writeTile(getTileFile(dir, level, tileKeys[level]), tiles[level]);
+                tiles[level] = null;
+                writtenTiles++;
+            }
+        }
+    }
+}
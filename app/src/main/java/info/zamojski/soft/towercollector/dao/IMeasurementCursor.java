@@ -0,0 +1,21 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+import java.io.Closeable;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+
+public interface IMeasurementCursor extends Closeable {
+
+    boolean moveToNext();
+
+    Measurement getMeasurement();
+
+    int getPosition();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,133 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Forward-only reader of measurements ordered by measurement time.
+ * The same measurement and cell instances are filled on every move, so they must not be stored
+ * by the caller. Rows are read page by page, each page starting after the last returned measurement.
+ * Measurements can be also read into instances owned by the caller, which reuse their own cells.
+ * Not thread safe.
+ */
+public class MeasurementCursor implements IMeasurementCursor {
+
+    private final MeasurementsDatabase database;
+    private final int pageSize;
+    private final boolean includePartiallyUploaded;
+
+    private final Measurement measurement = new Measurement();
+    private final List<Cell> spareCells = new ArrayList<>();
+
+    private Cursor cursor;
+    private MeasurementRowReader reader;
+    private boolean rowPending = false;
+    private boolean finished = false;
+    private int position = -1;
+    private Measurement lastMeasurement;
+
+    MeasurementCursor(MeasurementsDatabase database, int pageSize, boolean includePartiallyUploaded) {
+        this.database = database;
+        this.pageSize = pageSize;
+        this.includePartiallyUploaded = includePartiallyUploaded;
+    }
+
+    /**
+     * Moves to next measurement.
+     *
+     * @return false if there are no more measurements
+     */
+    @Override
+    public boolean moveToNext() {
+        return moveToNext(measurement);
+    }
+
+    /**
+     * Moves to next measurement and reads it into given instance instead of the shared one.
+     * Cells already added to the instance are reused.
+     *
+     * @return false if there are no more measurements
+     */
+    public boolean moveToNext(Measurement target) {
+        if (finished)
+            return false;
+        if (!rowPending) {
+            // current page is exhausted, get next one after last returned measurement
+            closeCursor();
+            // query is built before target is overwritten so it may be the last returned instance
+            cursor = database.queryMeasurementsPart(lastMeasurement, pageSize, includePartiallyUploaded);
+            if (reader == null)
+                reader = new MeasurementRowReader(cursor);
+            rowPending = cursor.moveToNext();
+            if (!rowPending) {
+                close();
+                return false;
+            }
+        }
+        // rows are ordered by measurement so all its cells are next to each other
+        int measurementId = reader.getMeasurementId(cursor);
+        reader.readMeasurement(cursor, target);
+        List<Cell> cells = target.getCells();
+        int cellsCount = 0;
+        do {
+            Cell cell;
+            if (cellsCount < cells.size()) {
+                cell = cells.get(cellsCount);
+            } else if (!spareCells.isEmpty()) {
+                cell = spareCells.remove(spareCells.size() - 1);
+                cells.add(cell);
+            } else {
+                cell = new Cell();
+                cells.add(cell);
+            }
+            reader.readCell(cursor, cell);
+            cellsCount++;
+            rowPending = cursor.moveToNext();
+        } while (rowPending && reader.getMeasurementId(cursor) == measurementId);
+        // keep cells of previous measurement for next ones
+        while (cells.size() > cellsCount) {
+            spareCells.add(cells.remove(cells.size() - 1));
+        }
+        lastMeasurement = target;
+        position++;
+        return true;
+    }
+
+    /**
+     * Returns current measurement, valid until next move.
+     */
+    @Override
+    public Measurement getMeasurement() {
+        return measurement;
+    }
+
+    /**
+     * Returns zero-based index of current measurement.
+     */
+    @Override
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+        closeCursor();
+    }
+
+    private void closeCursor() {
+        if (cursor != null) {
+            cursor.close();
+            cursor = null;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.utils.HashUtils;
+import timber.log.Timber;
+
+/**
+ * Inserts measurements using statements compiled once per database connection.
+ * Row ids are taken from the insert itself and cell ids are resolved from an in-memory cache
+ * so that a typical save doesn't need any additional SELECT. Not thread-safe, callers have to synchronize.
+ */
+final class MeasurementInserter {
+
+    static final int MAX_CACHED_CELLS = 2048;
+
+    // SQLite 3.35.0 introduced RETURNING clause (UPSERT is available since 3.24.0)
+    private static final int MIN_RETURNING_SQLITE_VERSION = 3035000;
+
+    private static final String QUERY_INSERT_MEASUREMENT = "INSERT INTO " + MeasurementsTable.TABLE_NAME + " ("
+            + MeasurementsTable.COLUMN_LOCATION_HASHCODE + ", "
+            + MeasurementsTable.COLUMN_LATITUDE + ", "
+            + MeasurementsTable.COLUMN_LONGITUDE + ", "
+            + MeasurementsTable.COLUMN_GPS_ACCURACY + ", "
+            + MeasurementsTable.COLUMN_GPS_SPEED + ", "
+            + MeasurementsTable.COLUMN_GPS_BEARING + ", "
+            + MeasurementsTable.COLUMN_GPS_ALTITUDE + ", "
+            + MeasurementsTable.COLUMN_MEASURED_AT + ", "
+            + MeasurementsTable.COLUMN_SPATIAL_KEY
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String CELL_COLUMNS = CellsTable.COLUMN_MCC + ", "
+            + CellsTable.COLUMN_MNC + ", "
+            + CellsTable.COLUMN_LAC + ", "
+            + CellsTable.COLUMN_CID + ", "
+            + CellsTable.COLUMN_NET_TYPE + ", "
+            + CellsTable.COLUMN_DISCOVERED_AT;
+
+    private static final String QUERY_INSERT_CELL = "INSERT INTO " + CellsTable.TABLE_NAME + " (" + CELL_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+    // no-op update on conflict so that RETURNING always yields the row id and insert trigger fires only for new cells
+    private static final String QUERY_UPSERT_CELL_RETURNING_ID = QUERY_INSERT_CELL
+            + " ON CONFLICT (" + CellsTable.COLUMN_CID + ", " + CellsTable.COLUMN_LAC + ", " + CellsTable.COLUMN_MNC + ", " + CellsTable.COLUMN_MCC + ", " + CellsTable.COLUMN_NET_TYPE + ")"
+            + " DO UPDATE SET " + CellsTable.COLUMN_NET_TYPE + " = excluded." + CellsTable.COLUMN_NET_TYPE
+            + " RETURNING " + CellsTable.COLUMN_ROW_ID;
+
+    private static final String QUERY_SELECT_CELL_ID = "SELECT " + CellsTable.COLUMN_ROW_ID + " FROM " + CellsTable.TABLE_NAME + " WHERE "
+            + CellsTable.COLUMN_CID + " = ? AND "
+            + CellsTable.COLUMN_LAC + " = ? AND "
+            + CellsTable.COLUMN_MNC + " = ? AND "
+            + CellsTable.COLUMN_MCC + " = ? AND "
+            + CellsTable.COLUMN_NET_TYPE + " = ?";
+
+    private static final String QUERY_SELECT_MAX_CELL_ID = "SELECT MAX(" + CellsTable.COLUMN_ROW_ID + ") FROM " + CellsTable.TABLE_NAME;
+
+    private static final String QUERY_INSERT_CELL_SIGNAL = "INSERT INTO " + CellSignalsTable.TABLE_NAME + " ("
+            + CellSignalsTable.COLUMN_CELL_ID + ", "
+            + CellSignalsTable.COLUMN_MEASUREMENT_ID + ", "
+            + CellSignalsTable.COLUMN_PSC + ", "
+            + CellSignalsTable.COLUMN_NEIGHBORING + ", "
+            + CellSignalsTable.COLUMN_TA + ", "
+            + CellSignalsTable.COLUMN_ASU + ", "
+            + CellSignalsTable.COLUMN_DBM + ", "
+            + CellSignalsTable.COLUMN_RSRP + ", "
+            + CellSignalsTable.COLUMN_RSRQ + ", "
+            + CellSignalsTable.COLUMN_RSSI + ", "
+            + CellSignalsTable.COLUMN_RSSNR + ", "
+            + CellSignalsTable.COLUMN_CQI + ", "
+            + CellSignalsTable.COLUMN_RSCP + ", "
+            + CellSignalsTable.COLUMN_CSI_RSRP + ", "
+            + CellSignalsTable.COLUMN_CSI_RSRQ + ", "
+            + CellSignalsTable.COLUMN_CSI_SINR + ", "
+            + CellSignalsTable.COLUMN_SS_RSRP + ", "
+            + CellSignalsTable.COLUMN_SS_RSRQ + ", "
+            + CellSignalsTable.COLUMN_SS_SINR + ", "
+            + CellSignalsTable.COLUMN_CDMA_DBM + ", "
+            + CellSignalsTable.COLUMN_CDMA_ECIO + ", "
+            + CellSignalsTable.COLUMN_EVDO_DBM + ", "
+            + CellSignalsTable.COLUMN_EVDO_ECIO + ", "
+            + CellSignalsTable.COLUMN_EVDO_SNR + ", "
+            + CellSignalsTable.COLUMN_EC_NO + ", "
+            + CellSignalsTable.COLUMN_ARFCN
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final SQLiteDatabase db;
+    private final boolean returningSupported;
+
+    private final SQLiteStatement insertMeasurementStatement;
+    private final SQLiteStatement insertCellStatement;
+    private final SQLiteStatement selectCellIdStatement;
+    private final SQLiteStatement insertCellSignalStatement;
+
+    private final Map<CellKey, Integer> cellIdsCache = new LinkedHashMap<CellKey, Integer>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CellKey, Integer> eldest) {
+            return size() > maxCachedCells;
+        }
+    };
+    private final CellKey lookupKey = new CellKey();
+    private int maxCachedCells = MAX_CACHED_CELLS;
+
+    // new cells always get higher row id than existing ones, -1 when unknown
+    private long maxCellId = -1;
+    private int discoveredCellsCount;
+
+    private double lastHashedLatitude = Double.NaN;
+    private double lastHashedLongitude = Double.NaN;
+    private float lastHashedGpsAccuracy = Float.NaN;
+    private float lastHashedGpsSpeed = Float.NaN;
+    private float lastHashedGpsBearing = Float.NaN;
+    private double lastHashedGpsAltitude = Double.NaN;
+    private String lastLocationHashCode;
+
+    MeasurementInserter(SQLiteDatabase db) {
+        this.db = db;
+        this.returningSupported = getSqliteVersion(db) >= MIN_RETURNING_SQLITE_VERSION;
+        Timber.d("MeasurementInserter(): RETURNING clause supported = %s", returningSupported);
+        insertMeasurementStatement = db.compileStatement(QUERY_INSERT_MEASUREMENT);
+        insertCellStatement = db.compileStatement(returningSupported ? QUERY_UPSERT_CELL_RETURNING_ID : QUERY_INSERT_CELL);
+        selectCellIdStatement = db.compileStatement(QUERY_SELECT_CELL_ID);
+        insertCellSignalStatement = db.compileStatement(QUERY_INSERT_CELL_SIGNAL);
+    }
+
+    boolean isBoundTo(SQLiteDatabase db) {
+        return this.db == db && db.isOpen();
+    }
+
+    /**
+     * Must be called inside of a transaction. Sets measurement, cell and cell signal ids on success.
+     */
+    boolean insert(Measurement measurement, StringBuilder resultSb) {
+        discoveredCellsCount = 0;
+        long measurementId = insertMeasurement(measurement);
+        boolean result = (measurementId != -1);
+        Timber.d("insert(): Measurement inserted = %s", result);
+        resultSb.append("\tmeasurement inserted=").append(result);
+        if (!result) {
+            return false;
+        }
+        measurement.setMeasurementId((int) measurementId);
+        for (Cell cell : measurement.getCells()) {
+            long cellId = getOrInsertCell(cell, measurement.getMeasuredAt());
+            boolean localResult = (cellId != -1);
+            Timber.d("insert(): Cell found = %s", localResult);
+            resultSb.append("\tcell found=").append(localResult);
+            if (!localResult) {
+                return false;
+            }
+            cell.setCellId((int) cellId);
+            long cellSignalId = insertCellSignal(cell, cellId, measurementId);
+            localResult = (cellSignalId != -1);
+            Timber.d("insert(): Cell signal inserted = %s", localResult);
+            resultSb.append("\tcell signal inserted=").append(localResult);
+            if (!localResult) {
+                return false;
+            }
+            cell.setCellSignalId((int) cellSignalId); // acceptable because we don't use the value anyway
+            resultSb.append(";\r\n");
+        }
+        return true;
+    }
+
+    /**
+     * Number of cells inserted by the most recent call to insert.
+     */
+    int getDiscoveredCellsCount() {
+        return discoveredCellsCount;
+    }
+
+    /**
+     * Sets how many cell ids are remembered, bulk inserts keep all cells they've seen.
+     */
+    void setMaxCachedCells(int maxCachedCells) {
+        this.maxCachedCells = maxCachedCells;
+        if (cellIdsCache.size() > maxCachedCells)
+            cellIdsCache.clear();
+    }
+
+    /**
+     * Forgets cached cell ids, has to be called when rows from cells table are removed or transaction is rolled back.
+     */
+    void invalidateCellIdsCache() {
+        cellIdsCache.clear();
+        maxCellId = -1;
+    }
+
+    void close() {
+        insertMeasurementStatement.close();
+        insertCellStatement.close();
+        selectCellIdStatement.close();
+        insertCellSignalStatement.close();
+        invalidateCellIdsCache();
+    }
+
+    private long insertMeasurement(Measurement measurement) {
+        SQLiteStatement statement = insertMeasurementStatement;
+        statement.bindString(1, getLocationHashCode(measurement));
+        statement.bindDouble(2, measurement.getLatitude());
+        statement.bindDouble(3, measurement.getLongitude());
+        statement.bindDouble(4, measurement.getGpsAccuracy());
+        statement.bindDouble(5, measurement.getGpsSpeed());
+        statement.bindDouble(6, measurement.getGpsBearing());
+        statement.bindDouble(7, measurement.getGpsAltitude());
+        statement.bindLong(8, measurement.getMeasuredAt());
+        statement.bindLong(9, SpatialKey.encode(measurement.getLatitude(), measurement.getLongitude()));
+        try {
+            // plain insert without conflict resolution so the returned row id is reliable
+            return statement.executeInsert();
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+    private long getOrInsertCell(Cell cell, long discoveredAt) {
+        int networkType = cell.getNetworkType().ordinal();
+        lookupKey.set(cell.getMcc(), cell.getMnc(), cell.getLac(), cell.getCid(), networkType);
+        Integer cachedCellId = cellIdsCache.get(lookupKey);
+        if (cachedCellId != null) {
+            return cachedCellId;
+        }
+        if (maxCellId == -1) {
+            maxCellId = selectMaxCellId();
+        }
+        long cellId;
+        if (returningSupported) {
+            cellId = upsertCellReturningId(cell, networkType, discoveredAt);
+        } else {
+            cellId = selectCellId(cell, networkType);
+            if (cellId == -1) {
+                cellId = insertCell(cell, networkType, discoveredAt);
+            }
+        }
+        if (cellId != -1) {
+            if (cellId > maxCellId) {
+                maxCellId = cellId;
+                discoveredCellsCount++;
+            }
+            cellIdsCache.put(new CellKey(lookupKey), (int) cellId);
+        }
+        return cellId;
+    }
+
+    private long upsertCellReturningId(Cell cell, int networkType, long discoveredAt) {
+        SQLiteStatement statement = insertCellStatement;
+        bindCell(statement, cell, networkType, discoveredAt);
+        try {
+            return statement.simpleQueryForLong();
+        } catch (SQLiteDoneException ex) {
+            return -1;
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+    private long insertCell(Cell cell, int networkType, long discoveredAt) {
+        SQLiteStatement statement = insertCellStatement;
+        bindCell(statement, cell, networkType, discoveredAt);
+        try {
+            // cell is known to be missing so no conflict is expected
+            return statement.executeInsert();
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+    private long selectCellId(Cell cell, int networkType) {
+        SQLiteStatement statement = selectCellIdStatement;
+        statement.bindLong(1, cell.getCid());
+        statement.bindLong(2, cell.getLac());
+        statement.bindLong(3, cell.getMnc());
+        statement.bindLong(4, cell.getMcc());
+        statement.bindLong(5, networkType);
+        try {
+            return statement.simpleQueryForLong();
+        } catch (SQLiteDoneException ex) {
+            return -1;
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+    private long selectMaxCellId() {
+        SQLiteStatement statement = db.compileStatement(QUERY_SELECT_MAX_CELL_ID);
+        try {
+            return statement.simpleQueryForLong(); // 0 when table is empty
+        } finally {
+            statement.close();
+        }
+    }
+
+    private long insertCellSignal(Cell cell, long cellId, long measurementId) {
+        SQLiteStatement statement = insertCellSignalStatement;
+        statement.bindLong(1, cellId);
+        statement.bindLong(2, measurementId);
+        statement.bindLong(3, cell.getPsc());
+        statement.bindLong(4, cell.isNeighboring() ? 1 : 0);
+        statement.bindLong(5, cell.getTa());
+        statement.bindLong(6, cell.getAsu());
+        statement.bindLong(7, cell.getDbm());
+        statement.bindLong(8, cell.getRsrp());
+        statement.bindLong(9, cell.getRsrq());
+        statement.bindLong(10, cell.getRssi());
+        statement.bindLong(11, cell.getRssnr());
+        statement.bindLong(12, cell.getCqi());
+        statement.bindLong(13, cell.getRscp());
+        statement.bindLong(14, cell.getCsiRsrp());
+        statement.bindLong(15, cell.getCsiRsrq());
+        statement.bindLong(16, cell.getCsiSinr());
+        statement.bindLong(17, cell.getSsRsrp());
+        statement.bindLong(18, cell.getSsRsrq());
+        statement.bindLong(19, cell.getSsSinr());
+        statement.bindLong(20, cell.getCdmaDbm());
+        statement.bindLong(21, cell.getCdmaEcio());
+        statement.bindLong(22, cell.getEvdoDbm());
+        statement.bindLong(23, cell.getEvdoEcio());
+        statement.bindLong(24, cell.getEvdoSnr());
+        statement.bindLong(25, cell.getEcNo());
+        statement.bindLong(26, cell.getArfcn());
+        try {
+            return statement.executeInsert();
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+    private static void bindCell(SQLiteStatement statement, Cell cell, int networkType, long discoveredAt) {
+        statement.bindLong(1, cell.getMcc());
+        statement.bindLong(2, cell.getMnc());
+        statement.bindLong(3, cell.getLac());
+        statement.bindLong(4, cell.getCid());
+        statement.bindLong(5, networkType);
+        statement.bindLong(6, discoveredAt);
+    }
+
+    private String getLocationHashCode(Measurement m) {
+        // consecutive measurements often share the same fix (e.g. when standing still) so reuse last hash
+        if (lastLocationHashCode == null
+                || Double.compare(m.getLatitude(), lastHashedLatitude) != 0
+                || Double.compare(m.getLongitude(), lastHashedLongitude) != 0
+                || Float.compare(m.getGpsAccuracy(), lastHashedGpsAccuracy) != 0
+                || Float.compare(m.getGpsSpeed(), lastHashedGpsSpeed) != 0
+                || Float.compare(m.getGpsBearing(), lastHashedGpsBearing) != 0
+                || Double.compare(m.getGpsAltitude(), lastHashedGpsAltitude) != 0) {
+            lastHashedLatitude = m.getLatitude();
+            lastHashedLongitude = m.getLongitude();
+            lastHashedGpsAccuracy = m.getGpsAccuracy();
+            lastHashedGpsSpeed = m.getGpsSpeed();
+            lastHashedGpsBearing = m.getGpsBearing();
+            lastHashedGpsAltitude = m.getGpsAltitude();
+            lastLocationHashCode = HashUtils.toSha1(m);
+        }
+        return lastLocationHashCode;
+    }
+
+    static int getSqliteVersion(SQLiteDatabase db) {
+        int version = 0;
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT sqlite_version()", null);
+            if (cursor.moveToNext()) {
+                String[] parts = cursor.getString(0).split("\\.");
+                for (int i = 0; i < 3; i++) {
+                    version = version * 1000 + (i < parts.length ? Integer.parseInt(parts[i]) : 0);
+                }
+            }
+        } catch (Exception ex) {
+            Timber.w(ex, "getSqliteVersion(): Failed to read SQLite version");
+            version = 0;
+        } finally {
+            if (cursor != null)
+                cursor.close();
+        }
+        return version;
+    }
+
+    private static final class CellKey {
+        private int mcc;
+        private int mnc;
+        private int lac;
+        private long cid;
+        private int networkType;
+
+        CellKey() {
+        }
+
+        CellKey(CellKey other) {
+            set(other.mcc, other.mnc, other.lac, other.cid, other.networkType);
+        }
+
+        void set(int mcc, int mnc, int lac, long cid, int networkType) {
+            this.mcc = mcc;
+            this.mnc = mnc;
+            this.lac = lac;
+            this.cid = cid;
+            this.networkType = networkType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CellKey)) return false;
+            CellKey that = (CellKey) o;
+            return mcc == that.mcc && mnc == that.mnc && lac == that.lac && cid == that.cid && networkType == that.networkType;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mcc;
+            result = 31 * result + mnc;
+            result = 31 * result + lac;
+            result = 31 * result + (int) (cid ^ (cid >>> 32));
+            result = 31 * result + networkType;
+            return result;
+        }
+    }
+}
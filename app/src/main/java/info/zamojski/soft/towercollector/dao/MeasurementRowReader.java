@@ -0,0 +1,162 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+import android.database.Cursor;
+
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Reads measurement and cell values from rows of joined measurements query.
+ */
+final class MeasurementRowReader {
+
+    static final String COLUMN_MEASUREMENT_ROW_ID = "measurement_" + MeasurementsTable.COLUMN_ROW_ID;
+    static final String COLUMN_CELL_ROW_ID = "cell_" + CellsTable.COLUMN_ROW_ID;
+    static final String COLUMN_CELL_SIGNAL_ROW_ID = "cell_signal_" + CellSignalsTable.COLUMN_ROW_ID;
+
+    private final int measurementIdColumnIndex;
+    private final int cellIdColumnIndex;
+    private final int cellSignalIdColumnIndex;
+    private final int mccColumnIndex;
+    private final int mncColumnIndex;
+    private final int lacColumnIndex;
+    private final int cidColumnIndex;
+    private final int netTypeColumnIndex;
+    private final int discoveredAtColumnIndex;
+    private final int pscColumnIndex;
+    private final int neighboringColumnIndex;
+    private final int taColumnIndex;
+    private final int asuColumnIndex;
+    private final int dbmColumnIndex;
+    private final int rsrpColumnIndex;
+    private final int rsrqColumnIndex;
+    private final int rssiColumnIndex;
+    private final int rssnrColumnIndex;
+    private final int cqiColumnIndex;
+    private final int rscpColumnIndex;
+    private final int csiRsrpColumnIndex;
+    private final int csiRsrqColumnIndex;
+    private final int csiSinrColumnIndex;
+    private final int ssRsrpColumnIndex;
+    private final int ssRsrqColumnIndex;
+    private final int ssSinrColumnIndex;
+    private final int cdmaDbmColumnIndex;
+    private final int cdmaEcioColumnIndex;
+    private final int evdoDbmColumnIndex;
+    private final int evdoEcioColumnIndex;
+    private final int evdoSnrColumnIndex;
+    private final int ecNoColumnIndex;
+    private final int arfcnColumnIndex;
+    private final int latitudeColumnIndex;
+    private final int longitudeColumnIndex;
+    private final int gpsAccuracyColumnIndex;
+    private final int gpsSpeedColumnIndex;
+    private final int gpsBearingColumnIndex;
+    private final int gpsAltitudeColumnIndex;
+    private final int measuredAtColumnIndex;
+    private final int uploadedToOcidAtColumnIndex;
+    private final int uploadedToMlsAtColumnIndex;
+
+    MeasurementRowReader(Cursor cursor) {
+        measurementIdColumnIndex = cursor.getColumnIndex(COLUMN_MEASUREMENT_ROW_ID);
+        cellIdColumnIndex = cursor.getColumnIndex(COLUMN_CELL_ROW_ID);
+        cellSignalIdColumnIndex = cursor.getColumnIndex(COLUMN_CELL_SIGNAL_ROW_ID);
+        mccColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_MCC);
+        mncColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_MNC);
+        lacColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_LAC);
+        cidColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_CID);
+        netTypeColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_NET_TYPE);
+        discoveredAtColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_DISCOVERED_AT);
+        pscColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_PSC);
+        neighboringColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_NEIGHBORING);
+        taColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_TA);
+        asuColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_ASU);
+        dbmColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_DBM);
+        rsrpColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_RSRP);
+        rsrqColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_RSRQ);
+        rssiColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_RSSI);
+        rssnrColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_RSSNR);
+        cqiColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CQI);
+        rscpColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_RSCP);
+        csiRsrpColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CSI_RSRP);
+        csiRsrqColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CSI_RSRQ);
+        csiSinrColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CSI_SINR);
+        ssRsrpColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_SS_RSRP);
+        ssRsrqColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_SS_RSRQ);
+        ssSinrColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_SS_SINR);
+        cdmaDbmColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CDMA_DBM);
+        cdmaEcioColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CDMA_ECIO);
+        evdoDbmColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_EVDO_DBM);
+        evdoEcioColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_EVDO_ECIO);
+        evdoSnrColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_EVDO_SNR);
+        ecNoColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_EC_NO);
+        arfcnColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_ARFCN);
+        latitudeColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_LATITUDE);
+        longitudeColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_LONGITUDE);
+        gpsAccuracyColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_GPS_ACCURACY);
+        gpsSpeedColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_GPS_SPEED);
+        gpsBearingColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_GPS_BEARING);
+        gpsAltitudeColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_GPS_ALTITUDE);
+        measuredAtColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_MEASURED_AT);
+        uploadedToOcidAtColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_UPLOADED_TO_OCID_AT);
+        uploadedToMlsAtColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_UPLOADED_TO_MLS_AT);
+    }
+
+    int getMeasurementId(Cursor cursor) {
+        return cursor.getInt(measurementIdColumnIndex);
+    }
+
+    void readMeasurement(Cursor cursor, Measurement measurement) {
+        measurement.setMeasurementId(cursor.getInt(measurementIdColumnIndex));
+        measurement.setLatitude(cursor.getDouble(latitudeColumnIndex));
+        measurement.setLongitude(cursor.getDouble(longitudeColumnIndex));
+        measurement.setGpsAccuracy(cursor.getFloat(gpsAccuracyColumnIndex));
+        measurement.setGpsSpeed(cursor.getFloat(gpsSpeedColumnIndex));
+        measurement.setGpsBearing(cursor.getFloat(gpsBearingColumnIndex));
+        measurement.setGpsAltitude(cursor.getDouble(gpsAltitudeColumnIndex));
+        measurement.setMeasuredAt(cursor.getLong(measuredAtColumnIndex));
+        // set also nulls because measurement may be reused
+        measurement.setUploadedToOcidAt(cursor.isNull(uploadedToOcidAtColumnIndex) ? null : cursor.getLong(uploadedToOcidAtColumnIndex));
+        measurement.setUploadedToMlsAt(cursor.isNull(uploadedToMlsAtColumnIndex) ? null : cursor.getLong(uploadedToMlsAtColumnIndex));
+    }
+
+    void readCell(Cursor cursor, Cell cell) {
+        cell.setCellId(cursor.getInt(cellIdColumnIndex));
+        cell.setCellSignalId(cursor.getInt(cellSignalIdColumnIndex));
+        cell.setMcc(cursor.getInt(mccColumnIndex));
+        cell.setMnc(cursor.getInt(mncColumnIndex));
+        cell.setLac(cursor.getInt(lacColumnIndex));
+        cell.setCid(cursor.getLong(cidColumnIndex));
+        cell.setNetworkType(NetworkGroup.fromValue(cursor.getInt(netTypeColumnIndex)));
+        cell.setDiscoveredAt(cursor.getLong(discoveredAtColumnIndex));
+        cell.setNeighboring(cursor.getInt(neighboringColumnIndex) == 1);
+        cell.setPsc(cursor.getInt(pscColumnIndex));
+        cell.setTa(cursor.getInt(taColumnIndex));
+        cell.setAsu(cursor.getInt(asuColumnIndex));
+        cell.setDbm(cursor.getInt(dbmColumnIndex));
+        cell.setRsrp(cursor.getInt(rsrpColumnIndex));
+        cell.setRsrq(cursor.getInt(rsrqColumnIndex));
+        cell.setRssi(cursor.getInt(rssiColumnIndex));
+        cell.setRssnr(cursor.getInt(rssnrColumnIndex));
+        cell.setCqi(cursor.getInt(cqiColumnIndex));
+        cell.setRscp(cursor.getInt(rscpColumnIndex));
+        cell.setCsiRsrp(cursor.getInt(csiRsrpColumnIndex));
+        cell.setCsiRsrq(cursor.getInt(csiRsrqColumnIndex));
+        cell.setCsiSinr(cursor.getInt(csiSinrColumnIndex));
+        cell.setSsRsrp(cursor.getInt(ssRsrpColumnIndex));
+        cell.setSsRsrq(cursor.getInt(ssRsrqColumnIndex));
+        cell.setSsSinr(cursor.getInt(ssSinrColumnIndex));
+        cell.setCdmaDbm(cursor.getInt(cdmaDbmColumnIndex));
+        cell.setCdmaEcio(cursor.getInt(cdmaEcioColumnIndex));
+        cell.setEvdoDbm(cursor.getInt(evdoDbmColumnIndex));
+        cell.setEvdoEcio(cursor.getInt(evdoEcioColumnIndex));
+        cell.setEvdoSnr(cursor.getInt(evdoSnrColumnIndex));
+        cell.setEcNo(cursor.getInt(ecNoColumnIndex));
+        cell.setArfcn(cursor.getInt(arfcnColumnIndex));
+    }
+}
@@ -7,13 +7,16 @@ package info.zamojski.soft.towercollector.dao;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
@@ -22,23 +25,32 @@ import java.util.Map;
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.dao.migration.DbMigrationHelper;
 import info.zamojski.soft.towercollector.enums.NetworkGroup;
+import info.zamojski.soft.towercollector.enums.UploadTarget;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
 import info.zamojski.soft.towercollector.model.AnalyticsStatistics;
 import info.zamojski.soft.towercollector.model.Boundaries;
 import info.zamojski.soft.towercollector.model.Cell;
 import info.zamojski.soft.towercollector.model.MapCell;
 import info.zamojski.soft.towercollector.model.MapMeasurement;
+import info.zamojski.soft.towercollector.model.MapMeasurementCluster;
 import info.zamojski.soft.towercollector.model.Measurement;
 import info.zamojski.soft.towercollector.model.Statistics;
+import info.zamojski.soft.towercollector.model.UploadSummary;
 import info.zamojski.soft.towercollector.utils.DateUtils;
-import info.zamojski.soft.towercollector.utils.HashUtils;
 import timber.log.Timber;
 
 public class MeasurementsDatabase {
 
     public static final String DATABASE_FILE_NAME = "measurements.db";
-    public static final int DATABASE_FILE_VERSION = 17;
+    public static final int DATABASE_FILE_VERSION = 18;
 
     private static final int NUM_OF_DELETIONS_PER_ONE_QUERY = 50;
+    private static final int MEASUREMENTS_PER_CURSOR_PAGE = 200;
+    // enough for cells of a few years of collecting
+    private static final int MAX_BULK_CACHED_CELLS = 262144;
+    // SQLite 3.27.0 introduced VACUUM INTO
+    private static final int MIN_VACUUM_INTO_SQLITE_VERSION = 3027000;
+    private static final String BACKUP_SOURCE_SCHEMA = "source";
 
     private final MeasurementsOpenHelper helper;
 
@@ -46,158 +58,199 @@ public class MeasurementsDatabase {
 
     private boolean insertionFailureReported = false;
 
+    private final Object inserterLock = new Object();
+    private MeasurementInserter inserter;
+
     private Measurement lastMeasurementCache;
-    private Statistics lastStatisticsCache;
+    private final StatisticsTracker statisticsTracker = new StatisticsTracker();
+    private final CoverageTilePyramid coverageTiles;
 
     private MeasurementsDatabase(Context context) {
         helper = new MeasurementsOpenHelper(context);
+        coverageTiles = CoverageTilePyramid.getInstance(context);
     }
 
     public boolean insertMeasurement(Measurement measurement) {
         Timber.d("insertMeasurement(): Inserting %s measurement", measurement);
-        boolean result = true;
-        SQLiteDatabase db = helper.getWritableDatabase();
-        try {
-            db.beginTransaction();
-            StringBuilder resultSb = new StringBuilder();
-            // calculate hashcode
-            String locationHashCode = HashUtils.toSha1(measurement);
-            // insert measurement
-            {
-                ContentValues values = new ContentValues();
-                values.put(MeasurementsTable.COLUMN_LOCATION_HASHCODE, locationHashCode);
-                values.put(MeasurementsTable.COLUMN_LATITUDE, measurement.getLatitude());
-                values.put(MeasurementsTable.COLUMN_LONGITUDE, measurement.getLongitude());
-                values.put(MeasurementsTable.COLUMN_GPS_ACCURACY, measurement.getGpsAccuracy());
-                values.put(MeasurementsTable.COLUMN_GPS_SPEED, measurement.getGpsSpeed());
-                values.put(MeasurementsTable.COLUMN_GPS_BEARING, measurement.getGpsBearing());
-                values.put(MeasurementsTable.COLUMN_GPS_ALTITUDE, measurement.getGpsAltitude());
-                values.put(MeasurementsTable.COLUMN_MEASURED_AT, measurement.getMeasuredAt());
-                long rowId = db.insert(MeasurementsTable.TABLE_NAME, null, values);
-                boolean localResult = (rowId != -1);
-                Timber.d("insertMeasurement(): Measurement inserted = %s", localResult);
-                resultSb.append("\tmeasurement inserted=").append(localResult);
-            }
-            // don't use value returned by insert, because it sometimes returns wrong value -> query always
-            int measurementId = -1;
-            {
-                SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
-                queryBuilder.setTables(MeasurementsTable.TABLE_NAME);
-                String[] columns = new String[]{MeasurementsTable.COLUMN_ROW_ID};
-                String selection = MeasurementsTable.COLUMN_LOCATION_HASHCODE + " = ? AND " + MeasurementsTable.COLUMN_MEASURED_AT + " = ?";
-                String[] selectionArgs = new String[]{locationHashCode, String.valueOf(measurement.getMeasuredAt())};
-                Cursor cursorTotal = queryBuilder.query(db, columns, selection, selectionArgs, null, null, null);
-                boolean localResult = false;
-                if (cursorTotal.moveToNext()) {
-                    measurementId = cursorTotal.getInt(cursorTotal.getColumnIndex(MeasurementsTable.COLUMN_ROW_ID));
-                    measurement.setMeasurementId(measurementId);
-                    localResult = true;
+        boolean result;
+        synchronized (inserterLock) {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            MeasurementInserter inserter = getInserter(db);
+            try {
+                db.beginTransaction();
+                StringBuilder resultSb = new StringBuilder();
+                result = inserter.insert(measurement, resultSb);
+                // commit
+                if (result) {
+                    db.setTransactionSuccessful();
+                    Timber.d("insertMeasurement(): Measurement inserted successfully");
+                    Timber.d("insertMeasurement(): Insertion report: %s", resultSb.toString());
+                } else {
+                    inserter.invalidateCellIdsCache();
+                    Timber.d("insertMeasurement(): Measurement not inserted");
+                    Timber.d("insertMeasurement(): Insertion report: %s", resultSb.toString());
+                    // report exception because it shouldn't occur (one time per app run)
+                    if (!insertionFailureReported) {
+                        Throwable ex = new MeasurementInsertionFailedException("Measurements not inserted", resultSb.toString());
+                        MyApplication.handleSilentException(ex);
+                        insertionFailureReported = true;
+                    }
                 }
-                cursorTotal.close();
-                result = localResult;
-                Timber.d("insertMeasurement(): Measurement found = %s", localResult);
-                resultSb.append("\tmeasurement found=").append(localResult);
+            } catch (Exception ex) {
+                result = false;
+                inserter.invalidateCellIdsCache();
+                Timber.e(ex, "insertMeasurement(): Error while saving measurement");
+                MyApplication.handleSilentException(ex);
+            } finally {
+                db.endTransaction();
+                lastMeasurementCache = null;
             }
-            for (Cell cell : measurement.getCells()) {
-                // insert cell
-                {
-                    ContentValues values = new ContentValues();
-                    values.put(CellsTable.COLUMN_MCC, cell.getMcc());
-                    values.put(CellsTable.COLUMN_MNC, cell.getMnc());
-                    values.put(CellsTable.COLUMN_LAC, cell.getLac());
-                    values.put(CellsTable.COLUMN_CID, cell.getCid());
-                    values.put(CellsTable.COLUMN_NET_TYPE, cell.getNetworkType().ordinal());
-                    values.put(CellsTable.COLUMN_DISCOVERED_AT, measurement.getMeasuredAt());
-                    long rowId = db.insert(CellsTable.TABLE_NAME, null, values);
-                    boolean localResult = (rowId != -1);
-                    Timber.d("insertMeasurement(): Cell inserted = %s", localResult);
-                    resultSb.append("\tcell inserted=").append(localResult);
-                }
-                // don't use value returned by insert, because it sometimes returns wrong value -> query always
-                int cellId = -1;
-                {
-                    SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
-                    queryBuilder.setTables(CellsTable.TABLE_NAME);
-                    String[] columns = new String[]{CellsTable.COLUMN_ROW_ID};
-                    String selection = CellsTable.COLUMN_CID + " = ? AND " + CellsTable.COLUMN_LAC + " = ? AND " + CellsTable.COLUMN_MNC + " = ? AND " + CellsTable.COLUMN_MCC + " = ? AND " + CellsTable.COLUMN_NET_TYPE + " = ?";
-                    String[] selectionArgs = new String[]{String.valueOf(cell.getCid()), String.valueOf(cell.getLac()), String.valueOf(cell.getMnc()), String.valueOf(cell.getMcc()), String.valueOf(cell.getNetworkType().ordinal())};
-                    Cursor cursorTotal = queryBuilder.query(db, columns, selection, selectionArgs, null, null, null);
-                    boolean localResult = false;
-                    if (cursorTotal.moveToNext()) {
-                        cellId = cursorTotal.getInt(cursorTotal.getColumnIndex(CellsTable.COLUMN_ROW_ID));
-                        cell.setCellId(cellId);
-                        localResult = true;
+            // update statistics only when committed
+            if (result) {
+                statisticsTracker.onInserted(measurement, inserter.getDiscoveredCellsCount());
+                coverageTiles.onMeasurementsInserted();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Inserts all measurements in a single transaction. When batch fails measurements are inserted one by one.
+     */
+    public int insertMeasurements(List<Measurement> measurements) {
+        return insertMeasurements(measurements, true);
+    }
+
+    /**
+     * Inserts measurements between {@link #beginBulkInsert()} and {@link #endBulkInsert()}.
+     * Statistics are not updated per measurement, they are recalculated once when bulk insert ends.
+     */
+    public int insertBulkMeasurements(List<Measurement> measurements) {
+        return insertMeasurements(measurements, false);
+    }
+
+    private int insertMeasurements(List<Measurement> measurements, boolean trackInserted) {
+        if (measurements.isEmpty()) {
+            return 0;
+        }
+        Timber.d("insertMeasurements(): Inserting %s measurements", measurements.size());
+        boolean result = true;
+        synchronized (inserterLock) {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            MeasurementInserter inserter = getInserter(db);
+            int[] discoveredCells = new int[measurements.size()];
+            try {
+                db.beginTransaction();
+                StringBuilder resultSb = new StringBuilder();
+                for (int i = 0; i < measurements.size(); i++) {
+                    if (!inserter.insert(measurements.get(i), resultSb)) {
+                        Timber.d("insertMeasurements(): Insertion report: %s", resultSb.toString());
+                        result = false;
+                        break;
                     }
-                    cursorTotal.close();
-                    result &= localResult;
-                    Timber.d("insertMeasurement(): Cell found = %s", localResult);
-                    resultSb.append("\tcell found=").append(localResult);
+                    discoveredCells[i] = inserter.getDiscoveredCellsCount();
                 }
-                // insert cell signal (if previous queries returned correct result)
                 if (result) {
-                    ContentValues values = new ContentValues();
-                    values.put(CellSignalsTable.COLUMN_CELL_ID, cellId);
-                    values.put(CellSignalsTable.COLUMN_MEASUREMENT_ID, measurementId);
-                    values.put(CellSignalsTable.COLUMN_PSC, cell.getPsc());
-                    values.put(CellSignalsTable.COLUMN_NEIGHBORING, cell.isNeighboring());
-                    values.put(CellSignalsTable.COLUMN_TA, cell.getTa());
-                    values.put(CellSignalsTable.COLUMN_ASU, cell.getAsu());
-                    values.put(CellSignalsTable.COLUMN_DBM, cell.getDbm());
-                    values.put(CellSignalsTable.COLUMN_RSRP, cell.getRsrp());
-                    values.put(CellSignalsTable.COLUMN_RSRQ, cell.getRsrq());
-                    values.put(CellSignalsTable.COLUMN_RSSI, cell.getRssi());
-                    values.put(CellSignalsTable.COLUMN_RSSNR, cell.getRssnr());
-                    values.put(CellSignalsTable.COLUMN_CQI, cell.getCqi());
-                    values.put(CellSignalsTable.COLUMN_RSCP, cell.getRscp());
-                    values.put(CellSignalsTable.COLUMN_CSI_RSRP, cell.getCsiRsrp());
-                    values.put(CellSignalsTable.COLUMN_CSI_RSRQ, cell.getCsiRsrq());
-                    values.put(CellSignalsTable.COLUMN_CSI_SINR, cell.getCsiSinr());
-                    values.put(CellSignalsTable.COLUMN_SS_RSRP, cell.getSsRsrp());
-                    values.put(CellSignalsTable.COLUMN_SS_RSRQ, cell.getSsRsrq());
-                    values.put(CellSignalsTable.COLUMN_SS_SINR, cell.getSsSinr());
-                    values.put(CellSignalsTable.COLUMN_CDMA_DBM, cell.getCdmaDbm());
-                    values.put(CellSignalsTable.COLUMN_CDMA_ECIO, cell.getCdmaEcio());
-                    values.put(CellSignalsTable.COLUMN_EVDO_DBM, cell.getEvdoDbm());
-                    values.put(CellSignalsTable.COLUMN_EVDO_ECIO, cell.getEvdoEcio());
-                    values.put(CellSignalsTable.COLUMN_EVDO_SNR, cell.getEvdoSnr());
-                    values.put(CellSignalsTable.COLUMN_EC_NO, cell.getEcNo());
-                    values.put(CellSignalsTable.COLUMN_ARFCN, cell.getArfcn());
-                    long rowId = db.insert(CellSignalsTable.TABLE_NAME, null, values);
-                    boolean localResult = false;
-                    if (rowId != -1) {
-                        cell.setCellSignalId((int) rowId); // acceptable because we don't use the value anyway
-                        localResult = true;
-                    }
-                    result = localResult;
-                    Timber.d("insertMeasurement(): Cell signal inserted = %s", localResult);
-                    resultSb.append("\tcell signal inserted=").append(localResult);
+                    db.setTransactionSuccessful();
+                    Timber.d("insertMeasurements(): Measurements inserted successfully");
                 }
-                resultSb.append(";\r\n");
+            } catch (Exception ex) {
+                result = false;
+                Timber.e(ex, "insertMeasurements(): Error while saving measurements");
+            } finally {
+                if (!result)
+                    inserter.invalidateCellIdsCache();
+                db.endTransaction();
+                lastMeasurementCache = null;
             }
-            // commit
-            if (result) {
-                db.setTransactionSuccessful();
-                Timber.d("insertMeasurement(): Measurement inserted successfully");
-                Timber.d("insertMeasurement(): Insertion report: %s", resultSb.toString());
-            } else {
-                Timber.d("insertMeasurement(): Measurement not inserted");
-                Timber.d("insertMeasurement(): Insertion report: %s", resultSb.toString());
-                // report exception because it shouldn't occur (one time per app run)
-                if (!insertionFailureReported) {
-                    Throwable ex = new MeasurementInsertionFailedException("Measurements not inserted", resultSb.toString());
-                    MyApplication.handleSilentException(ex);
-                    insertionFailureReported = true;
+            if (result && trackInserted) {
+                for (int i = 0; i < measurements.size(); i++) {
+                    statisticsTracker.onInserted(measurements.get(i), discoveredCells[i]);
                 }
+                coverageTiles.onMeasurementsInserted();
             }
-        } catch (Exception ex) {
-            result = false;
-            Timber.e(ex, "insertMeasurement(): Error while saving measurement");
-            MyApplication.handleSilentException(ex);
-        } finally {
+        }
+        if (result) {
+            return measurements.size();
+        }
+        // don't lose whole batch because of a single invalid measurement
+        Timber.w("insertMeasurements(): Batch insert failed, retrying one by one");
+        int inserted = 0;
+        for (Measurement measurement : measurements) {
+            if (insertMeasurement(measurement)) {
+                inserted++;
+            } else {
+                // id assigned in rolled back batch is not valid
+                measurement.setMeasurementId(0);
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Prepares database for inserting large number of measurements with {@link #insertBulkMeasurements(List)}.
+     * Secondary indexes are dropped and all cell ids are cached until {@link #endBulkInsert()} is called.
+     */
+    public void beginBulkInsert() {
+        Timber.d("beginBulkInsert(): Dropping secondary indexes");
+        synchronized (inserterLock) {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            dropSecondaryIndexes(db, MeasurementsTable.SECONDARY_INDEX_NAMES);
+            dropSecondaryIndexes(db, CellSignalsTable.SECONDARY_INDEX_NAMES);
+            getInserter(db).setMaxCachedCells(MAX_BULK_CACHED_CELLS);
+        }
+    }
+
+    /**
+     * Recreates indexes dropped by {@link #beginBulkInsert()}, must be called also when bulk insert failed.
+     */
+    public void endBulkInsert() {
+        Timber.d("endBulkInsert(): Recreating secondary indexes");
+        synchronized (inserterLock) {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            createMissingSecondaryIndexes(db);
+            getInserter(db).setMaxCachedCells(MeasurementInserter.MAX_CACHED_CELLS);
             invalidateCache();
-            db.endTransaction();
         }
-        return result;
+    }
+
+    private static void dropSecondaryIndexes(SQLiteDatabase db, String[] indexNames) {
+        for (String indexName : indexNames) {
+            db.execSQL("DROP INDEX IF EXISTS '" + indexName + "'");
+        }
+    }
+
+    /**
+     * Creates secondary indexes which don't exist, e.g. because application was killed during bulk insert.
+     */
+    private static void createMissingSecondaryIndexes(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index'", null);
+        List<String> existingIndexes = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            existingIndexes.add(cursor.getString(0));
+        }
+        cursor.close();
+        createMissingSecondaryIndexes(db, existingIndexes, MeasurementsTable.SECONDARY_INDEX_NAMES, MeasurementsTable.SECONDARY_INDEX_QUERIES);
+        createMissingSecondaryIndexes(db, existingIndexes, CellSignalsTable.SECONDARY_INDEX_NAMES, CellSignalsTable.SECONDARY_INDEX_QUERIES);
+    }
+
+    private static void createMissingSecondaryIndexes(SQLiteDatabase db, List<String> existingIndexes, String[] indexNames, String[] indexQueries) {
+        for (int i = 0; i < indexNames.length; i++) {
+            if (!existingIndexes.contains(indexNames[i])) {
+                Timber.d("createMissingSecondaryIndexes(): Creating index %s", indexNames[i]);
+                db.execSQL(indexQueries[i]);
+            }
+        }
+    }
+
+    private MeasurementInserter getInserter(SQLiteDatabase db) {
+        // statements are bound to connection so recompile when database has been reopened
+        if (inserter == null || !inserter.isBoundTo(db)) {
+            if (inserter != null)
+                inserter.close();
+            inserter = new MeasurementInserter(db);
+        }
+        return inserter;
     }
 
     public Measurement getFirstMeasurement() {
@@ -256,20 +309,29 @@ public class MeasurementsDatabase {
     }
 
     public Statistics getMeasurementsStatistics() {
-        // Try to get from cache then read from DB (copy to local to avoid null if invalidated in the meantime)
-        Statistics lastStatisticsCacheCopy = this.lastStatisticsCache;
-        if (lastStatisticsCacheCopy != null) {
-            Timber.d("getMeasurementsStatistics(): Value from cache: %s", lastStatisticsCacheCopy);
-            return lastStatisticsCacheCopy;
-        }
-        Statistics stats = new Statistics();
-        SQLiteDatabase db = helper.getReadableDatabase();
         // calculate midnight date (beginning of day)
         Calendar todayCalendar = Calendar.getInstance();
         todayCalendar.set(Calendar.HOUR_OF_DAY, 0);
         todayCalendar.set(Calendar.MINUTE, 0);
         todayCalendar.set(Calendar.SECOND, 0);
         todayCalendar.set(Calendar.MILLISECOND, 0);
+        long todayMidnight = todayCalendar.getTimeInMillis();
+        // Try to get from tracker then read from DB
+        Statistics trackedStats = statisticsTracker.get(todayMidnight);
+        if (trackedStats != null) {
+            Timber.d("getMeasurementsStatistics(): Value from tracker: %s", trackedStats);
+            return trackedStats;
+        }
+        // block inserts so counters and cell ids are consistent with tracked generation
+        synchronized (inserterLock) {
+            int generation = statisticsTracker.getGeneration();
+            return calculateMeasurementsStatistics(generation, todayMidnight);
+        }
+    }
+
+    private Statistics calculateMeasurementsStatistics(int generation, long todayMidnight) {
+        Statistics stats = new Statistics();
+        SQLiteDatabase db = helper.getReadableDatabase();
         final String todayCellsCount = "TODAY_CELLS_COUNT";
         final String todayMeasurementsCount = "TODAY_MEASUREMENTS_COUNT";
         final String todayDiscoveredCellsCount = "TODAY_DISCOVERED_CELLS_COUNT";
@@ -282,8 +344,9 @@ public class MeasurementsDatabase {
         final String globalSince = "GLOBAL_SINCE";
         final String uploadToOcid = "UPLOAD_TO_OCID";
         final String uploadToMls = "UPLOAD_TO_MLS";
-        String todayTime = String.valueOf(todayCalendar.getTimeInMillis());
-        String[] selectionArgs = new String[]{todayTime, todayTime};
+        final String todaySince = "TODAY_SINCE";
+        String todayTime = String.valueOf(todayMidnight);
+        String[] selectionArgs = new String[]{todayTime, todayTime, todayTime};
         // get all in one query (raw is the only possible solution)
         // full queries
         String globalStatsQuery = "SELECT " + StatsTable.COLUMN_TOTAL_MEASUREMENTS + " AS " + globalMeasurementsCount + ", " + StatsTable.COLUMN_TOTAL_DISCOVERED_CELLS + " AS " + globalDiscoveredCellsCount + ", " + StatsTable.COLUMN_TOTAL_SINCE + " AS " + globalSince + " FROM " + StatsTable.TABLE_NAME;
@@ -295,6 +358,7 @@ public class MeasurementsDatabase {
         String uploadToOcidAndMlsQuery = "SELECT SUM(CASE WHEN m." + MeasurementsTable.COLUMN_UPLOADED_TO_OCID_AT + " IS NULL THEN 1 ELSE 0 END) AS " + uploadToOcid + ", "
                 + "SUM(CASE WHEN m." + MeasurementsTable.COLUMN_UPLOADED_TO_MLS_AT + " IS NULL THEN 1 ELSE 0 END) AS " + uploadToMls
                 + " FROM " + CellSignalsTable.TABLE_NAME + " cs INNER JOIN " + MeasurementsTable.TABLE_NAME + " m ON cs." + CellSignalsTable.COLUMN_MEASUREMENT_ID + " = m." + MeasurementsTable.COLUMN_ROW_ID;
+        String todaySinceQuery = "SELECT MIN(" + MeasurementsTable.COLUMN_MEASURED_AT + ") AS " + todaySince + " FROM " + NotUploadedMeasurementsView.VIEW_NAME + " WHERE " + MeasurementsTable.COLUMN_MEASURED_AT + " > ?";
 
         String query = "SELECT * FROM ((" + globalStatsQuery + ") "
                 + "JOIN (" + localMeasurementsAndCellsQuery + ") "
@@ -302,8 +366,10 @@ public class MeasurementsDatabase {
                 + "JOIN (" + localSinceQuery + ") "
                 + "JOIN (" + todayMeasurementsAndCellsQuery + ") "
                 + "JOIN (" + todayDiscoveredCellsQuery + ") "
-                + "JOIN (" + uploadToOcidAndMlsQuery + "))";
+                + "JOIN (" + uploadToOcidAndMlsQuery + ") "
+                + "JOIN (" + todaySinceQuery + "))";
         // Timber.d(query);
+        long sinceToday = 0;
         Cursor cursor = db.rawQuery(query, selectionArgs);
         if (cursor.moveToNext()) {
             stats.setCellsToday(cursor.getInt(cursor.getColumnIndex(todayCellsCount)));
@@ -318,13 +384,34 @@ public class MeasurementsDatabase {
             stats.setSinceGlobal(cursor.getLong(cursor.getColumnIndex(globalSince)));
             stats.setToUploadOcid(cursor.getInt(cursor.getColumnIndex(uploadToOcid)));
             stats.setToUploadMls(cursor.getInt(cursor.getColumnIndex(uploadToMls)));
+            sinceToday = cursor.getLong(cursor.getColumnIndex(todaySince));
         }
         cursor.close();
         Timber.d("getMeasurementsStatistics(): Value from DB: %s", stats);
-        this.lastStatisticsCache = stats;
+        // distinct cells seen so far are needed to count new ones incrementally
+        BitSet localCellIds = getNotUploadedCellIds(db, null);
+        BitSet todayCellIds = getNotUploadedCellIds(db, todayTime);
+        statisticsTracker.reset(generation, stats, todayMidnight, sinceToday, todayCellIds, localCellIds);
         return stats;
     }
 
+    private BitSet getNotUploadedCellIds(SQLiteDatabase db, String measuredAfter) {
+        String query = "SELECT DISTINCT " + CellSignalsTable.COLUMN_CELL_ID + " FROM " + CellSignalsTable.TABLE_NAME + " WHERE " + CellSignalsTable.COLUMN_MEASUREMENT_ID + " IN (SELECT " + MeasurementsTable.COLUMN_ROW_ID + " FROM " + NotUploadedMeasurementsView.VIEW_NAME;
+        String[] selectionArgs = null;
+        if (measuredAfter != null) {
+            query += " WHERE " + MeasurementsTable.COLUMN_MEASURED_AT + " > ?";
+            selectionArgs = new String[]{measuredAfter};
+        }
+        query += ")";
+        BitSet cellIds = new BitSet();
+        Cursor cursor = db.rawQuery(query, selectionArgs);
+        while (cursor.moveToNext()) {
+            cellIds.set(cursor.getInt(0));
+        }
+        cursor.close();
+        return cellIds;
+    }
+
     public AnalyticsStatistics getAnalyticsStatistics() {
         Timber.d("getAnalyticsStatistics(): Getting analytics stats");
         AnalyticsStatistics stats = new AnalyticsStatistics();
@@ -346,6 +433,25 @@ public class MeasurementsDatabase {
         return stats;
     }
 
+    /**
+     * Summarizes measurements not uploaded to given target using index on upload time, so it doesn't depend on number of cell signals.
+     */
+    public UploadSummary getUploadSummary(UploadTarget target) {
+        Timber.d("getUploadSummary(): Getting upload summary for %s", target);
+        SQLiteDatabase db = helper.getReadableDatabase();
+        String uploadedAtColumn = (target == UploadTarget.Ocid ? MeasurementsTable.COLUMN_UPLOADED_TO_OCID_AT : MeasurementsTable.COLUMN_UPLOADED_TO_MLS_AT);
+        String query = "SELECT COUNT(*), MIN(" + MeasurementsTable.COLUMN_ROW_ID + "), MAX(" + MeasurementsTable.COLUMN_ROW_ID + "), MIN(" + MeasurementsTable.COLUMN_MEASURED_AT + "), MAX(" + MeasurementsTable.COLUMN_MEASURED_AT + ")"
+                + " FROM " + MeasurementsTable.TABLE_NAME + " WHERE " + uploadedAtColumn + " IS NULL";
+        UploadSummary summary = new UploadSummary(0, 0, 0, 0, 0);
+        Cursor cursor = db.rawQuery(query, null);
+        if (cursor.moveToNext()) {
+            summary = new UploadSummary(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2), cursor.getLong(3), cursor.getLong(4));
+        }
+        cursor.close();
+        Timber.d("getUploadSummary(): %s", summary);
+        return summary;
+    }
+
     public Boundaries getLocationBounds() {
         Timber.d("getLocationBounds(): Getting GPS bounds");
         Boundaries boundaries = null;
@@ -366,35 +472,68 @@ public class MeasurementsDatabase {
         return boundaries;
     }
 
-    public List<Measurement> getMeasurementsPartIncludingPartiallyUploaded(int offset, int limit) {
-        Timber.d("getMeasurementsPartIncludingPartiallyUploaded(): Getting %s measurements skipping first %s", limit, offset);
-        return getMeasurements(CellSignalsTable.TABLE_NAME + "." + CellSignalsTable.COLUMN_MEASUREMENT_ID + " IN(SELECT tm." + MeasurementsTable.COLUMN_ROW_ID + " FROM " + MeasurementsTable.TABLE_NAME + " tm ORDER BY tm." + MeasurementsTable.COLUMN_MEASURED_AT + " ASC, tm." + MeasurementsTable.COLUMN_ROW_ID + " ASC LIMIT " + String.valueOf(offset) + ", " + String.valueOf(limit) + ")",
-                null, null, null, null, null, true);
+    /**
+     * Returns next page of measurements not uploaded to at least one target ordered by id, limited to given id range.
+     */
+    public List<Measurement> getMeasurementsPartToUpload(int afterMeasurementId, int maxMeasurementId, int limit) {
+        Timber.d("getMeasurementsPartToUpload(): Getting %s measurements in range (%s, %s]", limit, afterMeasurementId, maxMeasurementId);
+        String[] selectionArgs = new String[]{String.valueOf(afterMeasurementId), String.valueOf(maxMeasurementId)};
+        return getMeasurements(CellSignalsTable.TABLE_NAME + "." + CellSignalsTable.COLUMN_MEASUREMENT_ID + " IN(SELECT " + MeasurementsTable.COLUMN_ROW_ID + " FROM " + MeasurementsTable.TABLE_NAME
+                        + " WHERE " + MeasurementsTable.COLUMN_ROW_ID + " > ? AND " + MeasurementsTable.COLUMN_ROW_ID + " <= ?"
+                        + " AND (" + MeasurementsTable.COLUMN_UPLOADED_TO_OCID_AT + " IS NULL OR " + MeasurementsTable.COLUMN_UPLOADED_TO_MLS_AT + " IS NULL)"
+                        + " ORDER BY " + MeasurementsTable.COLUMN_ROW_ID + " ASC LIMIT " + limit + ")",
+                selectionArgs, null, null, MeasurementRowReader.COLUMN_MEASUREMENT_ROW_ID + " ASC, " + MeasurementRowReader.COLUMN_CELL_SIGNAL_ROW_ID + " ASC", null, true);
     }
 
-    public List<Measurement> getMeasurementsPart(int offset, int limit) {
-        Timber.d("getMeasurementsPart(): Getting %s measurements skipping first %s", limit, offset);
-        return getMeasurements(CellSignalsTable.TABLE_NAME + "." + CellSignalsTable.COLUMN_MEASUREMENT_ID + " IN(SELECT tm." + MeasurementsTable.COLUMN_ROW_ID + " FROM " + NotUploadedMeasurementsView.VIEW_NAME + " tm ORDER BY tm." + MeasurementsTable.COLUMN_MEASURED_AT + " ASC, tm." + MeasurementsTable.COLUMN_ROW_ID + " ASC LIMIT " + String.valueOf(offset) + ", " + String.valueOf(limit) + ")",
-                null, null, null, null, null, false);
+    /**
+     * Returns next page of not uploaded measurements ordered by measurement time (oldest first).
+     *
+     * @param lastMeasurement last measurement of previous page or null to get first page
+     */
+    public List<Measurement> getMeasurementsPart(Measurement lastMeasurement, int limit) {
+        Timber.d("getMeasurementsPart(): Getting %s measurements after %s", limit, lastMeasurement);
+        return readMeasurements(queryMeasurementsPart(lastMeasurement, limit, false));
+    }
+
+    /**
+     * Returns forward-only cursor over not uploaded measurements ordered by measurement time (oldest first).
+     * Cursor reuses measurement and cell instances so memory usage doesn't depend on number of measurements.
+     */
+    public MeasurementCursor getMeasurementsCursor() {
+        Timber.d("getMeasurementsCursor(): Opening measurements cursor");
+        return new MeasurementCursor(this, MEASUREMENTS_PER_CURSOR_PAGE, false);
+    }
+
+    Cursor queryMeasurementsPart(Measurement lastMeasurement, int limit, boolean includePartiallyUploaded) {
+        final String MEASUREMENTS_TABLE = includePartiallyUploaded ? MeasurementsTable.TABLE_NAME : NotUploadedMeasurementsView.VIEW_NAME;
+        // seek by (measured_at, row_id) key using index instead of skipping already read rows
+        String afterClause = "";
+        String[] selectionArgs = null;
+        if (lastMeasurement != null) {
+            afterClause = " WHERE tm." + MeasurementsTable.COLUMN_MEASURED_AT + " > ? OR (tm." + MeasurementsTable.COLUMN_MEASURED_AT + " = ? AND tm." + MeasurementsTable.COLUMN_ROW_ID + " > ?)";
+            String measuredAt = String.valueOf(lastMeasurement.getMeasuredAt());
+            selectionArgs = new String[]{measuredAt, measuredAt, String.valueOf(lastMeasurement.getMeasurementId())};
+        }
+        return queryMeasurements(CellSignalsTable.TABLE_NAME + "." + CellSignalsTable.COLUMN_MEASUREMENT_ID + " IN(SELECT tm." + MeasurementsTable.COLUMN_ROW_ID + " FROM " + MEASUREMENTS_TABLE + " tm" + afterClause + " ORDER BY tm." + MeasurementsTable.COLUMN_MEASURED_AT + " ASC, tm." + MeasurementsTable.COLUMN_ROW_ID + " ASC LIMIT " + String.valueOf(limit) + ")",
+                selectionArgs, null, null, MeasurementsTable.COLUMN_MEASURED_AT + " ASC, " + MeasurementRowReader.COLUMN_MEASUREMENT_ROW_ID + " ASC, " + MeasurementRowReader.COLUMN_CELL_SIGNAL_ROW_ID + " ASC", null, includePartiallyUploaded);
     }
 
     private List<Measurement> getMeasurements(String selection, String[] selectionArgs, String groupBy, String having, String sortOrder, String limit, boolean includePartiallyUploaded) {
         Timber.d("getMeasurements(): Getting selected measurements");
-        final String MEASUREMENT_ROW_ID = "measurement_" + MeasurementsTable.COLUMN_ROW_ID;
-        final String CELL_ROW_ID = "cell_" + CellsTable.COLUMN_ROW_ID;
-        final String CELL_SIGNAL_ROW_ID = "cell_signal_" + CellSignalsTable.COLUMN_ROW_ID;
+        return readMeasurements(queryMeasurements(selection, selectionArgs, groupBy, having, sortOrder, limit, includePartiallyUploaded));
+    }
+
+    private Cursor queryMeasurements(String selection, String[] selectionArgs, String groupBy, String having, String sortOrder, String limit, boolean includePartiallyUploaded) {
         final String MEASUREMENTS_TABLE = includePartiallyUploaded ? MeasurementsTable.TABLE_NAME : NotUploadedMeasurementsView.VIEW_NAME;
-        Map<Integer, Measurement> tempMeasurements = new HashMap<>();
-        List<Measurement> measurementList = new ArrayList<>();
         SQLiteDatabase db = helper.getReadableDatabase();
         SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
         queryBuilder.setTables(MEASUREMENTS_TABLE
                 + " INNER JOIN " + CellSignalsTable.TABLE_NAME + " ON (" + MEASUREMENTS_TABLE + "." + MeasurementsTable.COLUMN_ROW_ID + " = " + CellSignalsTable.TABLE_NAME + "." + CellSignalsTable.COLUMN_MEASUREMENT_ID + ")"
                 + " INNER JOIN " + CellsTable.TABLE_NAME + " ON (" + CellSignalsTable.TABLE_NAME + "." + CellSignalsTable.COLUMN_CELL_ID + " = " + CellsTable.TABLE_NAME + "." + CellsTable.COLUMN_ROW_ID + ")");
         String[] returnedColumns = {
-                MEASUREMENTS_TABLE + "." + MeasurementsTable.COLUMN_ROW_ID + " AS " + MEASUREMENT_ROW_ID,
-                CellsTable.TABLE_NAME + "." + CellsTable.COLUMN_ROW_ID + " AS " + CELL_ROW_ID,
-                CellSignalsTable.TABLE_NAME + "." + CellSignalsTable.COLUMN_ROW_ID + " AS " + CELL_SIGNAL_ROW_ID,
+                MEASUREMENTS_TABLE + "." + MeasurementsTable.COLUMN_ROW_ID + " AS " + MeasurementRowReader.COLUMN_MEASUREMENT_ROW_ID,
+                CellsTable.TABLE_NAME + "." + CellsTable.COLUMN_ROW_ID + " AS " + MeasurementRowReader.COLUMN_CELL_ROW_ID,
+                CellSignalsTable.TABLE_NAME + "." + CellSignalsTable.COLUMN_ROW_ID + " AS " + MeasurementRowReader.COLUMN_CELL_SIGNAL_ROW_ID,
                 CellSignalsTable.COLUMN_PSC,
                 CellSignalsTable.COLUMN_NEIGHBORING,
                 CellSignalsTable.COLUMN_TA,
@@ -436,105 +575,26 @@ public class MeasurementsDatabase {
                 CellsTable.COLUMN_DISCOVERED_AT
         };
         // Timber.d(queryBuilder.buildQuery(returnedColumns, selection, selectionArgs, groupBy, having, sortOrder, limit));
-        Cursor cursor = queryBuilder.query(db, returnedColumns, selection, selectionArgs, groupBy, having, sortOrder, limit);
-        int measurementIdColumnIndex = cursor.getColumnIndex(MEASUREMENT_ROW_ID);
-        int cellIdColumnIndex = cursor.getColumnIndex(CELL_ROW_ID);
-        int cellSignalIdColumnIndex = cursor.getColumnIndex(CELL_SIGNAL_ROW_ID);
-        int mccColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_MCC);
-        int mncColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_MNC);
-        int lacColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_LAC);
-        int cidColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_CID);
-        int netTypeColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_NET_TYPE);
-        int discoveredAtColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_DISCOVERED_AT);
-        int pscColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_PSC);
-        int neighboringColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_NEIGHBORING);
-        int taColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_TA);
-        int asuColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_ASU);
-        int dbmColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_DBM);
-        int rsrpColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_RSRP);
-        int rsrqColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_RSRQ);
-        int rssiColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_RSSI);
-        int rssnrColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_RSSNR);
-        int cqiColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CQI);
-        int rscpColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_RSCP);
-        int csiRsrpColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CSI_RSRP);
-        int csiRsrqColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CSI_RSRQ);
-        int csiSinrColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CSI_SINR);
-        int ssRsrpColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_SS_RSRP);
-        int ssRsrqColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_SS_RSRQ);
-        int ssSinrColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_SS_SINR);
-        int cdmaDbmColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CDMA_DBM);
-        int cdmaEcioColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_CDMA_ECIO);
-        int evdoDbmColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_EVDO_DBM);
-        int evdoEcioColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_EVDO_ECIO);
-        int evdoSnrColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_EVDO_SNR);
-        int ecNoColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_EC_NO);
-        int arfcnColumnIndex = cursor.getColumnIndex(CellSignalsTable.COLUMN_ARFCN);
-        int latitudeColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_LATITUDE);
-        int longitudeColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_LONGITUDE);
-        int gpsAccuracyColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_GPS_ACCURACY);
-        int gpsSpeedColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_GPS_SPEED);
-        int gpsBearingColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_GPS_BEARING);
-        int gpsAltitudeColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_GPS_ALTITUDE);
-        int measuredAtColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_MEASURED_AT);
-        int uploadedToOcidAtColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_UPLOADED_TO_OCID_AT);
-        int uploadedToMlsAtColumnIndex = cursor.getColumnIndex(MeasurementsTable.COLUMN_UPLOADED_TO_MLS_AT);
+        return queryBuilder.query(db, returnedColumns, selection, selectionArgs, groupBy, having, sortOrder, limit);
+    }
+
+    private List<Measurement> readMeasurements(Cursor cursor) {
+        Map<Integer, Measurement> tempMeasurements = new HashMap<>();
+        List<Measurement> measurementList = new ArrayList<>();
+        MeasurementRowReader reader = new MeasurementRowReader(cursor);
         while (cursor.moveToNext()) {
             Measurement measurement;
-            int measurementId = cursor.getInt(measurementIdColumnIndex);
+            int measurementId = reader.getMeasurementId(cursor);
             if (tempMeasurements.containsKey(measurementId)) {
                 measurement = tempMeasurements.get(measurementId);
             } else {
                 measurement = new Measurement();
-                measurement.setMeasurementId(measurementId);
-                measurement.setLatitude(cursor.getDouble(latitudeColumnIndex));
-                measurement.setLongitude(cursor.getDouble(longitudeColumnIndex));
-                measurement.setGpsAccuracy(cursor.getFloat(gpsAccuracyColumnIndex));
-                measurement.setGpsSpeed(cursor.getFloat(gpsSpeedColumnIndex));
-                measurement.setGpsBearing(cursor.getFloat(gpsBearingColumnIndex));
-                measurement.setGpsAltitude(cursor.getDouble(gpsAltitudeColumnIndex));
-                measurement.setMeasuredAt(cursor.getLong(measuredAtColumnIndex));
-                if (!cursor.isNull(uploadedToOcidAtColumnIndex))
-                    measurement.setUploadedToOcidAt(cursor.getLong(uploadedToOcidAtColumnIndex));
-                if (!cursor.isNull(uploadedToMlsAtColumnIndex))
-                    measurement.setUploadedToMlsAt(cursor.getLong(uploadedToMlsAtColumnIndex));
-
+                reader.readMeasurement(cursor, measurement);
                 tempMeasurements.put(measurementId, measurement);
                 measurementList.add(measurement);
             }
             Cell cell = new Cell();
-            cell.setCellId(cursor.getInt(cellIdColumnIndex));
-            cell.setCellSignalId(cursor.getInt(cellSignalIdColumnIndex));
-            cell.setMcc(cursor.getInt(mccColumnIndex));
-            cell.setMnc(cursor.getInt(mncColumnIndex));
-            cell.setLac(cursor.getInt(lacColumnIndex));
-            cell.setCid(cursor.getLong(cidColumnIndex));
-            cell.setNetworkType(NetworkGroup.fromValue(cursor.getInt(netTypeColumnIndex)));
-            cell.setDiscoveredAt(cursor.getLong(discoveredAtColumnIndex));
-            cell.setNeighboring(cursor.getInt(neighboringColumnIndex) == 1);
-            cell.setPsc(cursor.getInt(pscColumnIndex));
-            cell.setTa(cursor.getInt(taColumnIndex));
-            cell.setAsu(cursor.getInt(asuColumnIndex));
-            cell.setDbm(cursor.getInt(dbmColumnIndex));
-            cell.setRsrp(cursor.getInt(rsrpColumnIndex));
-            cell.setRsrq(cursor.getInt(rsrqColumnIndex));
-            cell.setRssi(cursor.getInt(rssiColumnIndex));
-            cell.setRssnr(cursor.getInt(rssnrColumnIndex));
-            cell.setCqi(cursor.getInt(cqiColumnIndex));
-            cell.setRscp(cursor.getInt(rscpColumnIndex));
-            cell.setCsiRsrp(cursor.getInt(csiRsrpColumnIndex));
-            cell.setCsiRsrq(cursor.getInt(csiRsrqColumnIndex));
-            cell.setCsiSinr(cursor.getInt(csiSinrColumnIndex));
-            cell.setSsRsrp(cursor.getInt(ssRsrpColumnIndex));
-            cell.setSsRsrq(cursor.getInt(ssRsrqColumnIndex));
-            cell.setSsSinr(cursor.getInt(ssSinrColumnIndex));
-            cell.setCdmaDbm(cursor.getInt(cdmaDbmColumnIndex));
-            cell.setCdmaEcio(cursor.getInt(cdmaEcioColumnIndex));
-            cell.setEvdoDbm(cursor.getInt(evdoDbmColumnIndex));
-            cell.setEvdoEcio(cursor.getInt(evdoEcioColumnIndex));
-            cell.setEvdoSnr(cursor.getInt(evdoSnrColumnIndex));
-            cell.setEcNo(cursor.getInt(ecNoColumnIndex));
-            cell.setArfcn(cursor.getInt(arfcnColumnIndex));
+            reader.readCell(cursor, cell);
             measurement.addCell(cell);
         }
         cursor.close();
@@ -564,15 +624,9 @@ public class MeasurementsDatabase {
                 CellsTable.COLUMN_NET_TYPE,
                 CellsTable.COLUMN_DISCOVERED_AT
         };
-        // latitude / latitude can pass north or south pole / date line and between would fail
-        String selection = MeasurementsTable.COLUMN_LATITUDE + " > ?"
-                + " AND " + MeasurementsTable.COLUMN_LATITUDE + " < ?"
-                + " AND " + MeasurementsTable.COLUMN_LONGITUDE + " > ?"
-                + " AND " + MeasurementsTable.COLUMN_LONGITUDE + " < ?";
-        String[] selectionArgs = new String[]{
-                String.valueOf(boundaries.getMinLat()), String.valueOf(boundaries.getMaxLat()), String.valueOf(boundaries.getMinLon()), String.valueOf(boundaries.getMaxLon())
-        };
-        Cursor cursor = queryBuilder.query(db, returnedColumns, selection, selectionArgs, null, null, null, null);
+        List<String> selectionArgs = new ArrayList<>();
+        String selection = buildAreaSelection(boundaries, selectionArgs);
+        Cursor cursor = queryBuilder.query(db, returnedColumns, selection, selectionArgs.toArray(new String[0]), null, null, null, null);
         int measurementIdColumnIndex = cursor.getColumnIndex(MEASUREMENT_ROW_ID);
         int mccColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_MCC);
         int mncColumnIndex = cursor.getColumnIndex(CellsTable.COLUMN_MNC);
@@ -591,6 +645,7 @@ public class MeasurementsDatabase {
                 measurement = tempMeasurements.get(measurementId);
             } else {
                 measurement = new MapMeasurement();
+                measurement.setMeasurementId(measurementId);
                 measurement.setLatitude(cursor.getDouble(latitudeColumnIndex));
                 measurement.setLongitude(cursor.getDouble(longitudeColumnIndex));
                 measurement.setMeasuredAt(cursor.getLong(measuredAtColumnIndex));
@@ -612,6 +667,112 @@ public class MeasurementsDatabase {
         return measurementList;
     }
 
+    /**
+     * Returns measurements from given area aggregated into buckets of given spatial grid level,
+     * so number of results depends on area size instead of number of measurements.
+     */
+    public List<MapMeasurementCluster> getMeasurementClustersInArea(Boundaries boundaries, int gridLevel) {
+        List<MapMeasurementCluster> precomputedClusters = coverageTiles.getClustersInArea(boundaries, gridLevel);
+        if (precomputedClusters != null) {
+            Timber.d("getMeasurementClustersInArea(): Got %s clusters of level %s from coverage tiles", precomputedClusters.size(), gridLevel);
+            return precomputedClusters;
+        }
+        Timber.d("getMeasurementClustersInArea(): Getting measurement clusters of level %s from area lat<%s, %s>, lon<%s, %s>", gridLevel, boundaries.getMinLat(), boundaries.getMaxLat(), boundaries.getMinLon(), boundaries.getMaxLon());
+        final String BUCKET = "bucket";
+        final String COUNT = "count";
+        final String AVERAGE_LATITUDE = "avg_" + MeasurementsTable.COLUMN_LATITUDE;
+        final String AVERAGE_LONGITUDE = "avg_" + MeasurementsTable.COLUMN_LONGITUDE;
+        List<MapMeasurementCluster> clusterList = new ArrayList<>();
+        SQLiteDatabase db = helper.getReadableDatabase();
+        SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+        queryBuilder.setTables(NotUploadedMeasurementsView.VIEW_NAME);
+        String[] returnedColumns = {
+                "(" + MeasurementsTable.COLUMN_SPATIAL_KEY + " >> " + SpatialKey.getBucketShift(gridLevel) + ") AS " + BUCKET,
+                "COUNT(*) AS " + COUNT,
+                "AVG(" + MeasurementsTable.COLUMN_LATITUDE + ") AS " + AVERAGE_LATITUDE,
+                "AVG(" + MeasurementsTable.COLUMN_LONGITUDE + ") AS " + AVERAGE_LONGITUDE
+        };
+        List<String> selectionArgs = new ArrayList<>();
+        String selection = buildAreaSelection(boundaries, selectionArgs);
+        Cursor cursor = queryBuilder.query(db, returnedColumns, selection, selectionArgs.toArray(new String[0]), BUCKET, null, null, null);
+        int countColumnIndex = cursor.getColumnIndex(COUNT);
+        int latitudeColumnIndex = cursor.getColumnIndex(AVERAGE_LATITUDE);
+        int longitudeColumnIndex = cursor.getColumnIndex(AVERAGE_LONGITUDE);
+        while (cursor.moveToNext()) {
+            clusterList.add(new MapMeasurementCluster(cursor.getDouble(latitudeColumnIndex), cursor.getDouble(longitudeColumnIndex), cursor.getInt(countColumnIndex)));
+        }
+        cursor.close();
+        return clusterList;
+    }
+
+    long getMaxMeasurementRowId() {
+        long maxRowId = 0;
+        SQLiteDatabase db = helper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT IFNULL(MAX(" + MeasurementsTable.COLUMN_ROW_ID + "), 0) FROM " + MeasurementsTable.TABLE_NAME, null);
+        if (cursor.moveToNext()) {
+            maxRowId = cursor.getLong(0);
+        }
+        cursor.close();
+        return maxRowId;
+    }
+
+    /**
+     * Aggregates not uploaded measurements with row id in range (afterRowId, untilRowId] into buckets of given spatial grid level.
+     * Buckets are reported in ascending order together with bit mask of network groups of their cells.
+     */
+    void aggregateCoverage(long afterRowId, long untilRowId, int gridLevel, ICoverageBucketListener listener) throws IOException {
+        Timber.d("aggregateCoverage(): Aggregating rows %s - %s into level %s buckets", afterRowId + 1, untilRowId, gridLevel);
+        final String NETWORK_GROUPS = "network_groups";
+        // SQLite has no bitwise OR aggregate, so combine maximum of every bit
+        StringBuilder networkGroupsAggregate = new StringBuilder();
+        for (NetworkGroup group : NetworkGroup.values()) {
+            if (networkGroupsAggregate.length() > 0)
+                networkGroupsAggregate.append(" | ");
+            networkGroupsAggregate.append("IFNULL(MAX(").append(NETWORK_GROUPS).append(" & ").append(1 << group.getValue()).append("), 0)");
+        }
+        String query = "SELECT " + MeasurementsTable.COLUMN_SPATIAL_KEY + " >> " + SpatialKey.getBucketShift(gridLevel) + " AS bucket"
+                + ", COUNT(*)"
+                + ", SUM(" + MeasurementsTable.COLUMN_LATITUDE + ")"
+                + ", SUM(" + MeasurementsTable.COLUMN_LONGITUDE + ")"
+                + ", " + networkGroupsAggregate
+                + " FROM (SELECT m." + MeasurementsTable.COLUMN_SPATIAL_KEY + ", m." + MeasurementsTable.COLUMN_LATITUDE + ", m." + MeasurementsTable.COLUMN_LONGITUDE
+                + ", (SELECT SUM(DISTINCT 1 << c." + CellsTable.COLUMN_NET_TYPE + ") FROM " + CellSignalsTable.TABLE_NAME + " s"
+                + " INNER JOIN " + CellsTable.TABLE_NAME + " c ON c." + CellsTable.COLUMN_ROW_ID + " = s." + CellSignalsTable.COLUMN_CELL_ID
+                + " WHERE s." + CellSignalsTable.COLUMN_MEASUREMENT_ID + " = m." + MeasurementsTable.COLUMN_ROW_ID + ") AS " + NETWORK_GROUPS
+                + " FROM " + NotUploadedMeasurementsView.VIEW_NAME + " m"
+                + " WHERE m." + MeasurementsTable.COLUMN_ROW_ID + " > ? AND m." + MeasurementsTable.COLUMN_ROW_ID + " <= ?)"
+                + " GROUP BY bucket ORDER BY bucket";
+        SQLiteDatabase db = helper.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(afterRowId), String.valueOf(untilRowId)})) {
+            while (cursor.moveToNext()) {
+                listener.onBucket(cursor.getLong(0), cursor.getInt(1), cursor.getDouble(2), cursor.getDouble(3), cursor.getInt(4));
+            }
+        }
+    }
+
+    private String buildAreaSelection(Boundaries boundaries, List<String> selectionArgs) {
+        // spatial key ranges use index to narrow down the area, exact coordinates are filtered afterwards
+        List<long[]> keyRanges = SpatialKey.getRanges(boundaries.getMinLat(), boundaries.getMinLon(), boundaries.getMaxLat(), boundaries.getMaxLon());
+        StringBuilder selection = new StringBuilder("(");
+        for (int i = 0; i < keyRanges.size(); i++) {
+            if (i > 0)
+                selection.append(" OR ");
+            selection.append(MeasurementsTable.COLUMN_SPATIAL_KEY).append(" BETWEEN ? AND ?");
+            selectionArgs.add(String.valueOf(keyRanges.get(i)[0]));
+            selectionArgs.add(String.valueOf(keyRanges.get(i)[1]));
+        }
+        // latitude / latitude can pass north or south pole / date line and between would fail
+        selection.append(") AND ").append(MeasurementsTable.COLUMN_LATITUDE).append(" > ?")
+                .append(" AND ").append(MeasurementsTable.COLUMN_LATITUDE).append(" < ?")
+                .append(" AND ").append(MeasurementsTable.COLUMN_LONGITUDE).append(" > ?")
+                .append(" AND ").append(MeasurementsTable.COLUMN_LONGITUDE).append(" < ?");
+        selectionArgs.add(String.valueOf(boundaries.getMinLat()));
+        selectionArgs.add(String.valueOf(boundaries.getMaxLat()));
+        selectionArgs.add(String.valueOf(boundaries.getMinLon()));
+        selectionArgs.add(String.valueOf(boundaries.getMaxLon()));
+        return selection.toString();
+    }
+
     public int deleteAllMeasurements() {
         Timber.d("deleteAllMeasurements(): Deleting all measurements");
         SQLiteDatabase db = helper.getWritableDatabase();
@@ -623,8 +784,9 @@ public class MeasurementsDatabase {
             db.setTransactionSuccessful();
             Timber.d("deleteAllMeasurements(): Deleted %s cell signals, %s measurements", deletedCellSignals, deletedMeasurements);
         } finally {
-            invalidateCache();
             db.endTransaction();
+            // after commit, otherwise concurrent reader could cache the state from before it
+            invalidateCache();
         }
         return deletedCellSignals;
     }
@@ -673,8 +835,9 @@ public class MeasurementsDatabase {
             db.setTransactionSuccessful();
             Timber.d("markAsUploaded(): Marked successfully");
         } finally {
-            invalidateCache();
             db.endTransaction();
+            // after commit, otherwise concurrent reader could cache the state from before it
+            invalidateCache();
         }
         return updated;
     }
@@ -703,29 +866,36 @@ public class MeasurementsDatabase {
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
+            // after commit, otherwise concurrent reader could cache the state from before it
+            invalidateCache();
         }
         return deletedCellSignals;
     }
 
     public int clearAllData() {
         Timber.d("clearAllData(): Clearing all data");
-        SQLiteDatabase db = helper.getWritableDatabase();
-        db.beginTransaction();
         int deletedCellSignals = 0;
-        try {
-            deletedCellSignals = db.delete(CellSignalsTable.TABLE_NAME, "1", null);
-            int deletedMeasurements = db.delete(MeasurementsTable.TABLE_NAME, "1", null);
-            int deletedCells = db.delete(CellsTable.TABLE_NAME, "1", null);
-            ContentValues cv = new ContentValues();
-            cv.put(StatsTable.COLUMN_TOTAL_MEASUREMENTS, 0);
-            cv.put(StatsTable.COLUMN_TOTAL_DISCOVERED_CELLS, 0);
-            cv.put(StatsTable.COLUMN_TOTAL_SINCE, System.currentTimeMillis());
-            int cleanedStats = db.update(StatsTable.TABLE_NAME, cv, null, null);
-            db.setTransactionSuccessful();
-            Timber.d("clearAllData(): Deleted %s cell signals, %s measurements, %s cells, cleaned %s stats", deletedCellSignals, deletedMeasurements, deletedCells, cleanedStats);
-        } finally {
-            invalidateCache();
-            db.endTransaction();
+        // lock inserter first (same order as insert) because cached cell ids become invalid
+        synchronized (inserterLock) {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                deletedCellSignals = db.delete(CellSignalsTable.TABLE_NAME, "1", null);
+                int deletedMeasurements = db.delete(MeasurementsTable.TABLE_NAME, "1", null);
+                int deletedCells = db.delete(CellsTable.TABLE_NAME, "1", null);
+                ContentValues cv = new ContentValues();
+                cv.put(StatsTable.COLUMN_TOTAL_MEASUREMENTS, 0);
+                cv.put(StatsTable.COLUMN_TOTAL_DISCOVERED_CELLS, 0);
+                cv.put(StatsTable.COLUMN_TOTAL_SINCE, System.currentTimeMillis());
+                int cleanedStats = db.update(StatsTable.TABLE_NAME, cv, null, null);
+                db.setTransactionSuccessful();
+                Timber.d("clearAllData(): Deleted %s cell signals, %s measurements, %s cells, cleaned %s stats", deletedCellSignals, deletedMeasurements, deletedCells, cleanedStats);
+            } finally {
+                if (inserter != null)
+                    inserter.invalidateCellIdsCache();
+                db.endTransaction();
+                invalidateCache();
+            }
         }
         return deletedCellSignals;
     }
@@ -839,7 +1009,76 @@ public class MeasurementsDatabase {
 
     private void invalidateCache() {
         lastMeasurementCache = null;
-        lastStatisticsCache = null;
+        statisticsTracker.invalidate();
+        coverageTiles.invalidate();
+    }
+
+
+    // ========== BACKUP ========== //
+
+    /**
+     * Writes consistent snapshot of the database to empty target file. Copy is made on separate connection
+     * which only reads the database, so the collector can keep inserting measurements while it's running.
+     * Older SQLite without VACUUM INTO copies the tables in one transaction and inserts wait until it's done.
+     */
+    public void backupDatabase(File target) {
+        // schema must be up to date before the file is attached elsewhere
+        SQLiteDatabase db = helper.getWritableDatabase();
+        if (MeasurementInserter.getSqliteVersion(db) >= MIN_VACUUM_INTO_SQLITE_VERSION) {
+            Timber.d("backupDatabase(): Vacuuming database into %s", target);
+            SQLiteDatabase backupDb = SQLiteDatabase.create(null);
+            try {
+                backupDb.execSQL("ATTACH DATABASE ? AS " + BACKUP_SOURCE_SCHEMA, new Object[]{db.getPath()});
+                backupDb.execSQL("VACUUM " + BACKUP_SOURCE_SCHEMA + " INTO ?", new Object[]{target.getPath()});
+                backupDb.execSQL("DETACH DATABASE " + BACKUP_SOURCE_SCHEMA);
+            } finally {
+                backupDb.close();
+            }
+        } else {
+            Timber.d("backupDatabase(): Copying tables into %s", target);
+            synchronized (inserterLock) {
+                SQLiteDatabase backupDb = SQLiteDatabase.openDatabase(target.getPath(), null,
+                        SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.CREATE_IF_NECESSARY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+                try {
+                    backupDb.execSQL("ATTACH DATABASE ? AS " + BACKUP_SOURCE_SCHEMA, new Object[]{db.getPath()});
+                    backupDb.beginTransaction();
+                    try {
+                        copySchemaAndRows(backupDb);
+                        backupDb.setTransactionSuccessful();
+                    } finally {
+                        backupDb.endTransaction();
+                    }
+                    backupDb.execSQL("DETACH DATABASE " + BACKUP_SOURCE_SCHEMA);
+                    backupDb.setVersion(db.getVersion());
+                } finally {
+                    backupDb.close();
+                }
+            }
+        }
+        Timber.d("backupDatabase(): Backup finished, size %s bytes", target.length());
+    }
+
+    private static void copySchemaAndRows(SQLiteDatabase backupDb) {
+        // rows are copied before indexes and triggers are created, so triggers don't update copied statistics again
+        Cursor cursor = backupDb.rawQuery("SELECT type, name, sql FROM " + BACKUP_SOURCE_SCHEMA + ".sqlite_master WHERE sql IS NOT NULL AND name NOT LIKE 'sqlite_%'"
+                + " ORDER BY CASE type WHEN 'table' THEN 0 WHEN 'index' THEN 1 ELSE 2 END", null);
+        try {
+            while (cursor.moveToNext()) {
+                String type = cursor.getString(0);
+                String name = cursor.getString(1);
+                backupDb.execSQL(cursor.getString(2));
+                if ("table".equals(type)) {
+                    backupDb.execSQL("INSERT INTO main.\"" + name + "\" SELECT * FROM " + BACKUP_SOURCE_SCHEMA + ".\"" + name + "\"");
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        // sequences exist only when some table uses AUTOINCREMENT
+        if (DatabaseUtils.longForQuery(backupDb, "SELECT COUNT(*) FROM " + BACKUP_SOURCE_SCHEMA + ".sqlite_master WHERE name = 'sqlite_sequence'", null) > 0) {
+            backupDb.execSQL("DELETE FROM main.sqlite_sequence");
+            backupDb.execSQL("INSERT INTO main.sqlite_sequence SELECT * FROM " + BACKUP_SOURCE_SCHEMA + ".sqlite_sequence");
+        }
     }
 
     // ========== GET DATABASE VERSION ========== //
@@ -866,10 +1105,31 @@ public class MeasurementsDatabase {
         return version;
     }
 
+    public static boolean hasPendingMigrations(Context context) {
+        boolean pending = false;
+        SQLiteDatabase db = null;
+        try {
+            File path = context.getDatabasePath(DATABASE_FILE_NAME);
+            if (path.exists()) {
+                // open manually to prevent database upgrade or creation
+                db = SQLiteDatabase.openDatabase(path.toString(), null, SQLiteDatabase.OPEN_READONLY);
+                pending = DbMigrationHelper.hasPendingMigrations(db);
+                Timber.d("hasPendingMigrations(): Database has pending migrations = %s", pending);
+            }
+        } catch (SQLiteException ex) {
+            Timber.e(ex, "hasPendingMigrations(): Database file cannot be opened");
+        } finally {
+            if (db != null)
+                db.close();
+        }
+        return pending;
+    }
+
     // ========== FORCE DATABASE UPGRADE ========== //
 
-    public void forceDatabaseUpgrade() {
+    public void forceDatabaseUpgrade(IProgressListener progressListener) {
         Timber.d("forceDatabaseUpgrade(): Forcing database upgrade");
+        helper.setUpgradeProgressListener(progressListener);
         SQLiteDatabase db = helper.getWritableDatabase();
         try {
             // read something to prevent from being removed while optimization (I hope)
@@ -879,6 +1139,7 @@ public class MeasurementsDatabase {
         } catch (SQLiteException ex) {
             Timber.e(ex, "forceDatabaseUpgrade(): Failed to open for R/W");
         } finally {
+            helper.setUpgradeProgressListener(null);
             if (db != null)
                 db.close();
             invalidateInstance();
@@ -904,11 +1165,40 @@ public class MeasurementsDatabase {
         }
     }
 
+    /**
+     * Closes current instance and replaces database file with given one. Write-ahead log of closed database is deleted,
+     * otherwise its frames would be checkpointed into the new file. Next {@link #getInstance(Context)} opens the new file.
+     */
+    public static void replaceDatabase(Context context, File source) throws IOException {
+        Timber.d("replaceDatabase(): Replacing database with %s", source);
+        synchronized (MeasurementsDatabase.class) {
+            MeasurementsDatabase current = instance;
+            instance = null;
+            if (current != null) {
+                synchronized (current.inserterLock) {
+                    current.helper.close();
+                }
+            }
+            File databaseFile = context.getDatabasePath(DATABASE_FILE_NAME);
+            deleteIfExists(new File(databaseFile.getPath() + "-wal"));
+            deleteIfExists(new File(databaseFile.getPath() + "-shm"));
+            if (!source.renameTo(databaseFile))
+                throw new IOException("Failed to move " + source + " to " + databaseFile);
+            CoverageTilePyramid.getInstance(context).invalidate();
+        }
+    }
+
+    private static void deleteIfExists(File file) {
+        if (file.exists() && !file.delete())
+            Timber.w("deleteIfExists(): Failed to delete %s", file);
+    }
+
     public static void deleteDatabase(Context context) {
         Timber.d("Deleting corrupted database");
         synchronized (MeasurementsDatabase.class) {
             invalidateInstance();
             boolean deleted = context.deleteDatabase(DATABASE_FILE_NAME);
+            CoverageTilePyramid.getInstance(context).invalidate();
             Timber.w("deleteDatabase(): Corrupted database deleted = %s", deleted);
         }
     }
@@ -930,14 +1220,21 @@ public class MeasurementsDatabase {
 
     // ========== INNER OBJECTS ========== //
 
+    interface ICoverageBucketListener {
+        void onBucket(long bucket, int count, double latitudeSum, double longitudeSum, int networkGroupsMask) throws IOException;
+    }
+
     private static class MeasurementsOpenHelper extends SQLiteOpenHelper {
         private static final String INNER_TAG = MeasurementsDatabase.class.getSimpleName() + "." + MeasurementsOpenHelper.class.getSimpleName();
 
         private Context context;
+        private volatile IProgressListener upgradeProgressListener;
 
         MeasurementsOpenHelper(Context context) {
             super(context, DATABASE_FILE_NAME, null, DATABASE_FILE_VERSION);
             this.context = context;
+            // readers including backups don't block inserts
+            setWriteAheadLoggingEnabled(true);
         }
 
         @Override
@@ -966,6 +1263,24 @@ public class MeasurementsDatabase {
             migrationHelper.upgrade(oldVersion, newVersion);
         }
 
+        @Override
+        public void onOpen(SQLiteDatabase sqliteDatabase) {
+            if (!sqliteDatabase.isReadOnly()) {
+                // continue data migration scheduled by upgrade, also when it was interrupted previously
+                DbMigrationHelper migrationHelper = new DbMigrationHelper(sqliteDatabase);
+                migrationHelper.resumePendingMigrations(upgradeProgressListener);
+                try {
+                    createMissingSecondaryIndexes(sqliteDatabase);
+                } catch (SQLiteException ex) {
+                    Timber.tag(INNER_TAG).e(ex, "onOpen(): Failed to create missing indexes");
+                }
+            }
+        }
+
+        void setUpgradeProgressListener(IProgressListener upgradeProgressListener) {
+            this.upgradeProgressListener = upgradeProgressListener;
+        }
+
         private void createSchema(SQLiteDatabase sqliteDatabase, List<ITable> tables) {
             for (ITable table : tables) {
                 String[] queries = table.getCreateQueries();
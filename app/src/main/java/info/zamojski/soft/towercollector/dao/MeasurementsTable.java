@@ -18,6 +18,7 @@ final class MeasurementsTable implements ITable {
     static final String COLUMN_MEASURED_AT = "measured_at";
     static final String COLUMN_UPLOADED_TO_OCID_AT = "uploaded_to_ocid_at";
     static final String COLUMN_UPLOADED_TO_MLS_AT = "uploaded_to_mls_at";
+    static final String COLUMN_SPATIAL_KEY = "spatial_key";
 
     private static final String QUERY_DROP_TABLE = "DROP TABLE IF EXISTS " + TABLE_NAME;
 
@@ -32,7 +33,8 @@ final class MeasurementsTable implements ITable {
             COLUMN_GPS_ALTITUDE + " REAL NOT NULL, " +
             COLUMN_MEASURED_AT + " INTEGER NOT NULL, " +
             COLUMN_UPLOADED_TO_OCID_AT + " INTEGER DEFAULT NULL, " +
-            COLUMN_UPLOADED_TO_MLS_AT + " INTEGER DEFAULT NULL)";
+            COLUMN_UPLOADED_TO_MLS_AT + " INTEGER DEFAULT NULL, " +
+            COLUMN_SPATIAL_KEY + " INTEGER NOT NULL DEFAULT 0)";
 
     private static final String QUERY_CREATE_INDEX_MEASURED_AT = "CREATE INDEX 'IX_" + TABLE_NAME + "_" + COLUMN_MEASURED_AT +
             "' ON " + TABLE_NAME + " (" + COLUMN_MEASURED_AT + " DESC)";
@@ -43,6 +45,24 @@ final class MeasurementsTable implements ITable {
     private static final String QUERY_CREATE_INDEX_UPLOADED_TO_MLS_AT = "CREATE INDEX 'IX_" + TABLE_NAME + "_" + COLUMN_UPLOADED_TO_MLS_AT +
             "' ON " + TABLE_NAME + " (" + COLUMN_UPLOADED_TO_MLS_AT + " ASC)";
 
+    private static final String QUERY_CREATE_INDEX_SPATIAL_KEY = "CREATE INDEX 'IX_" + TABLE_NAME + "_" + COLUMN_SPATIAL_KEY +
+            "' ON " + TABLE_NAME + " (" + COLUMN_SPATIAL_KEY + " ASC)";
+
+    // not needed while inserting, may be dropped for bulk insert and created again afterwards
+    static final String[] SECONDARY_INDEX_NAMES = new String[]{
+            "IX_" + TABLE_NAME + "_" + COLUMN_MEASURED_AT,
+            "IX_" + TABLE_NAME + "_" + COLUMN_UPLOADED_TO_OCID_AT,
+            "IX_" + TABLE_NAME + "_" + COLUMN_UPLOADED_TO_MLS_AT,
+            "IX_" + TABLE_NAME + "_" + COLUMN_SPATIAL_KEY
+    };
+
+    static final String[] SECONDARY_INDEX_QUERIES = new String[]{
+            QUERY_CREATE_INDEX_MEASURED_AT,
+            QUERY_CREATE_INDEX_UPLOADED_TO_OCID_AT,
+            QUERY_CREATE_INDEX_UPLOADED_TO_MLS_AT,
+            QUERY_CREATE_INDEX_SPATIAL_KEY
+    };
+
     @Override
     public String[] getCreateQueries() {
         return new String[]{
@@ -50,7 +70,8 @@ final class MeasurementsTable implements ITable {
                 QUERY_CREATE_TABLE,
                 QUERY_CREATE_INDEX_MEASURED_AT,
                 QUERY_CREATE_INDEX_UPLOADED_TO_OCID_AT,
-                QUERY_CREATE_INDEX_UPLOADED_TO_MLS_AT
+                QUERY_CREATE_INDEX_UPLOADED_TO_MLS_AT,
+                QUERY_CREATE_INDEX_SPATIAL_KEY
         };
     }
 }
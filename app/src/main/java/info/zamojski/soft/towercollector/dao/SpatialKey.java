@@ -0,0 +1,128 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Z-order (Morton) key of a cell in a 2^16 x 2^16 grid covering the globe (about 600 x 300 m at the equator).
+ * Nearby locations share key prefixes, so any area is covered by a few continuous key ranges
+ * which can be looked up using ordinary B-tree index.
+ */
+final class SpatialKey {
+
+    static final int GRID_BITS = 16;
+    private static final int GRID_SIZE = 1 << GRID_BITS;
+    private static final int MAX_RANGES = 24;
+
+    private SpatialKey() {
+    }
+
+    static long encode(double lat, double lon) {
+        return interleave(toGridX(lon), toGridY(lat));
+    }
+
+    /**
+     * Returns number of bits to shift the key right to get bucket of given grid level (0 - whole globe, 16 - single cell).
+     */
+    static int getBucketShift(int level) {
+        level = Math.max(0, Math.min(GRID_BITS, level));
+        return 2 * (GRID_BITS - level);
+    }
+
+    /**
+     * Returns sorted, non-overlapping key ranges [from, to] covering given area.
+     * Ranges may cover slightly bigger area, so exact coordinates still need to be filtered.
+     */
+    static List<long[]> getRanges(double minLat, double minLon, double maxLat, double maxLon) {
+        int minX = toGridX(minLon);
+        int maxX = toGridX(maxLon);
+        int minY = toGridY(minLat);
+        int maxY = toGridY(maxLat);
+        List<long[]> ranges = new ArrayList<>();
+        // quadtree nodes (x, y) partially overlapping the area at current level
+        List<int[]> partialNodes = new ArrayList<>();
+        partialNodes.add(new int[]{0, 0});
+        for (int level = 0; level <= GRID_BITS && !partialNodes.isEmpty(); level++) {
+            int size = GRID_SIZE >> level;
+            int half = size >> 1;
+            List<int[]> nextPartialNodes = new ArrayList<>();
+            for (int i = 0; i < partialNodes.size(); i++) {
+                int x = partialNodes.get(i)[0];
+                int y = partialNodes.get(i)[1];
+                if (x >= minX && x + size - 1 <= maxX && y >= minY && y + size - 1 <= maxY) {
+                    addNodeRange(ranges, x, y, size);
+                    continue;
+                }
+                List<int[]> children = new ArrayList<>(4);
+                if (level < GRID_BITS) {
+                    for (int childY = y; childY <= y + half; childY += half) {
+                        for (int childX = x; childX <= x + half; childX += half) {
+                            if (childX <= maxX && childX + half - 1 >= minX && childY <= maxY && childY + half - 1 >= minY) {
+                                children.add(new int[]{childX, childY});
+                            }
+                        }
+                    }
+                }
+                // every node left in the queue ends up as at least one range
+                int remainingNodes = partialNodes.size() - i - 1;
+                if (!children.isEmpty() && ranges.size() + nextPartialNodes.size() + remainingNodes + children.size() <= MAX_RANGES) {
+                    nextPartialNodes.addAll(children);
+                } else {
+                    // too many ranges would make the query slower than scanning few more rows
+                    addNodeRange(ranges, x, y, size);
+                }
+            }
+            partialNodes = nextPartialNodes;
+        }
+        return mergeRanges(ranges);
+    }
+
+    private static void addNodeRange(List<long[]> ranges, int x, int y, int size) {
+        long from = interleave(x, y);
+        ranges.add(new long[]{from, from + (long) size * size - 1});
+    }
+
+    private static List<long[]> mergeRanges(List<long[]> ranges) {
+        Collections.sort(ranges, (first, second) -> Long.compare(first[0], second[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] last = (merged.isEmpty() ? null : merged.get(merged.size() - 1));
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    static int toGridX(double lon) {
+        return clamp((int) Math.floor((lon + 180.0) / 360.0 * GRID_SIZE));
+    }
+
+    static int toGridY(double lat) {
+        return clamp((int) Math.floor((lat + 90.0) / 180.0 * GRID_SIZE));
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, value));
+    }
+
+    static long interleave(int x, int y) {
+        return spread(x) | (spread(y) << 1);
+    }
+
+    private static long spread(int value) {
+        long v = value & 0xFFFFL;
+        v = (v | (v << 8)) & 0x00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0FL;
+        v = (v | (v << 2)) & 0x33333333L;
+        v = (v | (v << 1)) & 0x55555555L;
+        return v;
+    }
+}
@@ -0,0 +1,154 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao;
+
+import java.util.BitSet;
+
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.model.Statistics;
+import timber.log.Timber;
+
+/**
+ * Keeps statistics up to date in memory after each insert so the full statistics query
+ * is executed only after startup, day change or operations that remove or upload data.
+ */
+final class StatisticsTracker {
+
+    private boolean valid = false;
+    private int generation = 0;
+
+    private long todayMidnight;
+    private long sinceToday;
+
+    private int locationsToday;
+    private int cellsToday;
+    private int discoveredCellsToday;
+    private int locationsLocal;
+    private int cellsLocal;
+    private int discoveredCellsLocal;
+    private long sinceLocal;
+    private int locationsGlobal;
+    private int discoveredCellsGlobal;
+    private long sinceGlobal;
+    private int toUploadOcid;
+    private int toUploadMls;
+
+    private BitSet todayCellIds;
+    private BitSet localCellIds;
+
+    private Statistics snapshot;
+
+    /**
+     * Returns current statistics or null when they have to be recalculated.
+     */
+    synchronized Statistics get(long todayMidnight) {
+        if (!valid || this.todayMidnight != todayMidnight)
+            return null;
+        if (snapshot == null)
+            snapshot = createSnapshot();
+        return snapshot;
+    }
+
+    synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Replaces counters with values calculated from database unless tracker has been invalidated in the meantime.
+     */
+    synchronized void reset(int generation, Statistics stats, long todayMidnight, long sinceToday, BitSet todayCellIds, BitSet localCellIds) {
+        if (this.generation != generation) {
+            Timber.d("reset(): Statistics changed during calculation, not tracking");
+            return;
+        }
+        this.todayMidnight = todayMidnight;
+        this.sinceToday = sinceToday;
+        this.locationsToday = stats.getLocationsToday();
+        this.cellsToday = stats.getCellsToday();
+        this.discoveredCellsToday = stats.getDiscoveredCellsToday();
+        this.locationsLocal = stats.getLocationsLocal();
+        this.cellsLocal = stats.getCellsLocal();
+        this.discoveredCellsLocal = stats.getDiscoveredCellsLocal();
+        this.sinceLocal = stats.getSinceLocal();
+        this.locationsGlobal = stats.getLocationsGlobal();
+        this.discoveredCellsGlobal = stats.getDiscoveredCellsGlobal();
+        this.sinceGlobal = stats.getSinceGlobal();
+        this.toUploadOcid = stats.getToUploadOcid();
+        this.toUploadMls = stats.getToUploadMls();
+        this.todayCellIds = todayCellIds;
+        this.localCellIds = localCellIds;
+        this.snapshot = stats;
+        this.valid = true;
+    }
+
+    synchronized void invalidate() {
+        generation++;
+        valid = false;
+        snapshot = null;
+        todayCellIds = null;
+        localCellIds = null;
+    }
+
+    /**
+     * Must be called only for committed measurements.
+     */
+    synchronized void onInserted(Measurement measurement, int discoveredCells) {
+        if (!valid)
+            return;
+        long measuredAt = measurement.getMeasuredAt();
+        // minimal dates are part of discovered cells conditions, recalculate when they move back
+        if ((locationsLocal > 0 && measuredAt < sinceLocal)
+                || (measuredAt > todayMidnight && locationsToday > 0 && measuredAt < sinceToday)) {
+            invalidate();
+            return;
+        }
+        int signals = measurement.getCells().size();
+        locationsGlobal += signals;
+        discoveredCellsGlobal += discoveredCells;
+        toUploadOcid += signals;
+        toUploadMls += signals;
+        if (locationsLocal == 0)
+            sinceLocal = measuredAt;
+        locationsLocal += signals;
+        discoveredCellsLocal += discoveredCells;
+        boolean today = (measuredAt > todayMidnight);
+        if (today) {
+            if (locationsToday == 0)
+                sinceToday = measuredAt;
+            locationsToday += signals;
+            discoveredCellsToday += discoveredCells;
+        }
+        for (Cell cell : measurement.getCells()) {
+            int cellId = cell.getCellId();
+            if (!localCellIds.get(cellId)) {
+                localCellIds.set(cellId);
+                cellsLocal++;
+            }
+            if (today && !todayCellIds.get(cellId)) {
+                todayCellIds.set(cellId);
+                cellsToday++;
+            }
+        }
+        snapshot = null;
+    }
+
+    private Statistics createSnapshot() {
+        Statistics stats = new Statistics();
+        stats.setLocationsToday(locationsToday);
+        stats.setCellsToday(cellsToday);
+        stats.setDiscoveredCellsToday(discoveredCellsToday);
+        stats.setLocationsLocal(locationsLocal);
+        stats.setCellsLocal(cellsLocal);
+        stats.setDiscoveredCellsLocal(discoveredCellsLocal);
+        stats.setSinceLocal(sinceLocal);
+        stats.setLocationsGlobal(locationsGlobal);
+        stats.setDiscoveredCellsGlobal(discoveredCellsGlobal);
+        stats.setSinceGlobal(sinceGlobal);
+        stats.setToUploadOcid(toUploadOcid);
+        stats.setToUploadMls(toUploadMls);
+        return stats;
+    }
+}
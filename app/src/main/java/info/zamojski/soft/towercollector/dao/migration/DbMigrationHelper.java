@@ -5,14 +5,28 @@
 package info.zamojski.soft.towercollector.dao.migration;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
 import timber.log.Timber;
 
+/**
+ * Runs upgrade scripts. Rows changed by trailing rewrite scripts are processed after the schema upgrade in short transactions,
+ * with position stored in the database, so long migration reports progress and continues where it stopped when the app was killed.
+ */
 public class DbMigrationHelper {
 
+    private static final String JOBS_TABLE_NAME = "migration_jobs";
+    private static final String JOB_QUERIES_TABLE_NAME = "migration_job_queries";
+    private static final long ROW_IDS_PER_CHUNK = 10000;
+    private static final int PROGRESS_MAX = 1000;
+
     private final SQLiteDatabase database;
     private final List<IUpgradeScript> upgradeScripts;
 
@@ -21,17 +35,154 @@ public class DbMigrationHelper {
         this.upgradeScripts = new ArrayList<>();
     }
 
+    /**
+     * Upgrades schema, must be called inside transaction. Rewrites of rows which no other script depends on are only scheduled.
+     */
     public void upgrade(int from, int to) {
         registerScripts(from);
+        // consecutive rewrites of the same table are merged
+        Map<String, TableRewrite> rewrites = new LinkedHashMap<>();
         for (IUpgradeScript script : upgradeScripts) {
             try {
-                Timber.i("upgrade(): Executing upgrade script %s", script.getClass().getSimpleName());
-                script.performUpgrade(database);
+                if (script instanceof RewriteUpgradeScript) {
+                    RewriteUpgradeScript rewriteScript = (RewriteUpgradeScript) script;
+                    Timber.i("upgrade(): Merging upgrade script %s into rewrite of %s", script.getClass().getSimpleName(), rewriteScript.getTableName());
+                    TableRewrite rewrite = rewrites.get(rewriteScript.getTableName());
+                    if (rewrite == null) {
+                        rewrite = new TableRewrite(rewriteScript.getTableName());
+                        rewrites.put(rewrite.getTableName(), rewrite);
+                    }
+                    rewriteScript.describeRewrite(rewrite);
+                } else {
+                    // following script may read rewritten rows
+                    for (TableRewrite rewrite : rewrites.values()) {
+                        Timber.i("upgrade(): Rewriting table %s", rewrite.getTableName());
+                        rewrite.apply(database);
+                    }
+                    rewrites.clear();
+                    Timber.i("upgrade(): Executing upgrade script %s", script.getClass().getSimpleName());
+                    script.performUpgrade(database);
+                }
             } catch (RuntimeException ex) {
                 Timber.e(ex, "upgrade(): Upgrade script %s failed", script.getClass().getSimpleName());
                 throw ex;
             }
         }
+        for (TableRewrite rewrite : rewrites.values()) {
+            scheduleRewrite(rewrite);
+        }
+    }
+
+    public static boolean hasPendingMigrations(SQLiteDatabase database) {
+        return DatabaseUtils.longForQuery(database, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?", new String[]{JOBS_TABLE_NAME}) > 0;
+    }
+
+    /**
+     * Processes rows of scheduled rewrites chunk by chunk, must be called outside of transaction.
+     */
+    public void resumePendingMigrations(IProgressListener progressListener) {
+        if (!hasPendingMigrations(database))
+            return;
+        List<MigrationJob> jobs = loadJobs();
+        long total = 0;
+        long processed = 0;
+        for (MigrationJob job : jobs) {
+            total += job.maxRowId - job.firstRowId;
+            processed += job.lastRowId - job.firstRowId;
+        }
+        Timber.i("resumePendingMigrations(): Resuming %s migration jobs at %s of %s row ids", jobs.size(), processed, total);
+        reportProgress(progressListener, processed, total);
+        for (MigrationJob job : jobs) {
+            while (job.lastRowId < job.maxRowId) {
+                long toRowId = Math.min(job.lastRowId + ROW_IDS_PER_CHUNK, job.maxRowId);
+                database.beginTransaction();
+                try {
+                    database.execSQL(job.chunkQuery, new Object[]{job.lastRowId, toRowId});
+                    database.execSQL("UPDATE " + JOBS_TABLE_NAME + " SET last_row_id = ? WHERE row_id = ?", new Object[]{toRowId, job.id});
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                processed += toRowId - job.lastRowId;
+                job.lastRowId = toRowId;
+                reportProgress(progressListener, processed, total);
+            }
+            finishJob(job);
+        }
+        database.beginTransaction();
+        try {
+            database.execSQL("DROP TABLE " + JOB_QUERIES_TABLE_NAME);
+            database.execSQL("DROP TABLE " + JOBS_TABLE_NAME);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        Timber.i("resumePendingMigrations(): All migration jobs finished");
+    }
+
+    private void scheduleRewrite(TableRewrite rewrite) {
+        Timber.i("scheduleRewrite(): Scheduling rewrite of table %s", rewrite.getTableName());
+        rewrite.prepare(database);
+        String chunkQuery = rewrite.getChunkQuery();
+        if (chunkQuery == null) {
+            for (String query : rewrite.getFinishQueries()) {
+                database.execSQL(query);
+            }
+            return;
+        }
+        database.execSQL("CREATE TABLE IF NOT EXISTS " + JOBS_TABLE_NAME + " (row_id INTEGER PRIMARY KEY NOT NULL, chunk_query TEXT NOT NULL, first_row_id INTEGER NOT NULL, last_row_id INTEGER NOT NULL, max_row_id INTEGER NOT NULL)");
+        database.execSQL("CREATE TABLE IF NOT EXISTS " + JOB_QUERIES_TABLE_NAME + " (row_id INTEGER PRIMARY KEY NOT NULL, job_id INTEGER NOT NULL, query TEXT NOT NULL)");
+        String sourceTable = rewrite.getSourceTableName();
+        long firstRowId = DatabaseUtils.longForQuery(database, "SELECT IFNULL(MIN(row_id) - 1, 0) FROM " + sourceTable, null);
+        long maxRowId = DatabaseUtils.longForQuery(database, "SELECT IFNULL(MAX(row_id), 0) FROM " + sourceTable, null);
+        database.execSQL("INSERT INTO " + JOBS_TABLE_NAME + " (chunk_query, first_row_id, last_row_id, max_row_id) VALUES (?, ?, ?, ?)",
+                new Object[]{chunkQuery, firstRowId, firstRowId, maxRowId});
+        long jobId = DatabaseUtils.longForQuery(database, "SELECT last_insert_rowid()", null);
+        for (String query : rewrite.getFinishQueries()) {
+            database.execSQL("INSERT INTO " + JOB_QUERIES_TABLE_NAME + " (job_id, query) VALUES (?, ?)", new Object[]{jobId, query});
+        }
+    }
+
+    private List<MigrationJob> loadJobs() {
+        List<MigrationJob> jobs = new ArrayList<>();
+        Cursor cursor = database.rawQuery("SELECT row_id, chunk_query, first_row_id, last_row_id, max_row_id FROM " + JOBS_TABLE_NAME + " ORDER BY row_id", null);
+        try {
+            while (cursor.moveToNext()) {
+                jobs.add(new MigrationJob(cursor.getLong(0), cursor.getString(1), cursor.getLong(2), cursor.getLong(3), cursor.getLong(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return jobs;
+    }
+
+    private void finishJob(MigrationJob job) {
+        List<String> queries = new ArrayList<>();
+        Cursor cursor = database.rawQuery("SELECT query FROM " + JOB_QUERIES_TABLE_NAME + " WHERE job_id = ? ORDER BY row_id", new String[]{String.valueOf(job.id)});
+        try {
+            while (cursor.moveToNext()) {
+                queries.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        database.beginTransaction();
+        try {
+            for (String query : queries) {
+                database.execSQL(query);
+            }
+            database.execSQL("DELETE FROM " + JOB_QUERIES_TABLE_NAME + " WHERE job_id = ?", new Object[]{job.id});
+            database.execSQL("DELETE FROM " + JOBS_TABLE_NAME + " WHERE row_id = ?", new Object[]{job.id});
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        Timber.i("finishJob(): Migration job %s finished", job.id);
+    }
+
+    private void reportProgress(IProgressListener progressListener, long processed, long total) {
+        if (progressListener != null)
+            progressListener.reportProgress(total > 0 ? (int) (processed * PROGRESS_MAX / total) : PROGRESS_MAX, PROGRESS_MAX);
     }
 
     private void registerScripts(int from) {
@@ -84,6 +235,24 @@ public class DbMigrationHelper {
         if (from < 17) {
             this.upgradeScripts.add(new UpgradeScript17());
         }
+        if (from < 18) {
+            this.upgradeScripts.add(new UpgradeScript18());
+        }
     }
 
+    private static class MigrationJob {
+        private final long id;
+        private final String chunkQuery;
+        private final long firstRowId;
+        private long lastRowId;
+        private final long maxRowId;
+
+        private MigrationJob(long id, String chunkQuery, long firstRowId, long lastRowId, long maxRowId) {
+            this.id = id;
+            this.chunkQuery = chunkQuery;
+            this.firstRowId = firstRowId;
+            this.lastRowId = lastRowId;
+            this.maxRowId = maxRowId;
+        }
+    }
 }
@@ -0,0 +1,25 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao.migration;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Upgrade script changing every row of the table. Instead of touching rows itself it describes the change,
+ * so consecutive scripts changing the same table are applied in one pass done in resumable chunks.
+ */
+abstract class RewriteUpgradeScript implements IUpgradeScript {
+
+    abstract String getTableName();
+
+    abstract void describeRewrite(TableRewrite rewrite);
+
+    @Override
+    public void performUpgrade(SQLiteDatabase database) {
+        TableRewrite rewrite = new TableRewrite(getTableName());
+        describeRewrite(rewrite);
+        rewrite.apply(database);
+    }
+}
@@ -0,0 +1,170 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao.migration;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes of one table collected from consecutive upgrade scripts. Table is either recreated and rows are copied
+ * or altered and rows are updated in place, in both cases rows are processed once no matter how many scripts changed the table.
+ */
+class TableRewrite {
+
+    static final String COPY_TABLE_SUFFIX = "_migration";
+
+    private final String tableName;
+    private boolean recreate = false;
+    private final List<String> cleanupQueries = new ArrayList<>();
+    private final List<String> columnDefinitions = new ArrayList<>();
+    private final List<String> constraints = new ArrayList<>();
+    private final List<String> addedColumnDefinitions = new ArrayList<>();
+    // target column to expression on source row
+    private final Map<String, String> columnValues = new LinkedHashMap<>();
+    private final List<String> finishQueries = new ArrayList<>();
+
+    TableRewrite(String tableName) {
+        this.tableName = tableName;
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Replaces table with new one defined by columns and constraints, old rows are copied using given column values.
+     * Indexes and triggers which must not exist during copy should be passed as cleanup queries.
+     */
+    void recreate(String[] columnDefinitions, String[] constraints, Map<String, String> columnValues, String... cleanupQueries) {
+        if (recreate || !this.addedColumnDefinitions.isEmpty() || !this.columnValues.isEmpty())
+            throw new IllegalStateException("Table " + tableName + " already changed by previous script");
+        this.recreate = true;
+        for (String definition : columnDefinitions) {
+            this.columnDefinitions.add(definition);
+        }
+        for (String constraint : constraints) {
+            this.constraints.add(constraint);
+        }
+        for (String query : cleanupQueries) {
+            this.cleanupQueries.add(query);
+        }
+        this.columnValues.putAll(columnValues);
+    }
+
+    /**
+     * Adds column, existing rows get default value unless value expression is set.
+     */
+    void addColumn(String columnDefinition) {
+        if (recreate) {
+            columnDefinitions.add(columnDefinition);
+        } else {
+            addedColumnDefinitions.add(columnDefinition);
+        }
+    }
+
+    /**
+     * Sets value of column for existing rows, expression is evaluated on row before the upgrade.
+     */
+    void setColumnValue(String column, String expression) {
+        columnValues.put(column, expression);
+    }
+
+    /**
+     * Adds query executed after all rows are rewritten, e.g. index creation.
+     */
+    void addFinishQuery(String query) {
+        finishQueries.add(query);
+    }
+
+    /**
+     * Applies schema changes, must be done before any following upgrade script.
+     */
+    void prepare(SQLiteDatabase database) {
+        if (recreate) {
+            for (String query : cleanupQueries) {
+                database.execSQL(query);
+            }
+            database.execSQL("ALTER TABLE " + tableName + " RENAME TO " + getSourceTableName());
+            database.execSQL(getCreateTableQuery());
+        } else {
+            for (String definition : addedColumnDefinitions) {
+                database.execSQL("ALTER TABLE " + tableName + " ADD COLUMN " + definition);
+            }
+        }
+    }
+
+    /**
+     * Applies all changes at once, used when rows have to be rewritten before following upgrade script.
+     */
+    void apply(SQLiteDatabase database) {
+        prepare(database);
+        String chunkQuery = getChunkQuery();
+        if (chunkQuery != null)
+            database.execSQL(chunkQuery, new Object[]{Long.MIN_VALUE, Long.MAX_VALUE});
+        for (String query : getFinishQueries()) {
+            database.execSQL(query);
+        }
+    }
+
+    /**
+     * Table which rows are iterated over by row id.
+     */
+    String getSourceTableName() {
+        return recreate ? tableName + COPY_TABLE_SUFFIX : tableName;
+    }
+
+    /**
+     * Returns query processing rows in range of row ids passed as two arguments (exclusive, inclusive) or null when rows don't have to be touched.
+     */
+    String getChunkQuery() {
+        String range = " WHERE row_id > ? AND row_id <= ?";
+        if (recreate) {
+            StringBuilder columns = new StringBuilder();
+            StringBuilder values = new StringBuilder();
+            for (Map.Entry<String, String> entry : columnValues.entrySet()) {
+                if (columns.length() > 0) {
+                    columns.append(", ");
+                    values.append(", ");
+                }
+                columns.append(entry.getKey());
+                values.append(entry.getValue());
+            }
+            return "INSERT INTO " + tableName + " (" + columns + ") SELECT " + values + " FROM " + getSourceTableName() + range;
+        }
+        if (columnValues.isEmpty())
+            return null;
+        StringBuilder assignments = new StringBuilder();
+        for (Map.Entry<String, String> entry : columnValues.entrySet()) {
+            if (assignments.length() > 0)
+                assignments.append(", ");
+            assignments.append(entry.getKey()).append(" = ").append(entry.getValue());
+        }
+        return "UPDATE " + tableName + " SET " + assignments + range;
+    }
+
+    List<String> getFinishQueries() {
+        List<String> queries = new ArrayList<>(finishQueries);
+        if (recreate)
+            queries.add("DROP TABLE " + getSourceTableName());
+        return queries;
+    }
+
+    private String getCreateTableQuery() {
+        StringBuilder sb = new StringBuilder("CREATE TABLE ").append(tableName).append(" (");
+        for (int i = 0; i < columnDefinitions.size(); i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(columnDefinitions.get(i));
+        }
+        for (String constraint : constraints) {
+            sb.append(", ").append(constraint);
+        }
+        return sb.append(")").toString();
+    }
+}
@@ -6,6 +6,11 @@ package info.zamojski.soft.towercollector.dao.migration;
 
 import android.database.sqlite.SQLiteDatabase;
 
+/**
+ * Splits locations and measurements into measurements, cells and cell signals. Runs inline in upgrade transaction
+ * instead of as table rewrite because new tables are built by joining and deduplicating several old ones,
+ * and scripts 14 and 15 delete measurements without cell signals so they need all rows migrated.
+ */
 class UpgradeScript13 implements IUpgradeScript {
 
     @Override
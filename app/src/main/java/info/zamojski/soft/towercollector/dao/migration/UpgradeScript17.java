@@ -4,14 +4,17 @@
 
 package info.zamojski.soft.towercollector.dao.migration;
 
-import android.database.sqlite.SQLiteDatabase;
+class UpgradeScript17 extends RewriteUpgradeScript {
 
-class UpgradeScript17 implements IUpgradeScript {
+    @Override
+    String getTableName() {
+        return "cell_signals";
+    }
 
     @Override
-    public void performUpgrade(SQLiteDatabase database) {
+    void describeRewrite(TableRewrite rewrite) {
         // add new columns
-        database.execSQL("ALTER TABLE cell_signals ADD COLUMN ec_no INTEGER NOT NULL DEFAULT " + Integer.MAX_VALUE);
-        database.execSQL("ALTER TABLE cell_signals ADD COLUMN arfcn INTEGER NOT NULL DEFAULT " + Integer.MAX_VALUE);
+        rewrite.addColumn("ec_no INTEGER NOT NULL DEFAULT " + Integer.MAX_VALUE);
+        rewrite.addColumn("arfcn INTEGER NOT NULL DEFAULT " + Integer.MAX_VALUE);
     }
 }
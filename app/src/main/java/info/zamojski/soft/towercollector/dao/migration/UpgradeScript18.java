@@ -0,0 +1,34 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dao.migration;
+
+class UpgradeScript18 extends RewriteUpgradeScript {
+
+    @Override
+    String getTableName() {
+        return "measurements";
+    }
+
+    @Override
+    void describeRewrite(TableRewrite rewrite) {
+        // add spatial key column
+        rewrite.addColumn("spatial_key INTEGER NOT NULL DEFAULT 0");
+        // compute z-order key of 2^16 x 2^16 grid for existing measurements
+        String gridX = "MIN(MAX(CAST((lon + 180.0) / 360.0 * 65536 AS INTEGER), 0), 65535)";
+        String gridY = "MIN(MAX(CAST((lat + 90.0) / 180.0 * 65536 AS INTEGER), 0), 65535)";
+        rewrite.setColumnValue("spatial_key", spread(gridX) + " | (" + spread(gridY) + " << 1)");
+        // create index
+        rewrite.addFinishQuery("CREATE INDEX 'IX_measurements_spatial_key' ON measurements (spatial_key ASC)");
+    }
+
+    private String spread(String value) {
+        String v = "(" + value + ")";
+        v = "((" + v + " | (" + v + " << 8)) & 16711935)";
+        v = "((" + v + " | (" + v + " << 4)) & 252645135)";
+        v = "((" + v + " | (" + v + " << 2)) & 858993459)";
+        v = "((" + v + " | (" + v + " << 1)) & 1431655765)";
+        return v;
+    }
+}
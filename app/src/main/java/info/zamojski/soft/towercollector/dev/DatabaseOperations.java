@@ -4,34 +4,58 @@
 
 package info.zamojski.soft.towercollector.dev;
 
+import android.app.NotificationManager;
 import android.content.Context;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Base64;
+import android.util.Base64OutputStream;
 import android.widget.Toast;
 
+import androidx.documentfile.provider.DocumentFile;
+
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.GZIPOutputStream;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.R;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
+import info.zamojski.soft.towercollector.files.importers.MeasurementsImporter;
 import info.zamojski.soft.towercollector.io.filesystem.FileReader;
 import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
 import info.zamojski.soft.towercollector.io.filesystem.ReadResult;
 import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
+import info.zamojski.soft.towercollector.utils.FileUtils;
 import timber.log.Timber;
 
 public class DatabaseOperations {
 
+    private static final String MEASUREMENTS_IMPORT_DIRECTORY_NAME = "import";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int MEASUREMENTS_IMPORT_NOTIFICATION_ID = 'I';
+    private static final long MEASUREMENTS_IMPORT_PROGRESS_INTERVAL_IN_MILLIS = 500;
+    // limits memory used by crash report, dump of bigger database is useless anyway
+    private static final int MAX_DATABASE_DUMP_LENGTH = 2 * 1024 * 1024;
+
+    // bulk insert drops and recreates indexes so imports can't overlap
+    private static final AtomicBoolean measurementsImportRunning = new AtomicBoolean(false);
+
     public static void importDatabase(Context context) {
         String srcFileName = getDatabaseImportFileName();
-        File dstFile = getDatabasePath(context);
+        // live database is replaced only when whole file is read
+        File dstFile = getDatabaseTransactionFile(context, "-import");
         try {
             Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
             if (storageUri != null) {
@@ -39,7 +63,7 @@ public class DatabaseOperations {
                     @Override
                     protected Void readFileInternal(InputStream inputStream) throws Exception {
                         try (BufferedOutputStream fileOutputStream = new BufferedOutputStream(new FileOutputStream(dstFile))) {
-                            byte[] buffer = new byte[4 * 1024];
+                            byte[] buffer = new byte[COPY_BUFFER_SIZE];
                             int bytesRead;
                             while ((bytesRead = inputStream.read(buffer)) != -1) {
                                 fileOutputStream.write(buffer, 0, bytesRead);
@@ -52,6 +76,7 @@ public class DatabaseOperations {
                 ReadResult<Void> result = fileReader.readFile(MyApplication.getApplication(), storageUri, srcFileName);
                 switch (result.getResultType()) {
                     case Success:
+                        MeasurementsDatabase.replaceDatabase(context, dstFile);
                         Timber.d("importDatabase(): Database imported");
                         break;
                     case StorageNotFound:
@@ -75,80 +100,187 @@ public class DatabaseOperations {
         } catch (Exception ex) {
             Timber.e(ex, "importDatabase(): Failed to import database");
             Toast.makeText(context, R.string.database_import_export_failed_message, Toast.LENGTH_LONG).show();
+        } finally {
+            if (dstFile.exists() && !dstFile.delete())
+                Timber.w("importDatabase(): Failed to delete temporary file %s", dstFile);
+        }
+    }
+
+    /**
+     * Imports all files from import folder located in storage folder in background, progress is shown in notification.
+     */
+    public static void importMeasurements(Context context) {
+        Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
+        if (storageUri == null) {
+            Timber.w("importMeasurements(): Storage access denied");
+            Toast.makeText(context, R.string.storage_access_denied, Toast.LENGTH_LONG).show();
+            return;
         }
+        DocumentFile storageDirectory = DocumentFile.fromTreeUri(context, storageUri);
+        DocumentFile importDirectory = (storageDirectory != null ? storageDirectory.findFile(MEASUREMENTS_IMPORT_DIRECTORY_NAME) : null);
+        if (importDirectory == null || !importDirectory.isDirectory()) {
+            Timber.i("importMeasurements(): Import directory not found");
+            Toast.makeText(context, R.string.storage_file_not_found, Toast.LENGTH_LONG).show();
+            return;
+        }
+        if (!measurementsImportRunning.compareAndSet(false, true)) {
+            Timber.i("importMeasurements(): Import already running");
+            Toast.makeText(context, R.string.measurements_import_already_running, Toast.LENGTH_LONG).show();
+            return;
+        }
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        new Thread(() -> {
+            NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+            MeasurementsImportNotificationHelper notificationHelper = new MeasurementsImportNotificationHelper(context);
+            notificationManager.notify(MEASUREMENTS_IMPORT_NOTIFICATION_ID, notificationHelper.createNotification(notificationManager));
+            IProgressListener progressListener = new IProgressListener() {
+                private long lastReportTime = 0;
+
+                @Override
+                public void reportProgress(int value, int max) {
+                    // avoid being rate limited by notification manager
+                    long now = SystemClock.elapsedRealtime();
+                    if (now - lastReportTime < MEASUREMENTS_IMPORT_PROGRESS_INTERVAL_IN_MILLIS)
+                        return;
+                    lastReportTime = now;
+                    notificationManager.notify(MEASUREMENTS_IMPORT_NOTIFICATION_ID, notificationHelper.updateNotificationProgress(value, max));
+                }
+            };
+            MeasurementsDatabase database = MeasurementsDatabase.getInstance(context);
+            MeasurementsImporter importer = new MeasurementsImporter(database, progressListener);
+            int importedCount = 0;
+            int skippedCount = 0;
+            boolean failed = false;
+            // indexes are dropped and rebuilt once for all files
+            database.beginBulkInsert();
+            try {
+                for (DocumentFile file : importDirectory.listFiles()) {
+                    if (!file.isFile() || !file.canRead())
+                        continue;
+                    Timber.d("importMeasurements(): Importing file %s", file.getName());
+                    notificationManager.notify(MEASUREMENTS_IMPORT_NOTIFICATION_ID, notificationHelper.updateNotificationFile(file.getName()));
+                    try (InputStream inputStream = context.getContentResolver().openInputStream(file.getUri())) {
+                        importedCount += importer.importFile(inputStream, file.length());
+                        skippedCount += importer.getSkippedLinesCount();
+                    } catch (Exception ex) {
+                        Timber.e(ex, "importMeasurements(): Failed to import file %s", file.getName());
+                        failed = true;
+                    }
+                }
+            } finally {
+                try {
+                    database.endBulkInsert();
+                } finally {
+                    notificationManager.cancel(MEASUREMENTS_IMPORT_NOTIFICATION_ID);
+                    measurementsImportRunning.set(false);
+                }
+            }
+            String message = context.getString(R.string.measurements_import_message, importedCount, skippedCount);
+            if (failed)
+                message = context.getString(R.string.database_import_export_failed_message) + "\n" + message;
+            String finalMessage = message;
+            mainHandler.post(() -> Toast.makeText(context, finalMessage, Toast.LENGTH_LONG).show());
+        }, "MeasurementsImport").start();
     }
 
+    /**
+     * Exports online backup of the database in background, collector may keep running meanwhile.
+     */
     public static void exportDatabase(Context context) {
-        File srcFile = getDatabasePath(context);
         String dstFileName = getDatabaseExportFileName();
-        try {
-            Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
-            if (storageUri != null) {
+        Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
+        if (storageUri == null) {
+            Timber.w("exportDatabase(): Storage access denied");
+            Toast.makeText(context, R.string.storage_access_denied, Toast.LENGTH_LONG).show();
+            return;
+        }
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        new Thread(() -> {
+            String message;
+            File backupFile = null;
+            try {
+                backupFile = File.createTempFile("measurements", ".db", FileUtils.getCacheDir(context));
+                MeasurementsDatabase.getInstance(context).backupDatabase(backupFile);
+                File srcFile = backupFile;
                 FileWriter fileWriter = new FileWriter() {
                     @Override
                     protected void writeFileInternal(OutputStream outputStream) throws Exception {
-                        try (InputStream fileInputStream = new FileInputStream(srcFile)) {
-                            BufferedOutputStream fileOutputStream = new BufferedOutputStream(outputStream);
-                            byte[] buffer = new byte[4 * 1024];
-                            int bytesRead;
-                            while ((bytesRead = fileInputStream.read(buffer)) != -1) {
-                                fileOutputStream.write(buffer, 0, bytesRead);
-                            }
-                            fileOutputStream.flush();
-                        }
+                        copyFile(srcFile, outputStream, false);
                     }
                 };
                 WriteResult result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, dstFileName);
                 switch (result.getResultType()) {
                     case Success:
-                        deleteDatabaseTransactionFiles(context);
-                        MeasurementsDatabase.invalidateInstance();
                         Timber.d("exportDatabase(): Database exported");
-                        Toast.makeText(context, R.string.database_export_message, Toast.LENGTH_LONG).show();
+                        message = context.getString(R.string.database_export_message);
                         break;
                     case StorageNotFound:
-                        Toast.makeText(context, R.string.storage_storage_not_found, Toast.LENGTH_LONG).show();
+                        message = context.getString(R.string.storage_storage_not_found);
                         break;
                     case FileNotWritable:
-                        Toast.makeText(context, R.string.storage_file_not_writable, Toast.LENGTH_LONG).show();
+                        message = context.getString(R.string.storage_file_not_writable);
                         break;
                     case Failed:
                     default:
-                        Toast.makeText(context, context.getString(R.string.storage_write_failed, result.getErrorMessage()), Toast.LENGTH_LONG).show();
+                        message = context.getString(R.string.storage_write_failed, result.getErrorMessage());
                         break;
                 }
-            } else {
-                Timber.w("exportDatabase(): Storage access denied");
-                Toast.makeText(context, R.string.storage_access_denied, Toast.LENGTH_LONG).show();
+            } catch (Exception ex) {
+                Timber.e(ex, "exportDatabase(): Failed to export database to \"%s\"", dstFileName);
+                message = context.getString(R.string.database_import_export_failed_message);
+            } finally {
+                if (backupFile != null && !backupFile.delete())
+                    Timber.w("exportDatabase(): Failed to delete backup file %s", backupFile);
             }
-        } catch (Exception ex) {
-            Timber.e(ex, "exportDatabase(): Failed to export database from \"%s\" to \"%s\"", srcFile, (dstFileName != null ? dstFileName : "null"));
-            Toast.makeText(context, R.string.database_import_export_failed_message, Toast.LENGTH_LONG).show();
-        }
+            String finalMessage = message;
+            mainHandler.post(() -> Toast.makeText(context, finalMessage, Toast.LENGTH_LONG).show());
+        }, "DatabaseExport").start();
     }
 
+    /**
+     * Returns compressed and encoded online backup of the database, so it includes also commits still in write-ahead log.
+     * Encoded output is limited in size.
+     */
     public static String getDatabaseBaseString(Context context) {
-        // invalidate handle
-        MeasurementsDatabase.invalidateInstance();
-        // get file
-        File srcFile = getDatabasePath(context);
-        // read and compress
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
-                try (InputStream fileInputStream = new FileInputStream(srcFile)) {
-                    byte[] buffer = new byte[4 * 1024];
-                    int bytesRead;
-                    while ((bytesRead = fileInputStream.read(buffer)) != -1) {
-                        gzipOutputStream.write(buffer, 0, bytesRead);
-                    }
-                    gzipOutputStream.flush();
+        File backupFile = null;
+        try {
+            backupFile = File.createTempFile("measurements", ".db", FileUtils.getCacheDir(context));
+            File srcFile = backupFile;
+            try {
+                MeasurementsDatabase.getInstance(context).backupDatabase(backupFile);
+            } catch (Exception ex) {
+                // corrupted database may not be readable by SQLite, dump what is on disk
+                Timber.w(ex, "getDatabaseBaseString(): Failed to backup database, using database file");
+                srcFile = getDatabasePath(context);
+            }
+            // compress and encode on the fly, only encoded output is kept in memory
+            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+                try (Base64OutputStream base64OutputStream = new Base64OutputStream(new LimitedOutputStream(outputStream, MAX_DATABASE_DUMP_LENGTH), Base64.DEFAULT)) {
+                    copyFile(srcFile, base64OutputStream, true);
                 }
+                // convert to string
+                return outputStream.toString("US-ASCII");
             }
-            outputStream.flush();
-            // convert to string
-            return Base64.encodeToString(outputStream.toByteArray(), Base64.DEFAULT);
         } catch (Exception ex) {
             return ex.toString();
+        } finally {
+            if (backupFile != null && !backupFile.delete())
+                Timber.w("getDatabaseBaseString(): Failed to delete backup file %s", backupFile);
+        }
+    }
+
+    private static void copyFile(File srcFile, OutputStream outputStream, boolean compress) throws IOException {
+        try (InputStream fileInputStream = new FileInputStream(srcFile)) {
+            OutputStream dstOutputStream = (compress ? new GZIPOutputStream(outputStream, COPY_BUFFER_SIZE) : outputStream);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = fileInputStream.read(buffer)) != -1) {
+                dstOutputStream.write(buffer, 0, bytesRead);
+            }
+            if (compress) {
+                ((GZIPOutputStream) dstOutputStream).finish();
+            }
+            dstOutputStream.flush();
         }
     }
 
@@ -194,4 +326,36 @@ public class DatabaseOperations {
     private static String getDatabaseExportFileName() {
         return MeasurementsDatabase.DATABASE_FILE_NAME;
     }
+
+    /**
+     * Fails when more than given number of bytes is written.
+     */
+    private static class LimitedOutputStream extends FilterOutputStream {
+
+        private final int maxLength;
+        private int length = 0;
+
+        private LimitedOutputStream(OutputStream outputStream, int maxLength) {
+            super(outputStream);
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkLength(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkLength(len);
+            out.write(b, off, len);
+        }
+
+        private void checkLength(int len) throws IOException {
+            length += len;
+            if (length > maxLength)
+                throw new IOException("Database dump exceeds " + maxLength + " bytes");
+        }
+    }
 }
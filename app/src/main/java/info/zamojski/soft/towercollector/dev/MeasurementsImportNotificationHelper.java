@@ -0,0 +1,67 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.dev;
+
+import android.annotation.TargetApi;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Build;
+
+import androidx.core.app.NotificationCompat;
+
+import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.utils.NotificationHelperBase;
+
+public class MeasurementsImportNotificationHelper extends NotificationHelperBase {
+
+    private final Context context;
+    private final NotificationCompat.Builder builder;
+
+    public MeasurementsImportNotificationHelper(Context context) {
+        this.context = context;
+        this.builder = new NotificationCompat.Builder(context, OTHER_NOTIFICATION_CHANNEL_ID);
+    }
+
+    public Notification createNotification(NotificationManager notificationManager) {
+        if (isUsingNotificationChannel()) {
+            createNotificationChannel(notificationManager);
+        }
+        // set style
+        builder.setSmallIcon(R.drawable.ic_notification);
+        builder.setColor(context.getResources().getColor(R.color.ic_notification_background_color));
+        builder.setWhen(System.currentTimeMillis());
+        builder.setOnlyAlertOnce(true);
+        builder.setOngoing(true);
+        // set message
+        builder.setContentTitle(context.getString(R.string.measurements_import_notification_title));
+        builder.setProgress(0, 0, true);
+        return builder.build();
+    }
+
+    public Notification updateNotificationFile(String fileName) {
+        String notificationText = context.getString(R.string.measurements_import_notification_progress_info, fileName);
+        builder.setContentText(notificationText);
+        builder.setTicker(notificationText);
+        // length of compressed files is unknown until first progress is reported
+        builder.setProgress(0, 0, true);
+        return builder.build();
+    }
+
+    public Notification updateNotificationProgress(int progress, int max) {
+        builder.setProgress(max, progress, false);
+        return builder.build();
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void createNotificationChannel(NotificationManager notificationManager) {
+        NotificationChannel channel = new NotificationChannel(
+                OTHER_NOTIFICATION_CHANNEL_ID,
+                context.getString(R.string.other_notification_channel_name),
+                NotificationManager.IMPORTANCE_DEFAULT);
+        notificationManager.createNotificationChannel(channel);
+    }
+}
@@ -35,6 +35,7 @@ import info.zamojski.soft.towercollector.files.formatters.csv.CsvUploadFormatter
 import info.zamojski.soft.towercollector.files.formatters.gpx.GpxExportFormatter;
 import info.zamojski.soft.towercollector.files.formatters.json.JsonMozillaExportFormatter;
 import info.zamojski.soft.towercollector.files.formatters.kml.KmlExportFormatter;
+import info.zamojski.soft.towercollector.files.generators.wrappers.ArchiveGeneratorWrapper;
 import info.zamojski.soft.towercollector.files.generators.wrappers.CompositeTextGeneratorWrapper;
 import info.zamojski.soft.towercollector.files.generators.wrappers.CsvTextGeneratorWrapper;
 import info.zamojski.soft.towercollector.files.generators.wrappers.GpxTextGeneratorWrapper;
@@ -222,6 +223,11 @@ public class ExportWorker extends Worker implements IProgressListener {
                     subGenerators.add(new KmlTextGeneratorWrapper(storageUri, fileName, null, CompressionFormat.Zip, new KmlExportFormatter()));
                 }
                 break;
+                case Archive: {
+                    String fileName = FileUtils.getCurrentDateFileName(currentDateTime, "", "tca");
+                    subGenerators.add(new ArchiveGeneratorWrapper(storageUri, fileName, compressedExtension, compressionFormat));
+                }
+                break;
                 default:
                     throw new UnsupportedOperationException("This file type " + fileType + " is not supported");
             }
@@ -236,6 +242,8 @@ public class ExportWorker extends Worker implements IProgressListener {
                 return CompressionFormat.Zip;
             } else if (getStringById(R.string.preferences_export_compression_format_entries_value_gzip).equals(compressionFormat)) {
                 return CompressionFormat.GZip;
+            } else if (getStringById(R.string.preferences_export_compression_format_entries_value_gzip_parallel).equals(compressionFormat)) {
+                return CompressionFormat.ParallelGZip;
             }
         }
         return CompressionFormat.None;
@@ -246,6 +254,7 @@ public class ExportWorker extends Worker implements IProgressListener {
             case Zip:
                 return "zip";
             case GZip:
+            case ParallelGZip:
                 return "gz";
             default:
                 return null; // no compression
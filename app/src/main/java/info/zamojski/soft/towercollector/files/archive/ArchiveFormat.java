@@ -0,0 +1,214 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.archive;
+
+import info.zamojski.soft.towercollector.model.Cell;
+
+/**
+ * Layout of binary archive. File starts with magic bytes and version followed by blocks and a zero terminator.
+ * Each block holds up to {@link #MEASUREMENTS_PER_BLOCK} measurements stored column by column:
+ * measurement count, cell count, dictionary size, column count and then every column prefixed with its encoding,
+ * length and stored length in bytes. Column is deflated when it makes it smaller.
+ * All numbers are varints, signed ones zigzag encoded. Timestamps, coordinates and altitude are delta encoded within block,
+ * coordinates and GPS values are stored as fixed-point numbers. Cell identities are kept in a per-block dictionary
+ * and signal columns are sparse, only deltas of values different from unknown are stored.
+ * Readers skip columns they don't know, so new columns can be appended without changing the version.
+ */
+final class ArchiveFormat {
+
+    static final byte[] MAGIC = new byte[]{'T', 'C', 'A', 'R'};
+    static final int VERSION = 1;
+
+    static final int ENCODING_PLAIN = 0;
+    static final int ENCODING_DEFLATE = 1;
+
+    static final int MEASUREMENTS_PER_BLOCK = 4096;
+    // guards against allocating huge buffers for corrupted files
+    static final int MAX_CELLS_PER_BLOCK = 64 * MEASUREMENTS_PER_BLOCK;
+    static final int MAX_COLUMN_LENGTH = 64 * 1024 * 1024;
+
+    static final double COORDINATE_SCALE = 1e7;
+    static final double GPS_VALUE_SCALE = 100;
+    // both unknown cid and unknown signal
+    static final int UNKNOWN_VALUE = Cell.UNKNOWN_SIGNAL;
+
+    static final int COLUMN_MEASURED_AT = 0;
+    static final int COLUMN_LATITUDE = 1;
+    static final int COLUMN_LONGITUDE = 2;
+    static final int COLUMN_GPS_ACCURACY = 3;
+    static final int COLUMN_GPS_SPEED = 4;
+    static final int COLUMN_GPS_BEARING = 5;
+    static final int COLUMN_GPS_ALTITUDE = 6;
+    static final int COLUMN_CELLS_COUNT = 7;
+    static final int COLUMN_DICTIONARY_MCC = 8;
+    static final int COLUMN_DICTIONARY_MNC = 9;
+    static final int COLUMN_DICTIONARY_LAC = 10;
+    static final int COLUMN_DICTIONARY_CID = 11;
+    static final int COLUMN_DICTIONARY_NET_TYPE = 12;
+    static final int COLUMN_DICTIONARY_DISCOVERED_AT = 13;
+    static final int COLUMN_CELL_IDENTITY = 14;
+    static final int COLUMN_CELL_NEIGHBORING = 15;
+    static final int COLUMN_FIRST_SIGNAL = 16;
+
+    static final int SIGNAL_PSC = 0;
+    static final int SIGNAL_TA = 1;
+    static final int SIGNAL_ASU = 2;
+    static final int SIGNAL_DBM = 3;
+    static final int SIGNAL_RSRP = 4;
+    static final int SIGNAL_RSRQ = 5;
+    static final int SIGNAL_RSSI = 6;
+    static final int SIGNAL_RSSNR = 7;
+    static final int SIGNAL_CQI = 8;
+    static final int SIGNAL_RSCP = 9;
+    static final int SIGNAL_CSI_RSRP = 10;
+    static final int SIGNAL_CSI_RSRQ = 11;
+    static final int SIGNAL_CSI_SINR = 12;
+    static final int SIGNAL_SS_RSRP = 13;
+    static final int SIGNAL_SS_RSRQ = 14;
+    static final int SIGNAL_SS_SINR = 15;
+    static final int SIGNAL_CDMA_DBM = 16;
+    static final int SIGNAL_CDMA_ECIO = 17;
+    static final int SIGNAL_EVDO_DBM = 18;
+    static final int SIGNAL_EVDO_ECIO = 19;
+    static final int SIGNAL_EVDO_SNR = 20;
+    static final int SIGNAL_EC_NO = 21;
+    static final int SIGNAL_ARFCN = 22;
+    static final int SIGNAL_COLUMNS_COUNT = 23;
+
+    static final int COLUMNS_COUNT = COLUMN_FIRST_SIGNAL + SIGNAL_COLUMNS_COUNT;
+
+    private ArchiveFormat() {
+        // Avoid instantiation
+    }
+
+    static int getSignal(Cell cell, int signal) {
+        switch (signal) {
+            case SIGNAL_PSC:
+                return cell.getPsc();
+            case SIGNAL_TA:
+                return cell.getTa();
+            case SIGNAL_ASU:
+                return cell.getAsu();
+            case SIGNAL_DBM:
+                return cell.getDbm();
+            case SIGNAL_RSRP:
+                return cell.getRsrp();
+            case SIGNAL_RSRQ:
+                return cell.getRsrq();
+            case SIGNAL_RSSI:
+                return cell.getRssi();
+            case SIGNAL_RSSNR:
+                return cell.getRssnr();
+            case SIGNAL_CQI:
+                return cell.getCqi();
+            case SIGNAL_RSCP:
+                return cell.getRscp();
+            case SIGNAL_CSI_RSRP:
+                return cell.getCsiRsrp();
+            case SIGNAL_CSI_RSRQ:
+                return cell.getCsiRsrq();
+            case SIGNAL_CSI_SINR:
+                return cell.getCsiSinr();
+            case SIGNAL_SS_RSRP:
+                return cell.getSsRsrp();
+            case SIGNAL_SS_RSRQ:
+                return cell.getSsRsrq();
+            case SIGNAL_SS_SINR:
+                return cell.getSsSinr();
+            case SIGNAL_CDMA_DBM:
+                return cell.getCdmaDbm();
+            case SIGNAL_CDMA_ECIO:
+                return cell.getCdmaEcio();
+            case SIGNAL_EVDO_DBM:
+                return cell.getEvdoDbm();
+            case SIGNAL_EVDO_ECIO:
+                return cell.getEvdoEcio();
+            case SIGNAL_EVDO_SNR:
+                return cell.getEvdoSnr();
+            case SIGNAL_EC_NO:
+                return cell.getEcNo();
+            case SIGNAL_ARFCN:
+                return cell.getArfcn();
+            default:
+                throw new IllegalArgumentException("Unknown signal column " + signal);
+        }
+    }
+
+    static void setSignal(Cell cell, int signal, int value) {
+        switch (signal) {
+            case SIGNAL_PSC:
+                cell.setPsc(value);
+                break;
+            case SIGNAL_TA:
+                cell.setTa(value);
+                break;
+            case SIGNAL_ASU:
+                cell.setAsu(value);
+                break;
+            case SIGNAL_DBM:
+                cell.setDbm(value);
+                break;
+            case SIGNAL_RSRP:
+                cell.setRsrp(value);
+                break;
+            case SIGNAL_RSRQ:
+                cell.setRsrq(value);
+                break;
+            case SIGNAL_RSSI:
+                cell.setRssi(value);
+                break;
+            case SIGNAL_RSSNR:
+                cell.setRssnr(value);
+                break;
+            case SIGNAL_CQI:
+                cell.setCqi(value);
+                break;
+            case SIGNAL_RSCP:
+                cell.setRscp(value);
+                break;
+            case SIGNAL_CSI_RSRP:
+                cell.setCsiRsrp(value);
+                break;
+            case SIGNAL_CSI_RSRQ:
+                cell.setCsiRsrq(value);
+                break;
+            case SIGNAL_CSI_SINR:
+                cell.setCsiSinr(value);
+                break;
+            case SIGNAL_SS_RSRP:
+                cell.setSsRsrp(value);
+                break;
+            case SIGNAL_SS_RSRQ:
+                cell.setSsRsrq(value);
+                break;
+            case SIGNAL_SS_SINR:
+                cell.setSsSinr(value);
+                break;
+            case SIGNAL_CDMA_DBM:
+                cell.setCdmaDbm(value);
+                break;
+            case SIGNAL_CDMA_ECIO:
+                cell.setCdmaEcio(value);
+                break;
+            case SIGNAL_EVDO_DBM:
+                cell.setEvdoDbm(value);
+                break;
+            case SIGNAL_EVDO_ECIO:
+                cell.setEvdoEcio(value);
+                break;
+            case SIGNAL_EVDO_SNR:
+                cell.setEvdoSnr(value);
+                break;
+            case SIGNAL_EC_NO:
+                cell.setEcNo(value);
+                break;
+            case SIGNAL_ARFCN:
+                cell.setArfcn(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown signal column " + signal);
+        }
+    }
+}
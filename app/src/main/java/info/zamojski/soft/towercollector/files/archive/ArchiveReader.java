@@ -0,0 +1,224 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Inflater;
+
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Reads measurements from binary archive described in {@link ArchiveFormat}, block by block.
+ */
+public class ArchiveReader {
+
+    private final InputStream in;
+    private final ColumnBuffer[] columns = new ColumnBuffer[ArchiveFormat.COLUMNS_COUNT];
+    private final ColumnBuffer storedColumn = new ColumnBuffer(4 * 1024);
+    private final Inflater inflater = new Inflater();
+    private final byte[] skipBuffer = new byte[4 * 1024];
+    private boolean finished = false;
+
+    public ArchiveReader(InputStream in) throws IOException {
+        this.in = in;
+        byte[] magic = new byte[ArchiveFormat.MAGIC.length];
+        ColumnBuffer.readFully(in, magic, magic.length);
+        if (!Arrays.equals(magic, ArchiveFormat.MAGIC))
+            throw new IOException("Not a measurements archive");
+        long version = ColumnBuffer.readVarint(in);
+        if (version != ArchiveFormat.VERSION)
+            throw new IOException("Unsupported archive version " + version);
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new ColumnBuffer(4 * 1024);
+        }
+    }
+
+    /**
+     * Checks whether given beginning of a file belongs to an archive.
+     */
+    public static boolean isArchive(byte[] header, int length) {
+        if (length < ArchiveFormat.MAGIC.length)
+            return false;
+        for (int i = 0; i < ArchiveFormat.MAGIC.length; i++) {
+            if (header[i] != ArchiveFormat.MAGIC[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns measurements of next block or null when there are no more blocks.
+     */
+    public List<Measurement> readBlock() throws IOException {
+        if (finished)
+            return null;
+        int measurementsCount = readCount(ArchiveFormat.MEASUREMENTS_PER_BLOCK);
+        if (measurementsCount == 0) {
+            finished = true;
+            inflater.end();
+            return null;
+        }
+        int cellsCount = readCount(ArchiveFormat.MAX_CELLS_PER_BLOCK);
+        int dictionarySize = readCount(cellsCount);
+        int columnsCount = readCount(Integer.MAX_VALUE);
+        if (columnsCount < ArchiveFormat.COLUMNS_COUNT)
+            throw new IOException("Archive block is missing columns");
+        for (int columnId = 0; columnId < columnsCount; columnId++) {
+            int encoding = readCount(Integer.MAX_VALUE);
+            int length = readCount(ArchiveFormat.MAX_COLUMN_LENGTH);
+            int storedLength = readCount(ArchiveFormat.MAX_COLUMN_LENGTH);
+            if (columnId >= ArchiveFormat.COLUMNS_COUNT) {
+                // column added in newer version
+                skip(storedLength);
+            } else if (encoding == ArchiveFormat.ENCODING_PLAIN && storedLength == length) {
+                columns[columnId].readFrom(in, length);
+            } else if (encoding == ArchiveFormat.ENCODING_DEFLATE) {
+                storedColumn.readFrom(in, storedLength);
+                columns[columnId].inflateFrom(storedColumn, length, inflater);
+            } else {
+                throw new IOException("Unsupported archive column encoding " + encoding);
+            }
+        }
+        return decodeBlock(measurementsCount, cellsCount, dictionarySize);
+    }
+
+    private List<Measurement> decodeBlock(int measurementsCount, int cellsCount, int dictionarySize) throws IOException {
+        List<Measurement> measurements = new ArrayList<>(measurementsCount);
+        ColumnBuffer measuredAt = columns[ArchiveFormat.COLUMN_MEASURED_AT];
+        ColumnBuffer latitudes = columns[ArchiveFormat.COLUMN_LATITUDE];
+        ColumnBuffer longitudes = columns[ArchiveFormat.COLUMN_LONGITUDE];
+        ColumnBuffer gpsAccuracies = columns[ArchiveFormat.COLUMN_GPS_ACCURACY];
+        ColumnBuffer gpsSpeeds = columns[ArchiveFormat.COLUMN_GPS_SPEED];
+        ColumnBuffer gpsBearings = columns[ArchiveFormat.COLUMN_GPS_BEARING];
+        ColumnBuffer gpsAltitudes = columns[ArchiveFormat.COLUMN_GPS_ALTITUDE];
+        ColumnBuffer cellsCounts = columns[ArchiveFormat.COLUMN_CELLS_COUNT];
+        long lastMeasuredAt = 0, lastLatitude = 0, lastLongitude = 0, lastGpsAltitude = 0;
+        for (int i = 0; i < measurementsCount; i++) {
+            Measurement m = new Measurement();
+            lastMeasuredAt += measuredAt.readSigned();
+            m.setMeasuredAt(lastMeasuredAt);
+            lastLatitude += latitudes.readSigned();
+            m.setLatitude(lastLatitude / ArchiveFormat.COORDINATE_SCALE);
+            lastLongitude += longitudes.readSigned();
+            m.setLongitude(lastLongitude / ArchiveFormat.COORDINATE_SCALE);
+            m.setGpsAccuracy((float) (gpsAccuracies.readSigned() / ArchiveFormat.GPS_VALUE_SCALE));
+            m.setGpsSpeed((float) (gpsSpeeds.readSigned() / ArchiveFormat.GPS_VALUE_SCALE));
+            m.setGpsBearing((float) (gpsBearings.readSigned() / ArchiveFormat.GPS_VALUE_SCALE));
+            lastGpsAltitude += gpsAltitudes.readSigned();
+            m.setGpsAltitude(lastGpsAltitude / ArchiveFormat.GPS_VALUE_SCALE);
+            measurements.add(m);
+        }
+
+        Cell[] dictionary = readDictionary(dictionarySize);
+        ColumnBuffer identities = columns[ArchiveFormat.COLUMN_CELL_IDENTITY];
+        boolean[] neighboring = readBitmap(columns[ArchiveFormat.COLUMN_CELL_NEIGHBORING], cellsCount);
+        int[][] signals = new int[ArchiveFormat.SIGNAL_COLUMNS_COUNT][];
+        for (int s = 0; s < signals.length; s++) {
+            signals[s] = readSparse(columns[ArchiveFormat.COLUMN_FIRST_SIGNAL + s], cellsCount);
+        }
+        int cellIndex = 0;
+        for (Measurement m : measurements) {
+            long count = cellsCounts.readVarint();
+            if (count > cellsCount - cellIndex)
+                throw new IOException("Archive block has inconsistent cell count");
+            for (int c = 0; c < count; c++, cellIndex++) {
+                long identityIndex = identities.readVarint();
+                if (identityIndex >= dictionarySize)
+                    throw new IOException("Archive block references unknown cell");
+                Cell identity = dictionary[(int) identityIndex];
+                Cell cell = new Cell();
+                cell.setMcc(identity.getMcc());
+                cell.setMnc(identity.getMnc());
+                cell.setLac(identity.getLac());
+                cell.setCid(identity.getCid());
+                cell.setNetworkType(identity.getNetworkType());
+                cell.setDiscoveredAt(identity.getDiscoveredAt());
+                cell.setNeighboring(neighboring[cellIndex]);
+                for (int s = 0; s < signals.length; s++) {
+                    ArchiveFormat.setSignal(cell, s, signals[s][cellIndex]);
+                }
+                m.addCell(cell);
+            }
+        }
+        if (cellIndex != cellsCount)
+            throw new IOException("Archive block has inconsistent cell count");
+        return measurements;
+    }
+
+    private Cell[] readDictionary(int dictionarySize) throws IOException {
+        Cell[] dictionary = new Cell[dictionarySize];
+        long lastDiscoveredAt = 0;
+        for (int i = 0; i < dictionarySize; i++) {
+            Cell identity = new Cell();
+            identity.setMcc((int) columns[ArchiveFormat.COLUMN_DICTIONARY_MCC].readSigned());
+            identity.setMnc((int) columns[ArchiveFormat.COLUMN_DICTIONARY_MNC].readSigned());
+            identity.setLac((int) columns[ArchiveFormat.COLUMN_DICTIONARY_LAC].readSigned());
+            identity.setCid(columns[ArchiveFormat.COLUMN_DICTIONARY_CID].readSigned());
+            identity.setNetworkType(NetworkGroup.fromValue((int) columns[ArchiveFormat.COLUMN_DICTIONARY_NET_TYPE].readVarint()));
+            lastDiscoveredAt += columns[ArchiveFormat.COLUMN_DICTIONARY_DISCOVERED_AT].readSigned();
+            identity.setDiscoveredAt(lastDiscoveredAt);
+            dictionary[i] = identity;
+        }
+        return dictionary;
+    }
+
+    private boolean[] readBitmap(ColumnBuffer column, int count) throws IOException {
+        boolean[] values = new boolean[count];
+        for (int i = 0; i < count; i += 8) {
+            int b = column.readByte();
+            for (int bit = 0; bit < 8 && i + bit < count; bit++) {
+                values[i + bit] = (b & (1 << bit)) != 0;
+            }
+        }
+        return values;
+    }
+
+    private int[] readSparse(ColumnBuffer column, int count) throws IOException {
+        int[] values = new int[count];
+        long presentCount = column.readVarint();
+        if (presentCount > count)
+            throw new IOException("Archive signal column is malformed");
+        long previous = 0;
+        if (presentCount == count) {
+            for (int i = 0; i < count; i++) {
+                previous += column.readSigned();
+                values[i] = (int) previous;
+            }
+            return values;
+        }
+        Arrays.fill(values, ArchiveFormat.UNKNOWN_VALUE);
+        if (presentCount == 0)
+            return values;
+        boolean[] present = readBitmap(column, count);
+        for (int i = 0; i < count; i++) {
+            if (present[i]) {
+                previous += column.readSigned();
+                values[i] = (int) previous;
+            }
+        }
+        return values;
+    }
+
+    private int readCount(int max) throws IOException {
+        long value = ColumnBuffer.readVarint(in);
+        if (value < 0 || value > max)
+            throw new IOException("Archive is corrupted");
+        return (int) value;
+    }
+
+    private void skip(int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, skipBuffer.length);
+            ColumnBuffer.readFully(in, skipBuffer, count);
+            length -= count;
+        }
+    }
+}
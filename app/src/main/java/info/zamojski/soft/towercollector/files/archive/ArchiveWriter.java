@@ -0,0 +1,324 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.archive;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Writes measurements to binary archive described in {@link ArchiveFormat}.
+ * Values are copied when measurement is written, so the same instance can be reused by the caller.
+ */
+public class ArchiveWriter {
+
+    private final OutputStream out;
+    private final ColumnBuffer column = new ColumnBuffer(16 * 1024);
+    private final ColumnBuffer deflatedColumn = new ColumnBuffer(16 * 1024);
+    private final Deflater deflater = new Deflater();
+    private boolean finished = false;
+
+    // measurement columns of current block
+    private int measurementsCount = 0;
+    private final long[] measuredAt = new long[ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+    private final long[] latitudes = new long[ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+    private final long[] longitudes = new long[ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+    private final long[] gpsAccuracies = new long[ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+    private final long[] gpsSpeeds = new long[ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+    private final long[] gpsBearings = new long[ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+    private final long[] gpsAltitudes = new long[ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+    private final int[] cellsCounts = new int[ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+
+    // cell columns of current block
+    private int cellsCount = 0;
+    private int[] cellIdentities = new int[2 * ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+    private boolean[] neighboring = new boolean[2 * ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+    private final int[][] signals = new int[ArchiveFormat.SIGNAL_COLUMNS_COUNT][2 * ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+
+    // cell identities dictionary of current block
+    private final Map<CellIdentity, Integer> dictionary = new HashMap<>();
+    private final CellIdentity lookupIdentity = new CellIdentity();
+    private CellIdentity[] dictionaryEntries = new CellIdentity[ArchiveFormat.MEASUREMENTS_PER_BLOCK];
+
+    public ArchiveWriter(OutputStream out) throws IOException {
+        this.out = out;
+        out.write(ArchiveFormat.MAGIC);
+        ColumnBuffer.writeVarint(out, ArchiveFormat.VERSION);
+    }
+
+    public void write(Measurement m) throws IOException {
+        if (finished)
+            throw new IllegalStateException("Archive already finished");
+        int i = measurementsCount;
+        measuredAt[i] = m.getMeasuredAt();
+        latitudes[i] = Math.round(m.getLatitude() * ArchiveFormat.COORDINATE_SCALE);
+        longitudes[i] = Math.round(m.getLongitude() * ArchiveFormat.COORDINATE_SCALE);
+        gpsAccuracies[i] = Math.round(m.getGpsAccuracy() * ArchiveFormat.GPS_VALUE_SCALE);
+        gpsSpeeds[i] = Math.round(m.getGpsSpeed() * ArchiveFormat.GPS_VALUE_SCALE);
+        gpsBearings[i] = Math.round(m.getGpsBearing() * ArchiveFormat.GPS_VALUE_SCALE);
+        gpsAltitudes[i] = Math.round(m.getGpsAltitude() * ArchiveFormat.GPS_VALUE_SCALE);
+        List<Cell> cells = m.getCells();
+        cellsCounts[i] = cells.size();
+        ensureCellsCapacity(cellsCount + cells.size());
+        for (Cell c : cells) {
+            cellIdentities[cellsCount] = getIdentityIndex(c);
+            neighboring[cellsCount] = c.isNeighboring();
+            for (int s = 0; s < ArchiveFormat.SIGNAL_COLUMNS_COUNT; s++) {
+                signals[s][cellsCount] = ArchiveFormat.getSignal(c, s);
+            }
+            cellsCount++;
+        }
+        measurementsCount++;
+        if (measurementsCount == ArchiveFormat.MEASUREMENTS_PER_BLOCK) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes remaining measurements and end of archive, doesn't close the stream.
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+        finished = true;
+        try {
+            if (measurementsCount > 0) {
+                writeBlock();
+            }
+            ColumnBuffer.writeVarint(out, 0);
+            out.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private int getIdentityIndex(Cell c) {
+        lookupIdentity.set(c.getMcc(), c.getMnc(), c.getLac(), c.getCid(), c.getNetworkType().getValue(), c.getDiscoveredAt());
+        Integer index = dictionary.get(lookupIdentity);
+        if (index == null) {
+            index = dictionary.size();
+            CellIdentity identity = new CellIdentity(lookupIdentity);
+            dictionary.put(identity, index);
+            if (dictionaryEntries.length == index)
+                dictionaryEntries = Arrays.copyOf(dictionaryEntries, 2 * dictionaryEntries.length);
+            dictionaryEntries[index] = identity;
+        }
+        return index;
+    }
+
+    private void ensureCellsCapacity(int capacity) {
+        if (cellIdentities.length >= capacity)
+            return;
+        int newCapacity = Math.max(capacity, 2 * cellIdentities.length);
+        cellIdentities = Arrays.copyOf(cellIdentities, newCapacity);
+        neighboring = Arrays.copyOf(neighboring, newCapacity);
+        for (int s = 0; s < ArchiveFormat.SIGNAL_COLUMNS_COUNT; s++) {
+            signals[s] = Arrays.copyOf(signals[s], newCapacity);
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        int dictionarySize = dictionary.size();
+        ColumnBuffer.writeVarint(out, measurementsCount);
+        ColumnBuffer.writeVarint(out, cellsCount);
+        ColumnBuffer.writeVarint(out, dictionarySize);
+        ColumnBuffer.writeVarint(out, ArchiveFormat.COLUMNS_COUNT);
+        for (int columnId = 0; columnId < ArchiveFormat.COLUMNS_COUNT; columnId++) {
+            column.reset();
+            encodeColumn(columnId, dictionarySize);
+            deflatedColumn.deflateFrom(column, deflater);
+            boolean deflate = deflatedColumn.length() < column.length();
+            ColumnBuffer.writeVarint(out, deflate ? ArchiveFormat.ENCODING_DEFLATE : ArchiveFormat.ENCODING_PLAIN);
+            ColumnBuffer.writeVarint(out, column.length());
+            ColumnBuffer.writeVarint(out, deflate ? deflatedColumn.length() : column.length());
+            (deflate ? deflatedColumn : column).writeTo(out);
+        }
+        measurementsCount = 0;
+        cellsCount = 0;
+        dictionary.clear();
+        Arrays.fill(dictionaryEntries, 0, dictionarySize, null);
+    }
+
+    private void encodeColumn(int columnId, int dictionarySize) {
+        switch (columnId) {
+            case ArchiveFormat.COLUMN_MEASURED_AT:
+                writeDeltas(measuredAt, measurementsCount);
+                break;
+            case ArchiveFormat.COLUMN_LATITUDE:
+                writeDeltas(latitudes, measurementsCount);
+                break;
+            case ArchiveFormat.COLUMN_LONGITUDE:
+                writeDeltas(longitudes, measurementsCount);
+                break;
+            case ArchiveFormat.COLUMN_GPS_ACCURACY:
+                writeValues(gpsAccuracies, measurementsCount);
+                break;
+            case ArchiveFormat.COLUMN_GPS_SPEED:
+                writeValues(gpsSpeeds, measurementsCount);
+                break;
+            case ArchiveFormat.COLUMN_GPS_BEARING:
+                writeValues(gpsBearings, measurementsCount);
+                break;
+            case ArchiveFormat.COLUMN_GPS_ALTITUDE:
+                writeDeltas(gpsAltitudes, measurementsCount);
+                break;
+            case ArchiveFormat.COLUMN_CELLS_COUNT:
+                for (int i = 0; i < measurementsCount; i++) {
+                    column.writeVarint(cellsCounts[i]);
+                }
+                break;
+            case ArchiveFormat.COLUMN_DICTIONARY_MCC:
+                for (int i = 0; i < dictionarySize; i++) {
+                    column.writeSigned(dictionaryEntries[i].mcc);
+                }
+                break;
+            case ArchiveFormat.COLUMN_DICTIONARY_MNC:
+                for (int i = 0; i < dictionarySize; i++) {
+                    column.writeSigned(dictionaryEntries[i].mnc);
+                }
+                break;
+            case ArchiveFormat.COLUMN_DICTIONARY_LAC:
+                for (int i = 0; i < dictionarySize; i++) {
+                    column.writeSigned(dictionaryEntries[i].lac);
+                }
+                break;
+            case ArchiveFormat.COLUMN_DICTIONARY_CID:
+                for (int i = 0; i < dictionarySize; i++) {
+                    column.writeSigned(dictionaryEntries[i].cid);
+                }
+                break;
+            case ArchiveFormat.COLUMN_DICTIONARY_NET_TYPE:
+                for (int i = 0; i < dictionarySize; i++) {
+                    column.writeVarint(dictionaryEntries[i].networkType);
+                }
+                break;
+            case ArchiveFormat.COLUMN_DICTIONARY_DISCOVERED_AT: {
+                long previous = 0;
+                for (int i = 0; i < dictionarySize; i++) {
+                    column.writeSigned(dictionaryEntries[i].discoveredAt - previous);
+                    previous = dictionaryEntries[i].discoveredAt;
+                }
+                break;
+            }
+            case ArchiveFormat.COLUMN_CELL_IDENTITY:
+                for (int i = 0; i < cellsCount; i++) {
+                    column.writeVarint(cellIdentities[i]);
+                }
+                break;
+            case ArchiveFormat.COLUMN_CELL_NEIGHBORING:
+                writeBitmap(neighboring, cellsCount);
+                break;
+            default:
+                writeSparse(signals[columnId - ArchiveFormat.COLUMN_FIRST_SIGNAL], cellsCount);
+                break;
+        }
+    }
+
+    private void writeValues(long[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            column.writeSigned(values[i]);
+        }
+    }
+
+    private void writeDeltas(long[] values, int count) {
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            column.writeSigned(values[i] - previous);
+            previous = values[i];
+        }
+    }
+
+    private void writeBitmap(boolean[] values, int count) {
+        for (int i = 0; i < count; i += 8) {
+            int b = 0;
+            for (int bit = 0; bit < 8 && i + bit < count; bit++) {
+                if (values[i + bit])
+                    b |= 1 << bit;
+            }
+            column.writeByte(b);
+        }
+    }
+
+    private void writeSparse(int[] values, int count) {
+        int presentCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (values[i] != ArchiveFormat.UNKNOWN_VALUE)
+                presentCount++;
+        }
+        column.writeVarint(presentCount);
+        if (presentCount == 0)
+            return;
+        // bitmap is omitted when all values are present
+        if (presentCount != count) {
+            for (int i = 0; i < count; i += 8) {
+                int b = 0;
+                for (int bit = 0; bit < 8 && i + bit < count; bit++) {
+                    if (values[i + bit] != ArchiveFormat.UNKNOWN_VALUE)
+                        b |= 1 << bit;
+                }
+                column.writeByte(b);
+            }
+        }
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            if (values[i] != ArchiveFormat.UNKNOWN_VALUE) {
+                column.writeSigned(values[i] - previous);
+                previous = values[i];
+            }
+        }
+    }
+
+    private static final class CellIdentity {
+        private int mcc;
+        private int mnc;
+        private int lac;
+        private long cid;
+        private int networkType;
+        private long discoveredAt;
+
+        CellIdentity() {
+        }
+
+        CellIdentity(CellIdentity other) {
+            set(other.mcc, other.mnc, other.lac, other.cid, other.networkType, other.discoveredAt);
+        }
+
+        void set(int mcc, int mnc, int lac, long cid, int networkType, long discoveredAt) {
+            this.mcc = mcc;
+            this.mnc = mnc;
+            this.lac = lac;
+            this.cid = cid;
+            this.networkType = networkType;
+            this.discoveredAt = discoveredAt;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CellIdentity)) return false;
+            CellIdentity that = (CellIdentity) o;
+            return mcc == that.mcc && mnc == that.mnc && lac == that.lac && cid == that.cid
+                    && networkType == that.networkType && discoveredAt == that.discoveredAt;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mcc;
+            result = 31 * result + mnc;
+            result = 31 * result + lac;
+            result = 31 * result + (int) (cid ^ (cid >>> 32));
+            result = 31 * result + networkType;
+            result = 31 * result + (int) (discoveredAt ^ (discoveredAt >>> 32));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.archive;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Growable byte buffer holding single column of a block, values are written and read as (zigzag) varints.
+ */
+final class ColumnBuffer {
+
+    private byte[] data;
+    private int length = 0;
+    private int position = 0;
+
+    ColumnBuffer(int capacity) {
+        this.data = new byte[capacity];
+    }
+
+    void reset() {
+        length = 0;
+        position = 0;
+    }
+
+    int length() {
+        return length;
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(length + 1);
+        data[length++] = (byte) value;
+    }
+
+    void writeVarint(long value) {
+        ensureCapacity(length + 10);
+        while ((value & ~0x7FL) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    void writeSigned(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(data, 0, length);
+    }
+
+    /**
+     * Replaces content with compressed content of the source.
+     */
+    void deflateFrom(ColumnBuffer source, Deflater deflater) {
+        reset();
+        deflater.reset();
+        deflater.setInput(source.data, 0, source.length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            ensureCapacity(length + 1024);
+            length += deflater.deflate(data, length, data.length - length);
+        }
+    }
+
+    /**
+     * Replaces content with decompressed content of the source, which has to decompress to exactly given length.
+     */
+    void inflateFrom(ColumnBuffer source, int inflatedLength, Inflater inflater) throws IOException {
+        reset();
+        // one spare byte to detect content longer than expected
+        ensureCapacity(inflatedLength + 1);
+        inflater.reset();
+        inflater.setInput(source.data, 0, source.length);
+        try {
+            while (!inflater.finished() && length <= inflatedLength) {
+                int inflated = inflater.inflate(data, length, inflatedLength + 1 - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                length += inflated;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Archive column is corrupted", ex);
+        }
+        if (length != inflatedLength || !inflater.finished())
+            throw new IOException("Archive column is corrupted");
+    }
+
+    /**
+     * Replaces content with given number of bytes from the stream.
+     */
+    void readFrom(InputStream in, int count) throws IOException {
+        reset();
+        ensureCapacity(count);
+        readFully(in, data, count);
+        length = count;
+    }
+
+    int readByte() throws IOException {
+        if (position >= length)
+            throw new EOFException("Column ended unexpectedly");
+        return data[position++] & 0xFF;
+    }
+
+    long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    long readSigned() throws IOException {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException("Archive ended unexpectedly");
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void readFully(InputStream in, byte[] buffer, int count) throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            int read = in.read(buffer, offset, count - offset);
+            if (read < 0)
+                throw new EOFException("Archive ended unexpectedly");
+            offset += read;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (data.length < capacity)
+            data = Arrays.copyOf(data, Math.max(capacity, 2 * data.length));
+    }
+}
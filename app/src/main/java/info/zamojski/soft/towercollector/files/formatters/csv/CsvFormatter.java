@@ -4,43 +4,147 @@
 
 package info.zamojski.soft.towercollector.files.formatters.csv;
 
+import info.zamojski.soft.towercollector.model.Measurement;
 import info.zamojski.soft.towercollector.utils.ApkUtils;
 
+import java.text.DateFormat;
 import java.text.NumberFormat;
+import java.util.Date;
 import java.util.Locale;
 
 public abstract class CsvFormatter implements ICsvFormatter {
 
     protected static final Locale LOCALE = Locale.ENGLISH;
 
-    protected static final NumberFormat coordsDoubleFormatter;
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+            10000000000L, 100000000000L, 1000000000000L
+    };
+    // above this value fraction digits may not be precise enough to round them without number formatter
+    private static final double MAX_FAST_DECIMAL_VALUE = 1000000.0;
 
-    protected static final NumberFormat intFormatter;
+    private static final long MILLIS_PER_DAY = 86400000L;
+    // 10000-01-01T00:00:00Z, later dates don't fit four digit year
+    private static final long MAX_FAST_DATE_TIMESTAMP = 253402300800000L;
 
     protected static String deviceName;
 
+    // formatters are not thread safe, keep them per instance because exports may run in parallel
+    protected final NumberFormat coordsDoubleFormatter;
+
     static {
+        deviceName = ApkUtils.getDeviceName();
+    }
+
+    {
         coordsDoubleFormatter = NumberFormat.getNumberInstance(LOCALE);
         coordsDoubleFormatter.setGroupingUsed(false);
         coordsDoubleFormatter.setMinimumFractionDigits(8);
         coordsDoubleFormatter.setMaximumFractionDigits(12);
+    }
 
-        intFormatter = NumberFormat.getNumberInstance(LOCALE);
-        intFormatter.setParseIntegerOnly(true);
-        intFormatter.setGroupingUsed(false);
+    @Override
+    public String formatEntry(Measurement m) {
+        StringBuilder sb = new StringBuilder(150);
+        formatEntry(m, sb);
+        return sb.toString();
+    }
 
-        deviceName = ApkUtils.getDeviceName();
+    protected void appendCoordinate(StringBuilder sb, double value) {
+        appendDecimal(sb, value, 8, 12, coordsDoubleFormatter);
     }
 
-    protected String formatCoordinate(double value) {
-        return coordsDoubleFormatter.format(value);
+    /**
+     * Appends value the same way as number formatter without grouping and with half-even rounding.
+     * Values too close to the rounding boundary or not representable exactly are delegated to the formatter.
+     */
+    protected void appendDecimal(StringBuilder sb, double value, int minFractionDigits, int maxFractionDigits, NumberFormat fallbackFormatter) {
+        double absValue = Math.abs(value);
+        if (absValue < MAX_FAST_DECIMAL_VALUE) {
+            long scale = POWERS_OF_TEN[maxFractionDigits];
+            long integerPart = (long) absValue;
+            double scaledFraction = (absValue - integerPart) * scale;
+            long fraction = (long) scaledFraction;
+            double remainder = scaledFraction - fraction;
+            // formatter may round decimal representation of the value instead of exact binary value,
+            // both are within one ulp so outside this margin both round the same way
+            double margin = (Math.ulp(absValue) + Math.ulp(1.0)) * scale;
+            boolean negative = (Double.doubleToRawLongBits(value) < 0);
+            if (Math.abs(remainder - 0.5) > margin) {
+                if (remainder > 0.5) {
+                    fraction++;
+                    if (fraction == scale) {
+                        fraction = 0;
+                        integerPart++;
+                    }
+                }
+                // negative zero is left to the formatter
+                if (!negative || integerPart != 0 || fraction != 0) {
+                    if (negative)
+                        sb.append('-');
+                    sb.append(integerPart);
+                    int digits = maxFractionDigits;
+                    while (digits > minFractionDigits && fraction % 10 == 0) {
+                        fraction /= 10;
+                        digits--;
+                    }
+                    if (digits > 0) {
+                        sb.append('.');
+                        for (int i = digits - 1; i > 0 && fraction < POWERS_OF_TEN[i]; i--) {
+                            sb.append('0');
+                        }
+                        sb.append(fraction);
+                    }
+                    return;
+                }
+            }
+        }
+        sb.append(fallbackFormatter.format(value));
     }
 
-    protected String formatInt(int value) {
-        return intFormatter.format(value);
+    /**
+     * Appends quoted UTC date in yyyy-MM-dd'T'HH:mm:ss.SSS'Z' format with given date and time separator.
+     */
+    protected void appendDate(StringBuilder sb, long timestamp, char dateTimeSeparator, DateFormat fallbackFormatter) {
+        // before Unix epoch formatter may switch to Julian calendar
+        if (timestamp < 0 || timestamp >= MAX_FAST_DATE_TIMESTAMP) {
+            sb.append(fallbackFormatter.format(new Date(timestamp)));
+            return;
+        }
+        long days = timestamp / MILLIS_PER_DAY;
+        int millisOfDay = (int) (timestamp % MILLIS_PER_DAY);
+        // civil date from days since epoch (proleptic Gregorian calendar)
+        long z = days + 719468;
+        long era = z / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthPosition = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthPosition + 2) / 5 + 1);
+        int month = (int) (monthPosition < 10 ? monthPosition + 3 : monthPosition - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        sb.append('"');
+        appendPadded(sb, year, 4);
+        sb.append('-');
+        appendPadded(sb, month, 2);
+        sb.append('-');
+        appendPadded(sb, day, 2);
+        sb.append(dateTimeSeparator);
+        appendPadded(sb, millisOfDay / 3600000, 2);
+        sb.append(':');
+        appendPadded(sb, millisOfDay / 60000 % 60, 2);
+        sb.append(':');
+        appendPadded(sb, millisOfDay / 1000 % 60, 2);
+        sb.append('.');
+        appendPadded(sb, millisOfDay % 1000, 3);
+        sb.append("Z\"");
     }
 
-    protected String formatLong(long value) {
-        return intFormatter.format(value);
+    private void appendPadded(StringBuilder sb, int value, int digits) {
+        for (int i = digits - 1; i > 0 && value < POWERS_OF_TEN[i]; i--) {
+            sb.append('0');
+        }
+        sb.append(value);
     }
 }
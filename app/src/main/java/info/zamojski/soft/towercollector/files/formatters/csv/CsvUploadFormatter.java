@@ -5,7 +5,6 @@
 package info.zamojski.soft.towercollector.files.formatters.csv;
 
 import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.TimeZone;
 
 import info.zamojski.soft.towercollector.enums.NetworkGroup;
@@ -18,11 +17,14 @@ import info.zamojski.soft.towercollector.utils.StringUtils;
 public class CsvUploadFormatter extends CsvFormatter {
 
     private static final ICellUtils cellUtils;
-    private static final SimpleDateFormat uploadDateFormatter;
+    private final SimpleDateFormat uploadDateFormatter;
 
     static {
         cellUtils = new OpenCellIdCellUtils();
         deviceName = StringUtils.substring(deviceName, 0, 50);
+    }
+
+    {
         uploadDateFormatter = new SimpleDateFormat("\"yyyy-MM-dd HH:mm:ss.SSS'Z'\"", LOCALE);
         uploadDateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
     }
@@ -33,13 +35,11 @@ public class CsvUploadFormatter extends CsvFormatter {
     }
 
     @Override
-    public String formatEntry(Measurement m) {
-        StringBuilder sb = new StringBuilder(140);
-
+    public void formatEntry(Measurement m, StringBuilder sb) {
         for (Cell c : m.getCells()) {
-            sb.append(formatCoordinate(m.getLatitude()));
+            appendCoordinate(sb, m.getLatitude());
             sb.append(',');
-            sb.append(formatCoordinate(m.getLongitude()));
+            appendCoordinate(sb, m.getLongitude());
             sb.append(',');
 
             // depending on cell type
@@ -49,41 +49,41 @@ public class CsvUploadFormatter extends CsvFormatter {
                 // mnc
                 sb.append(',');
                 // sid
-                sb.append(formatInt(c.getMnc()));
+                sb.append(c.getMnc());
                 sb.append(',');
                 // lac
                 sb.append(',');
                 // tac
                 sb.append(',');
                 // nid
-                sb.append(formatInt(c.getLac()));
+                sb.append(c.getLac());
                 sb.append(',');
                 // cellid
                 sb.append(',');
                 // bid
-                sb.append(formatLong(c.getCid()));
+                sb.append(c.getCid());
                 sb.append(',');
             } else {
                 // mcc
-                sb.append(formatInt(c.getMcc()));
+                sb.append(c.getMcc());
                 sb.append(',');
                 // mnc
-                sb.append(formatInt(c.getMnc()));
+                sb.append(c.getMnc());
                 sb.append(',');
                 // sid
                 sb.append(',');
                 // lac
                 if (c.getNetworkType() != NetworkGroup.Lte && c.getNetworkType() != NetworkGroup.Nr)
-                    sb.append(formatInt(c.getLac()));
+                    sb.append(c.getLac());
                 sb.append(',');
                 // tac
                 if (c.getNetworkType() == NetworkGroup.Lte || c.getNetworkType() == NetworkGroup.Nr)
-                    sb.append(formatInt(c.getLac()));
+                    sb.append(c.getLac());
                 sb.append(',');
                 // nid
                 sb.append(',');
                 // cellid
-                sb.append(formatLong(c.getCid()));
+                sb.append(c.getCid());
                 sb.append(',');
                 // bid
                 sb.append(',');
@@ -92,59 +92,49 @@ public class CsvUploadFormatter extends CsvFormatter {
             // psc
             int psc = c.getPsc();
             if (psc != Cell.UNKNOWN_CID && (c.getNetworkType() == NetworkGroup.Wcdma || c.getNetworkType() == NetworkGroup.Tdscdma))
-                sb.append(formatInt(psc));
+                sb.append(psc);
             sb.append(',');
             // pci
             if (psc != Cell.UNKNOWN_CID && (c.getNetworkType() == NetworkGroup.Lte || c.getNetworkType() == NetworkGroup.Nr))
-                sb.append(formatInt(psc));
+                sb.append(psc);
             sb.append(',');
 
-            sb.append(formatSignal(c.getAsu(), c.getDbm()));
+            appendSignal(sb, c.getAsu(), c.getDbm());
             sb.append(',');
             int ta = c.getTa();
             if (ta != Cell.UNKNOWN_SIGNAL)
-                sb.append(formatInt(ta));
+                sb.append(ta);
             sb.append(',');
 
-            sb.append(formatDate(m.getMeasuredAt()));
+            appendDate(sb, m.getMeasuredAt(), ' ', uploadDateFormatter);
             sb.append(',');
 
-            sb.append(formatInt(convertToInt(m.getGpsAccuracy())));
+            sb.append(convertToInt(m.getGpsAccuracy()));
             sb.append(',');
-            sb.append(formatInt(convertToInt(m.getGpsSpeed())));
+            sb.append(convertToInt(m.getGpsSpeed()));
             sb.append(',');
-            sb.append(formatInt(convertToInt(m.getGpsBearing())));
+            sb.append(convertToInt(m.getGpsBearing()));
             sb.append(',');
 
             sb.append(cellUtils.getSystemType(c.getNetworkType()));
             sb.append(',');
 
-            sb.append("\"");
+            sb.append('"');
             sb.append(deviceName);
-            sb.append("\"");
+            sb.append('"');
 
             sb.append('\n');
         }
-
-        return sb.toString();
     }
 
     private int convertToInt(double value) {
         return (int) Math.round(value);
     }
 
-    private String formatSignal(int asu, int dbm) {
-        String signalString;
+    private void appendSignal(StringBuilder sb, int asu, int dbm) {
         if (asu != Cell.UNKNOWN_SIGNAL)
-            signalString = String.valueOf(asu);
+            sb.append(asu);
         else if (dbm != Cell.UNKNOWN_SIGNAL)
-            signalString = String.valueOf(dbm);
-        else
-            signalString = "";
-        return signalString;
-    }
-
-    private String formatDate(long timestamp) {
-        return uploadDateFormatter.format(new Date(timestamp));
+            sb.append(dbm);
     }
 }
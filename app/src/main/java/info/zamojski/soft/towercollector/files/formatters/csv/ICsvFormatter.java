@@ -12,4 +12,9 @@ public interface ICsvFormatter {
 
     String formatEntry(Measurement m);
 
+    /**
+     * Appends formatted entry to the builder without creating intermediate strings.
+     */
+    void formatEntry(Measurement m, StringBuilder sb);
+
 }
@@ -23,15 +23,20 @@ public class GpxExportFormatter implements IGpxFormatter {
 
     private static final Locale LOCALE = Locale.ENGLISH;
 
-    private static final NumberFormat coordsDoubleFormatter;
-    private static final NumberFormat gpsDoubleFormatter;
-    private static final SimpleDateFormat exportDateFormatter;
+    private static final ICellUtils cellUtils;
 
-    protected static final NumberFormat intFormatter;
+    // formatters are not thread safe, keep them per instance because exports may run in parallel
+    private final NumberFormat coordsDoubleFormatter;
+    private final NumberFormat gpsDoubleFormatter;
+    private final SimpleDateFormat exportDateFormatter;
 
-    private static final ICellUtils cellUtils;
+    protected final NumberFormat intFormatter;
 
     static {
+        cellUtils = new GeneralCellUtils();
+    }
+
+    {
         coordsDoubleFormatter = NumberFormat.getNumberInstance(LOCALE);
         coordsDoubleFormatter.setGroupingUsed(false);
         coordsDoubleFormatter.setMinimumFractionDigits(8);
@@ -48,8 +53,6 @@ public class GpxExportFormatter implements IGpxFormatter {
 
         exportDateFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", LOCALE);
         exportDateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        cellUtils = new GeneralCellUtils();
     }
 
     @Override
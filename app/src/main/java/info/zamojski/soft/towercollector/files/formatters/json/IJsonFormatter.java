@@ -6,6 +6,8 @@ package info.zamojski.soft.towercollector.files.formatters.json;
 
 import org.json.JSONException;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 
 import info.zamojski.soft.towercollector.model.Measurement;
@@ -16,6 +18,14 @@ public interface IJsonFormatter {
 
     String formatList(List<Measurement> ms) throws JSONException;
 
+    /**
+     * Writes the same content as {@link #formatList(List)} directly to the writer.
+     * Separator is written before the content only if the content is not empty.
+     *
+     * @return true if content was written
+     */
+    boolean writeList(List<Measurement> ms, Writer writer, String separator) throws JSONException, IOException;
+
     String formatNewSegment();
 
     String formatFooter();
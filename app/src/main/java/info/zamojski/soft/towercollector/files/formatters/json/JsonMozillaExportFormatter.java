@@ -5,14 +5,18 @@
 package info.zamojski.soft.towercollector.files.formatters.json;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.List;
 
 import info.zamojski.soft.towercollector.model.Measurement;
 
 public class JsonMozillaExportFormatter extends JsonMozillaFormatterBase implements IJsonFormatter {
 
+    private static final String ITEMS_SEPARATOR = ",\r\n";
+
     @Override
     public String formatHeader() {
         return "{\r\n\"items\":[\r\n";
@@ -20,22 +24,34 @@ public class JsonMozillaExportFormatter extends JsonMozillaFormatterBase impleme
 
     @Override
     public String formatList(List<Measurement> ms) throws JSONException {
-        StringBuilder sb = new StringBuilder();
-        List<JSONObject> rawItems = formatItems(ms);
+        StringWriter writer = new StringWriter();
+        try {
+            writeList(ms, writer, "");
+        } catch (IOException ex) {
+            // never thrown by string writer
+            throw new IllegalStateException(ex);
+        }
+        return writer.toString();
+    }
+
+    @Override
+    public boolean writeList(List<Measurement> ms, Writer writer, String separator) throws JSONException, IOException {
+        JsonTokenWriter json = new JsonTokenWriter(writer);
         boolean notFirst = false;
-        for (JSONObject rawItem : rawItems) {
-            if (notFirst) {
-                sb.append(",\r\n");
-            }
+        for (Measurement m : ms) {
+            // measurements without supported cells are skipped together with separator
+            if (!hasSupportedCells(m))
+                continue;
+            writer.write(notFirst ? ITEMS_SEPARATOR : separator);
+            writeItem(m, json);
             notFirst = true;
-            sb.append(rawItem.toString());
         }
-        return sb.toString();
+        return notFirst;
     }
 
     @Override
     public String formatNewSegment() {
-        return ",\r\n";
+        return ITEMS_SEPARATOR;
     }
 
     @Override
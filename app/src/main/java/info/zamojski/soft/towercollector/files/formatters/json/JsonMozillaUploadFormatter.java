@@ -1,13 +1,13 @@
 /* This Source Code Form is subject to the terms of the Mozilla Public
  * License, v. 2.0. If a copy of the MPL was not distributed with this
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
-
 package info.zamojski.soft.towercollector.files.formatters.json;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.List;
 
 import info.zamojski.soft.towercollector.model.Measurement;
@@ -21,17 +21,30 @@ public class JsonMozillaUploadFormatter extends JsonMozillaFormatterBase impleme
 
     @Override
     public String formatList(List<Measurement> ms) throws JSONException {
-        if (ms.size() == 0) {
-            return new JSONObject().toString();
+        StringWriter writer = new StringWriter();
+        try {
+            writeList(ms, writer, "");
+        } catch (IOException ex) {
+            // never thrown by string writer
+            throw new IllegalStateException(ex);
         }
-        JSONArray items = new JSONArray();
-        List<JSONObject> rawItems = formatItems(ms);
-        for (JSONObject rawItem : rawItems) {
-            items.put(rawItem);
+        return writer.toString();
+    }
+
+    @Override
+    public boolean writeList(List<Measurement> ms, Writer writer, String separator) throws JSONException, IOException {
+        writer.write(separator);
+        JsonTokenWriter json = new JsonTokenWriter(writer);
+        json.beginObject();
+        if (ms.size() != 0) {
+            json.name("items").beginArray();
+            for (Measurement m : ms) {
+                writeItem(m, json);
+            }
+            json.endArray();
         }
-        JSONObject root = new JSONObject();
-        root.put("items", items);
-        return root.toString();
+        json.endObject();
+        return true;
     }
 
     @Override
@@ -0,0 +1,162 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.formatters.json;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes JSON tokens directly to the writer without building object tree.
+ * Output is the same as {@link org.json.JSONObject#toString()} of equivalent objects, including number formatting and escaping.
+ * Values written at top level are not separated.
+ */
+final class JsonTokenWriter {
+
+    private static final int MAX_DEPTH = 16;
+
+    private final Writer out;
+    // whether current object or array is still empty
+    private final boolean[] empty = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    private boolean afterName = false;
+
+    JsonTokenWriter(Writer out) {
+        this.out = out;
+    }
+
+    JsonTokenWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    JsonTokenWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    JsonTokenWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    JsonTokenWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    JsonTokenWriter name(String name) throws IOException {
+        beforeValue();
+        string(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    JsonTokenWriter value(String value) throws IOException {
+        if (value == null)
+            return nullValue();
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    JsonTokenWriter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    JsonTokenWriter value(double value) throws IOException, JSONException {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            throw new JSONException("Forbidden numeric value: " + value);
+        beforeValue();
+        if (value == 0 && Double.doubleToRawLongBits(value) != 0) {
+            out.write("-0");
+        } else if (value == (long) value) {
+            // integral values are written without fraction
+            out.write(Long.toString((long) value));
+        } else {
+            out.write(Double.toString(value));
+        }
+        return this;
+    }
+
+    JsonTokenWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    JsonTokenWriter nullValue() throws IOException {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    private JsonTokenWriter open(char bracket) throws IOException {
+        beforeValue();
+        if (depth == MAX_DEPTH)
+            throw new IllegalStateException("Nesting too deep");
+        out.write(bracket);
+        empty[depth++] = true;
+        return this;
+    }
+
+    private JsonTokenWriter close(char bracket) throws IOException {
+        if (depth == 0)
+            throw new IllegalStateException("Nesting problem");
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (!empty[depth - 1])
+                out.write(',');
+            empty[depth - 1] = false;
+        }
+    }
+
+    private void string(String value) throws IOException {
+        out.write('"');
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    out.write('\\');
+                    out.write(c);
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                case '\b':
+                    out.write("\\b");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\f':
+                    out.write("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+                    break;
+            }
+        }
+        out.write('"');
+    }
+}
@@ -4,14 +4,11 @@
 
 package info.zamojski.soft.towercollector.files.formatters.kml;
 
-import android.text.TextUtils;
-
 import org.stockchart.utils.DoubleUtils;
 
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 
@@ -25,15 +22,20 @@ public class KmlExportFormatter implements IKmlFormatter {
 
     private static final Locale LOCALE = Locale.ENGLISH;
 
-    private static final NumberFormat coordsDoubleFormatter;
-    private static final NumberFormat gpsDoubleFormatter;
-    private static final SimpleDateFormat exportDateFormatter;
+    private static final ICellUtils cellUtils;
 
-    protected static final NumberFormat intFormatter;
+    // formatters are not thread safe, keep them per instance because exports may run in parallel
+    private final NumberFormat coordsDoubleFormatter;
+    private final NumberFormat gpsDoubleFormatter;
+    private final SimpleDateFormat exportDateFormatter;
 
-    private static final ICellUtils cellUtils;
+    protected final NumberFormat intFormatter;
 
     static {
+        cellUtils = new GeneralCellUtils();
+    }
+
+    {
         coordsDoubleFormatter = NumberFormat.getNumberInstance(LOCALE);
         coordsDoubleFormatter.setGroupingUsed(false);
         coordsDoubleFormatter.setMinimumFractionDigits(8);
@@ -50,8 +52,6 @@ public class KmlExportFormatter implements IKmlFormatter {
 
         exportDateFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", LOCALE);
         exportDateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-        cellUtils = new GeneralCellUtils();
     }
 
     @Override
@@ -164,24 +164,36 @@ public class KmlExportFormatter implements IKmlFormatter {
     }
 
     @Override
-    public String formatLineSegment(List<String> entries) {
-        String lineString = TextUtils.join(" ", entries);
+    public String formatLineEntrySeparator() {
+        return " ";
+    }
+
+    @Override
+    public String formatLineSegmentHeader() {
         return "          <LineString>\r\n" +
                 "            <tessellate>1</tessellate>\r\n" +
                 "            <coordinates>\r\n" +
-                String.format(LOCALE, "              %s\r\n", lineString) +
+                "              ";
+    }
+
+    @Override
+    public String formatLineSegmentFooter() {
+        return "\r\n" +
                 "            </coordinates>\r\n" +
                 "          </LineString>\r\n";
     }
 
     @Override
-    public String formatFooter(List<String> segments) {
+    public String formatPathHeader() {
         return "      <Placemark>\r\n" +
                 "        <name>Path</name>\r\n" +
                 "        <styleUrl>#lineStyle</styleUrl>\r\n" +
-                "        <MultiGeometry>\r\n" +
-                TextUtils.join("", segments) +
-                "        </MultiGeometry>\r\n" +
+                "        <MultiGeometry>\r\n";
+    }
+
+    @Override
+    public String formatFooter() {
+        return "        </MultiGeometry>\r\n" +
                 "      </Placemark>\r\n" +
                 "    </Folder>\r\n" +
                 "  </Folder>\r\n" +
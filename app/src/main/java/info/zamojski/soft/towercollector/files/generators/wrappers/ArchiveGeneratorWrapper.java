@@ -0,0 +1,110 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers;
+
+import android.net.Uri;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+
+import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.dao.IMeasurementCursor;
+import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.enums.GeneratorResult;
+import info.zamojski.soft.towercollector.files.DeviceOperationException.Reason;
+import info.zamojski.soft.towercollector.files.FileGeneratorResult;
+import info.zamojski.soft.towercollector.files.archive.ArchiveWriter;
+import info.zamojski.soft.towercollector.io.filesystem.CompressionFormat;
+import info.zamojski.soft.towercollector.io.filesystem.FileWriter;
+import info.zamojski.soft.towercollector.io.filesystem.WriteResult;
+import info.zamojski.soft.towercollector.model.Measurement;
+import info.zamojski.soft.towercollector.utils.FileUtils;
+import timber.log.Timber;
+
+public class ArchiveGeneratorWrapper extends TextGeneratorWrapperBase {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Uri storageUri;
+    private final String fileName;
+    private final String compressedExtension;
+    private final CompressionFormat compressionFormat;
+    private Uri filePath;
+
+    public ArchiveGeneratorWrapper(Uri storageUri, String fileName, String compressedExtension, CompressionFormat compressionFormat) {
+        this.storageUri = storageUri;
+        this.fileName = fileName;
+        this.compressedExtension = compressedExtension;
+        this.compressionFormat = compressionFormat;
+    }
+
+    public FileGeneratorResult generate() {
+        // get number of locations to process
+        int locationsCount = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAllLocationsCount(false);
+        // check if there is anything to process
+        if (locationsCount == 0) {
+            Timber.d("generate(): Cancelling save due to no data");
+            return new FileGeneratorResult(GeneratorResult.NoData, Reason.Unknown);
+        }
+        // report progress every part
+        final int LOCATIONS_PER_PART = 80;
+        notifyProgressListeners(0, locationsCount);
+        FileWriter fileWriter = new FileWriter() {
+            @Override
+            protected void writeFileInternal(OutputStream outputStream) throws Exception {
+                try (BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream, BUFFER_SIZE)) {
+                    ArchiveWriter archiveWriter = new ArchiveWriter(bufferedOutputStream);
+                    // read measurements one by one reusing the same instance
+                    try (IMeasurementCursor cursor = openMeasurementCursor()) {
+                        while (cursor.moveToNext()) {
+                            Measurement m = cursor.getMeasurement();
+                            archiveWriter.write(m);
+                            int processedCount = cursor.getPosition() + 1;
+                            if (processedCount % LOCATIONS_PER_PART == 0) {
+                                notifyProgressListeners(processedCount, locationsCount);
+                                if (cancel) {
+                                    break;
+                                }
+                            }
+                        }
+                    }
+                    archiveWriter.finish();
+                }
+            }
+        };
+        WriteResult result = fileWriter.writeFile(MyApplication.getApplication(), storageUri, fileName, compressedExtension, compressionFormat);
+        filePath = result.getFilePath();
+        // fix for dialog not closed when operation is running in background and data deleted
+        notifyProgressListeners(locationsCount, locationsCount);
+        switch (result.getResultType()) {
+            case Success:
+                if (cancel) {
+                    Timber.d("generate(): Export cancelled");
+                    return new FileGeneratorResult(GeneratorResult.Cancelled, Reason.Unknown);
+                } else {
+                    Timber.d("generate(): All %s locations exported", locationsCount);
+                    return new FileGeneratorResult(GeneratorResult.Succeeded, Reason.Unknown);
+                }
+            case StorageNotFound:
+                return new FileGeneratorResult(GeneratorResult.Failed, Reason.LocationNotExists, getStringById(R.string.storage_storage_not_found));
+            case FileNotWritable:
+                return new FileGeneratorResult(GeneratorResult.Failed, Reason.DeviceNotWritable, getStringById(R.string.storage_file_not_writable));
+            case Failed:
+            default:
+                return new FileGeneratorResult(GeneratorResult.Failed, Reason.Unknown, getStringById(R.string.storage_write_failed, result.getErrorMessage()));
+        }
+    }
+
+    @Override
+    public Uri getFullPath() {
+        return filePath;
+    }
+
+    @Override
+    public String getFileType() {
+        return FileUtils.getFileExtension(fileName) + (compressedExtension != null ? "+" + compressedExtension : "");
+    }
+}
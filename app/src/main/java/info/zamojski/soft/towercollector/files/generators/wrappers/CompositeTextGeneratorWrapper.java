@@ -6,10 +6,18 @@ package info.zamojski.soft.towercollector.files.generators.wrappers;
 
 import android.net.Uri;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.analytics.IntentSource;
+import info.zamojski.soft.towercollector.dao.MeasurementCursor;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.enums.GeneratorResult;
 import info.zamojski.soft.towercollector.files.DeviceOperationException.Reason;
@@ -21,6 +29,12 @@ import timber.log.Timber;
 
 public class CompositeTextGeneratorWrapper extends TextGeneratorWrapperBase {
 
+    private static final int LOCATIONS_PER_PART = 80;
+    private static final int PARTS_BUFFERED_PER_GENERATOR = 8;
+    // enough for full queue and part being read by slowest generator plus part being filled
+    private static final int PARTS_IN_POOL = PARTS_BUFFERED_PER_GENERATOR + 2;
+    private static final long FREE_PART_POLL_TIMEOUT_MILLIS = 100;
+
     private List<IProgressiveTextGeneratorWrapper> subGenerators;
     private final IntentSource intentSource;
     private int alreadyGenerated = 0;
@@ -32,6 +46,13 @@ public class CompositeTextGeneratorWrapper extends TextGeneratorWrapperBase {
     }
 
     public FileGeneratorResult generate() {
+        // read database once and feed all generators when there is more than one
+        if (subGenerators.size() > 1)
+            return generateInParallel();
+        return generateSequentially();
+    }
+
+    private FileGeneratorResult generateSequentially() {
         FileGeneratorResult lastResult = new FileGeneratorResult(GeneratorResult.Unknown, Reason.Unknown, "Nothing to generate");
         try {
             notifyProgressListeners(0, maxProgressPercent);
@@ -43,10 +64,7 @@ public class CompositeTextGeneratorWrapper extends TextGeneratorWrapperBase {
                     lastResult = generator.generate();
                     // send stats
                     long endTime = System.currentTimeMillis();
-                    AnalyticsStatistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAnalyticsStatistics();
-                    String fileType = generator.getFileType();
-                    long duration = (endTime - startTime);
-                    MyApplication.getAnalytics().sendExportFinished(intentSource, duration, fileType, stats);
+                    sendExportFinished(generator, endTime - startTime);
                     if (lastResult.getResult() != GeneratorResult.Succeeded) {
                         return lastResult;
                     }
@@ -65,6 +83,113 @@ public class CompositeTextGeneratorWrapper extends TextGeneratorWrapperBase {
         return lastResult;
     }
 
+    private FileGeneratorResult generateInParallel() {
+        Timber.d("generateInParallel(): Running %s generators in parallel", subGenerators.size());
+        FileGeneratorResult lastResult = new FileGeneratorResult(GeneratorResult.Unknown, Reason.Unknown, "Nothing to generate");
+        // each generator formats, compresses and writes on its own thread
+        ExecutorService executor = Executors.newFixedThreadPool(subGenerators.size());
+        List<QueuedMeasurementCursor> cursors = new ArrayList<>();
+        List<Future<FileGeneratorResult>> futureResults = new ArrayList<>();
+        try {
+            notifyProgressListeners(0, maxProgressPercent);
+            for (IProgressiveTextGeneratorWrapper generator : subGenerators) {
+                QueuedMeasurementCursor cursor = new QueuedMeasurementCursor(PARTS_BUFFERED_PER_GENERATOR);
+                generator.setMeasurementCursor(cursor);
+                cursors.add(cursor);
+                futureResults.add(executor.submit(() -> runGenerator(generator, cursor)));
+            }
+            try {
+                readMeasurements(cursors);
+            } finally {
+                for (QueuedMeasurementCursor cursor : cursors) {
+                    cursor.finish();
+                }
+            }
+            // report first failure in order of generators
+            for (Future<FileGeneratorResult> futureResult : futureResults) {
+                FileGeneratorResult result = futureResult.get();
+                if (lastResult.getResult() == GeneratorResult.Unknown || lastResult.getResult() == GeneratorResult.Succeeded) {
+                    lastResult = result;
+                }
+            }
+            // generators see end of data also when reading was cancelled
+            if (cancel && lastResult.getResult() == GeneratorResult.Succeeded) {
+                Timber.d("generateInParallel(): Export cancelled");
+                lastResult = new FileGeneratorResult(GeneratorResult.Cancelled, Reason.Unknown);
+            }
+            // fix for dialog not closed when operation is running in background and data deleted
+            notifyProgressListeners(maxProgressPercent, maxProgressPercent);
+        } catch (Exception ex) {
+            Timber.e(ex, "generate(): Failed to save data on external memory");
+            MyApplication.handleSilentException(ex);
+            return new FileGeneratorResult(GeneratorResult.Failed, Reason.Unknown, ex.getMessage());
+        } finally {
+            for (QueuedMeasurementCursor cursor : cursors) {
+                cursor.finish();
+            }
+            executor.shutdown();
+        }
+        return lastResult;
+    }
+
+    private FileGeneratorResult runGenerator(IProgressiveTextGeneratorWrapper generator, QueuedMeasurementCursor cursor) {
+        try {
+            long startTime = System.currentTimeMillis();
+            FileGeneratorResult result = generator.generate();
+            long endTime = System.currentTimeMillis();
+            sendExportFinished(generator, endTime - startTime);
+            return result;
+        } finally {
+            // unblock reader when generator failed before reading everything
+            cursor.close();
+        }
+    }
+
+    private void readMeasurements(List<QueuedMeasurementCursor> cursors) throws InterruptedException {
+        MeasurementsDatabase database = MeasurementsDatabase.getInstance(MyApplication.getApplication());
+        int locationsCount = database.getAllLocationsCount(false);
+        int processedCount = 0;
+        // parts are refilled when all generators released them so memory usage doesn't depend on number of measurements
+        BlockingQueue<MeasurementPart> freeParts = new ArrayBlockingQueue<>(PARTS_IN_POOL);
+        for (int i = 0; i < PARTS_IN_POOL; i++) {
+            freeParts.add(new MeasurementPart(LOCATIONS_PER_PART, freeParts));
+        }
+        try (MeasurementCursor measurementCursor = database.getMeasurementsCursor()) {
+            boolean hasMore = true;
+            while (hasMore && !cancel) {
+                MeasurementPart part = freeParts.poll(FREE_PART_POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (part == null)
+                    continue;
+                int size = 0;
+                while (size < part.getCapacity() && (hasMore = measurementCursor.moveToNext(part.get(size)))) {
+                    size++;
+                }
+                if (size == 0)
+                    break;
+                part.setSize(size);
+                part.share(cursors.size());
+                boolean anyReading = false;
+                for (QueuedMeasurementCursor cursor : cursors) {
+                    anyReading |= cursor.publish(part);
+                }
+                if (!anyReading) {
+                    Timber.d("readMeasurements(): All generators finished reading");
+                    break;
+                }
+                processedCount += size;
+                int progressPercent = (int) Math.round(100.0 * Math.min(processedCount, locationsCount) / Math.max(locationsCount, 1));
+                notifyProgressListeners(progressPercent, maxProgressPercent);
+            }
+        }
+        Timber.d("readMeasurements(): Read %s measurements", processedCount);
+    }
+
+    private void sendExportFinished(IProgressiveTextGeneratorWrapper generator, long duration) {
+        AnalyticsStatistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAnalyticsStatistics();
+        String fileType = generator.getFileType();
+        MyApplication.getAnalytics().sendExportFinished(intentSource, duration, fileType, stats);
+    }
+
     @Override
     public void cancel() {
         super.cancel();
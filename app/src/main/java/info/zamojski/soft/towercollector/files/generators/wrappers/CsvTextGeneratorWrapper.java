@@ -9,10 +9,10 @@ import android.net.Uri;
 import java.io.BufferedWriter;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.util.List;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.dao.IMeasurementCursor;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.enums.GeneratorResult;
 import info.zamojski.soft.towercollector.files.DeviceOperationException.Reason;
@@ -50,31 +50,37 @@ public class CsvTextGeneratorWrapper extends TextGeneratorWrapperBase {
             Timber.d("generate(): Cancelling save due to no data");
             return new FileGeneratorResult(GeneratorResult.NoData, Reason.Unknown);
         }
-        // calculate number of parts
+        // report progress every part
         final int LOCATIONS_PER_PART = 80;
-        int partsCount = 1;
-        if (locationsCount > LOCATIONS_PER_PART) {
-            partsCount = (int) Math.ceil(1.0 * locationsCount / LOCATIONS_PER_PART);
-        }
         notifyProgressListeners(0, locationsCount);
-        int finalPartsCount = partsCount;
         FileWriter fileWriter = new FileWriter() {
             @Override
             protected void writeFileInternal(OutputStream outputStream) throws Exception {
                 try (BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(outputStream))) {
                     // write header
                     bufferedWriter.write(formatter.formatHeader());
-                    // get locations in loop
-                    for (int i = 0; i < finalPartsCount; i++) {
-                        // get from database
-                        List<Measurement> measurements = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsPart(i * LOCATIONS_PER_PART, LOCATIONS_PER_PART);
-                        // write to file
-                        for (Measurement m : measurements) {
-                            bufferedWriter.write(formatter.formatEntry(m));
-                        }
-                        notifyProgressListeners(i * LOCATIONS_PER_PART + measurements.size(), locationsCount);
-                        if (cancel) {
-                            break;
+                    // reuse buffers so entries are written without intermediate strings
+                    StringBuilder entry = new StringBuilder(512);
+                    char[] entryChars = new char[512];
+                    // read measurements one by one reusing the same instance
+                    try (IMeasurementCursor cursor = openMeasurementCursor()) {
+                        while (cursor.moveToNext()) {
+                            Measurement m = cursor.getMeasurement();
+                            entry.setLength(0);
+                            formatter.formatEntry(m, entry);
+                            int entryLength = entry.length();
+                            if (entryChars.length < entryLength) {
+                                entryChars = new char[Math.max(entryLength, 2 * entryChars.length)];
+                            }
+                            entry.getChars(0, entryLength, entryChars, 0);
+                            bufferedWriter.write(entryChars, 0, entryLength);
+                            int processedCount = cursor.getPosition() + 1;
+                            if (processedCount % LOCATIONS_PER_PART == 0) {
+                                notifyProgressListeners(processedCount, locationsCount);
+                                if (cancel) {
+                                    break;
+                                }
+                            }
                         }
                     }
                 }
@@ -9,10 +9,10 @@ import android.net.Uri;
 import java.io.BufferedWriter;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.util.List;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.dao.IMeasurementCursor;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.enums.GeneratorResult;
 import info.zamojski.soft.towercollector.files.DeviceOperationException.Reason;
@@ -53,14 +53,9 @@ public class GpxTextGeneratorWrapper extends TextGeneratorWrapperBase {
             Timber.d("generate(): Cancelling save due to no data");
             return new FileGeneratorResult(GeneratorResult.NoData, Reason.Unknown);
         }
-        // calculate number of parts
+        // report progress every part
         final int LOCATIONS_PER_PART = 80;
-        int partsCount = 1;
-        if (locationsCount > LOCATIONS_PER_PART) {
-            partsCount = (int) Math.ceil(1.0 * locationsCount / LOCATIONS_PER_PART);
-        }
         notifyProgressListeners(0, locationsCount);
-        int finalPartsCount = partsCount;
         FileWriter fileWriter = new FileWriter() {
             @Override
             protected void writeFileInternal(OutputStream outputStream) throws Exception {
@@ -74,24 +69,25 @@ public class GpxTextGeneratorWrapper extends TextGeneratorWrapperBase {
                     headerData.LastMeasurementTimestamp = lastMeasurement.getMeasuredAt();
                     headerData.Boundaries = bounds;
                     bufferedWriter.write(formatter.formatHeader(headerData));
-                    // remember previous measurement
-                    Measurement prevMeasurement = firstMeasurement;
-                    // get locations in loop
-                    for (int i = 0; i < finalPartsCount; i++) {
-                        // get from database
-                        List<Measurement> measurements = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsPart(i * LOCATIONS_PER_PART, LOCATIONS_PER_PART);
-                        // write to file
-                        for (Measurement m : measurements) {
+                    // remember previous measurement time
+                    long prevMeasuredAt = firstMeasurement.getMeasuredAt();
+                    // read measurements one by one reusing the same instance
+                    try (IMeasurementCursor cursor = openMeasurementCursor()) {
+                        while (cursor.moveToNext()) {
+                            Measurement m = cursor.getMeasurement();
                             // if time difference is more than 30 minutes then create new segment
-                            if ((m.getMeasuredAt() - prevMeasurement.getMeasuredAt()) > 1800000) {
+                            if ((m.getMeasuredAt() - prevMeasuredAt) > 1800000) {
                                 bufferedWriter.write(formatter.formatNewSegment());
                             }
                             bufferedWriter.write(formatter.formatEntry(m));
-                            prevMeasurement = m;
-                        }
-                        notifyProgressListeners(i * LOCATIONS_PER_PART + measurements.size(), locationsCount);
-                        if (cancel) {
-                            break;
+                            prevMeasuredAt = m.getMeasuredAt();
+                            int processedCount = cursor.getPosition() + 1;
+                            if (processedCount % LOCATIONS_PER_PART == 0) {
+                                notifyProgressListeners(processedCount, locationsCount);
+                                if (cancel) {
+                                    break;
+                                }
+                            }
                         }
                     }
                     // write footer
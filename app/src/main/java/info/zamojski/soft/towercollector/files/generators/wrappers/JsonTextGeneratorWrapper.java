@@ -9,10 +9,11 @@ import android.net.Uri;
 import java.io.BufferedWriter;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.util.List;
+import java.util.Collections;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.dao.IMeasurementCursor;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.enums.GeneratorResult;
 import info.zamojski.soft.towercollector.files.DeviceOperationException;
@@ -52,31 +53,31 @@ public class JsonTextGeneratorWrapper extends TextGeneratorWrapperBase {
             Timber.d("generate(): Cancelling save due to no data");
             return new FileGeneratorResult(GeneratorResult.NoData, DeviceOperationException.Reason.Unknown);
         }
-        // calculate number of parts
+        // report progress every part
         final int LOCATIONS_PER_PART = 80;
-        int partsCount = 1;
-        if (locationsCount > LOCATIONS_PER_PART) {
-            partsCount = (int) Math.ceil(1.0 * locationsCount / LOCATIONS_PER_PART);
-        }
         notifyProgressListeners(0, locationsCount);
-        int finalPartsCount = partsCount;
         FileWriter fileWriter = new FileWriter() {
             @Override
             protected void writeFileInternal(OutputStream outputStream) throws Exception {
                 try (BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(outputStream))) {
                     bufferedWriter.write(formatter.formatHeader());
-                    // get locations in loop
-                    for (int i = 0; i < finalPartsCount; i++) {
-                        if (i > 0) {
-                            bufferedWriter.write(formatter.formatNewSegment());
-                        }
-                        // get from database
-                        List<Measurement> measurements = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsPart(i * LOCATIONS_PER_PART, LOCATIONS_PER_PART);
-                        // write to file
-                        bufferedWriter.write(formatter.formatList(measurements));
-                        notifyProgressListeners(i * LOCATIONS_PER_PART + measurements.size(), locationsCount);
-                        if (cancel) {
-                            break;
+                    boolean notFirst = false;
+                    // read measurements one by one reusing the same instance
+                    try (IMeasurementCursor cursor = openMeasurementCursor()) {
+                        while (cursor.moveToNext()) {
+                            Measurement m = cursor.getMeasurement();
+                            // measurements without supported cells are skipped, serialized directly to the file
+                            String separator = (notFirst ? formatter.formatNewSegment() : "");
+                            if (formatter.writeList(Collections.singletonList(m), bufferedWriter, separator)) {
+                                notFirst = true;
+                            }
+                            int processedCount = cursor.getPosition() + 1;
+                            if (processedCount % LOCATIONS_PER_PART == 0) {
+                                notifyProgressListeners(processedCount, locationsCount);
+                                if (cancel) {
+                                    break;
+                                }
+                            }
                         }
                     }
                     bufferedWriter.write(formatter.formatFooter());
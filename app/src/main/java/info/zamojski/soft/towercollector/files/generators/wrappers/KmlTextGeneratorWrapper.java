@@ -9,11 +9,10 @@ import android.net.Uri;
 import java.io.BufferedWriter;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.util.ArrayList;
-import java.util.List;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.R;
+import info.zamojski.soft.towercollector.dao.IMeasurementCursor;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.enums.GeneratorResult;
 import info.zamojski.soft.towercollector.files.DeviceOperationException.Reason;
@@ -52,51 +51,58 @@ public class KmlTextGeneratorWrapper extends TextGeneratorWrapperBase {
             Timber.d("generate(): Cancelling save due to no data");
             return new FileGeneratorResult(GeneratorResult.NoData, Reason.Unknown);
         }
-        // calculate number of parts
+        // report progress every part
         final int LOCATIONS_PER_PART = 80;
-        int partsCount = 1;
-        if (locationsCount > LOCATIONS_PER_PART) {
-            partsCount = (int) Math.ceil(1.0 * locationsCount / LOCATIONS_PER_PART);
-        }
         notifyProgressListeners(0, locationsCount);
-        int finalPartsCount = partsCount;
         FileWriter fileWriter = new FileWriter() {
             @Override
             protected void writeFileInternal(OutputStream outputStream) throws Exception {
-                List<String> lineEntries = new ArrayList<>();
-                List<String> lineSegments = new ArrayList<>();
-                try (BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(outputStream))) {
+                // track lines are written after all entries, keep them on disk instead of in memory
+                try (TextSpoolFile lineSpool = new TextSpoolFile(FileUtils.getCacheDir(MyApplication.getApplication()), "kml-lines");
+                     BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(outputStream))) {
                     // write header
                     Measurement firstMeasurement = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getFirstMeasurement();
                     Measurement lastMeasurement = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getLastMeasurement();
                     bufferedWriter.write(formatter.formatHeader(firstMeasurement.getMeasuredAt(), lastMeasurement.getMeasuredAt()));
-                    // remember previous measurement
-                    Measurement prevMeasurement = firstMeasurement;
+                    // remember previous measurement time
+                    long prevMeasuredAt = firstMeasurement.getMeasuredAt();
                     // track number of segments
                     int segmentId = 1;
-                    // get locations in loop
-                    for (int i = 0; i < finalPartsCount; i++) {
-                        // get from database
-                        List<Measurement> measurements = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsPart(i * LOCATIONS_PER_PART, LOCATIONS_PER_PART);
-                        // write to file
-                        for (Measurement m : measurements) {
+                    boolean lineSegmentEmpty = true;
+                    lineSpool.write(formatter.formatLineSegmentHeader());
+                    // read measurements one by one reusing the same instance
+                    try (IMeasurementCursor cursor = openMeasurementCursor()) {
+                        while (cursor.moveToNext()) {
+                            Measurement m = cursor.getMeasurement();
                             // if time difference is more than 30 minutes then create new segment
-                            if ((m.getMeasuredAt() - prevMeasurement.getMeasuredAt()) > 1800000) {
+                            if ((m.getMeasuredAt() - prevMeasuredAt) > 1800000) {
                                 bufferedWriter.write(formatter.formatNewSegment(segmentId++));
-                                lineSegments.add(formatter.formatLineSegment(lineEntries));
-                                lineEntries.clear();
+                                lineSpool.write(formatter.formatLineSegmentFooter());
+                                // only closed line segments are included in the path
+                                lineSpool.commit();
+                                lineSpool.write(formatter.formatLineSegmentHeader());
+                                lineSegmentEmpty = true;
                             }
                             bufferedWriter.write(formatter.formatEntry(m));
-                            lineEntries.add(formatter.formatLineEntry(m));
-                            prevMeasurement = m;
-                        }
-                        notifyProgressListeners(i * LOCATIONS_PER_PART + measurements.size(), locationsCount);
-                        if (cancel) {
-                            break;
+                            if (!lineSegmentEmpty) {
+                                lineSpool.write(formatter.formatLineEntrySeparator());
+                            }
+                            lineSpool.write(formatter.formatLineEntry(m));
+                            lineSegmentEmpty = false;
+                            prevMeasuredAt = m.getMeasuredAt();
+                            int processedCount = cursor.getPosition() + 1;
+                            if (processedCount % LOCATIONS_PER_PART == 0) {
+                                notifyProgressListeners(processedCount, locationsCount);
+                                if (cancel) {
+                                    break;
+                                }
+                            }
                         }
                     }
                     // write footer
-                    bufferedWriter.write(formatter.formatFooter(lineSegments));
+                    bufferedWriter.write(formatter.formatPathHeader());
+                    lineSpool.copyTo(bufferedWriter);
+                    bufferedWriter.write(formatter.formatFooter());
                 }
             }
         };
@@ -0,0 +1,59 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Fixed set of measurement instances shared by consumers of parallel export.
+ * Part goes back to its pool when all consumers released it, so it is refilled instead of allocating new measurements.
+ */
+final class MeasurementPart {
+
+    private final Measurement[] measurements;
+    private final BlockingQueue<MeasurementPart> pool;
+    private final AtomicInteger holdersCount = new AtomicInteger();
+    private int size = 0;
+
+    MeasurementPart(int capacity, BlockingQueue<MeasurementPart> pool) {
+        this.measurements = new Measurement[capacity];
+        for (int i = 0; i < capacity; i++) {
+            measurements[i] = new Measurement();
+        }
+        this.pool = pool;
+    }
+
+    int getCapacity() {
+        return measurements.length;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    void setSize(int size) {
+        this.size = size;
+    }
+
+    Measurement get(int index) {
+        return measurements[index];
+    }
+
+    /**
+     * Sets number of consumers which must release part before it is reused.
+     */
+    void share(int holdersCount) {
+        this.holdersCount.set(holdersCount);
+    }
+
+    void release() {
+        if (holdersCount.decrementAndGet() == 0) {
+            pool.offer(this);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import info.zamojski.soft.towercollector.dao.IMeasurementCursor;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Cursor over measurement parts published by another thread through a bounded queue.
+ * Published measurements are shared between consumers so they must not be modified.
+ * Each part is released when consumer moves past it or closes the cursor.
+ */
+final class QueuedMeasurementCursor implements IMeasurementCursor {
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final BlockingQueue<MeasurementPart> parts;
+    private volatile boolean producerFinished = false;
+    private volatile boolean closed = false;
+
+    private MeasurementPart currentPart;
+    private int indexInPart = 0;
+    private Measurement measurement;
+    private int position = -1;
+
+    QueuedMeasurementCursor(int capacity) {
+        parts = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Waits for free space in queue and adds part, part is released immediately when consumer is not reading anymore.
+     *
+     * @return false if consumer is not reading anymore
+     */
+    boolean publish(MeasurementPart part) throws InterruptedException {
+        while (!closed) {
+            if (parts.offer(part, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                // consumer might close between check and offer
+                if (closed)
+                    releaseQueuedParts();
+                return true;
+            }
+        }
+        part.release();
+        return false;
+    }
+
+    /**
+     * Informs consumer that nothing more will be published.
+     */
+    void finish() {
+        producerFinished = true;
+    }
+
+    @Override
+    public boolean moveToNext() {
+        while (currentPart == null || indexInPart >= currentPart.getSize()) {
+            releaseCurrentPart();
+            if (closed)
+                return false;
+            MeasurementPart part;
+            try {
+                part = parts.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (part == null) {
+                // check queue again because part might be published just before finishing
+                if (producerFinished && parts.isEmpty())
+                    return false;
+                continue;
+            }
+            currentPart = part;
+            indexInPart = 0;
+        }
+        measurement = currentPart.get(indexInPart++);
+        position++;
+        return true;
+    }
+
+    @Override
+    public Measurement getMeasurement() {
+        return measurement;
+    }
+
+    @Override
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        releaseCurrentPart();
+        releaseQueuedParts();
+    }
+
+    private void releaseCurrentPart() {
+        if (currentPart != null) {
+            currentPart.release();
+            currentPart = null;
+        }
+    }
+
+    private void releaseQueuedParts() {
+        MeasurementPart part;
+        while ((part = parts.poll()) != null) {
+            part.release();
+        }
+    }
+}
@@ -13,6 +13,8 @@ import android.net.Uri;
 import androidx.annotation.StringRes;
 
 import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.dao.IMeasurementCursor;
+import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
 import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressiveTextGeneratorWrapper;
 
@@ -20,7 +22,9 @@ public abstract class TextGeneratorWrapperBase implements IProgressiveTextGenera
 
     private final List<IProgressListener> progressListeners = new ArrayList<IProgressListener>();
 
-    protected boolean cancel = false;
+    protected volatile boolean cancel = false;
+
+    private IMeasurementCursor measurementCursor;
 
     public void addProgressListener(IProgressListener listener) {
         progressListeners.add(listener);
@@ -36,6 +40,17 @@ public abstract class TextGeneratorWrapperBase implements IProgressiveTextGenera
         }
     }
 
+    @Override
+    public void setMeasurementCursor(IMeasurementCursor measurementCursor) {
+        this.measurementCursor = measurementCursor;
+    }
+
+    protected IMeasurementCursor openMeasurementCursor() {
+        if (measurementCursor != null)
+            return measurementCursor;
+        return MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsCursor();
+    }
+
     @Override
     public void cancel() {
         cancel = true;
@@ -0,0 +1,85 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.generators.wrappers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import timber.log.Timber;
+
+/**
+ * Temporary file holding text written during export and appended to the output at the end, keeps memory usage constant.
+ * Only text written before last commit is appended, the rest is discarded.
+ */
+class TextSpoolFile implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File file;
+    private final Writer writer;
+    private long length = 0;
+    private long committedLength = 0;
+
+    TextSpoolFile(File directory, String prefix) throws IOException {
+        this.file = File.createTempFile(prefix, ".tmp", directory);
+        try {
+            this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+        } catch (IOException ex) {
+            deleteFile();
+            throw ex;
+        }
+    }
+
+    void write(String text) throws IOException {
+        writer.write(text);
+        length += text.length();
+    }
+
+    void commit() {
+        committedLength = length;
+    }
+
+    /**
+     * Appends committed text to the target, spool can't be written afterwards.
+     */
+    void copyTo(Writer target) throws IOException {
+        writer.close();
+        char[] buffer = new char[BUFFER_SIZE];
+        long remaining = committedLength;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            while (remaining > 0) {
+                int read = reader.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0)
+                    throw new IOException("Spool file truncated, " + remaining + " characters missing");
+                target.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException ex) {
+            Timber.w(ex, "close(): Failed to close spool file");
+        }
+        deleteFile();
+    }
+
+    private void deleteFile() {
+        if (!file.delete())
+            Timber.w("deleteFile(): Failed to delete spool file %s", file);
+    }
+}
@@ -4,10 +4,17 @@
 
 package info.zamojski.soft.towercollector.files.generators.wrappers.interfaces;
 
+import info.zamojski.soft.towercollector.dao.IMeasurementCursor;
+
 public interface IProgressiveTextGeneratorWrapper extends ITextGeneratorWrapper {
 
     void addProgressListener(IProgressListener listener);
 
     void removeProgressListener(IProgressListener listener);
 
+    /**
+     * Sets source of measurements to use instead of reading them from database.
+     */
+    void setMeasurementCursor(IMeasurementCursor measurementCursor);
+
 }
@@ -0,0 +1,112 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.importers;
+
+import java.util.List;
+
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Parses rows of the CSV export, short cell id and RNC are skipped because they are derived from cell id.
+ */
+class CsvExportParser extends CsvParserBase {
+
+    static final String HEADER_PREFIX = "mcc,mnc,lac,cell_id,";
+
+    private final int mcc, mnc, lac, cid, psc, asu, dbm, ta;
+    private final int lat, lon, accuracy, speed, bearing, altitude, measuredAt;
+    private final int netType, neighboring, discoveredAt;
+    private final int rsrp, rsrq, rssi, rssnr, cqi, rscp, csiRsrp, csiRsrq, csiSinr, ssRsrp, ssRsrq, ssSinr;
+    private final int cdmaDbm, cdmaEcio, evdoDbm, evdoEcio, evdoSnr, ecNo, arfcn;
+
+    CsvExportParser(String header) throws MeasurementParseException {
+        super(header, "mcc", "mnc", "lac", "cell_id", "lat", "lon", "measured_at", "net_type");
+        mcc = getColumnIndex("mcc");
+        mnc = getColumnIndex("mnc");
+        lac = getColumnIndex("lac");
+        cid = getColumnIndex("cell_id");
+        psc = getColumnIndex("psc");
+        asu = getColumnIndex("asu");
+        dbm = getColumnIndex("dbm");
+        ta = getColumnIndex("ta");
+        lat = getColumnIndex("lat");
+        lon = getColumnIndex("lon");
+        accuracy = getColumnIndex("accuracy");
+        speed = getColumnIndex("speed");
+        bearing = getColumnIndex("bearing");
+        altitude = getColumnIndex("altitude");
+        measuredAt = getColumnIndex("measured_at");
+        netType = getColumnIndex("net_type");
+        neighboring = getColumnIndex("neighboring");
+        discoveredAt = getColumnIndex("discovered_at");
+        rsrp = getColumnIndex("rsrp");
+        rsrq = getColumnIndex("rsrq");
+        rssi = getColumnIndex("rssi");
+        rssnr = getColumnIndex("rssnr");
+        cqi = getColumnIndex("cqi");
+        rscp = getColumnIndex("rscp");
+        csiRsrp = getColumnIndex("csi_rsrp");
+        csiRsrq = getColumnIndex("csi_rsrq");
+        csiSinr = getColumnIndex("csi_sinr");
+        ssRsrp = getColumnIndex("ss_rsrp");
+        ssRsrq = getColumnIndex("ss_rsrq");
+        ssSinr = getColumnIndex("ss_sinr");
+        cdmaDbm = getColumnIndex("cdma_dbm");
+        cdmaEcio = getColumnIndex("cdma_ecio");
+        evdoDbm = getColumnIndex("evdo_dbm");
+        evdoEcio = getColumnIndex("evdo_ecio");
+        evdoSnr = getColumnIndex("evdo_snr");
+        ecNo = getColumnIndex("ec_no");
+        arfcn = getColumnIndex("arfcn");
+    }
+
+    @Override
+    public void parseLine(String line, List<Measurement> measurements) throws MeasurementParseException {
+        String[] f = split(line);
+        Measurement m = new Measurement();
+        m.setLatitude(getRequiredDouble(f, lat));
+        m.setLongitude(getRequiredDouble(f, lon));
+        m.setGpsAccuracy((float) getDouble(f, accuracy, Measurement.GPS_VALUE_NOT_AVAILABLE));
+        m.setGpsSpeed((float) getDouble(f, speed, Measurement.GPS_VALUE_NOT_AVAILABLE));
+        m.setGpsBearing((float) getDouble(f, bearing, Measurement.GPS_VALUE_NOT_AVAILABLE));
+        m.setGpsAltitude(getDouble(f, altitude, Measurement.GPS_VALUE_NOT_AVAILABLE));
+        m.setMeasuredAt(getDate(f, measuredAt));
+
+        Cell c = new Cell();
+        c.setMcc(getInt(f, mcc, Cell.UNKNOWN_CID));
+        c.setMnc(getInt(f, mnc, Cell.UNKNOWN_CID));
+        c.setLac(getInt(f, lac, Cell.UNKNOWN_CID));
+        c.setCid(getLong(f, cid, Cell.UNKNOWN_CID_LONG));
+        c.setPsc(getInt(f, psc, Cell.UNKNOWN_CID));
+        c.setNetworkType(parseSystemType(f[netType]));
+        c.setNeighboring(!isEmpty(f, neighboring) && Boolean.parseBoolean(f[neighboring]));
+        c.setDiscoveredAt(isEmpty(f, discoveredAt) ? m.getMeasuredAt() : getDate(f, discoveredAt));
+        c.setAsu(getInt(f, asu, Cell.UNKNOWN_SIGNAL));
+        c.setDbm(getInt(f, dbm, Cell.UNKNOWN_SIGNAL));
+        c.setTa(getInt(f, ta, Cell.UNKNOWN_SIGNAL));
+        c.setRsrp(getInt(f, rsrp, Cell.UNKNOWN_SIGNAL));
+        c.setRsrq(getInt(f, rsrq, Cell.UNKNOWN_SIGNAL));
+        c.setRssi(getInt(f, rssi, Cell.UNKNOWN_SIGNAL));
+        c.setRssnr(getInt(f, rssnr, Cell.UNKNOWN_SIGNAL));
+        c.setCqi(getInt(f, cqi, Cell.UNKNOWN_SIGNAL));
+        c.setRscp(getInt(f, rscp, Cell.UNKNOWN_SIGNAL));
+        c.setCsiRsrp(getInt(f, csiRsrp, Cell.UNKNOWN_SIGNAL));
+        c.setCsiRsrq(getInt(f, csiRsrq, Cell.UNKNOWN_SIGNAL));
+        c.setCsiSinr(getInt(f, csiSinr, Cell.UNKNOWN_SIGNAL));
+        c.setSsRsrp(getInt(f, ssRsrp, Cell.UNKNOWN_SIGNAL));
+        c.setSsRsrq(getInt(f, ssRsrq, Cell.UNKNOWN_SIGNAL));
+        c.setSsSinr(getInt(f, ssSinr, Cell.UNKNOWN_SIGNAL));
+        c.setCdmaDbm(getInt(f, cdmaDbm, Cell.UNKNOWN_SIGNAL));
+        c.setCdmaEcio(getInt(f, cdmaEcio, Cell.UNKNOWN_SIGNAL));
+        c.setEvdoDbm(getInt(f, evdoDbm, Cell.UNKNOWN_SIGNAL));
+        c.setEvdoEcio(getInt(f, evdoEcio, Cell.UNKNOWN_SIGNAL));
+        c.setEvdoSnr(getInt(f, evdoSnr, Cell.UNKNOWN_SIGNAL));
+        c.setEcNo(getInt(f, ecNo, Cell.UNKNOWN_SIGNAL));
+        c.setArfcn(getInt(f, arfcn, Cell.UNKNOWN_CID));
+        m.addCell(c);
+        measurements.add(m);
+    }
+}
@@ -0,0 +1,82 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.importers;
+
+import java.util.List;
+
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Parses rows of the OpenCellID CSV format. The format doesn't contain neighboring flag, discovery date and altitude,
+ * signal is interpreted as dBm when negative and as ASU otherwise.
+ */
+class CsvOcidParser extends CsvParserBase {
+
+    static final String HEADER_PREFIX = "lat,lon,mcc,mnc,";
+
+    private final int lat, lon, mcc, mnc, sid, lac, tac, nid, cellId, bid, psc, pci, signal, ta;
+    private final int measuredAt, rating, speed, direction, act;
+
+    CsvOcidParser(String header) throws MeasurementParseException {
+        super(header, "lat", "lon", "mcc", "mnc", "measured_at", "act");
+        lat = getColumnIndex("lat");
+        lon = getColumnIndex("lon");
+        mcc = getColumnIndex("mcc");
+        mnc = getColumnIndex("mnc");
+        sid = getColumnIndex("sid");
+        lac = getColumnIndex("lac");
+        tac = getColumnIndex("tac");
+        nid = getColumnIndex("nid");
+        cellId = getColumnIndex("cellid");
+        bid = getColumnIndex("bid");
+        psc = getColumnIndex("psc");
+        pci = getColumnIndex("pci");
+        signal = getColumnIndex("signal");
+        ta = getColumnIndex("ta");
+        measuredAt = getColumnIndex("measured_at");
+        rating = getColumnIndex("rating");
+        speed = getColumnIndex("speed");
+        direction = getColumnIndex("direction");
+        act = getColumnIndex("act");
+    }
+
+    @Override
+    public void parseLine(String line, List<Measurement> measurements) throws MeasurementParseException {
+        String[] f = split(line);
+        Measurement m = new Measurement();
+        m.setLatitude(getRequiredDouble(f, lat));
+        m.setLongitude(getRequiredDouble(f, lon));
+        m.setGpsAccuracy((float) getDouble(f, rating, Measurement.GPS_VALUE_NOT_AVAILABLE));
+        m.setGpsSpeed((float) getDouble(f, speed, Measurement.GPS_VALUE_NOT_AVAILABLE));
+        m.setGpsBearing((float) getDouble(f, direction, Measurement.GPS_VALUE_NOT_AVAILABLE));
+        m.setMeasuredAt(getDate(f, measuredAt));
+
+        Cell c = new Cell();
+        c.setNetworkType(parseSystemType(f[act]));
+        if (isEmpty(f, mcc)) {
+            // CDMA and cells without known country are stored in CDMA columns
+            c.setMnc(getInt(f, sid, Cell.UNKNOWN_CID));
+            c.setLac(getInt(f, nid, Cell.UNKNOWN_CID));
+            c.setCid(getLong(f, bid, Cell.UNKNOWN_CID_LONG));
+        } else {
+            c.setMcc(getInt(f, mcc, Cell.UNKNOWN_CID));
+            c.setMnc(getInt(f, mnc, Cell.UNKNOWN_CID));
+            c.setLac(getInt(f, isEmpty(f, lac) ? tac : lac, Cell.UNKNOWN_CID));
+            c.setCid(getLong(f, cellId, Cell.UNKNOWN_CID_LONG));
+        }
+        c.setPsc(getInt(f, isEmpty(f, psc) ? pci : psc, Cell.UNKNOWN_CID));
+        int signalValue = getInt(f, signal, Cell.UNKNOWN_SIGNAL);
+        if (signalValue < 0) {
+            c.setDbm(signalValue);
+        } else {
+            c.setAsu(signalValue);
+        }
+        c.setTa(getInt(f, ta, Cell.UNKNOWN_SIGNAL));
+        c.setDiscoveredAt(m.getMeasuredAt());
+        m.addCell(c);
+        measurements.add(m);
+    }
+}
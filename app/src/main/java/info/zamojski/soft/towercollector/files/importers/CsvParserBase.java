@@ -0,0 +1,210 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.importers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
+
+/**
+ * Splits CSV lines into fields located by header names, so columns may be reordered or added by newer versions.
+ * Empty field means unknown value.
+ */
+abstract class CsvParserBase implements IMeasurementParser {
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+    // yyyy-MM-dd'T'HH:mm:ss.SSS'Z'
+    private static final int DATE_LENGTH = 24;
+
+    private final Map<String, Integer> columns = new HashMap<>();
+
+    CsvParserBase(String header, String... requiredColumns) throws MeasurementParseException {
+        String[] names = split(header.trim(), -1);
+        for (int i = 0; i < names.length; i++) {
+            columns.put(names[i].trim(), i);
+        }
+        for (String column : requiredColumns) {
+            if (!columns.containsKey(column))
+                throw new MeasurementParseException("Missing column " + column);
+        }
+    }
+
+    @Override
+    public boolean isRowPerCell() {
+        return true;
+    }
+
+    /**
+     * Returns index of the column or -1 when file doesn't contain it.
+     */
+    int getColumnIndex(String name) {
+        Integer index = columns.get(name);
+        return (index != null ? index : -1);
+    }
+
+    String[] split(String line) {
+        return split(line, columns.size());
+    }
+
+    private static String[] split(String line, int expectedCount) {
+        String[] fields = new String[Math.max(expectedCount, 1)];
+        int count = 0;
+        int length = line.length();
+        int start = 0;
+        while (start <= length) {
+            String field;
+            int end;
+            if (start < length && line.charAt(start) == '"') {
+                // quoted field, quotes inside are doubled
+                StringBuilder sb = new StringBuilder();
+                int i = start + 1;
+                while (i < length) {
+                    char c = line.charAt(i);
+                    if (c == '"') {
+                        if (i + 1 < length && line.charAt(i + 1) == '"') {
+                            sb.append('"');
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    sb.append(c);
+                    i++;
+                }
+                field = sb.toString();
+                end = line.indexOf(',', i);
+                if (end < 0)
+                    end = length;
+            } else {
+                end = line.indexOf(',', start);
+                if (end < 0)
+                    end = length;
+                field = line.substring(start, end);
+            }
+            if (count == fields.length) {
+                String[] grown = new String[fields.length * 2];
+                System.arraycopy(fields, 0, grown, 0, count);
+                fields = grown;
+            }
+            fields[count++] = field;
+            start = end + 1;
+        }
+        if (expectedCount < 0 && count < fields.length) {
+            String[] trimmed = new String[count];
+            System.arraycopy(fields, 0, trimmed, 0, count);
+            return trimmed;
+        }
+        // missing trailing fields are unknown
+        for (int i = count; i < fields.length; i++) {
+            fields[i] = "";
+        }
+        return fields;
+    }
+
+    static boolean isEmpty(String[] fields, int index) {
+        return index < 0 || index >= fields.length || fields[index].isEmpty();
+    }
+
+    static int getInt(String[] fields, int index, int defaultValue) throws MeasurementParseException {
+        if (isEmpty(fields, index))
+            return defaultValue;
+        try {
+            return Integer.parseInt(fields[index]);
+        } catch (NumberFormatException ex) {
+            throw new MeasurementParseException("Invalid integer " + fields[index], ex);
+        }
+    }
+
+    static long getLong(String[] fields, int index, long defaultValue) throws MeasurementParseException {
+        if (isEmpty(fields, index))
+            return defaultValue;
+        try {
+            return Long.parseLong(fields[index]);
+        } catch (NumberFormatException ex) {
+            throw new MeasurementParseException("Invalid integer " + fields[index], ex);
+        }
+    }
+
+    static double getDouble(String[] fields, int index, double defaultValue) throws MeasurementParseException {
+        if (isEmpty(fields, index))
+            return defaultValue;
+        try {
+            return Double.parseDouble(fields[index]);
+        } catch (NumberFormatException ex) {
+            throw new MeasurementParseException("Invalid number " + fields[index], ex);
+        }
+    }
+
+    static double getRequiredDouble(String[] fields, int index) throws MeasurementParseException {
+        if (isEmpty(fields, index))
+            throw new MeasurementParseException("Missing value in column " + index);
+        return getDouble(fields, index, 0);
+    }
+
+    /**
+     * Parses UTC date in yyyy-MM-dd'T'HH:mm:ss.SSS'Z' format, any date and time separator is accepted.
+     */
+    static long getDate(String[] fields, int index) throws MeasurementParseException {
+        if (isEmpty(fields, index))
+            throw new MeasurementParseException("Missing date in column " + index);
+        String value = fields[index];
+        if (value.length() != DATE_LENGTH || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(13) != ':'
+                || value.charAt(16) != ':' || value.charAt(19) != '.' || value.charAt(23) != 'Z')
+            throw new MeasurementParseException("Invalid date " + value);
+        int year = parseDigits(value, 0, 4);
+        int month = parseDigits(value, 5, 7);
+        int day = parseDigits(value, 8, 10);
+        int hour = parseDigits(value, 11, 13);
+        int minute = parseDigits(value, 14, 16);
+        int second = parseDigits(value, 17, 19);
+        int millis = parseDigits(value, 20, 23);
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59)
+            throw new MeasurementParseException("Invalid date " + value);
+        // days since epoch from civil date (proleptic Gregorian calendar)
+        int y = (month <= 2 ? year - 1 : year);
+        long era = y / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097 + dayOfEra - 719468;
+        return days * MILLIS_PER_DAY + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+    }
+
+    private static int parseDigits(String value, int start, int end) throws MeasurementParseException {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+                throw new MeasurementParseException("Invalid date " + value);
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * Reverses system type names of both general and OpenCellID cell utils.
+     */
+    static NetworkGroup parseSystemType(String value) {
+        switch (value) {
+            case "CDMA":
+                return NetworkGroup.Cdma;
+            case "GSM":
+                return NetworkGroup.Gsm;
+            case "UMTS":
+                return NetworkGroup.Wcdma;
+            case "LTE":
+                return NetworkGroup.Lte;
+            case "NR":
+                return NetworkGroup.Nr;
+            case "TD-SCDMA":
+            case "TDSCDMA":
+                return NetworkGroup.Tdscdma;
+            default:
+                return NetworkGroup.Unknown;
+        }
+    }
+}
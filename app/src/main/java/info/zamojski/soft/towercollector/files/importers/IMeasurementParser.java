@@ -0,0 +1,25 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.importers;
+
+import java.util.List;
+
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Parses lines of exported file, implementations must be thread safe because chunks are parsed in parallel.
+ */
+interface IMeasurementParser {
+
+    /**
+     * Adds measurements found in the line, lines without data (e.g. brackets) add nothing.
+     */
+    void parseLine(String line, List<Measurement> measurements) throws MeasurementParseException;
+
+    /**
+     * Whether each line contains a single cell, consecutive lines of the same measurement are merged then.
+     */
+    boolean isRowPerCell();
+}
@@ -0,0 +1,96 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.importers;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+import info.zamojski.soft.towercollector.enums.NetworkGroup;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+
+/**
+ * Parses Mozilla JSON files. Export contains one item per line, upload request contains all items in a single line.
+ */
+class JsonMlsParser implements IMeasurementParser {
+
+    @Override
+    public void parseLine(String line, List<Measurement> measurements) throws MeasurementParseException {
+        String trimmed = line.trim();
+        if (trimmed.endsWith(","))
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        // skip structure lines of the export
+        if (!trimmed.startsWith("{") || !trimmed.endsWith("}"))
+            return;
+        try {
+            JSONObject object = new JSONObject(trimmed);
+            JSONArray items = object.optJSONArray("items");
+            if (items == null) {
+                measurements.add(parseItem(object));
+            } else {
+                for (int i = 0; i < items.length(); i++) {
+                    measurements.add(parseItem(items.getJSONObject(i)));
+                }
+            }
+        } catch (JSONException ex) {
+            throw new MeasurementParseException("Invalid JSON item", ex);
+        }
+    }
+
+    @Override
+    public boolean isRowPerCell() {
+        return false;
+    }
+
+    private Measurement parseItem(JSONObject item) throws JSONException {
+        Measurement m = new Measurement();
+        m.setMeasuredAt(item.getLong("timestamp"));
+        JSONObject position = item.getJSONObject("position");
+        m.setLatitude(position.getDouble("latitude"));
+        m.setLongitude(position.getDouble("longitude"));
+        m.setGpsAccuracy((float) position.optDouble("accuracy", Measurement.GPS_VALUE_NOT_AVAILABLE));
+        m.setGpsAltitude(position.optDouble("altitude", Measurement.GPS_VALUE_NOT_AVAILABLE));
+        m.setGpsBearing((float) position.optDouble("heading", Measurement.GPS_VALUE_NOT_AVAILABLE));
+        m.setGpsSpeed((float) position.optDouble("speed", Measurement.GPS_VALUE_NOT_AVAILABLE));
+        JSONArray cellTowers = item.getJSONArray("cellTowers");
+        for (int i = 0; i < cellTowers.length(); i++) {
+            JSONObject tower = cellTowers.getJSONObject(i);
+            Cell c = new Cell();
+            c.setNetworkType(parseRadioType(tower.optString("radioType")));
+            c.setMcc(tower.getInt("mobileCountryCode"));
+            c.setMnc(tower.getInt("mobileNetworkCode"));
+            c.setLac(tower.getInt("locationAreaCode"));
+            c.setCid(tower.getLong("cellId"));
+            c.setPsc(tower.optInt("primaryScramblingCode", Cell.UNKNOWN_CID));
+            c.setAsu(tower.optInt("asu", Cell.UNKNOWN_SIGNAL));
+            c.setDbm(tower.optInt("signalStrength", Cell.UNKNOWN_SIGNAL));
+            c.setTa(tower.optInt("timingAdvance", Cell.UNKNOWN_SIGNAL));
+            c.setNeighboring(tower.optInt("serving", 1) == 0);
+            c.setDiscoveredAt(m.getMeasuredAt());
+            m.addCell(c);
+        }
+        return m;
+    }
+
+    private NetworkGroup parseRadioType(String radioType) {
+        switch (radioType) {
+            case "gsm":
+                return NetworkGroup.Gsm;
+            case "wcdma":
+                return NetworkGroup.Wcdma;
+            case "lte":
+                return NetworkGroup.Lte;
+            case "nr":
+                return NetworkGroup.Nr;
+            case "tdscdma":
+                return NetworkGroup.Tdscdma;
+            default:
+                return NetworkGroup.Unknown;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.importers;
+
+public class MeasurementParseException extends Exception {
+
+    private static final long serialVersionUID = 4203559146723001671L;
+
+    public MeasurementParseException(String detailMessage) {
+        super(detailMessage);
+    }
+
+    public MeasurementParseException(String detailMessage, Throwable ex) {
+        super(detailMessage, ex);
+    }
+
+}
@@ -0,0 +1,268 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.files.importers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+
+import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.files.archive.ArchiveReader;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
+import info.zamojski.soft.towercollector.model.Cell;
+import info.zamojski.soft.towercollector.model.Measurement;
+import timber.log.Timber;
+
+/**
+ * Loads exported files back into the database. Format is detected from the content, compressed files are unpacked on the fly.
+ * Text lines are read in chunks which are parsed in parallel, while parsed chunks are inserted in order in large transactions.
+ * Caller must wrap all imported files in {@link MeasurementsDatabase#beginBulkInsert()} and {@link MeasurementsDatabase#endBulkInsert()},
+ * so secondary indexes are rebuilt once per import.
+ */
+public class MeasurementsImporter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LINES_PER_CHUNK = 4096;
+    private static final int MEASUREMENTS_PER_TRANSACTION = 5000;
+    private static final int MAX_PARSER_THREADS = 4;
+    private static final int MAX_REPORTED_PARSE_ERRORS = 10;
+    private static final int HEADER_PROBE_LENGTH = 4;
+
+    private final MeasurementsDatabase database;
+    private final IProgressListener progressListener;
+
+    private CountingInputStream countingStream;
+    private int maxProgress;
+    private List<Measurement> batch;
+    private Measurement pendingMeasurement;
+    private int readCount;
+    private int insertedCount;
+    private int skippedLinesCount;
+
+    public MeasurementsImporter(MeasurementsDatabase database, IProgressListener progressListener) {
+        this.database = database;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Imports whole file, progress is reported in kilobytes of the input when its length is known.
+     * Returns number of inserted measurements.
+     */
+    public int importFile(InputStream inputStream, long inputLength) throws IOException, MeasurementParseException {
+        countingStream = new CountingInputStream(inputStream);
+        maxProgress = (int) Math.max(inputLength / 1024, 0);
+        batch = new ArrayList<>(MEASUREMENTS_PER_TRANSACTION);
+        pendingMeasurement = null;
+        readCount = 0;
+        insertedCount = 0;
+        skippedLinesCount = 0;
+        InputStream input = unpack(new BufferedInputStream(countingStream, BUFFER_SIZE));
+        if (ArchiveReader.isArchive(probe(input), HEADER_PROBE_LENGTH)) {
+            importArchive(input);
+        } else {
+            importText(input);
+        }
+        Timber.d("importFile(): Inserted %s of %s measurements, skipped %s lines", insertedCount, readCount, skippedLinesCount);
+        return insertedCount;
+    }
+
+    public int getSkippedLinesCount() {
+        return skippedLinesCount;
+    }
+
+    private InputStream unpack(InputStream input) throws IOException {
+        byte[] header = probe(input);
+        if ((header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B) {
+            Timber.d("unpack(): Reading gzip file");
+            return unpack(new BufferedInputStream(new GZIPInputStream(input, BUFFER_SIZE), BUFFER_SIZE));
+        }
+        if (header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4) {
+            Timber.d("unpack(): Reading first entry of zip file");
+            ZipInputStream zipStream = new ZipInputStream(input);
+            if (zipStream.getNextEntry() == null)
+                throw new IOException("Empty zip file");
+            return unpack(new BufferedInputStream(zipStream, BUFFER_SIZE));
+        }
+        return input;
+    }
+
+    private byte[] probe(InputStream input) throws IOException {
+        byte[] header = new byte[HEADER_PROBE_LENGTH];
+        input.mark(HEADER_PROBE_LENGTH);
+        int length = 0;
+        while (length < header.length) {
+            int read = input.read(header, length, header.length - length);
+            if (read < 0)
+                break;
+            length += read;
+        }
+        input.reset();
+        return header;
+    }
+
+    private void importArchive(InputStream input) throws IOException {
+        ArchiveReader reader = new ArchiveReader(input);
+        List<Measurement> measurements;
+        while ((measurements = reader.readBlock()) != null) {
+            readCount += measurements.size();
+            insertBatch(measurements);
+        }
+    }
+
+    private void importText(InputStream input) throws IOException, MeasurementParseException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), BUFFER_SIZE);
+        String firstLine = reader.readLine();
+        if (firstLine == null)
+            return;
+        // byte order mark may be added by spreadsheet editors
+        if (firstLine.startsWith("\uFEFF"))
+            firstLine = firstLine.substring(1);
+        IMeasurementParser parser;
+        List<String> firstChunk = new ArrayList<>(LINES_PER_CHUNK);
+        if (firstLine.startsWith(CsvExportParser.HEADER_PREFIX)) {
+            parser = new CsvExportParser(firstLine);
+        } else if (firstLine.startsWith(CsvOcidParser.HEADER_PREFIX)) {
+            parser = new CsvOcidParser(firstLine);
+        } else if (firstLine.trim().startsWith("{")) {
+            parser = new JsonMlsParser();
+            // first line is either opening bracket or whole upload request
+            firstChunk.add(firstLine);
+        } else {
+            throw new MeasurementParseException("Unsupported file format");
+        }
+        Timber.d("importText(): Using %s", parser.getClass().getSimpleName());
+
+        int threads = Math.max(1, Math.min(MAX_PARSER_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+        ExecutorService executor = createExecutor(threads);
+        // parsed chunks are consumed in the order they were read
+        Deque<Future<ParsedChunk>> chunks = new ArrayDeque<>();
+        try {
+            List<String> lines = readChunk(reader, firstChunk);
+            while (lines != null || !chunks.isEmpty()) {
+                // keep all parsers busy while there is input
+                while (lines != null && chunks.size() < 2 * threads) {
+                    List<String> chunkLines = lines;
+                    chunks.add(executor.submit(() -> parseChunk(parser, chunkLines)));
+                    lines = readChunk(reader, new ArrayList<>(LINES_PER_CHUNK));
+                }
+                Future<ParsedChunk> chunk = chunks.poll();
+                if (chunk != null)
+                    addParsed(chunk.get(), parser.isRowPerCell());
+            }
+            if (pendingMeasurement != null)
+                addToBatch(pendingMeasurement);
+            pendingMeasurement = null;
+            insertBatch(batch);
+        } catch (InterruptedException ex) {
+            Timber.w("importText(): Import interrupted");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            Timber.e(ex.getCause(), "importText(): Parsing failed");
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            for (Future<ParsedChunk> chunk : chunks) {
+                chunk.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private List<String> readChunk(BufferedReader reader, List<String> lines) throws IOException {
+        String line;
+        while (lines.size() < LINES_PER_CHUNK && (line = reader.readLine()) != null) {
+            if (!line.isEmpty())
+                lines.add(line);
+        }
+        return lines.isEmpty() ? null : lines;
+    }
+
+    private ParsedChunk parseChunk(IMeasurementParser parser, List<String> lines) {
+        ParsedChunk chunk = new ParsedChunk(lines.size());
+        for (String line : lines) {
+            try {
+                parser.parseLine(line, chunk.measurements);
+            } catch (MeasurementParseException ex) {
+                if (chunk.skippedLines < MAX_REPORTED_PARSE_ERRORS)
+                    Timber.w(ex, "parseChunk(): Skipping line %s", line);
+                chunk.skippedLines++;
+            }
+        }
+        return chunk;
+    }
+
+    private void addParsed(ParsedChunk chunk, boolean rowPerCell) {
+        skippedLinesCount += chunk.skippedLines;
+        for (Measurement m : chunk.measurements) {
+            // rows of the same measurement follow each other, also across chunk boundary
+            if (rowPerCell && pendingMeasurement != null && isSameMeasurement(pendingMeasurement, m)) {
+                for (Cell c : m.getCells()) {
+                    pendingMeasurement.addCell(c);
+                }
+                continue;
+            }
+            if (pendingMeasurement != null)
+                addToBatch(pendingMeasurement);
+            pendingMeasurement = m;
+        }
+    }
+
+    private void addToBatch(Measurement measurement) {
+        readCount++;
+        batch.add(measurement);
+        if (batch.size() >= MEASUREMENTS_PER_TRANSACTION) {
+            insertBatch(batch);
+            batch = new ArrayList<>(MEASUREMENTS_PER_TRANSACTION);
+        }
+    }
+
+    private boolean isSameMeasurement(Measurement first, Measurement second) {
+        return first.getMeasuredAt() == second.getMeasuredAt()
+                && first.getLatitude() == second.getLatitude()
+                && first.getLongitude() == second.getLongitude()
+                && first.getGpsAccuracy() == second.getGpsAccuracy()
+                && first.getGpsSpeed() == second.getGpsSpeed()
+                && first.getGpsBearing() == second.getGpsBearing()
+                && first.getGpsAltitude() == second.getGpsAltitude();
+    }
+
+    private void insertBatch(List<Measurement> measurements) {
+        if (measurements.isEmpty())
+            return;
+        insertedCount += database.insertBulkMeasurements(measurements);
+        if (progressListener != null && maxProgress > 0) {
+            progressListener.reportProgress((int) Math.min(countingStream.getCount() / 1024, maxProgress), maxProgress);
+        }
+    }
+
+    private ExecutorService createExecutor(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> new Thread(runnable, "ImporterParser-" + threadNumber.incrementAndGet()));
+    }
+
+    private static final class ParsedChunk {
+        private final List<Measurement> measurements;
+        private int skippedLines = 0;
+
+        private ParsedChunk(int linesCount) {
+            this.measurements = new ArrayList<>(linesCount);
+        }
+    }
+}
@@ -5,5 +5,5 @@
 package info.zamojski.soft.towercollector.io.filesystem;
 
 public enum CompressionFormat {
-    None, Zip, GZip
+    None, Zip, GZip, ParallelGZip
 }
@@ -56,6 +56,9 @@ public abstract class FileWriter {
                 case GZip:
                     writeGZipFileInternal(outputStream);
                     break;
+                case ParallelGZip:
+                    writeParallelGZipFileInternal(outputStream);
+                    break;
                 default:
                     writeFileInternal(outputStream);
                     break;
@@ -87,4 +90,10 @@ public abstract class FileWriter {
             writeFileInternal(gzipOutputStream);
         }
     }
+
+    private void writeParallelGZipFileInternal(OutputStream outputStream) throws Exception {
+        try (ParallelGZipOutputStream gzipOutputStream = new ParallelGZipOutputStream(outputStream)) {
+            writeFileInternal(gzipOutputStream);
+        }
+    }
 }
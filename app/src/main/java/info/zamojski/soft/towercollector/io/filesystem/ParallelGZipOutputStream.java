@@ -0,0 +1,178 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.filesystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip stream that deflates independent blocks on multiple threads (similar to pigz).
+ * Each block is primed with the last 32 KB of the previous one and ends with sync flush,
+ * so concatenated blocks form a single deflate stream readable by any gzip decoder.
+ */
+public class ParallelGZipOutputStream extends OutputStream {
+
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int maxPendingBlocks;
+    private final Queue<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength = 0;
+    private byte[] dictionary = null;
+    private long totalLength = 0;
+    private boolean closed = false;
+
+    public ParallelGZipOutputStream(OutputStream out) throws IOException {
+        this(out, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelGZipOutputStream(OutputStream out, int threads) throws IOException {
+        this.out = out;
+        threads = Math.max(1, threads);
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.maxPendingBlocks = 2 * threads;
+        writeHeader();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+        crc.update(b, off, len);
+        totalLength += len;
+        while (len > 0) {
+            int count = Math.min(len, BLOCK_SIZE - blockLength);
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+            if (blockLength == BLOCK_SIZE) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // blocks are written in order once compressed, flushing partial block would reduce ratio
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            submitBlock(true);
+            while (!pendingBlocks.isEmpty()) {
+                writeOldestBlock();
+            }
+            writeTrailer();
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        final byte[] input = block;
+        final int inputLength = blockLength;
+        final byte[] inputDictionary = dictionary;
+        // keep tail of this block as dictionary of the next one
+        if (inputLength >= DICTIONARY_SIZE) {
+            dictionary = Arrays.copyOfRange(input, inputLength - DICTIONARY_SIZE, inputLength);
+        } else if (inputLength > 0) {
+            dictionary = Arrays.copyOf(input, inputLength);
+        }
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+        pendingBlocks.add(executor.submit(() -> deflateBlock(input, inputLength, inputDictionary, last)));
+        while (pendingBlocks.size() >= maxPendingBlocks) {
+            writeOldestBlock();
+        }
+    }
+
+    private void writeOldestBlock() throws IOException {
+        try {
+            out.write(pendingBlocks.remove().get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException ex) {
+            throw new IOException("Failed to compress block", ex.getCause());
+        }
+    }
+
+    private static byte[] deflateBlock(byte[] input, int inputLength, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (dictionary != null)
+                deflater.setDictionary(dictionary);
+            deflater.setInput(input, 0, inputLength);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(inputLength / 2 + 64);
+            byte[] buffer = new byte[16 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    output.write(buffer, 0, count);
+                }
+            } else {
+                // sync flush ends block on byte boundary without final bit
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    output.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        out.write(new byte[]{
+                (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+        });
+    }
+
+    private void writeTrailer() throws IOException {
+        byte[] trailer = new byte[8];
+        writeInt((int) crc.getValue(), trailer, 0);
+        writeInt((int) totalLength, trailer, 4);
+        out.write(trailer);
+    }
+
+    private static void writeInt(int value, byte[] buffer, int offset) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+}
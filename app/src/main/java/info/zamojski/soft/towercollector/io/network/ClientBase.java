@@ -16,9 +16,6 @@ import info.zamojski.soft.towercollector.MyApplication;
 
 public abstract class ClientBase {
 
-    protected static final int CONN_TIMEOUT = 30000;
-    protected static final int READ_TIMEOUT = 30000;
-
     protected void reportExceptionWithSuppress(IOException ex) {
         Throwable originalException = ex.getCause();
         // suppress known exceptions
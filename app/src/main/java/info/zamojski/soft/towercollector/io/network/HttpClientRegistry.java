@@ -0,0 +1,91 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.network;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import info.zamojski.soft.towercollector.io.network.compatibility.ExtendedOkHttpClientBuilder;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import timber.log.Timber;
+
+/**
+ * Process-wide HTTP clients. All endpoints share one connection pool and dispatcher,
+ * so consecutive requests (e.g. upload parts) reuse connections instead of repeating TCP and TLS handshakes.
+ */
+public class HttpClientRegistry {
+
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_DURATION = 2;
+
+    private static HttpClientRegistry instance;
+
+    private final Map<HttpEndpoint, OkHttpClient> clients = new EnumMap<>(HttpEndpoint.class);
+    private OkHttpClient baseClient;
+
+    public static synchronized HttpClientRegistry getInstance() {
+        if (instance == null) {
+            instance = new HttpClientRegistry();
+        }
+        return instance;
+    }
+
+    private HttpClientRegistry() {
+    }
+
+    public synchronized OkHttpClient getClient(HttpEndpoint endpoint) {
+        OkHttpClient client = clients.get(endpoint);
+        if (client == null) {
+            Timber.d("getClient(): Creating client for %s", endpoint);
+            // derived clients share connection pool and dispatcher of the base client
+            client = getBaseClient().newBuilder()
+                    .connectTimeout(endpoint.getConnectTimeout(), TimeUnit.MILLISECONDS)
+                    .readTimeout(endpoint.getReadTimeout(), TimeUnit.MILLISECONDS)
+                    .writeTimeout(endpoint.getWriteTimeout(), TimeUnit.MILLISECONDS)
+                    .build();
+            clients.put(endpoint, client);
+        }
+        return client;
+    }
+
+    /**
+     * Closes idle connections, e.g. when system is low on memory. Clients remain usable.
+     */
+    public synchronized void evictIdleConnections() {
+        if (baseClient != null) {
+            Timber.d("evictIdleConnections(): Evicting %s idle connections", baseClient.connectionPool().idleConnectionCount());
+            baseClient.connectionPool().evictAll();
+        }
+    }
+
+    /**
+     * Releases all connections and threads. Clients are recreated on next request.
+     */
+    public synchronized void shutdown() {
+        if (baseClient != null) {
+            Timber.d("shutdown(): Releasing HTTP clients");
+            baseClient.dispatcher().executorService().shutdown();
+            baseClient.connectionPool().evictAll();
+            baseClient = null;
+            clients.clear();
+        }
+    }
+
+    private OkHttpClient getBaseClient() {
+        if (baseClient == null) {
+            baseClient = new ExtendedOkHttpClientBuilder()
+                    .newBuilder()
+                    .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION, TimeUnit.MINUTES))
+                    // HTTP/2 is negotiated through ALPN when server supports it
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .build();
+        }
+        return baseClient;
+    }
+}
@@ -0,0 +1,33 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.network;
+
+public enum HttpEndpoint {
+    OpenCellIdUpload(30000, 30000, 60000),
+    MozillaUpload(30000, 30000, 60000),
+    Updates(30000, 30000, 30000);
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int writeTimeout;
+
+    HttpEndpoint(int connectTimeout, int readTimeout, int writeTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.writeTimeout = writeTimeout;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+}
@@ -0,0 +1,17 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.network;
+
+import java.io.IOException;
+import java.io.Writer;
+
+public interface IRequestContentWriter {
+
+    /**
+     * Writes request content. May be called more than once when request is retried.
+     * Errors of content generation should be thrown as {@link RequestContentException}.
+     */
+    void writeTo(Writer writer) throws IOException;
+}
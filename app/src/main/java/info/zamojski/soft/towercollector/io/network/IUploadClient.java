@@ -6,4 +6,9 @@ package info.zamojski.soft.towercollector.io.network;
 
 public interface IUploadClient {
     RequestResult uploadMeasurements(String content);
+
+    /**
+     * Uploads content formatted directly into the request stream.
+     */
+    RequestResult uploadMeasurements(IRequestContentWriter contentWriter);
 }
@@ -7,9 +7,7 @@ package info.zamojski.soft.towercollector.io.network;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
-import java.util.concurrent.TimeUnit;
 
-import info.zamojski.soft.towercollector.io.network.compatibility.ExtendedOkHttpClientBuilder;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -29,23 +27,34 @@ public class MozillaUploadClient extends ClientBase implements IUploadClient {
 
     @Override
     public RequestResult uploadMeasurements(String content) {
+        // add json as request content
+        return uploadMeasurementsCommon(RequestBody.create(content, JSON), false);
+    }
+
+    @Override
+    public RequestResult uploadMeasurements(IRequestContentWriter contentWriter) {
+        // compress json on the fly while sending
+        return uploadMeasurementsCommon(new StreamingRequestBody(JSON, contentWriter, true), true);
+    }
+
+    private RequestResult uploadMeasurementsCommon(RequestBody requestBody, boolean gzip) {
         Timber.d("uploadMeasurements(): Sending post request");
         try {
-            OkHttpClient client = new ExtendedOkHttpClientBuilder()
-                    .newBuilder()
-                    .connectTimeout(CONN_TIMEOUT, TimeUnit.MILLISECONDS)
-                    .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                    .build();
+            OkHttpClient client = HttpClientRegistry.getInstance().getClient(HttpEndpoint.MozillaUpload);
 
-            // add json as request content
-            RequestBody requestBody = RequestBody.create(content, JSON);
-            Request request = new Request.Builder()
+            Request.Builder requestBuilder = new Request.Builder()
                     .url(uploadUrl)
-                    .post(requestBody)
-                    .build();
+                    .post(requestBody);
+            if (gzip)
+                requestBuilder.header("Content-Encoding", "gzip");
+            Request request = requestBuilder.build();
 
             Response response = client.newCall(request).execute();
             return handleResponse(response.code(), response.body().string());
+        } catch (RequestContentException ex) {
+            Timber.e(ex, "uploadMeasurements(): Failed to generate request content");
+            reportException(ex);
+            return RequestResult.Failure;
         } catch (SocketTimeoutException | ConnectException ex) {
             Timber.d(ex, "uploadMeasurements(): Timeout encountered");
             return RequestResult.ConnectionError;
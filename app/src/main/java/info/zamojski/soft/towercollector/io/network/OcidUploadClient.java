@@ -7,9 +7,7 @@ package info.zamojski.soft.towercollector.io.network;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
-import java.util.concurrent.TimeUnit;
 
-import info.zamojski.soft.towercollector.io.network.compatibility.ExtendedOkHttpClientBuilder;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
@@ -35,24 +33,22 @@ public class OcidUploadClient extends ClientBase implements IUploadClient {
 
     @Override
     public RequestResult uploadMeasurements(String content) {
-        return uploadMeasurementsEncrypted(content);
+        return uploadMeasurementsEncrypted(RequestBody.create(content, CSV));
     }
 
-    private RequestResult uploadMeasurementsEncrypted(String content) {
+    @Override
+    public RequestResult uploadMeasurements(IRequestContentWriter contentWriter) {
+        // multipart file can't be compressed separately
+        return uploadMeasurementsEncrypted(new StreamingRequestBody(CSV, contentWriter, false));
+    }
+
+    private RequestResult uploadMeasurementsEncrypted(RequestBody dataFile) {
         Timber.d("uploadMeasurementsEncrypted(): Sending encrypted post request");
-        return uploadMeasurementsCommon(new ExtendedOkHttpClientBuilder().newBuilder(), url, content);
+        return uploadMeasurementsCommon(HttpClientRegistry.getInstance().getClient(HttpEndpoint.OpenCellIdUpload), url, dataFile);
     }
 
-    private RequestResult uploadMeasurementsCommon(OkHttpClient.Builder clientBuilder, String url, String content) {
+    private RequestResult uploadMeasurementsCommon(OkHttpClient client, String url, RequestBody dataFile) {
         try {
-            OkHttpClient client = clientBuilder
-                    .connectTimeout(CONN_TIMEOUT, TimeUnit.MILLISECONDS)
-                    .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                    .build();
-
-            RequestBody dataFile = RequestBody.create(content, CSV);
-            this.fileSize = dataFile.contentLength();
-
             RequestBody requestBody = new MultipartBody.Builder()
                     .setType(MultipartBody.FORM)
                     .addFormDataPart("key", apiKey)
@@ -65,7 +61,16 @@ public class OcidUploadClient extends ClientBase implements IUploadClient {
                     .build();
 
             Response response = client.newCall(request).execute();
+            // streamed content length is known only after sending
+            if (dataFile instanceof StreamingRequestBody)
+                this.fileSize = ((StreamingRequestBody) dataFile).getWrittenLength();
+            else
+                this.fileSize = dataFile.contentLength();
             return handleResponse(response.code(), response.body().string());
+        } catch (RequestContentException ex) {
+            Timber.e(ex, "uploadMeasurements(): Failed to generate request content");
+            reportException(ex);
+            return RequestResult.Failure;
         } catch (SocketTimeoutException | ConnectException ex) {
             Timber.d(ex, "uploadMeasurements(): Timeout encountered");
             return RequestResult.ConnectionError;
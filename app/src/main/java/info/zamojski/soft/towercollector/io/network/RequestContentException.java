@@ -0,0 +1,16 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.network;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link IRequestContentWriter} when content can't be generated, as opposed to errors of the connection.
+ */
+public class RequestContentException extends IOException {
+    public RequestContentException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,78 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.io.network;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Request body written directly to the connection, so memory usage doesn't depend on content size.
+ */
+class StreamingRequestBody extends RequestBody {
+
+    private static final int WRITER_BUFFER_SIZE = 8 * 1024;
+
+    private final MediaType contentType;
+    private final IRequestContentWriter contentWriter;
+    private final boolean gzip;
+    private volatile long writtenLength = 0;
+
+    StreamingRequestBody(MediaType contentType, IRequestContentWriter contentWriter, boolean gzip) {
+        this.contentType = contentType;
+        this.contentWriter = contentWriter;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        // unknown until written, sent using chunked transfer encoding
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        writtenLength = 0;
+        ForwardingSink countingSink = new ForwardingSink(sink) {
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                super.write(source, byteCount);
+                writtenLength += byteCount;
+            }
+        };
+        BufferedSink target = Okio.buffer(gzip ? new GzipSink(countingSink) : countingSink);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target.outputStream(), StandardCharsets.UTF_8), WRITER_BUFFER_SIZE);
+        contentWriter.writeTo(writer);
+        writer.flush();
+        if (gzip) {
+            // writes gzip trailer
+            target.close();
+        } else {
+            target.emit();
+        }
+    }
+
+    /**
+     * Number of bytes sent during the last write (after compression).
+     */
+    long getWrittenLength() {
+        return writtenLength;
+    }
+}
@@ -7,9 +7,7 @@ package info.zamojski.soft.towercollector.io.network;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
-import java.util.concurrent.TimeUnit;
 
-import info.zamojski.soft.towercollector.io.network.compatibility.ExtendedOkHttpClientBuilder;
 import info.zamojski.soft.towercollector.utils.StringUtils;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -27,11 +25,7 @@ public class UpdateClient extends ClientBase {
     public String fetchUpdates() {
         Timber.d("fetchUpdates(): Sending get request");
         try {
-            OkHttpClient client = new ExtendedOkHttpClientBuilder()
-                    .newBuilder()
-                    .connectTimeout(CONN_TIMEOUT, TimeUnit.MILLISECONDS)
-                    .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                    .build();
+            OkHttpClient client = HttpClientRegistry.getInstance().getClient(HttpEndpoint.Updates);
 
             Request request = new Request.Builder()
                     .url(url)
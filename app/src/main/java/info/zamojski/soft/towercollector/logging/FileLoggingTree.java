@@ -18,28 +18,42 @@ import java.io.OutputStreamWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import info.zamojski.soft.towercollector.MyApplication;
+import info.zamojski.soft.towercollector.enums.LogOverflowPolicy;
 import info.zamojski.soft.towercollector.utils.ApkUtils;
 import info.zamojski.soft.towercollector.utils.FileUtils;
 import info.zamojski.soft.towercollector.utils.StorageUtils;
 import timber.log.Timber;
 
+/**
+ * Logs to file without blocking callers. Records are put into lock-free ring buffer
+ * and written in batches by a single background thread, which also rotates the file when it grows too big.
+ */
 public class FileLoggingTree extends Timber.DebugTree {
 
     private static final String TAG = FileLoggingTree.class.getSimpleName();
 
-    private static final String[] LEVELS = new String[]{"disabled", "undefined", "V", "D", "I", "W", "E"};
+    private static final String[] LEVELS = new String[]{"disabled", "undefined", "V", "D", "I", "W", "E", "A"};
     private static final int DISABLED = 0;
-    private static final int FILE_EXISTENCE_CHECK_INTERVAL = 25;
+    private static final int BUFFER_CAPACITY = 4096;
+    private static final long FILE_EXISTENCE_CHECK_INTERVAL_IN_MILLIS = 5000;
+    private static final long MAX_FILE_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_FILES_PER_SECOND = 100;
+    private static final long WRITER_IDLE_TIMEOUT_IN_NANOS = TimeUnit.SECONDS.toNanos(1);
 
-    private final static SimpleDateFormat shortDateFormat = new SimpleDateFormat("MM-dd-HH:mm:ss.SSS", new Locale("en"));
-
-    private DocumentFile logFile;
-    private OutputStreamWriter osw;
-    private boolean firstRun = true;
+    private final RingBuffer<LogRecord> buffer = new RingBuffer<>(BUFFER_CAPACITY);
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private volatile Thread writerThread;
+    private volatile boolean writerParked = false;
+    private volatile LogOverflowPolicy overflowPolicy = LogOverflowPolicy.DropOldest;
+    private final AtomicLong flushRequests = new AtomicLong();
+    private final Object flushLock = new Object();
+    private long completedFlushRequests = 0;
     private int priority = DISABLED;
-    private int logCallsWithinInterval = 0;
 
     public final static FileLoggingTree INSTANCE = new FileLoggingTree();
 
@@ -52,37 +66,66 @@ public class FileLoggingTree extends Timber.DebugTree {
         return this;
     }
 
-    @SuppressLint("LogNotTimber")
-    @Override
-    protected void log(int priority, String tag, @NonNull String message, Throwable t) {
-        if (firstRun) {
-            synchronized (FileLoggingTree.class) {
-                if (firstRun) {
-                    initialize();
-                    firstRun = false;
-                    // write identification data once initialization finished
-                    log(Log.DEBUG, ApkUtils.getDeviceName());
-                    log(Log.DEBUG, ApkUtils.getApkVersionNameWithSuffix());
-                    log(Log.DEBUG, "Android version %s (%d)", Build.VERSION.RELEASE, Build.VERSION.SDK_INT);
+    /**
+     * Sets which records are discarded when writer can't keep up.
+     */
+    public FileLoggingTree setOverflowPolicy(LogOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public long getDroppedRecordsCount() {
+        return droppedRecords.get();
+    }
+
+    /**
+     * Blocks until records logged so far are written and flushed to file or timeout elapses.
+     *
+     * @return false if timeout elapsed
+     */
+    public boolean flush(long timeoutMillis) {
+        Thread writer = writerThread;
+        if (writer == null)
+            return true;
+        long request = flushRequests.incrementAndGet();
+        LockSupport.unpark(writer);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (flushLock) {
+            while (completedFlushRequests < request) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                try {
+                    flushLock.wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
                 }
             }
         }
-        // Skip if storage is unavailable or initialization failed
-        if (osw == null) {
-            return;
+        return true;
+    }
+
+    @Override
+    protected void log(int priority, String tag, @NonNull String message, Throwable t) {
+        Thread writer = writerThread;
+        if (writer == null) {
+            writer = startWriter();
         }
-        try {
-            if (logCallsWithinInterval++ >= FILE_EXISTENCE_CHECK_INTERVAL) {
-                logCallsWithinInterval = 0;
-                if (logFile == null || !logFile.exists()) {
-                    reinitialize();
-                }
+        LogRecord record = new LogRecord(System.currentTimeMillis(), priority, tag, Process.myTid(), message);
+        if (!buffer.offer(record)) {
+            droppedRecords.incrementAndGet();
+            if (overflowPolicy != LogOverflowPolicy.DropOldest || buffer.poll() == null) {
+                return;
             }
-            osw.write(String.format(Locale.ENGLISH, "%s %s/%s(%5d:%5d): %s\r\n", shortDateFormat.format(new Date()), LEVELS[priority], tag, Process.myPid(), Process.myTid(), message));
-            osw.flush();
-        } catch (Exception ex) {
-            Log.e(TAG, "log(): Failed to write log file", ex);
-            reinitialize();
+            // oldest record discarded to make room
+            if (!buffer.offer(record)) {
+                droppedRecords.incrementAndGet();
+                return;
+            }
+        }
+        if (writerParked) {
+            LockSupport.unpark(writer);
         }
     }
 
@@ -91,45 +134,205 @@ public class FileLoggingTree extends Timber.DebugTree {
         return (this.priority > 0 && this.priority <= priority);
     }
 
-    @SuppressLint("LogNotTimber")
-    private void initialize() {
-        try {
-            // Logger needs to be turned off otherwise it enters into infinite loop
-            Uri storageDirectoryUri = MyApplication.getPreferencesProvider().getStorageUriWithLogger(false);
-            if (StorageUtils.canWriteStorageUri(storageDirectoryUri)) {
-                DocumentFile storageDirectory = DocumentFile.fromTreeUri(MyApplication.getApplication(), storageDirectoryUri);
-                String fileName = FileUtils.getCurrentDateFileName("log");
-                logFile = storageDirectory.findFile(fileName);
-                if (logFile == null || !logFile.exists()) {
-                    logFile = storageDirectory.createFile(FileUtils.getFileMimeType(fileName), fileName);
-                    Log.i(TAG, "initialize(): File created " + (logFile == null ? fileName : logFile.getUri().toString()));
-                } else {
-                    Log.i(TAG, "initialize(): Appending to file " + logFile.getUri().toString());
+    private synchronized Thread startWriter() {
+        if (writerThread == null) {
+            Thread thread = new Thread(new LogWriter(), "FileLoggingWriter");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            thread.start();
+            writerThread = thread;
+        }
+        return writerThread;
+    }
+
+    private static final class LogRecord {
+        private final long timestamp;
+        private final int priority;
+        private final String tag;
+        private final int threadId;
+        private final String message;
+
+        private LogRecord(long timestamp, int priority, String tag, int threadId, String message) {
+            this.timestamp = timestamp;
+            this.priority = priority;
+            this.tag = tag;
+            this.threadId = threadId;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Owns the log file, all file operations are done on writer thread.
+     */
+    private final class LogWriter implements Runnable {
+        // used only by writer thread
+        private final SimpleDateFormat shortDateFormat = new SimpleDateFormat("MM-dd-HH:mm:ss.SSS", new Locale("en"));
+        private final StringBuilder line = new StringBuilder(256);
+        private final int processId = Process.myPid();
+
+        private DocumentFile logFile;
+        private OutputStreamWriter osw;
+        private boolean initialized = false;
+        private long fileSize = 0;
+        private long lastFileExistenceCheck = 0;
+        private long reportedDroppedRecords = 0;
+        private boolean unflushed = false;
+
+        @Override
+        public void run() {
+            while (true) {
+                // read before polling so records logged before the request are already consumed when buffer is empty
+                long flushRequest = flushRequests.get();
+                LogRecord record = buffer.poll();
+                if (record == null) {
+                    onBatchWritten();
+                    onFlushed(flushRequest);
+                    writerParked = true;
+                    // check again, producer might have missed the flag
+                    record = buffer.poll();
+                    if (record == null)
+                        LockSupport.parkNanos(this, WRITER_IDLE_TIMEOUT_IN_NANOS);
+                    writerParked = false;
+                    if (record == null)
+                        continue;
                 }
+                write(record);
+            }
+        }
 
-                if (logFile == null || !logFile.canWrite()) {
-                    Log.w(TAG, "initialize(): Cannot write to file " + (logFile == null ? fileName : logFile.getUri().toString()));
-                    return;
+        @SuppressLint("LogNotTimber")
+        private void write(LogRecord record) {
+            if (!initialized) {
+                initialized = true;
+                initialize();
+            }
+            // Skip if storage is unavailable or initialization failed
+            if (osw == null) {
+                return;
+            }
+            try {
+                long dropped = droppedRecords.get();
+                if (dropped != reportedDroppedRecords) {
+                    writeLine(System.currentTimeMillis(), Log.WARN, TAG, Process.myTid(), "Dropped " + (dropped - reportedDroppedRecords) + " log records");
+                    reportedDroppedRecords = dropped;
                 }
+                writeLine(record.timestamp, record.priority, record.tag, record.threadId, record.message);
+                if (fileSize >= MAX_FILE_SIZE) {
+                    Log.i(TAG, "write(): Log file size limit reached, rotating");
+                    reinitialize();
+                }
+            } catch (Exception ex) {
+                Log.e(TAG, "write(): Failed to write log file", ex);
+                reinitialize();
+            }
+        }
 
-                OutputStream outputStream = MyApplication.getApplication().getContentResolver().openOutputStream(logFile.getUri());
-                osw = new OutputStreamWriter(outputStream);
-            } else {
-                Log.w(TAG, "initialize(): Storage not writable");
+        @SuppressLint("LogNotTimber")
+        private void onBatchWritten() {
+            if (osw == null || !unflushed)
+                return;
+            try {
+                osw.flush();
+                unflushed = false;
+                long now = System.currentTimeMillis();
+                if (now - lastFileExistenceCheck >= FILE_EXISTENCE_CHECK_INTERVAL_IN_MILLIS) {
+                    lastFileExistenceCheck = now;
+                    if (logFile == null || !logFile.exists()) {
+                        Log.i(TAG, "onBatchWritten(): Log file deleted, reinitializing");
+                        reinitialize();
+                    }
+                }
+            } catch (Exception ex) {
+                Log.e(TAG, "onBatchWritten(): Failed to flush log file", ex);
+                reinitialize();
+            }
+        }
+
+        private void onFlushed(long flushRequest) {
+            synchronized (flushLock) {
+                if (completedFlushRequests < flushRequest) {
+                    completedFlushRequests = flushRequest;
+                    flushLock.notifyAll();
+                }
             }
-        } catch (Exception ex) {
-            Log.e(TAG, "initialize(): Failed to open log file", ex);
         }
-    }
 
-    @SuppressLint("LogNotTimber")
-    private void reinitialize() {
-        try {
-            Log.i(TAG, "reinitialize(): Log file deleted, reinitializing");
-            osw.close();
-        } catch (Exception ex) {
-            Log.e(TAG, "reinitialize(): Failed to close log file", ex);
+        private void writeLine(long timestamp, int priority, String tag, int threadId, String message) throws Exception {
+            line.setLength(0);
+            line.append(shortDateFormat.format(new Date(timestamp))).append(' ')
+                    .append(priority >= 0 && priority < LEVELS.length ? LEVELS[priority] : String.valueOf(priority)).append('/').append(tag).append('(');
+            appendPadded(processId);
+            line.append(':');
+            appendPadded(threadId);
+            line.append("): ").append(message).append("\r\n");
+            osw.append(line);
+            fileSize += line.length();
+            unflushed = true;
+        }
+
+        private void appendPadded(int value) {
+            // same as %5d
+            for (int limit = 10000; limit > 1 && value < limit && value >= 0; limit /= 10) {
+                line.append(' ');
+            }
+            line.append(value);
+        }
+
+        @SuppressLint("LogNotTimber")
+        private void initialize() {
+            try {
+                // Logger needs to be turned off otherwise it enters into infinite loop
+                Uri storageDirectoryUri = MyApplication.getPreferencesProvider().getStorageUriWithLogger(false);
+                if (StorageUtils.canWriteStorageUri(storageDirectoryUri)) {
+                    DocumentFile storageDirectory = DocumentFile.fromTreeUri(MyApplication.getApplication(), storageDirectoryUri);
+                    Date now = new Date();
+                    String fileName = FileUtils.getCurrentDateFileName(now, "", "log");
+                    logFile = storageDirectory.findFile(fileName);
+                    // rotated within the same second
+                    for (int i = 1; i < MAX_FILES_PER_SECOND && logFile != null && logFile.exists() && logFile.length() >= MAX_FILE_SIZE; i++) {
+                        fileName = FileUtils.getCurrentDateFileName(now, "-" + i, "log");
+                        logFile = storageDirectory.findFile(fileName);
+                    }
+                    if (logFile == null || !logFile.exists()) {
+                        logFile = storageDirectory.createFile(FileUtils.getFileMimeType(fileName), fileName);
+                        Log.i(TAG, "initialize(): File created " + (logFile == null ? fileName : logFile.getUri().toString()));
+                        fileSize = 0;
+                    } else {
+                        Log.i(TAG, "initialize(): Appending to file " + logFile.getUri().toString());
+                        fileSize = logFile.length();
+                    }
+
+                    if (logFile == null || !logFile.canWrite()) {
+                        Log.w(TAG, "initialize(): Cannot write to file " + (logFile == null ? fileName : logFile.getUri().toString()));
+                        return;
+                    }
+
+                    OutputStream outputStream = MyApplication.getApplication().getContentResolver().openOutputStream(logFile.getUri(), "wa");
+                    osw = new OutputStreamWriter(outputStream);
+                    lastFileExistenceCheck = System.currentTimeMillis();
+                    // write identification data at the beginning of each file
+                    writeLine(now.getTime(), Log.DEBUG, TAG, Process.myTid(), ApkUtils.getDeviceName());
+                    writeLine(now.getTime(), Log.DEBUG, TAG, Process.myTid(), ApkUtils.getApkVersionNameWithSuffix());
+                    writeLine(now.getTime(), Log.DEBUG, TAG, Process.myTid(), String.format(Locale.ENGLISH, "Android version %s (%d)", Build.VERSION.RELEASE, Build.VERSION.SDK_INT));
+                } else {
+                    Log.w(TAG, "initialize(): Storage not writable");
+                }
+            } catch (Exception ex) {
+                Log.e(TAG, "initialize(): Failed to open log file", ex);
+            }
+        }
+
+        @SuppressLint("LogNotTimber")
+        private void reinitialize() {
+            try {
+                if (osw != null)
+                    osw.close();
+            } catch (Exception ex) {
+                Log.e(TAG, "reinitialize(): Failed to close log file", ex);
+            }
+            osw = null;
+            logFile = null;
+            initialized = false;
         }
-        firstRun = true;
     }
 }
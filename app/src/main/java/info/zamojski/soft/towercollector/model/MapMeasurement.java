@@ -19,11 +19,23 @@ import info.zamojski.soft.towercollector.utils.NetworkTypeUtils;
 public class MapMeasurement extends MeasurementBase implements Serializable {
 
     private static final long serialVersionUID = -1561704184666574202L;
+    /**
+     * Measurement id.
+     */
+    private int measurementId;
     /**
      * Associated cells.
      */
     private List<MapCell> cells = new ArrayList<>();
 
+    public int getMeasurementId() {
+        return measurementId;
+    }
+
+    public void setMeasurementId(int measurementId) {
+        this.measurementId = measurementId;
+    }
+
     public List<MapCell> getCells() {
         return cells;
     }
@@ -58,6 +70,7 @@ public class MapMeasurement extends MeasurementBase implements Serializable {
 
     public static MapMeasurement fromMeasurement(Measurement m) {
         MapMeasurement mm = new MapMeasurement();
+        mm.setMeasurementId(m.getMeasurementId());
         mm.setLatitude(m.getLatitude());
         mm.setLongitude(m.getLongitude());
         mm.setMeasuredAt(m.getMeasuredAt());
@@ -72,7 +85,8 @@ public class MapMeasurement extends MeasurementBase implements Serializable {
     @Override
     public String toString() {
         return "MapMeasurement{" +
-                "latitude=" + latitude +
+                "measurementId=" + measurementId +
+                ", latitude=" + latitude +
                 ", longitude=" + longitude +
                 ", measuredAt=" + measuredAt +
                 ", cells=[" + TextUtils.join(", ", cells) + "]" +
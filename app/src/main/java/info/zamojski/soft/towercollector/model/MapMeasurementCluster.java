@@ -0,0 +1,41 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.model;
+
+import java.io.Serializable;
+
+/**
+ * Measurements aggregated into a single grid bucket, positioned at their average location.
+ */
+public class MapMeasurementCluster implements Serializable {
+
+    private static final long serialVersionUID = -2713604658466133853L;
+
+    private double latitude, longitude;
+    private int count;
+
+    public MapMeasurementCluster(double latitude, double longitude, int count) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.count = count;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "MapMeasurementCluster [latitude=" + latitude + ", longitude=" + longitude + ", count=" + count + "]";
+    }
+}
@@ -0,0 +1,59 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.model;
+
+import java.io.Serializable;
+
+/**
+ * Measurements waiting for upload to one target.
+ */
+public class UploadSummary implements Serializable {
+
+    private static final long serialVersionUID = -4215873109238455412L;
+
+    private final int count;
+    private final int minMeasurementId;
+    private final int maxMeasurementId;
+    private final long minMeasuredAt;
+    private final long maxMeasuredAt;
+
+    public UploadSummary(int count, int minMeasurementId, int maxMeasurementId, long minMeasuredAt, long maxMeasuredAt) {
+        this.count = count;
+        this.minMeasurementId = minMeasurementId;
+        this.maxMeasurementId = maxMeasurementId;
+        this.minMeasuredAt = minMeasuredAt;
+        this.maxMeasuredAt = maxMeasuredAt;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getMinMeasurementId() {
+        return minMeasurementId;
+    }
+
+    public int getMaxMeasurementId() {
+        return maxMeasurementId;
+    }
+
+    public long getMinMeasuredAt() {
+        return minMeasuredAt;
+    }
+
+    public long getMaxMeasuredAt() {
+        return maxMeasuredAt;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadSummary [count=" + count + ", minMeasurementId=" + minMeasurementId + ", maxMeasurementId=" + maxMeasurementId
+                + ", minMeasuredAt=" + minMeasuredAt + ", maxMeasuredAt=" + maxMeasuredAt + "]";
+    }
+}
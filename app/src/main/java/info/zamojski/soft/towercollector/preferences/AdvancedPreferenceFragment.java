@@ -42,6 +42,7 @@ public class AdvancedPreferenceFragment extends DialogEnabledPreferenceFragment
         setupErrorReportingAvailability();
         setupDatabaseImport();
         setupDatabaseExport();
+        setupMeasurementsImport();
         setupPreferencesImport();
         setupPreferencesExport();
     }
@@ -66,6 +67,16 @@ public class AdvancedPreferenceFragment extends DialogEnabledPreferenceFragment
         });
     }
 
+    private void setupMeasurementsImport() {
+        showConfirmationDialog(R.string.preferences_import_measurements_key, R.string.unsafe_operation_warning_title,
+                R.string.unsafe_operation_warning_message, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        importMeasurements();
+                    }
+                });
+    }
+
     private void setupPreferencesImport() {
         showConfirmationDialog(R.string.preferences_import_preferences_key, R.string.unsafe_operation_warning_title,
                 R.string.unsafe_operation_warning_message, new DialogInterface.OnClickListener() {
@@ -165,6 +176,16 @@ public class AdvancedPreferenceFragment extends DialogEnabledPreferenceFragment
         }
     }
 
+    private void importMeasurements() {
+        Timber.d("importMeasurements(): Importing measurements");
+        Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
+        if (StorageUtils.canReadStorageUri(storageUri)) {
+            DatabaseOperations.importMeasurements(MyApplication.getApplication());
+        } else {
+            StorageUtils.requestStorageUri(getActivity());
+        }
+    }
+
     private void importPreferences() {
         Timber.d("importPreferences(): Importing preferences");
         Uri storageUri = MyApplication.getPreferencesProvider().getStorageUri();
@@ -109,7 +109,8 @@ public class CollectorPreferenceFragment extends DialogEnabledPreferenceFragment
         if (key.equals(getString(R.string.preferences_gps_optimizations_enabled_key))
                 || key.equals(getString(R.string.preferences_collect_neighboring_cells_key))
                 || key.equals(getString(R.string.preferences_notify_measurements_collected_key))
-                || key.equals(getString(R.string.preferences_hide_collector_notification_key))) {
+                || key.equals(getString(R.string.preferences_hide_collector_notification_key))
+                || key.equals(getString(R.string.preferences_collector_write_buffer_window_key))) {
             if (MyApplication.isBackgroundTaskRunning(CollectorService.class)) {
                 Toast.makeText(getActivity(), R.string.preferences_restart_collector, Toast.LENGTH_SHORT).show();
             }
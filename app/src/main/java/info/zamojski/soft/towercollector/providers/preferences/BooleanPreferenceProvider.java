@@ -17,6 +17,10 @@ public class BooleanPreferenceProvider extends PreferenceProviderBase<Boolean> {
         super(context);
     }
 
+    BooleanPreferenceProvider(Context context, PreferencesSnapshot snapshot) {
+        super(context, snapshot);
+    }
+
     @Override
     Boolean getPreferenceDefaultValue(@BoolRes int defaultValueKey) {
         Resources resources = context.getResources();
@@ -18,6 +18,10 @@ public class FloatPreferenceProvider extends PreferenceProviderBase<Float> {
         super(context);
     }
 
+    FloatPreferenceProvider(Context context, PreferencesSnapshot snapshot) {
+        super(context, snapshot);
+    }
+
     @Override
     Float getPreferenceDefaultValue(@IntegerRes int defaultValueKey) {
         Resources resources = context.getResources();
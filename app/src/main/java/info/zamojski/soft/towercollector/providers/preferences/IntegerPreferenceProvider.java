@@ -17,6 +17,10 @@ public class IntegerPreferenceProvider extends PreferenceProviderBase<Integer> {
         super(context);
     }
 
+    IntegerPreferenceProvider(Context context, PreferencesSnapshot snapshot) {
+        super(context, snapshot);
+    }
+
     @Override
     Integer getPreferenceDefaultValue(@IntegerRes int defaultValueKey) {
         Resources resources = context.getResources();
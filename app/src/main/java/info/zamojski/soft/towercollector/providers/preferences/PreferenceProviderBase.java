@@ -17,18 +17,37 @@ import timber.log.Timber;
 abstract class PreferenceProviderBase<T> {
 
     protected Context context;
+    private final PreferencesSnapshot snapshot;
 
     PreferenceProviderBase(Context context) {
+        this(context, null);
+    }
+
+    PreferenceProviderBase(Context context, PreferencesSnapshot snapshot) {
         this.context = context;
+        this.snapshot = snapshot;
     }
 
     public T getPreference(@StringRes int valueKey, int defaultValueKey) {
         return getPreference(valueKey, defaultValueKey, true);
     }
 
+    @SuppressWarnings("unchecked")
     T getPreference(@StringRes int valueKey, int defaultValueKey, boolean loggerEnabled) {
+        if (snapshot == null)
+            return loadPreference(getSharedPreferences(), valueKey, defaultValueKey, loggerEnabled);
+        T value = (T) snapshot.get(valueKey);
+        if (value == null) {
+            int generation = snapshot.getGeneration();
+            value = loadPreference(snapshot.getSharedPreferences(), valueKey, defaultValueKey, loggerEnabled);
+            if (value != null)
+                snapshot.put(valueKey, value, generation);
+        }
+        return value;
+    }
+
+    private T loadPreference(SharedPreferences prefs, @StringRes int valueKey, int defaultValueKey, boolean loggerEnabled) {
         T value;
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
         T defaultValue = getPreferenceDefaultValue(defaultValueKey);
         try {
             value = getPreferenceValue(prefs, valueKey, defaultValue);
@@ -48,10 +67,19 @@ abstract class PreferenceProviderBase<T> {
 
     public void setPreference(@StringRes int valueKey, T value) {
         Timber.d("setPreference(): Preference `%s` value set to `%s`", context.getString(valueKey), value);
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences prefs = getSharedPreferences();
         SharedPreferences.Editor editor = prefs.edit();
         setPreferenceValue(editor, valueKey, value);
         editor.apply();
+        // change listener is notified asynchronously, don't return previous value until then
+        if (snapshot != null)
+            snapshot.invalidate(valueKey);
+    }
+
+    private SharedPreferences getSharedPreferences() {
+        if (snapshot != null)
+            return snapshot.getSharedPreferences();
+        return PreferenceManager.getDefaultSharedPreferences(context);
     }
 
     abstract T getPreferenceDefaultValue(@IntegerRes int defaultValueKey);
@@ -7,7 +7,6 @@ package info.zamojski.soft.towercollector.providers.preferences;
 import info.zamojski.soft.towercollector.R;
 import info.zamojski.soft.towercollector.enums.ExportAction;
 import info.zamojski.soft.towercollector.enums.FileType;
-import info.zamojski.soft.towercollector.utils.Cache;
 
 import android.content.Context;
 import android.net.Uri;
@@ -28,13 +27,14 @@ public class PreferencesProvider {
     private final FloatPreferenceProvider floatPreferenceProvider;
     private final StringPreferenceProvider stringPreferenceProvider;
 
-    private final Cache<Integer, Boolean> booleanCache = new Cache<>();
+    private final PreferencesSnapshot snapshot;
 
     public PreferencesProvider(Context context) {
-        this.booleanPreferenceProvider = new BooleanPreferenceProvider(context);
-        this.integerPreferenceProvider = new IntegerPreferenceProvider(context);
-        this.floatPreferenceProvider = new FloatPreferenceProvider(context);
-        this.stringPreferenceProvider = new StringPreferenceProvider(context);
+        this.snapshot = new PreferencesSnapshot(context);
+        this.booleanPreferenceProvider = new BooleanPreferenceProvider(context, snapshot);
+        this.integerPreferenceProvider = new IntegerPreferenceProvider(context, snapshot);
+        this.floatPreferenceProvider = new FloatPreferenceProvider(context, snapshot);
+        this.stringPreferenceProvider = new StringPreferenceProvider(context, snapshot);
     }
 
     public int getPreferencesVersion() {
@@ -134,6 +134,16 @@ public class PreferencesProvider {
         return value;
     }
 
+    public int getCollectorWriteBufferWindow() {
+        int value = integerPreferenceProvider.getPreference(R.string.preferences_collector_write_buffer_window_key, R.integer.preferences_collector_write_buffer_window_default_value);
+        return value;
+    }
+
+    public int getCollectorWriteBufferBatchSize() {
+        int value = integerPreferenceProvider.getPreference(R.string.preferences_collector_write_buffer_batch_size_key, R.integer.preferences_collector_write_buffer_batch_size_default_value);
+        return value;
+    }
+
     public String getCollectorApiVersion() {
         String value = stringPreferenceProvider.getPreference(R.string.preferences_collector_api_version_key, R.string.preferences_collector_api_version_default_value);
         return value;
@@ -216,6 +226,11 @@ public class PreferencesProvider {
         booleanPreferenceProvider.setPreference(R.string.preferences_reupload_if_upload_fails_key, value);
     }
 
+    public int getUploaderPartsInFlight() {
+        int value = integerPreferenceProvider.getPreference(R.string.preferences_uploader_parts_in_flight_key, R.integer.preferences_uploader_parts_in_flight_default_value);
+        return value;
+    }
+
     public List<FileType> getEnabledExportFileTypes() {
         String value = stringPreferenceProvider.getPreference(R.string.preferences_enabled_export_types_key, R.string.preferences_enabled_export_types_default_value);
         FileType[] fileTypes = FileType.valuesOf(TextUtils.split(value, ENUM_SERIALIZATION_DELIMITER));
@@ -265,21 +280,17 @@ public class PreferencesProvider {
     }
 
     public boolean isMainMapEnabled() {
-        Boolean value = booleanCache.get(R.string.preferences_main_map_enable_key);
-        if (value == null) {
-            value = booleanPreferenceProvider.getPreference(R.string.preferences_main_map_enable_key, R.bool.preferences_main_map_enable_default_value);
-            booleanCache.set(R.string.preferences_main_map_enable_key, value);
-        }
+        boolean value = booleanPreferenceProvider.getPreference(R.string.preferences_main_map_enable_key, R.bool.preferences_main_map_enable_default_value);
         return value;
     }
 
     public void setMainMapEnabled(boolean enabled) {
         booleanPreferenceProvider.setPreference(R.string.preferences_main_map_enable_key, enabled);
-        booleanCache.set(R.string.preferences_main_map_enable_key, enabled);
     }
 
     public void invalidateMainMapEnabledCache() {
-        booleanCache.invalidate(R.string.preferences_main_map_enable_key);
+        // listeners are notified in random order, the event sent after this call must see new value
+        snapshot.invalidate(R.string.preferences_main_map_enable_key);
     }
 
     public boolean isMainMapConfigured() {
@@ -0,0 +1,95 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package info.zamojski.soft.towercollector.providers.preferences;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import androidx.annotation.StringRes;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable map of already loaded preference values, replaced as a whole on every change so reads don't need locking.
+ * Changed preferences are removed and loaded again on next read.
+ */
+final class PreferencesSnapshot implements SharedPreferences.OnSharedPreferenceChangeListener {
+
+    private final Context context;
+    private final SharedPreferences sharedPreferences;
+
+    private volatile Map<Integer, Object> values = Collections.emptyMap();
+    // preference key to resource id, to map change notifications
+    private volatile Map<String, Integer> valueKeys = Collections.emptyMap();
+    private volatile int generation = 0;
+
+    PreferencesSnapshot(Context context) {
+        this.context = context;
+        this.sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        // listeners are kept as weak references, snapshot is referenced by providers
+        this.sharedPreferences.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    SharedPreferences getSharedPreferences() {
+        return sharedPreferences;
+    }
+
+    Object get(@StringRes int valueKey) {
+        return values.get(valueKey);
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stores loaded value unless any preference changed since given generation, as the value could be outdated.
+     */
+    synchronized void put(@StringRes int valueKey, Object value, int loadedGeneration) {
+        if (generation != loadedGeneration)
+            return;
+        if (!valueKeys.containsValue(valueKey)) {
+            Map<String, Integer> newValueKeys = new HashMap<>(valueKeys);
+            newValueKeys.put(context.getString(valueKey), valueKey);
+            valueKeys = newValueKeys;
+        }
+        Map<Integer, Object> newValues = new HashMap<>(values);
+        newValues.put(valueKey, value);
+        values = newValues;
+    }
+
+    synchronized void invalidate(@StringRes int valueKey) {
+        generation++;
+        if (values.containsKey(valueKey)) {
+            Map<Integer, Object> newValues = new HashMap<>(values);
+            newValues.remove(valueKey);
+            values = newValues;
+        }
+    }
+
+    synchronized void invalidateAll() {
+        generation++;
+        values = Collections.emptyMap();
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        // null key when preferences are cleared
+        Integer valueKey = (key != null ? valueKeys.get(key) : null);
+        if (valueKey != null) {
+            invalidate(valueKey);
+        } else if (key == null) {
+            invalidateAll();
+        } else {
+            // not loaded yet, but running loads could still read previous value
+            synchronized (this) {
+                generation++;
+            }
+        }
+    }
+}
@@ -16,6 +16,10 @@ public class StringPreferenceProvider extends PreferenceProviderBase<String> {
         super(context);
     }
 
+    StringPreferenceProvider(Context context, PreferencesSnapshot snapshot) {
+        super(context, snapshot);
+    }
+
     @Override
     String getPreferenceDefaultValue(@StringRes int defaultValueKey) {
         Resources resources = context.getResources();
@@ -9,6 +9,7 @@ import android.widget.Toast;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
 import info.zamojski.soft.towercollector.model.AnalyticsStatistics;
 import timber.log.Timber;
 
@@ -16,10 +17,12 @@ public class DatabaseUpgradeTask {
 
     private final Activity activity;
     private final int oldDbVersion;
+    private final IProgressListener progressListener;
 
-    public DatabaseUpgradeTask(Activity activity, int oldDbVersion) {
+    public DatabaseUpgradeTask(Activity activity, int oldDbVersion, IProgressListener progressListener) {
         this.activity = activity;
         this.oldDbVersion = oldDbVersion;
+        this.progressListener = progressListener;
     }
 
     public void upgrade() {
@@ -29,7 +32,7 @@ public class DatabaseUpgradeTask {
             MeasurementsDatabase.invalidateInstance();
             long startTime = System.currentTimeMillis();
             // one of below will trigger data migration if necessary (long operation)
-            MeasurementsDatabase.getInstance(MyApplication.getApplication()).forceDatabaseUpgrade();
+            MeasurementsDatabase.getInstance(MyApplication.getApplication()).forceDatabaseUpgrade(progressListener);
             AnalyticsStatistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAnalyticsStatistics();
             long endTime = System.currentTimeMillis();
             long duration = (endTime - startTime);
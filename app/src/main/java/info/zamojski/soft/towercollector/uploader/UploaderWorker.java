@@ -17,11 +17,19 @@ import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
 import org.greenrobot.eventbus.EventBus;
+import org.json.JSONException;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import info.zamojski.soft.towercollector.BuildConfig;
 import info.zamojski.soft.towercollector.MyApplication;
@@ -31,20 +39,22 @@ import info.zamojski.soft.towercollector.analytics.IntentSource;
 import info.zamojski.soft.towercollector.analytics.internal.Label;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.enums.UploadResult;
+import info.zamojski.soft.towercollector.enums.UploadTarget;
 import info.zamojski.soft.towercollector.events.PrintMainWindowEvent;
 import info.zamojski.soft.towercollector.files.formatters.csv.CsvUploadFormatter;
 import info.zamojski.soft.towercollector.files.formatters.csv.ICsvFormatter;
-import info.zamojski.soft.towercollector.files.formatters.json.IJsonFormatter;
 import info.zamojski.soft.towercollector.files.formatters.json.JsonMozillaUploadFormatter;
 import info.zamojski.soft.towercollector.files.generators.wrappers.interfaces.IProgressListener;
 import info.zamojski.soft.towercollector.io.network.IUploadClient;
 import info.zamojski.soft.towercollector.io.network.MozillaUploadClient;
 import info.zamojski.soft.towercollector.io.network.OcidUploadClient;
+import info.zamojski.soft.towercollector.io.network.RequestContentException;
 import info.zamojski.soft.towercollector.io.network.RequestResult;
 import info.zamojski.soft.towercollector.model.AnalyticsStatistics;
 import info.zamojski.soft.towercollector.model.Measurement;
-import info.zamojski.soft.towercollector.model.Statistics;
+import info.zamojski.soft.towercollector.model.UploadSummary;
 import info.zamojski.soft.towercollector.utils.ApkUtils;
+import info.zamojski.soft.towercollector.utils.DateUtils;
 import info.zamojski.soft.towercollector.utils.NetworkUtils;
 import info.zamojski.soft.towercollector.utils.OpenCellIdUtils;
 import timber.log.Timber;
@@ -79,6 +89,7 @@ public class UploaderWorker extends Worker implements IProgressListener {
     private boolean isUseSharedOpenCellIdApiKeyEnabled;
     private boolean isMlsUploadEnabled;
     private boolean isReuploadIfUploadFailsEnabled;
+    private int partsInFlightLimit;
 
     private UploadResult ocidUploadResult = UploadResult.NotStarted;
     private UploadResult mlsUploadResult = UploadResult.NotStarted;
@@ -118,15 +129,17 @@ public class UploaderWorker extends Worker implements IProgressListener {
             isMlsUploadEnabled = getInputData().getBoolean(INTENT_KEY_UPLOAD_TO_MLS, MyApplication.getPreferencesProvider().isMlsUploadEnabled());
             isReuploadIfUploadFailsEnabled = getInputData().getBoolean(INTENT_KEY_UPLOAD_TRY_REUPLOAD, MyApplication.getPreferencesProvider().isReuploadIfUploadFailsEnabled());
             startIntentSource = IntentSource.valueOf(getInputData().getString(INTENT_KEY_START_INTENT_SOURCE));
+            partsInFlightLimit = MyApplication.getPreferencesProvider().getUploaderPartsInFlight();
             // we hope API key will be valid
             ocidApiKey = isUseSharedOpenCellIdApiKeyEnabled ? OpenCellIdUtils.getSharedApiKey() : OpenCellIdUtils.getApiKey();
             mlsApiKey = BuildConfig.MLS_API_KEY;
 
-            // get number of locations to upload
-            int locationsCount = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAllLocationsCount(true);
+            // get measurements to upload
+            UploadSummary ocidSummary = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getUploadSummary(UploadTarget.Ocid);
+            UploadSummary mlsSummary = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getUploadSummary(UploadTarget.Mls);
 
             // check if there is anything to upload
-            if (locationsCount == 0) {
+            if (ocidSummary.isEmpty() && mlsSummary.isEmpty()) {
                 Timber.d("doWork(): Cancelling upload due to no data to upload");
                 ocidUploadResult = UploadResult.NoData;
                 mlsUploadResult = UploadResult.NoData;
@@ -134,16 +147,10 @@ public class UploaderWorker extends Worker implements IProgressListener {
                 return Result.failure(getMessageData(summary));
             }
 
-            AnalyticsStatistics startStats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAnalyticsStatistics();
             long startTime = System.currentTimeMillis();
 
-            // calculate number of upload parts
-            int partsCount = 1;
-            if (locationsCount > LOCATIONS_PER_PART) {
-                partsCount = (int) Math.ceil(1.0 * locationsCount / LOCATIONS_PER_PART);
-            }
-
-            int[] succeededParts = upload(partsCount);
+            AnalyticsStatistics stats = new AnalyticsStatistics();
+            int[] succeededParts = upload(ocidSummary, mlsSummary, stats);
 
             // sum up results and update notification for ocid
             if (ocidUploadResult == UploadResult.PartiallySucceeded) {
@@ -172,11 +179,9 @@ public class UploaderWorker extends Worker implements IProgressListener {
                 long endTime = System.currentTimeMillis();
                 long duration = (endTime - startTime);
                 String networkType = NetworkUtils.getNetworkType(MyApplication.getApplication());
-                AnalyticsStatistics endStats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getAnalyticsStatistics();
-                AnalyticsStatistics stats = new AnalyticsStatistics();
-                stats.setLocations(startStats.getLocations() - endStats.getLocations());
-                stats.setCells(startStats.getCells() - endStats.getCells());
-                stats.setDays(startStats.getDays() - endStats.getDays());
+                UploadSummary endOcidSummary = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getUploadSummary(UploadTarget.Ocid);
+                UploadSummary endMlsSummary = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getUploadSummary(UploadTarget.Mls);
+                stats.setDays(getDaysCount(ocidSummary, mlsSummary) - getDaysCount(endOcidSummary, endMlsSummary));
                 if (isOpenCellIdUploadEnabled)
                     MyApplication.getAnalytics().sendUploadFinished(startIntentSource, networkType, duration, stats, OpenCellIdUtils.isApiKeyShared(ocidApiKey) ? Label.UploadOcidShared : Label.UploadOcid);
                 if (isMlsUploadEnabled)
@@ -184,11 +189,11 @@ public class UploaderWorker extends Worker implements IProgressListener {
             }
             String ocidMessage = getStringById(getMessage(ocidUploadResult));
             String ocidDescription = getStringById(getDescription(ocidUploadResult));
-            String ocidSummary = getStringById(R.string.uploader_result_message, ocidMessage, ocidDescription);
+            String ocidResultMessage = getStringById(R.string.uploader_result_message, ocidMessage, ocidDescription);
             String mlsMessage = getStringById(getMessage(mlsUploadResult));
             String mlsDescription = getStringById(getDescription(mlsUploadResult));
-            String mlsSummary = getStringById(R.string.uploader_result_message, mlsMessage, mlsDescription);
-            String message = getStringById(R.string.uploader_result_description, ocidSummary, mlsSummary);
+            String mlsResultMessage = getStringById(R.string.uploader_result_message, mlsMessage, mlsDescription);
+            String message = getStringById(R.string.uploader_result_description, ocidResultMessage, mlsResultMessage);
             return Result.success(getMessageData(message));
         } catch (Exception ex) {
             Timber.e(ex, "doWork(): Uploader failed");
@@ -301,55 +306,131 @@ public class UploaderWorker extends Worker implements IProgressListener {
         }
     }
 
-    private int[] upload(int partsCount) {
+    /**
+     * Uploads parts in a pipeline: next part is read while previous ones are sent to both targets on their own threads,
+     * results are applied in order of parts. Number of parts in flight limits memory and requests per target.
+     */
+    private int[] upload(UploadSummary ocidSummary, UploadSummary mlsSummary, AnalyticsStatistics stats) {
         int ocidSucceededParts = 0, mlsSucceededParts = 0;
         boolean continueOcidUpload = isOpenCellIdUploadEnabled;
         boolean continueMlsUpload = isMlsUploadEnabled;
-        Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
-        int numberToUploadOcid = stats.getToUploadOcid();
-        int numberToUploadMls = stats.getToUploadMls();
-        // for each part start new upload
-        for (int i = 0; i < partsCount; i++) {
-            // check if cancelled
-            if (isStopped()) {
-                ocidUploadResult = UploadResult.Cancelled;
-                mlsUploadResult = UploadResult.Cancelled;
-                break;
-            }
-            // notify
-            int progress = (int) (100.0 * i / partsCount);
-            reportProgress(progress, PROGRESS_MAX_VALUE);
-            // prepare data starting from oldest
-            List<Measurement> measurements = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsPartIncludingPartiallyUploaded(i * LOCATIONS_PER_PART, LOCATIONS_PER_PART);
-
-            Timber.d("upload(): Continue upload to OCID = %s, MLS = %s", continueOcidUpload, continueMlsUpload);
-
-            Map<UploadTarget, List<Measurement>> groupedMeasurements = groupByUploaded(measurements);
-            if (continueOcidUpload) {
-                List<Measurement> ocidMeasurements = groupedMeasurements.get(UploadTarget.Ocid);
-                ocidUploadResult = uploadToOcid(ocidMeasurements);
-                numberToUploadOcid -= ocidMeasurements.size();
-            }
-            if (continueMlsUpload) {
-                List<Measurement> mlsMeasurements = groupedMeasurements.get(UploadTarget.Mls);
-                mlsUploadResult = uploadToMls(mlsMeasurements);
-                numberToUploadMls -= mlsMeasurements.size();
-            }
-
-            if (ocidUploadResult == UploadResult.PartiallySucceeded)
-                ocidSucceededParts++;
-            if (mlsUploadResult == UploadResult.PartiallySucceeded)
-                mlsSucceededParts++;
+        int numberToUploadOcid = ocidSummary.getCount();
+        int numberToUploadMls = mlsSummary.getCount();
+        // progress is measured in measurements processed for each enabled target
+        int progressMax = (isOpenCellIdUploadEnabled ? numberToUploadOcid : 0) + (isMlsUploadEnabled ? numberToUploadMls : 0);
+        int progress = 0;
+        int uploadedLocations = 0;
+        // measurements collected during upload are left for next upload
+        int maxMeasurementId = Math.max(ocidSummary.getMaxMeasurementId(), mlsSummary.getMaxMeasurementId());
+        int partsInFlight = Math.max(1, partsInFlightLimit);
+        ExecutorService readerExecutor = createExecutor(1, "UploaderReader");
+        ExecutorService ocidExecutor = createExecutor(partsInFlight, "UploaderOcid");
+        ExecutorService mlsExecutor = createExecutor(partsInFlight, "UploaderMls");
+        Deque<UploadPart> parts = new ArrayDeque<>();
+        try {
+            // last measurement id of previous part is the key of the next one
+            Future<List<Measurement>> nextPart = readPart(readerExecutor, getFirstMeasurementId(ocidSummary, mlsSummary) - 1, maxMeasurementId);
+            while (true) {
+                // check if cancelled
+                if (isStopped()) {
+                    ocidUploadResult = UploadResult.Cancelled;
+                    mlsUploadResult = UploadResult.Cancelled;
+                    break;
+                }
+                // notify
+                reportProgress(progressMax > 0 ? (int) (100L * progress / progressMax) : PROGRESS_MAX_VALUE, PROGRESS_MAX_VALUE);
+                // start sending next parts while there is room
+                while (nextPart != null && parts.size() < partsInFlight) {
+                    List<Measurement> measurements = nextPart.get();
+                    if (measurements.isEmpty()) {
+                        Timber.d("upload(): No more measurements to upload");
+                        nextPart = null;
+                        break;
+                    }
+                    nextPart = readPart(readerExecutor, measurements.get(measurements.size() - 1).getMeasurementId(), maxMeasurementId);
+                    UploadPart part = new UploadPart(measurements, groupByUploaded(measurements));
+                    if (continueOcidUpload) {
+                        List<Measurement> ocidMeasurements = part.groupedMeasurements.get(UploadTarget.Ocid);
+                        part.ocidResult = ocidExecutor.submit(() -> uploadToOcid(ocidMeasurements));
+                        numberToUploadOcid -= ocidMeasurements.size();
+                    }
+                    if (continueMlsUpload) {
+                        List<Measurement> mlsMeasurements = part.groupedMeasurements.get(UploadTarget.Mls);
+                        part.mlsResult = mlsExecutor.submit(() -> uploadToMls(mlsMeasurements));
+                        numberToUploadMls -= mlsMeasurements.size();
+                    }
+                    part.numberToUploadOcid = numberToUploadOcid;
+                    part.numberToUploadMls = numberToUploadMls;
+                    parts.add(part);
+                }
+                // apply results of the oldest part
+                UploadPart part = parts.poll();
+                if (part == null)
+                    break;
+                List<Measurement> measurements = part.measurements;
+                Map<UploadTarget, List<Measurement>> groupedMeasurements = part.groupedMeasurements;
 
-            continueOcidUpload &= ocidUploadResult == UploadResult.PartiallySucceeded || numberToUploadOcid > 0;
-            continueMlsUpload &= mlsUploadResult == UploadResult.PartiallySucceeded || numberToUploadMls > 0;
+                Timber.d("upload(): Continue upload to OCID = %s, MLS = %s", continueOcidUpload, continueMlsUpload);
 
-            boolean ocidSuccessful = (ocidUploadResult == UploadResult.PartiallySucceeded);
-            boolean mlsSuccessful = (mlsUploadResult == UploadResult.PartiallySucceeded);
+                // part sent before target was stopped is treated as not sent
+                if (continueOcidUpload && part.ocidResult != null) {
+                    ocidUploadResult = part.ocidResult.get();
+                    progress += groupedMeasurements.get(UploadTarget.Ocid).size();
+                }
+                if (continueMlsUpload && part.mlsResult != null) {
+                    mlsUploadResult = part.mlsResult.get();
+                    progress += groupedMeasurements.get(UploadTarget.Mls).size();
+                }
 
-            if (isReuploadIfUploadFailsEnabled) {
-                // all enabled succeeded
-                if ((ocidSuccessful || !isOpenCellIdUploadEnabled) && (mlsSuccessful || !isMlsUploadEnabled)) {
+                if (ocidUploadResult == UploadResult.PartiallySucceeded)
+                    ocidSucceededParts++;
+                if (mlsUploadResult == UploadResult.PartiallySucceeded)
+                    mlsSucceededParts++;
+
+                continueOcidUpload &= ocidUploadResult == UploadResult.PartiallySucceeded || part.numberToUploadOcid > 0;
+                continueMlsUpload &= mlsUploadResult == UploadResult.PartiallySucceeded || part.numberToUploadMls > 0;
+
+                boolean ocidSuccessful = (ocidUploadResult == UploadResult.PartiallySucceeded);
+                boolean mlsSuccessful = (mlsUploadResult == UploadResult.PartiallySucceeded);
+
+                if (isReuploadIfUploadFailsEnabled) {
+                    // all enabled succeeded
+                    if ((ocidSuccessful || !isOpenCellIdUploadEnabled) && (mlsSuccessful || !isMlsUploadEnabled)) {
+                        Timber.d("upload(): Deleting measurements because OCID enabled = %s and successful = %s, MLS enabled = %s and successful = %s", isOpenCellIdUploadEnabled, ocidSuccessful, isMlsUploadEnabled, mlsSuccessful);
+                        // delete sent measurements
+                        int[] rowIds = getMeasurementIds(measurements);
+                        int numberOfDeleted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).markAsUploaded(rowIds, System.currentTimeMillis(), System.currentTimeMillis());
+                        if (numberOfDeleted == 0) {
+                            ocidUploadResult = UploadResult.DeleteFailed;
+                            mlsUploadResult = UploadResult.DeleteFailed;
+                            break;
+                        }
+                        uploadedLocations += rowIds.length;
+                    } else if (ocidSuccessful && isMlsUploadEnabled) {
+                        Timber.d("upload(): Marking measurements as uploaded to OCID");
+                        // keep for mls
+                        int[] rowIds = getMeasurementIds(groupedMeasurements.get(UploadTarget.Ocid));
+                        int numberOfDeleted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).markAsUploaded(rowIds, System.currentTimeMillis(), null);
+                        if (numberOfDeleted == 0) {
+                            ocidUploadResult = UploadResult.DeleteFailed;
+                            break;
+                        }
+                        uploadedLocations += rowIds.length;
+                    } else if (mlsSuccessful && isOpenCellIdUploadEnabled) {
+                        Timber.d("upload(): Marking measurements as uploaded to MLS");
+                        // keep for ocid
+                        int[] rowIds = getMeasurementIds(groupedMeasurements.get(UploadTarget.Mls));
+                        int numberOfDeleted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).markAsUploaded(rowIds, null, System.currentTimeMillis());
+                        if (numberOfDeleted == 0) {
+                            mlsUploadResult = UploadResult.DeleteFailed;
+                            break;
+                        }
+                        uploadedLocations += rowIds.length;
+                    } else {
+                        Timber.d("upload(): Skipping delete because all uploads failed");
+                        // all uploads failed - measurements were not uploaded
+                    }
+                } else if ((isOpenCellIdUploadEnabled && ocidSuccessful) || (isMlsUploadEnabled && mlsSuccessful)) {
                     Timber.d("upload(): Deleting measurements because OCID enabled = %s and successful = %s, MLS enabled = %s and successful = %s", isOpenCellIdUploadEnabled, ocidSuccessful, isMlsUploadEnabled, mlsSuccessful);
                     // delete sent measurements
                     int[] rowIds = getMeasurementIds(measurements);
@@ -359,52 +440,68 @@ public class UploaderWorker extends Worker implements IProgressListener {
                         mlsUploadResult = UploadResult.DeleteFailed;
                         break;
                     }
-                } else if (ocidSuccessful && isMlsUploadEnabled) {
-                    Timber.d("upload(): Marking measurements as uploaded to OCID");
-                    // keep for mls
-                    int[] rowIds = getMeasurementIds(groupedMeasurements.get(UploadTarget.Ocid));
-                    int numberOfDeleted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).markAsUploaded(rowIds, System.currentTimeMillis(), null);
-                    if (numberOfDeleted == 0) {
-                        ocidUploadResult = UploadResult.DeleteFailed;
-                        break;
-                    }
-                } else if (mlsSuccessful && isOpenCellIdUploadEnabled) {
-                    Timber.d("upload(): Marking measurements as uploaded to MLS");
-                    // keep for ocid
-                    int[] rowIds = getMeasurementIds(groupedMeasurements.get(UploadTarget.Mls));
-                    int numberOfDeleted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).markAsUploaded(rowIds, null, System.currentTimeMillis());
-                    if (numberOfDeleted == 0) {
-                        mlsUploadResult = UploadResult.DeleteFailed;
-                        break;
-                    }
-                } else {
-                    Timber.d("upload(): Skipping delete because all uploads failed");
-                    // all uploads failed - measurements were not uploaded
+                    uploadedLocations += rowIds.length;
                 }
-            } else if ((isOpenCellIdUploadEnabled && ocidSuccessful) || (isMlsUploadEnabled && mlsSuccessful)) {
-                Timber.d("upload(): Deleting measurements because OCID enabled = %s and successful = %s, MLS enabled = %s and successful = %s", isOpenCellIdUploadEnabled, ocidSuccessful, isMlsUploadEnabled, mlsSuccessful);
-                // delete sent measurements
-                int[] rowIds = getMeasurementIds(measurements);
-                int numberOfDeleted = MeasurementsDatabase.getInstance(MyApplication.getApplication()).markAsUploaded(rowIds, System.currentTimeMillis(), System.currentTimeMillis());
-                if (numberOfDeleted == 0) {
-                    ocidUploadResult = UploadResult.DeleteFailed;
-                    mlsUploadResult = UploadResult.DeleteFailed;
+                // broadcast part uploaded (if error not encountered earlier)
+                EventBus.getDefault().post(new PrintMainWindowEvent());
+
+                if (!continueOcidUpload && !continueMlsUpload)
                     break;
-                }
             }
-            // broadcast part uploaded (if error not encountered earlier)
-            EventBus.getDefault().post(new PrintMainWindowEvent());
-
-            if (!continueOcidUpload && !continueMlsUpload)
-                break;
+        } catch (InterruptedException ex) {
+            Timber.w("upload(): Upload interrupted");
+            ocidUploadResult = UploadResult.Cancelled;
+            mlsUploadResult = UploadResult.Cancelled;
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            Timber.e(ex.getCause(), "upload(): Upload part failed");
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        } finally {
+            // abandon parts sent after stop, they will be uploaded again next time
+            for (UploadPart part : parts) {
+                part.cancel();
+            }
+            readerExecutor.shutdownNow();
+            ocidExecutor.shutdownNow();
+            mlsExecutor.shutdownNow();
         }
 
         // clean anyway because it doesn't hurt
-        MeasurementsDatabase.getInstance(MyApplication.getApplication()).clearOlderUploadedPartiallyAndUploadedFully();
+        int deletedCellSignals = MeasurementsDatabase.getInstance(MyApplication.getApplication()).clearOlderUploadedPartiallyAndUploadedFully();
 
+        stats.setLocations(uploadedLocations);
+        stats.setCells(deletedCellSignals);
         return new int[]{ocidSucceededParts, mlsSucceededParts};
     }
 
+    private Future<List<Measurement>> readPart(ExecutorService readerExecutor, int afterMeasurementId, int maxMeasurementId) {
+        // prepare data starting from oldest
+        return readerExecutor.submit(() -> MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsPartToUpload(afterMeasurementId, maxMeasurementId, LOCATIONS_PER_PART));
+    }
+
+    private ExecutorService createExecutor(int threads, String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> new Thread(runnable, name + "-" + threadNumber.incrementAndGet()));
+    }
+
+    private int getFirstMeasurementId(UploadSummary ocidSummary, UploadSummary mlsSummary) {
+        if (ocidSummary.isEmpty())
+            return mlsSummary.getMinMeasurementId();
+        if (mlsSummary.isEmpty())
+            return ocidSummary.getMinMeasurementId();
+        return Math.min(ocidSummary.getMinMeasurementId(), mlsSummary.getMinMeasurementId());
+    }
+
+    private int getDaysCount(UploadSummary ocidSummary, UploadSummary mlsSummary) {
+        if (ocidSummary.isEmpty() && mlsSummary.isEmpty())
+            return 0;
+        long minDate = (ocidSummary.isEmpty() ? mlsSummary.getMinMeasuredAt() : (mlsSummary.isEmpty() ? ocidSummary.getMinMeasuredAt() : Math.min(ocidSummary.getMinMeasuredAt(), mlsSummary.getMinMeasuredAt())));
+        long maxDate = Math.max(ocidSummary.getMaxMeasuredAt(), mlsSummary.getMaxMeasuredAt());
+        return (int) DateUtils.getTimeDiff(maxDate, minDate); // safe because return value is in days
+    }
+
     private Map<UploadTarget, List<Measurement>> groupByUploaded(List<Measurement> measurements) {
         Map<UploadTarget, List<Measurement>> filtered = new HashMap<>();
         filtered.put(UploadTarget.Ocid, new ArrayList<Measurement>());
@@ -434,26 +531,19 @@ public class UploaderWorker extends Worker implements IProgressListener {
     private UploadResult uploadToOcid(List<Measurement> measurements) {
         if (measurements.isEmpty())
             return UploadResult.NoData;
-        StringBuilder memoryFile = new StringBuilder();
         ICsvFormatter formatter = new CsvUploadFormatter();
-        // write measurements
-        try {
-            memoryFile.append(formatter.formatHeader());
-            for (Measurement m : measurements) {
-                memoryFile.append(formatter.formatEntry(m));
-            }
-        } catch (Exception ex) {
-            // this should never happen for in-memory writes
-            Timber.e(ex, "uploadToOcid(): Error while generating file");
-            MyApplication.handleSilentException(ex);
-            return UploadResult.Failure;
-        }
-        // get content
-        String csvContent = memoryFile.toString();
-        // send request
+        // send request writing measurements directly to the connection
         try {
             IUploadClient client = new OcidUploadClient(ocidUploadUrl, appId, ocidApiKey);
-            RequestResult response = client.uploadMeasurements(csvContent);
+            RequestResult response = client.uploadMeasurements(writer -> {
+                StringBuilder entry = new StringBuilder(512);
+                writer.write(formatter.formatHeader());
+                for (Measurement m : measurements) {
+                    entry.setLength(0);
+                    formatter.formatEntry(m, entry);
+                    writer.append(entry);
+                }
+            });
             Timber.d("uploadToOcid(): Server response: %s", response);
             // check whether it makes sense to continue
             if (response == RequestResult.ConfigurationError) {
@@ -481,23 +571,19 @@ public class UploaderWorker extends Worker implements IProgressListener {
     private UploadResult uploadToMls(List<Measurement> measurements) {
         if (measurements.isEmpty())
             return UploadResult.NoData;
-        StringBuilder memoryFile = new StringBuilder();
-        IJsonFormatter formatter = new JsonMozillaUploadFormatter();
-        // write measurements
-        try {
-            memoryFile.append(formatter.formatList(measurements));
-        } catch (Exception ex) {
-            // this should never happen for in-memory writes
-            Timber.e(ex, "uploadToMls(): Error while generating file");
-            MyApplication.handleSilentException(ex);
-            return UploadResult.Failure;
-        }
-        // get content
-        String jsonContent = memoryFile.toString();
-        // send request
+        JsonMozillaUploadFormatter formatter = new JsonMozillaUploadFormatter();
+        // send request writing measurements directly to the connection
         try {
             IUploadClient client = new MozillaUploadClient(mlsUploadUrl, mlsApiKey);
-            RequestResult response = client.uploadMeasurements(jsonContent);
+            RequestResult response = client.uploadMeasurements(writer -> {
+                try {
+                    formatter.writeList(measurements, writer, "");
+                } catch (JSONException ex) {
+                    // this should never happen for valid measurements
+                    Timber.e(ex, "uploadToMls(): Error while generating file");
+                    throw new RequestContentException(ex);
+                }
+            });
             Timber.d("uploadToMls(): Server response: %s", response);
             // check whether it makes sense to continue
             if (response == RequestResult.ConfigurationError) {
@@ -522,8 +608,25 @@ public class UploaderWorker extends Worker implements IProgressListener {
         }
     }
 
-    private enum UploadTarget {
-        Ocid,
-        Mls
+    private static class UploadPart {
+        private final List<Measurement> measurements;
+        private final Map<UploadTarget, List<Measurement>> groupedMeasurements;
+        private Future<UploadResult> ocidResult;
+        private Future<UploadResult> mlsResult;
+        // measurements left for each target after this part
+        private int numberToUploadOcid;
+        private int numberToUploadMls;
+
+        private UploadPart(List<Measurement> measurements, Map<UploadTarget, List<Measurement>> groupedMeasurements) {
+            this.measurements = measurements;
+            this.groupedMeasurements = groupedMeasurements;
+        }
+
+        private void cancel() {
+            if (ocidResult != null)
+                ocidResult.cancel(true);
+            if (mlsResult != null)
+                mlsResult.cancel(true);
+        }
     }
 }
@@ -26,6 +26,7 @@ public class FileUtils {
         put("gz", "application/gzip");
         put("xml", "application/xml");
         put("db", "application/x-sqlite3");
+        put("tca", "application/octet-stream");
         put("*", "application/octet-stream");
     }};
 
@@ -73,7 +74,7 @@ public class FileUtils {
             return getFileMimeType(paths[0]);
         for (String path : paths) {
             String fileExtension = getFileExtension(path).toLowerCase();
-            if ("gz".equals(fileExtension) || "zip".equals(fileExtension) || "kmz".equals(fileExtension))
+            if ("gz".equals(fileExtension) || "zip".equals(fileExtension) || "kmz".equals(fileExtension) || "tca".equals(fileExtension))
                 return "application/octet-stream";
         }
         return "text/*";
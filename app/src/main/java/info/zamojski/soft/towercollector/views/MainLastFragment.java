@@ -8,7 +8,7 @@ import java.util.Date;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.R;
-import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.dao.AsyncMeasurementsRepository;
 import info.zamojski.soft.towercollector.enums.NetworkGroup;
 import info.zamojski.soft.towercollector.events.MeasurementSavedEvent;
 import info.zamojski.soft.towercollector.events.PrintMainWindowEvent;
@@ -163,10 +163,19 @@ public class MainLastFragment extends MainFragmentBase {
     }
 
     private void getAndPrintOrClearMeasurement() {
-        Measurement measurement = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getLastMeasurement();
-        printOrClearMeasurement(measurement);
+        AsyncMeasurementsRepository.getInstance(MyApplication.getApplication()).getLastMeasurement(lastMeasurementListener);
     }
 
+    private final AsyncMeasurementsRepository.IResultListener<Measurement> lastMeasurementListener = new AsyncMeasurementsRepository.IResultListener<Measurement>() {
+        @Override
+        public void onResult(Measurement measurement) {
+            // fragment may be already detached when query completes
+            if (isAdded()) {
+                printOrClearMeasurement(measurement);
+            }
+        }
+    };
+
     private void printOrClearMeasurement(Measurement measurement) {
         if (measurement != null) {
             printMeasurement(measurement);
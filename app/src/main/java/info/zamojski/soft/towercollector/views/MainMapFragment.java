@@ -10,8 +10,11 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BlendMode;
 import android.graphics.BlendModeColorFilter;
+import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.PorterDuff;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.location.Criteria;
 import android.location.Location;
@@ -20,7 +23,6 @@ import android.net.ConnectivityManager;
 import android.net.Network;
 import android.net.NetworkCapabilities;
 import android.net.NetworkRequest;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.text.method.LinkMovementMethod;
@@ -52,18 +54,29 @@ import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
+import org.osmdroid.views.overlay.FolderOverlay;
 import org.osmdroid.views.overlay.Marker;
+import org.osmdroid.views.overlay.Overlay;
 import org.osmdroid.views.overlay.ScaleBarOverlay;
 import org.osmdroid.views.overlay.TilesOverlay;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.R;
 import info.zamojski.soft.towercollector.controls.DialogManager;
+import info.zamojski.soft.towercollector.dao.AsyncMeasurementsRepository;
 import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
 import info.zamojski.soft.towercollector.events.MeasurementSavedEvent;
 import info.zamojski.soft.towercollector.events.PrintMainWindowEvent;
@@ -71,6 +84,7 @@ import info.zamojski.soft.towercollector.map.FollowMyLocationOverlay;
 import info.zamojski.soft.towercollector.model.Boundaries;
 import info.zamojski.soft.towercollector.model.MapCell;
 import info.zamojski.soft.towercollector.model.MapMeasurement;
+import info.zamojski.soft.towercollector.model.MapMeasurementCluster;
 import info.zamojski.soft.towercollector.model.Measurement;
 import info.zamojski.soft.towercollector.model.Statistics;
 import info.zamojski.soft.towercollector.model.Tuple;
@@ -82,9 +96,14 @@ import timber.log.Timber;
 
 public class MainMapFragment extends MainFragmentBase implements FollowMyLocationOverlay.FollowMyLocationChangeListener {
 
+    private static final String MARKERS_QUERY_KEY = "map_markers";
     private static final int MAP_DATA_LOAD_DELAY_IN_MILLIS = 200;
-    private static final int MAX_MARKERS_ADDED_INDIVIDUALLY = 500;
+    private static final int MAX_POOLED_MARKERS = 500;
     private static final float BOUNDARIES_INCREASE_FACTOR = 1.2f; // 10% more each side
+    // buckets are loaded from database below this zoom level, clusterer groups markers up to this level inclusive
+    private static final int MAX_AGGREGATED_ZOOM_LEVEL = 13;
+    private static final int AGGREGATED_MARKERS_RELOAD_DELAY_IN_MILLIS = 5000;
+    private static final int CLUSTER_GRID_LEVEL_OFFSET = 2; // 4x4 buckets per map tile
 
     private MapView mainMapView;
     private FollowMyLocationOverlay myLocationOverlay;
@@ -93,11 +112,19 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
     private ImageButton myLocationButton;
     private ImageButton toggleLocationButton;
     private ImageButton helpButton;
-    private RadiusMarkerClusterer markersOverlay;
+    private Overlay markersOverlay;
+    private RadiusMarkerClusterer measurementsOverlay;
+    // markers of measurements currently on the map by measurement id
+    private final Map<Integer, Marker> loadedMarkers = new HashMap<>();
+    private final Deque<Marker> markerPool = new ArrayDeque<>();
+    private long loadedMarkersSinceLocal;
+    // buffered measurements have no id until saved, they are replaced on next load
+    private int unsavedMarkerId = 0;
     private Bitmap clusterIcon;
-    private BackgroundMarkerLoaderTask backgroundMarkerLoaderTask;
+    private Paint clusterTextPaint;
+    private AtomicBoolean markersLoadCancelled;
     private boolean missedMapZoomScrollUpdates = false;
-    private int markersAddedIndividually = 0;
+    private boolean aggregatedMarkersReloadScheduled = false;
     private BoundingBox lastLoadedBoundingBox = null;
     private boolean isLightThemeForced;
     private Resources.Theme theme;
@@ -122,6 +149,9 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
         boolean themeChanged = reloadTheme();
         if (themeChanged) {
             reloadMapTheme();
+            // icons depend on theme
+            clearLoadedMarkers();
+            markerPool.clear();
             reloadMarkers(true);
         }
         registerNetworkCallback();
@@ -145,8 +175,15 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        if (backgroundMarkerLoaderTask != null)
-            backgroundMarkerLoaderTask.cancel(false);
+        if (markersLoadCancelled != null) {
+            markersLoadCancelled.set(true);
+            markersLoadCancelled = null;
+        }
+        if (mainMapView != null)
+            mainMapView.removeCallbacks(aggregatedMarkersReloadRunnable);
+        aggregatedMarkersReloadScheduled = false;
+        loadedMarkers.clear();
+        markerPool.clear();
         if (mainMapView != null)
             mainMapView.onDetach();
     }
@@ -154,7 +191,8 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
-        markersOverlay = createMarkersOverlay();
+        measurementsOverlay = createMarkersOverlay();
+        markersOverlay = measurementsOverlay;
         mainMapView.getOverlays().add(markersOverlay);
         mainMapView.addOnFirstLayoutListener(new MapView.OnFirstLayoutListener() {
             @Override
@@ -169,7 +207,7 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
         RadiusMarkerClusterer overlay = new RadiusMarkerClusterer(MyApplication.getApplication());
         overlay.setIcon(getClusterIcon());
         overlay.setRadius(100);
-        overlay.setMaxClusteringZoomLevel(13);
+        overlay.setMaxClusteringZoomLevel(MAX_AGGREGATED_ZOOM_LEVEL);
         return overlay;
     }
 
@@ -288,12 +326,11 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
     }
 
     private void reloadMarkers(boolean force) {
-        if (backgroundMarkerLoaderTask == null) {
+        if (markersLoadCancelled == null) {
             if (force || lastLoadedBoundingBox == null) {
                 Timber.d("reloadMarkers(): Loading markers due to force=%1$s, lastLoadedBoundingBox=%2$s", force, lastLoadedBoundingBox);
                 Tuple<Boundaries, BoundingBox> boundaries = getVisibleBoundaries();
-                this.backgroundMarkerLoaderTask = new BackgroundMarkerLoaderTask(boundaries.getItem2());
-                this.backgroundMarkerLoaderTask.execute(boundaries.getItem1());
+                loadMarkers(boundaries.getItem1(), boundaries.getItem2());
             } else {
                 BoundingBox boundingBox = mainMapView.getProjection().getBoundingBox();
                 double north = boundingBox.getActualNorth();
@@ -314,17 +351,130 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
         }
     }
 
-    private void displayMarkers(RadiusMarkerClusterer newMarkersOverlay) {
-        mainMapView.getOverlays().remove(markersOverlay);
-        markersOverlay.onDetach(mainMapView);
-        markersOverlay = newMarkersOverlay;
-        mainMapView.getOverlays().add(markersOverlay);
+    private void loadMarkers(final Boundaries boundaries, final BoundingBox boundingBox) {
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        markersLoadCancelled = cancelled;
+        final int zoomLevel = (int) mainMapView.getZoomLevelDouble();
+        AsyncMeasurementsRepository.getInstance(MyApplication.getApplication()).<MarkersLoadResult>query(MARKERS_QUERY_KEY, database -> {
+            // at low zoom levels aggregate in database to avoid creating marker per measurement
+            if (zoomLevel < MAX_AGGREGATED_ZOOM_LEVEL)
+                return loadClusterMarkers(database, boundaries, zoomLevel + CLUSTER_GRID_LEVEL_OFFSET, cancelled);
+            return loadMeasurements(database, boundaries);
+        }, result -> onMarkersLoaded(result, boundingBox, cancelled));
+    }
+
+    private MarkersLoadResult loadMeasurements(MeasurementsDatabase database, Boundaries boundaries) {
+        Statistics stats = database.getMeasurementsStatistics();
+        List<MapMeasurement> measurements = database.getMeasurementsInArea(boundaries);
+        Timber.d("loadMeasurements(): Loaded %s measurements", measurements.size());
+        return new MarkersLoadResult(measurements, stats.getSinceLocal());
+    }
+
+    private MarkersLoadResult loadClusterMarkers(MeasurementsDatabase database, Boundaries boundaries, int gridLevel, AtomicBoolean cancelled) {
+        FolderOverlay result = new FolderOverlay();
+        List<MapMeasurementCluster> clusters = database.getMeasurementClustersInArea(boundaries, gridLevel);
+        for (MapMeasurementCluster cluster : clusters) {
+            if (cancelled.get()) {
+                Timber.d("loadClusterMarkers(): Markers loading cancelled");
+                return null;
+            }
+            result.add(createClusterMarker(cluster));
+        }
+        Timber.d("loadClusterMarkers(): Loaded %s cluster markers", clusters.size());
+        return new MarkersLoadResult(result);
+    }
+
+    private void onMarkersLoaded(MarkersLoadResult result, BoundingBox boundingBox, AtomicBoolean cancelled) {
+        if (cancelled.get()) {
+            // view already destroyed
+            return;
+        }
+        if (result != null) {
+            if (result.clustersOverlay != null) {
+                clearLoadedMarkers();
+                displayMarkers(result.clustersOverlay);
+            } else {
+                updateMeasurementMarkers(result.measurements, result.localSinceTimestamp);
+                displayMarkers(measurementsOverlay);
+            }
+        }
+        lastLoadedBoundingBox = boundingBox;
+        markersLoadCancelled = null;
+        // reload if scroll/zoom occurred while loading
+        if (missedMapZoomScrollUpdates) {
+            Timber.d("onMarkersLoaded(): Missed scroll/zoom updates - reloading");
+            missedMapZoomScrollUpdates = false;
+            reloadMarkers(true);
+        }
+    }
+
+    /**
+     * Applies difference between loaded and displayed measurements, so only markers of measurements
+     * which entered or left the area are created or released.
+     */
+    private void updateMeasurementMarkers(List<MapMeasurement> measurements, long localSinceTimestamp) {
+        // brightness of all markers depends on statistics start
+        if (localSinceTimestamp != loadedMarkersSinceLocal) {
+            clearLoadedMarkers();
+            loadedMarkersSinceLocal = localSinceTimestamp;
+        }
+        List<Marker> items = measurementsOverlay.getItems();
+        Set<Integer> loadedIds = new HashSet<>(measurements.size());
+        int addedCount = 0;
+        for (MapMeasurement m : measurements) {
+            loadedIds.add(m.getMeasurementId());
+            if (!loadedMarkers.containsKey(m.getMeasurementId())) {
+                Marker marker = obtainMarker(m, localSinceTimestamp);
+                loadedMarkers.put(m.getMeasurementId(), marker);
+                items.add(marker);
+                addedCount++;
+            }
+        }
+        // markers out of area or already uploaded
+        Set<Marker> removedMarkers = new HashSet<>();
+        Iterator<Map.Entry<Integer, Marker>> iterator = loadedMarkers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Marker> entry = iterator.next();
+            if (!loadedIds.contains(entry.getKey())) {
+                removedMarkers.add(entry.getValue());
+                iterator.remove();
+            }
+        }
+        if (!removedMarkers.isEmpty()) {
+            items.removeAll(removedMarkers);
+            for (Marker marker : removedMarkers) {
+                recycleMarker(marker);
+            }
+        }
+        Timber.d("updateMeasurementMarkers(): Added %s, removed %s, kept %s markers", addedCount, removedMarkers.size(), loadedMarkers.size() - addedCount);
+        measurementsOverlay.invalidate();
+    }
+
+    private void clearLoadedMarkers() {
+        if (measurementsOverlay == null)
+            return;
+        measurementsOverlay.getItems().clear();
+        for (Marker marker : loadedMarkers.values()) {
+            recycleMarker(marker);
+        }
+        loadedMarkers.clear();
+        measurementsOverlay.invalidate();
+    }
+
+    private void displayMarkers(Overlay newMarkersOverlay) {
+        if (newMarkersOverlay != markersOverlay) {
+            mainMapView.getOverlays().remove(markersOverlay);
+            // measurements overlay is kept to be updated incrementally
+            if (markersOverlay != measurementsOverlay)
+                markersOverlay.onDetach(mainMapView);
+            markersOverlay = newMarkersOverlay;
+            mainMapView.getOverlays().add(markersOverlay);
+        }
         if (mainMapView.isAnimating()) {
             mainMapView.postInvalidate();
         } else {
             mainMapView.invalidate();
         }
-        markersAddedIndividually = 0;
     }
 
     private Tuple<Boundaries, BoundingBox> getVisibleBoundaries() {
@@ -343,7 +493,7 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
         return new Tuple<Boundaries, BoundingBox>(new Boundaries(minLat, minLon, maxLat, maxLon), boundingBoxWithReserve);
     }
 
-    private Marker createMarker(MapMeasurement m, long localSinceTimestamp) {
+    private Marker obtainMarker(MapMeasurement m, long localSinceTimestamp) {
         List<MapCell> mainCells = m.getMainCells();
         boolean isBright = m.containsDiscoveredCells(localSinceTimestamp);
         @DrawableRes int iconId;
@@ -352,7 +502,12 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
         } else {
             iconId = NetworkTypeUtils.getNetworkGroupIcon(mainCells.get(0).getNetworkType(), mainCells.get(1).getNetworkType());
         }
-        Marker item = new Marker(mainMapView);
+        Marker item = markerPool.poll();
+        if (item == null) {
+            item = new Marker(mainMapView);
+            item.setAnchor(0.5f, 0.5f);
+            item.setOnMarkerClickListener(MARKER_CLICK_LISTENER);
+        }
 
         Drawable icon = ResourcesCompat.getDrawable(getResources(), iconId, theme);
         if (!isBright) {
@@ -367,13 +522,48 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
         item.setTitle(dateTimeFormatStandard.format(new Date(m.getMeasuredAt())));
         item.setSnippet(m.getDescription(MyApplication.getApplication()));
         item.setPosition(new GeoPoint(m.getLatitude(), m.getLongitude()));
+        return item;
+    }
+
+    private void recycleMarker(Marker marker) {
+        marker.closeInfoWindow();
+        if (markerPool.size() < MAX_POOLED_MARKERS)
+            markerPool.push(marker);
+    }
+
+    private Marker createClusterMarker(MapMeasurementCluster cluster) {
+        Bitmap icon = getClusterIcon().copy(Bitmap.Config.ARGB_8888, true);
+        Paint textPaint = getClusterTextPaint();
+        Canvas canvas = new Canvas(icon);
+        float textY = icon.getHeight() / 2f - (textPaint.descent() + textPaint.ascent()) / 2f;
+        canvas.drawText(formatClusterCount(cluster.getCount()), icon.getWidth() / 2f, textY, textPaint);
+
+        Marker item = new Marker(mainMapView);
+        item.setIcon(new BitmapDrawable(getResources(), icon));
+        item.setPosition(new GeoPoint(cluster.getLatitude(), cluster.getLongitude()));
         item.setAnchor(0.5f, 0.5f);
-        item.setOnMarkerClickListener(MARKER_CLICK_LISTENER);
+        item.setInfoWindow(null);
+        item.setOnMarkerClickListener(CLUSTER_CLICK_LISTENER);
         return item;
     }
 
+    private String formatClusterCount(int count) {
+        if (count < 1000)
+            return String.valueOf(count);
+        if (count < 1000000)
+            return (count / 1000) + "k";
+        return (count / 1000000) + "M";
+    }
+
     private void moveToLastMeasurement() {
-        Measurement lastMeasurement = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getLastMeasurement();
+        AsyncMeasurementsRepository.getInstance(MyApplication.getApplication()).getLastMeasurement(lastMeasurement -> {
+            if (isAdded()) {
+                moveToLastMeasurement(lastMeasurement);
+            }
+        });
+    }
+
+    private void moveToLastMeasurement(Measurement lastMeasurement) {
         if (lastMeasurement != null) {
             moveToLocation(lastMeasurement.getLatitude(), lastMeasurement.getLongitude());
         } else {
@@ -426,6 +616,20 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
         return clusterIcon;
     }
 
+    private Paint getClusterTextPaint() {
+        if (clusterTextPaint == null) {
+            // same style as count drawn by clusterer
+            Paint paint = new Paint();
+            paint.setColor(Color.WHITE);
+            paint.setTextSize(15 * getResources().getDisplayMetrics().density);
+            paint.setFakeBoldText(true);
+            paint.setTextAlign(Paint.Align.CENTER);
+            paint.setAntiAlias(true);
+            clusterTextPaint = paint;
+        }
+        return clusterTextPaint;
+    }
+
     private boolean reloadTheme() {
         boolean previousLightTheme = isLightThemeForced;
         isLightThemeForced = MyApplication.getPreferencesProvider().isMainMapForceLightThemeEnabled();
@@ -444,16 +648,42 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
 
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onEvent(MeasurementSavedEvent event) {
-        if (++markersAddedIndividually <= MAX_MARKERS_ADDED_INDIVIDUALLY) {
-            Timber.d("onEvent(): Adding single measurement to the map, added %s of %s", markersAddedIndividually, MAX_MARKERS_ADDED_INDIVIDUALLY);
-            MapMeasurement m = MapMeasurement.fromMeasurement(event.getMeasurement());
-            markersOverlay.add(createMarker(m, event.getStatistics().getSinceLocal()));
-            markersOverlay.invalidate();
-        } else {
+        if (markersOverlay != measurementsOverlay) {
+            // aggregated counts have to be recalculated, do it once for all measurements saved within delay
+            if (!aggregatedMarkersReloadScheduled && mainMapView != null) {
+                aggregatedMarkersReloadScheduled = true;
+                mainMapView.postDelayed(aggregatedMarkersReloadRunnable, AGGREGATED_MARKERS_RELOAD_DELAY_IN_MILLIS);
+            }
+            return;
+        }
+        if (markersLoadCancelled != null) {
+            // running load may not include the measurement
+            reloadMarkers(true);
+            return;
+        }
+        MapMeasurement m = MapMeasurement.fromMeasurement(event.getMeasurement());
+        long localSinceTimestamp = event.getStatistics().getSinceLocal();
+        if (localSinceTimestamp != loadedMarkersSinceLocal) {
             reloadMarkers(true);
+        } else if (lastLoadedBoundingBox != null && lastLoadedBoundingBox.contains(m.getLatitude(), m.getLongitude())
+                && !loadedMarkers.containsKey(m.getMeasurementId())) {
+            Timber.d("onEvent(): Adding single measurement to the map");
+            Marker marker = obtainMarker(m, localSinceTimestamp);
+            loadedMarkers.put(m.getMeasurementId() > 0 ? m.getMeasurementId() : --unsavedMarkerId, marker);
+            measurementsOverlay.add(marker);
+            measurementsOverlay.invalidate();
+            mainMapView.invalidate();
         }
     }
 
+    private final Runnable aggregatedMarkersReloadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            aggregatedMarkersReloadScheduled = false;
+            reloadMarkers(true);
+        }
+    };
+
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onEvent(PrintMainWindowEvent event) {
         reloadMarkers(true);
@@ -464,53 +694,21 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
         setFollowMe(enabled);
     }
 
-    private class BackgroundMarkerLoaderTask extends AsyncTask<Boundaries, Void, RadiusMarkerClusterer> {
-        private final String INNER_TAG = MainMapFragment.class.getSimpleName() + "." + BackgroundMarkerLoaderTask.class.getSimpleName();
-
-        private final BoundingBox boundingBox;
-
-        public BackgroundMarkerLoaderTask(BoundingBox boundingBox) {
-            this.boundingBox = boundingBox;
-        }
-
-        @Override
-        protected RadiusMarkerClusterer doInBackground(Boundaries... boundariesParams) {
-            RadiusMarkerClusterer result = createMarkersOverlay();
-            try {
-                Boundaries boundaries = boundariesParams[0];
-                Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
-                List<MapMeasurement> measurements = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsInArea(boundaries);
-                for (MapMeasurement m : measurements) {
-                    if (isCancelled())
-                        return null;
-                    result.add(createMarker(m, stats.getSinceLocal()));
-                }
-            } catch (Exception ex) {
-                Timber.tag(INNER_TAG).e(ex, "doInBackground(): Failed to load markers");
-                cancel(false);
-            }
+    private static class MarkersLoadResult {
+        private final FolderOverlay clustersOverlay;
+        private final List<MapMeasurement> measurements;
+        private final long localSinceTimestamp;
 
-            if (!isCancelled()) {
-                Timber.tag(INNER_TAG).d("doInBackground(): Loaded %s markers", result.getItems().size());
-                return result;
-            }
-            Timber.tag(INNER_TAG).d("doInBackground(): Markers loading cancelled");
-            return null;
+        private MarkersLoadResult(FolderOverlay clustersOverlay) {
+            this.clustersOverlay = clustersOverlay;
+            this.measurements = null;
+            this.localSinceTimestamp = 0;
         }
 
-        @Override
-        protected void onPostExecute(RadiusMarkerClusterer result) {
-            if (!isCancelled() && result != null) {
-                displayMarkers(result);
-            }
-            lastLoadedBoundingBox = boundingBox;
-            backgroundMarkerLoaderTask = null;
-            // reload if scroll/zoom occurred while loading
-            if (missedMapZoomScrollUpdates) {
-                Timber.tag(INNER_TAG).d("onPostExecute(): Missed scroll/zoom updates - reloading");
-                missedMapZoomScrollUpdates = false;
-                reloadMarkers(true);
-            }
+        private MarkersLoadResult(List<MapMeasurement> measurements, long localSinceTimestamp) {
+            this.clustersOverlay = null;
+            this.measurements = measurements;
+            this.localSinceTimestamp = localSinceTimestamp;
         }
     }
 
@@ -526,6 +724,15 @@ public class MainMapFragment extends MainFragmentBase implements FollowMyLocatio
         }
     };
 
+    private static final Marker.OnMarkerClickListener CLUSTER_CLICK_LISTENER = new Marker.OnMarkerClickListener() {
+        @Override
+        public boolean onMarkerClick(Marker marker, MapView mapView) {
+            // zoom in to show measurements in the cluster
+            mapView.getController().animateTo(marker.getPosition(), mapView.getZoomLevelDouble() + CLUSTER_GRID_LEVEL_OFFSET, null);
+            return true;
+        }
+    };
+
     private final View.OnLongClickListener IMAGE_BUTTON_LONG_CLICK_LISTENER = new View.OnLongClickListener() {
         @Override
         public boolean onLongClick(View v) {
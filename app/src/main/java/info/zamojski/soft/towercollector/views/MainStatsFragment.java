@@ -8,7 +8,7 @@ import java.util.Date;
 
 import info.zamojski.soft.towercollector.MyApplication;
 import info.zamojski.soft.towercollector.R;
-import info.zamojski.soft.towercollector.dao.MeasurementsDatabase;
+import info.zamojski.soft.towercollector.dao.AsyncMeasurementsRepository;
 import info.zamojski.soft.towercollector.events.MeasurementSavedEvent;
 import info.zamojski.soft.towercollector.events.PrintMainWindowEvent;
 import info.zamojski.soft.towercollector.model.Statistics;
@@ -49,8 +49,7 @@ public class MainStatsFragment extends MainFragmentBase {
     @Override
     protected void configureOnResume() {
         super.configureOnResume();
-        Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
-        printStatistics(stats);
+        getAndPrintStatistics();
     }
 
     @Override
@@ -78,10 +77,23 @@ public class MainStatsFragment extends MainFragmentBase {
 
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void onEvent(PrintMainWindowEvent event) {
-        Statistics stats = MeasurementsDatabase.getInstance(MyApplication.getApplication()).getMeasurementsStatistics();
-        printStatistics(stats);
+        getAndPrintStatistics();
     }
 
+    private void getAndPrintStatistics() {
+        AsyncMeasurementsRepository.getInstance(MyApplication.getApplication()).getMeasurementsStatistics(statisticsListener);
+    }
+
+    private final AsyncMeasurementsRepository.IResultListener<Statistics> statisticsListener = new AsyncMeasurementsRepository.IResultListener<Statistics>() {
+        @Override
+        public void onResult(Statistics stats) {
+            // fragment may be already detached when query completes
+            if (stats != null && isAdded()) {
+                printStatistics(stats);
+            }
+        }
+    };
+
     private void printStatistics(Statistics stats) {
         Timber.d("printStatistics(): Showing stats %s", stats);
         long sinceLocal = stats.getSinceLocal();